@@ -0,0 +1,156 @@
+package Client;
+
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+import common.buffer.PooledByteBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * 客户端长连接池（包内使用）：按 host:port 保存空闲连接，分段下载的各个区间请求复用同一批连接。
+ *
+ * 说明：
+ *  - 连接同一时刻只被一个请求使用；响应读完整且服务器没有要求关闭时才放回池中
+ *  - 复用的连接可能已被服务器按空闲超时关闭，调用方在失败时丢弃连接并重试（{@link Connection#isReused()}
+ *    为 true 时可改用 {@link #open} 新建的连接重试一次）
+ */
+final class ConnectionPool implements Closeable {
+
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024;
+
+    private final int maxIdlePerHost;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Map<String, ConcurrentLinkedDeque<Connection>> idle = new ConcurrentHashMap<>();
+
+    ConnectionPool(int maxIdlePerHost, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * 取一条到 host:port 的连接：优先复用空闲连接，没有时新建。
+     */
+    Connection acquire(String host, int port) throws IOException {
+        ConcurrentLinkedDeque<Connection> deque = idle.get(host + ":" + port);
+        Connection conn;
+        while (deque != null && (conn = deque.pollFirst()) != null) {
+            if (conn.channel.isOpen()) return conn;
+        }
+        return open(host, port);
+    }
+
+    /**
+     * 新建一条到 host:port 的连接，不使用空闲连接。
+     */
+    Connection open(String host, int port) throws IOException {
+        return Connection.open(host, port, connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    /**
+     * 归还连接：可复用且空闲连接未超过上限时放回池中，否则关闭。
+     */
+    void release(Connection conn, boolean reusable) {
+        if (reusable && conn.channel.isOpen()) {
+            ConcurrentLinkedDeque<Connection> deque =
+                    idle.computeIfAbsent(conn.key, k -> new ConcurrentLinkedDeque<>());
+            if (deque.size() < maxIdlePerHost) {
+                conn.reused = true;
+                deque.offerFirst(conn);
+                return;
+            }
+        }
+        conn.close();
+    }
+
+    /**
+     * 关闭所有空闲连接。
+     */
+    @Override
+    public void close() {
+        for (ConcurrentLinkedDeque<Connection> deque : idle.values()) {
+            Connection conn;
+            while ((conn = deque.pollFirst()) != null) conn.close();
+        }
+    }
+
+    /**
+     * 一条到服务器的连接：请求经池化的直接缓冲写出，响应从 socket 输入流读取以便 SO_TIMEOUT 生效。
+     */
+    static final class Connection implements Closeable {
+        private final String key;
+        private final SocketChannel channel;
+        private final BufferedInputStream in;
+        /** 是否曾放回池中（之后取出的连接可能已被服务器关闭） */
+        private volatile boolean reused;
+
+        private Connection(String key, SocketChannel channel) throws IOException {
+            this.key = key;
+            this.channel = channel;
+            this.in = new BufferedInputStream(channel.socket().getInputStream(), 64 * 1024);
+        }
+
+        static Connection open(String host, int port, int connectTimeoutMillis, int readTimeoutMillis)
+                throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+                channel.socket().setSoTimeout(readTimeoutMillis);
+                return new Connection(host + ":" + port, channel);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * 写出一个没有请求体的请求。
+         *
+         * @param headers 交替的头部名与值
+         */
+        void writeRequest(String method, String uri, String... headers) throws IOException {
+            PooledByteBuffer buffer = DirectBufferPool.shared().allocate(WRITE_BUFFER_SIZE);
+            try {
+                ChannelWriter writer = new ChannelWriter(channel, buffer.buffer());
+                writer.ascii(method).put(' ').ascii(uri).ascii(" HTTP/1.1").crlf();
+                for (int i = 0; i + 1 < headers.length; i += 2) {
+                    if (headers[i + 1] == null) continue;
+                    writer.ascii(headers[i]).put(':').put(' ').ascii(headers[i + 1]).crlf();
+                }
+                writer.crlf();
+                writer.flush();
+            } finally {
+                buffer.release();
+            }
+        }
+
+        boolean isReused() {
+            return reused;
+        }
+
+        SocketChannel channel() {
+            return channel;
+        }
+
+        BufferedInputStream in() {
+            return in;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
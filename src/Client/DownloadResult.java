@@ -0,0 +1,34 @@
+package Client;
+
+/**
+ * 一次文件下载的结果：字节数、实际使用的区间数、区间重试次数与耗时。
+ */
+public final class DownloadResult {
+
+    private final long bytes;
+    private final int segments;
+    private final int retries;
+    private final long elapsedMillis;
+
+    DownloadResult(long bytes, int segments, int retries, long elapsedMillis) {
+        this.bytes = bytes;
+        this.segments = segments;
+        this.retries = retries;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getBytes() { return bytes; }
+
+    /** 1 表示服务器不支持 Range（或文件太小），整个文件经一条连接下载 */
+    public int getSegments() { return segments; }
+
+    public int getRetries() { return retries; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    @Override
+    public String toString() {
+        return "DownloadResult{bytes=" + bytes + ", segments=" + segments + ", retries=" + retries +
+                ", elapsed=" + elapsedMillis + "ms}";
+    }
+}
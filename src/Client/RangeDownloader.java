@@ -0,0 +1,307 @@
+package Client;
+
+import common.HttpParseException;
+import common.HttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分段并行下载（包内使用，经 {@link SimpleHttpClient#download} 调用）。
+ *
+ * 流程：
+ *  1. HEAD 探测文件大小、Accept-Ranges 与 ETag
+ *  2. 预分配目标文件，把文件切成 N 个连续区间，每个区间由一个线程从连接池取连接、
+ *     发送 Range 请求（带 If-Range: ETag），响应体按块直接写入文件通道的对应位置
+ *  3. 某个区间失败（连接断开、超时）只重试该区间，并从已写入的位置继续；
+ *     服务器对 If-Range 返回 200 说明文件已变化，整个下载失败而不是拼接新旧内容；
+ *     写本地文件失败（磁盘已满等）与网络无关，同样不重试
+ *  复用的连接可能已被服务器关闭：探测失败时换一条新建的连接重试一次，区间重试同样使用新建的连接
+ *  4. 服务器不支持 Range 或文件太小时，经一条连接顺序写入文件
+ *
+ * 内存占用为每个区间一块固定大小的读缓冲，与文件大小无关。
+ */
+final class RangeDownloader {
+
+    /** 小于该大小的区间不值得单独开连接 */
+    static final long MIN_SEGMENT_SIZE = 256 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final ConnectionPool pool;
+    private final int maxAttempts;
+
+    RangeDownloader(ConnectionPool pool, int maxAttempts) {
+        this.pool = pool;
+        this.maxAttempts = maxAttempts;
+    }
+
+    DownloadResult download(URL url, Path target, int segments) throws IOException {
+        long start = System.currentTimeMillis();
+        Target t = new Target(url);
+
+        // 1. 探测
+        HttpResponse probe = probe(t);
+        long size = contentLength(probe);
+        boolean rangeable = size > 0 && "bytes".equalsIgnoreCase(probe.getHeader("Accept-Ranges"));
+        String validator = probe.getHeader("ETag");
+        if (validator == null) validator = probe.getHeader("Last-Modified");
+
+        int n = rangeable ? (int) Math.max(1, Math.min(segments, size / MIN_SEGMENT_SIZE)) : 1;
+        AtomicInteger retries = new AtomicInteger();
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (n == 1) {
+                long written = fetchWhole(t, file, retries);
+                return new DownloadResult(written, 1, retries.get(), System.currentTimeMillis() - start);
+            }
+
+            // 2. 预分配：写入最后一个字节，各区间随后按位置写入
+            file.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            List<Segment> parts = new ArrayList<>(n);
+            long per = size / n;
+            for (int i = 0; i < n; i++) {
+                long from = i * per;
+                long to = i == n - 1 ? size - 1 : from + per - 1;
+                parts.add(new Segment(from, to));
+            }
+
+            // 3. 每个区间一个线程，失败的区间单独重试
+            ExecutorService executor = Executors.newFixedThreadPool(n, r -> {
+                Thread thread = new Thread(r, "range-download");
+                thread.setDaemon(true);
+                return thread;
+            });
+            String ifRange = validator;
+            try {
+                List<Future<?>> futures = new ArrayList<>(n);
+                for (Segment segment : parts) {
+                    futures.add(executor.submit(() -> {
+                        fetchSegment(t, file, segment, ifRange, retries);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new IOException("Download failed", cause);
+            } finally {
+                executor.shutdownNow();
+            }
+            return new DownloadResult(size, n, retries.get(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private HttpResponse probe(Target t) throws IOException {
+        for (boolean fresh = false; ; fresh = true) {
+            ConnectionPool.Connection conn = fresh ? pool.open(t.host, t.port) : pool.acquire(t.host, t.port);
+            boolean reusable = false;
+            try {
+                conn.writeRequest("HEAD", t.uri, "Host", t.hostHeader, "User-Agent", "SimpleHttpClient/1.0",
+                        "Connection", "keep-alive");
+                HttpResponse response = readHead(conn);
+                if (response.getStatusCode() != 200) {
+                    throw new DownloadFailedException("HEAD " + t.uri + " returned " + response.getStatusCode());
+                }
+                reusable = !"close".equalsIgnoreCase(response.getHeader("Connection"));
+                return response;
+            } catch (DownloadFailedException e) {
+                throw e;
+            } catch (IOException e) {
+                // 只有复用的连接失败才重试：新建的连接失败说明服务器确实不可用
+                if (!conn.isReused()) throw e;
+            } finally {
+                pool.release(conn, reusable);
+            }
+        }
+    }
+
+    /**
+     * 下载一个区间；失败时从已写入的位置继续，最多 maxAttempts 次。
+     */
+    private void fetchSegment(Target t, FileChannel file, Segment segment, String ifRange, AtomicInteger retries)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            // 失败后改用新建的连接：池中其余空闲连接很可能同样已被服务器关闭
+            ConnectionPool.Connection conn = attempt == 1 ? pool.acquire(t.host, t.port) : pool.open(t.host, t.port);
+            boolean reusable = false;
+            try {
+                long from = segment.from + segment.done;
+                conn.writeRequest("GET", t.uri, "Host", t.hostHeader, "User-Agent", "SimpleHttpClient/1.0",
+                        "Range", "bytes=" + from + "-" + segment.to, "If-Range", ifRange,
+                        "Connection", "keep-alive");
+                HttpResponse response = readHead(conn);
+                String contentRange = response.getHeader("Content-Range");
+                if (response.getStatusCode() != 206 || contentRange == null
+                        || !contentRange.startsWith("bytes " + from + "-" + segment.to + "/")) {
+                    // 文件已变化（If-Range 不匹配）或服务器不按区间返回：重试没有意义
+                    throw new DownloadFailedException("Range " + from + "-" + segment.to + " of " + t.uri
+                            + " answered with " + response.getStatusCode() + " " + contentRange);
+                }
+                long remaining = segment.to - from + 1;
+                copy(conn.in(), file, segment.from, segment, remaining);
+                reusable = !"close".equalsIgnoreCase(response.getHeader("Connection"));
+                return;
+            } catch (DownloadFailedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    throw new IOException("Range " + segment.from + "-" + segment.to + " failed after "
+                            + attempt + " attempts", e);
+                }
+                retries.incrementAndGet();
+            } finally {
+                pool.release(conn, reusable);
+            }
+        }
+    }
+
+    /**
+     * 不分段：一条连接顺序写入；失败时从头重试。
+     */
+    private long fetchWhole(Target t, FileChannel file, AtomicInteger retries) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            // 失败后改用新建的连接：池中其余空闲连接很可能同样已被服务器关闭
+            ConnectionPool.Connection conn = attempt == 1 ? pool.acquire(t.host, t.port) : pool.open(t.host, t.port);
+            boolean reusable = false;
+            try {
+                truncate(file);
+                conn.writeRequest("GET", t.uri, "Host", t.hostHeader, "User-Agent", "SimpleHttpClient/1.0",
+                        "Connection", "keep-alive");
+                HttpResponse response = readHead(conn);
+                if (response.getStatusCode() != 200) {
+                    throw new DownloadFailedException("GET " + t.uri + " returned " + response.getStatusCode());
+                }
+                String te = response.getHeader("Transfer-Encoding");
+                if (te != null && te.toLowerCase().contains("chunked")) {
+                    throw new DownloadFailedException("chunked Transfer-Encoding not supported by SimpleHttpClient");
+                }
+                long length = contentLength(response);
+                Segment whole = new Segment(0, length - 1);
+                // 长度未知时读到连接关闭为止
+                copy(conn.in(), file, 0, whole, length < 0 ? Long.MAX_VALUE : length);
+                reusable = length >= 0 && !"close".equalsIgnoreCase(response.getHeader("Connection"));
+                return whole.done;
+            } catch (DownloadFailedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) throw e;
+                retries.incrementAndGet();
+            } finally {
+                pool.release(conn, reusable);
+            }
+        }
+    }
+
+    /**
+     * 把响应体按块写入文件：第 k 个字节写到 base + segment.done + k，并随写随记进度。
+     */
+    private static void copy(InputStream in, FileChannel file, long base, Segment segment, long length)
+            throws IOException {
+        byte[] buf = new byte[COPY_BUFFER_SIZE];
+        ByteBuffer wrapped = ByteBuffer.wrap(buf);
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+            if (n < 0) {
+                if (length == Long.MAX_VALUE) return;
+                throw new IOException("Connection closed with " + remaining + " bytes outstanding");
+            }
+            wrapped.clear().limit(n);
+            long position = base + segment.done;
+            try {
+                while (wrapped.hasRemaining()) {
+                    position += file.write(wrapped, position);
+                }
+            } catch (IOException e) {
+                throw new DownloadFailedException("Writing to the target file failed: " + e.getMessage(), e);
+            }
+            segment.done += n;
+            remaining -= n;
+        }
+    }
+
+    private static void truncate(FileChannel file) throws DownloadFailedException {
+        try {
+            file.truncate(0);
+        } catch (IOException e) {
+            throw new DownloadFailedException("Truncating the target file failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static HttpResponse readHead(ConnectionPool.Connection conn) throws IOException {
+        try {
+            return HttpResponse.readHead(conn.in());
+        } catch (HttpParseException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static long contentLength(HttpResponse response) throws IOException {
+        String value = response.getHeader("Content-Length");
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new DownloadFailedException("Invalid Content-Length: " + value);
+        }
+    }
+
+    /** 一个字节区间 [from, to] 以及已写入的字节数（只由负责该区间的线程修改） */
+    private static final class Segment {
+        final long from;
+        final long to;
+        long done;
+
+        Segment(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /** 不可重试的失败（状态码不符、文件已变化、写本地文件失败等） */
+    private static final class DownloadFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        DownloadFailedException(String message) {
+            super(message);
+        }
+
+        DownloadFailedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static final class Target {
+        final String host;
+        final int port;
+        final String hostHeader;
+        final String uri;
+
+        Target(URL url) {
+            this.host = url.getHost();
+            this.port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            this.hostHeader = url.getPort() == -1 || url.getPort() == url.getDefaultPort()
+                    ? url.getHost() : url.getHost() + ":" + url.getPort();
+            String path = url.getPath() == null || url.getPath().isEmpty() ? "/" : url.getPath();
+            this.uri = url.getQuery() == null || url.getQuery().isEmpty() ? path : path + "?" + url.getQuery();
+        }
+    }
+}
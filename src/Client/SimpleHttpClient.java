@@ -1,18 +1,26 @@
 package Client;
 
+import common.HeaderName;
+import common.HttpHeaders;
 import common.HttpRequest;
 import common.HttpResponse;
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+import common.buffer.PooledByteBuffer;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -24,6 +32,11 @@ import static common.HttpRequest.readLine;
  *  - 发送简单的 HTTP 请求
  *  - 支持 301/302 自动重定向
  *  - 支持基于 ETag 的 304 缓存
+ *  - 支持按 Range 分段并行下载大文件到磁盘（{@link #download}）
+ *  - 支持流式读取响应体（{@link #sendStreaming}），响应体可不经内存直接写入文件（{@link #downloadTo}）
+ *  - 支持 Expect: 100-continue：请求体较大（或请求自带该头部）时先只发送头部，
+ *    服务器回复 100 Continue 后才上传请求体，直接给出最终响应时不再上传；
+ *    等待超时后才到达的 100 Continue 等中间响应（1xx，101 除外）在读取最终响应时跳过
  */
 public class SimpleHttpClient {
 
@@ -34,6 +47,19 @@ public class SimpleHttpClient {
 
     /** 最多允许的重定向次数 */
     private final int maxRedirects = 5;
+    /** 请求报文编码缓冲大小（超出时分块写出） */
+    private static final int REQUEST_BUFFER_SIZE = 16 * 1024;
+    /** 超过该大小的响应体不放入 bodyCache（大文件应使用 {@link #sendStreaming}） */
+    private static final int MAX_CACHED_BODY = 1024 * 1024;
+    /** 请求体达到该大小时自动带上 Expect: 100-continue */
+    private static final int EXPECT_CONTINUE_THRESHOLD = 1024 * 1024;
+    /** 等待 100 Continue 的最长时间，超时后照常发送请求体（服务器可能不支持） */
+    private static final int CONTINUE_TIMEOUT_MILLIS = 1000;
+    /** 单个区间的最多尝试次数 */
+    private static final int DOWNLOAD_MAX_ATTEMPTS = 3;
+
+    /** 下载使用的长连接池（host:port -> 空闲连接） */
+    private final ConnectionPool downloadPool = new ConnectionPool(16, 5000, 30_000);
 
     /**
      * 发送 HTTP 请求，并自动处理重定向和缓存。
@@ -60,47 +86,30 @@ public class SimpleHttpClient {
                 }
             }
 
-            if (body != null && body.length > 0 && !sendHeaders.containsKey("Content-Length")) {
+            boolean hasBody = body != null && body.length > 0;
+            if (hasBody && !sendHeaders.containsKey("Content-Length")) {
                 sendHeaders.put("Content-Length", String.valueOf(body.length));
             }
+            if (hasBody && body.length >= EXPECT_CONTINUE_THRESHOLD && "HTTP/1.1".equals(version)) {
+                sendHeaders.putIfAbsent("Expect", "100-continue");
+            }
+            boolean expectContinue = hasBody && "100-continue".equalsIgnoreCase(sendHeaders.get("Expect"));
             // 默认短连接
             sendHeaders.putIfAbsent("Connection", "close");
 
             // ===== 2. 建立 Socket 连接 =====
-            String hostHeader = sendHeaders.get("Host");
-            if (hostHeader == null || hostHeader.isEmpty()) {
-                throw new IllegalArgumentException("Host header is required in HttpRequest");
-            }
-            String host = hostHeader;
-            int port = 80;
-            int idx = hostHeader.indexOf(':');
-            if (idx >= 0) {
-                host = hostHeader.substring(0, idx);
-                port = Integer.parseInt(hostHeader.substring(idx + 1));
-            }
-
-            try (Socket socket = new Socket(host, port)) {
+            try (SocketChannel channel = openChannel(sendHeaders.get("Host"))) {
                 // ===== 3. 发送请求报文 =====
-                OutputStream out = socket.getOutputStream();
-                PrintWriter writer = new PrintWriter(out, false, StandardCharsets.ISO_8859_1);
-
-                // 请求行
-                writer.print(method + " " + uri + " " + version + "\r\n");
-                // 头部
-                for (Map.Entry<String, String> e : sendHeaders.entrySet()) {
-                    writer.print(e.getKey() + ": " + e.getValue() + "\r\n");
-                }
-                // 空行
-                writer.print("\r\n");
-                writer.flush();
-                // body
-                if (body != null && body.length > 0) {
-                    out.write(body);
-                    out.flush();
-                }
+                // Expect: 100-continue 时先只发送请求行与头部
+                writeRequest(channel, method, uri, version, sendHeaders, expectContinue ? null : body);
 
                 // ===== 4. 读取响应并解析为 HttpResponse =====
-                HttpResponse response = readResponse(socket.getInputStream());
+                BufferedInputStream in = new BufferedInputStream(channel.socket().getInputStream());
+                HttpResponse response = expectContinue ? awaitContinue(channel, in) : null;
+                if (response == null) {
+                    if (expectContinue) writeFully(channel, body);
+                    response = readFinalResponse(in);
+                }
 
                 int status = response.getStatusCode();
 
@@ -116,7 +125,7 @@ public class SimpleHttpClient {
                     // 没有本地缓存就直接返回 304 响应
                     return response;
                 } else if (status == 301 || status == 302) {
-                    String location = response.getHeaders().get("Location");
+                    String location = response.getHeader("Location");
                     if (location == null || location.isEmpty()) {
                         return response;
                     }
@@ -135,8 +144,8 @@ public class SimpleHttpClient {
                     continue;
                 } else if (status == 200) {
                     if ("GET".equalsIgnoreCase(method)) {
-                        String etag = response.getHeaders().get("ETag");
-                        if (etag != null) {
+                        String etag = response.getHeader("ETag");
+                        if (etag != null && response.getBodyLength() <= MAX_CACHED_BODY) {
                             eTagCache.put(uri, etag);
                             bodyCache.put(uri, response.getBody());
                         }
@@ -151,6 +160,160 @@ public class SimpleHttpClient {
         throw new Exception("Too many redirects.");
     }
 
+    /**
+     * 发送请求并以流的形式返回响应：状态行与头部读完即返回，响应体留在连接上由调用方读取，
+     * 不经过内存中的 byte[]，也不进入 ETag 缓存。自动跟随 301/302 重定向。
+     * 调用方必须关闭返回的 {@link StreamingResponse}。
+     *
+     * @param request 要发送的 HttpRequest（至少要包含 Host 头）
+     */
+    public StreamingResponse sendStreaming(HttpRequest request) throws Exception {
+        HttpRequest currentRequest = request;
+        for (int i = 0; i < maxRedirects; i++) {
+            String method = currentRequest.getMethod();
+            Map<String, String> sendHeaders = new HashMap<>(currentRequest.getHeaders());
+            byte[] body = currentRequest.getBody();
+            if (body != null && body.length > 0 && !sendHeaders.containsKey("Content-Length")) {
+                sendHeaders.put("Content-Length", String.valueOf(body.length));
+            }
+            sendHeaders.putIfAbsent("Connection", "close");
+
+            SocketChannel channel = openChannel(sendHeaders.get("Host"));
+            try {
+                writeRequest(channel, method, currentRequest.getUri(), currentRequest.getHttpVersion(),
+                        sendHeaders, body);
+                BufferedInputStream in = new BufferedInputStream(channel.socket().getInputStream());
+                HttpResponse head = HttpResponse.readHead(in);
+                while (isInterim(head.getStatusCode())) head = HttpResponse.readHead(in);
+                int status = head.getStatusCode();
+                String location = head.getHeader("Location");
+                if ((status == 301 || status == 302) && location != null && !location.isEmpty()) {
+                    channel.close();
+                    URL newUrl = new URL(location);
+                    String newPath = newUrl.getPath() == null || newUrl.getPath().isEmpty() ? "/" : newUrl.getPath();
+                    if (newUrl.getQuery() != null && !newUrl.getQuery().isEmpty()) {
+                        newPath = newPath + "?" + newUrl.getQuery();
+                    }
+                    currentRequest = new HttpRequest(method, newPath, currentRequest.getHttpVersion(),
+                            getStringStringMap(newUrl, currentRequest), body);
+                    continue;
+                }
+                return new StreamingResponse(head, channel, in, "HEAD".equalsIgnoreCase(method));
+            } catch (Exception e) {
+                channel.close();
+                throw e;
+            }
+        }
+        throw new Exception("Too many redirects.");
+    }
+
+    /**
+     * 便捷方法：GET 一个 URL 并把响应体直接写入文件（经 {@link FileChannel#transferFrom}），
+     * 堆内存占用与文件大小无关，支持超过 2 GB 的响应体。
+     *
+     * @return 写入的字节数
+     * @throws IOException 响应不是 200，或连接提前结束
+     */
+    public long downloadTo(String urlString, Path target) throws Exception {
+        try (StreamingResponse response = sendStreaming(getRequest(urlString))) {
+            if (response.getStatusCode() != 200) {
+                throw new IOException("GET " + urlString + " returned " + response.getStatusCode());
+            }
+            return response.transferTo(target);
+        }
+    }
+
+    /**
+     * Expect: 100-continue：等待服务器的中间响应。
+     *
+     * @return 服务器不看请求体就给出的最终响应（请求体不再发送）；null 表示收到 100 Continue 或等待超时，
+     *         调用方应发送请求体
+     */
+    private HttpResponse awaitContinue(SocketChannel channel, BufferedInputStream in) throws Exception {
+        Socket socket = channel.socket();
+        int previous = socket.getSoTimeout();
+        while (true) {
+            socket.setSoTimeout(CONTINUE_TIMEOUT_MILLIS);
+            try {
+                in.mark(1);
+                if (in.read() < 0) throw new IOException("Connection closed before response");
+                in.reset();
+            } catch (SocketTimeoutException e) {
+                return null; // 服务器没有回复 100：照常发送请求体
+            } finally {
+                socket.setSoTimeout(previous);
+            }
+            HttpResponse response = readResponse(in);
+            if (response.getStatusCode() == 100) return null;
+            if (!isInterim(response.getStatusCode())) return response;
+            // 其他中间响应（如 103 Early Hints）：继续等待 100 或最终响应
+        }
+    }
+
+    /**
+     * 读取最终响应，跳过之前的中间响应（如等待超时后才到达的 100 Continue）。
+     */
+    private HttpResponse readFinalResponse(InputStream in) throws Exception {
+        HttpResponse response = readResponse(in);
+        while (isInterim(response.getStatusCode())) response = readResponse(in);
+        return response;
+    }
+
+    /** 1xx 中间响应之后还有最终响应；101 Switching Protocols 是连接上的最后一个 HTTP/1.1 响应 */
+    private static boolean isInterim(int status) {
+        return status >= 100 && status < 200 && status != 101;
+    }
+
+    private static void writeFully(SocketChannel channel, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 按 Host 头（host[:port]）建立连接。
+     */
+    private static SocketChannel openChannel(String hostHeader) throws IOException {
+        if (hostHeader == null || hostHeader.isEmpty()) {
+            throw new IllegalArgumentException("Host header is required in HttpRequest");
+        }
+        String host = hostHeader;
+        int port = 80;
+        int idx = hostHeader.indexOf(':');
+        if (idx >= 0) {
+            host = hostHeader.substring(0, idx);
+            port = Integer.parseInt(hostHeader.substring(idx + 1));
+        }
+        return SocketChannel.open(new InetSocketAddress(host, port));
+    }
+
+    /**
+     * 请求行、头部与 body 编码进池化的直接缓冲，经通道写出。
+     */
+    private static void writeRequest(SocketChannel channel, String method, String uri, String version,
+                                     Map<String, String> headers, byte[] body) throws IOException {
+        PooledByteBuffer buffer = DirectBufferPool.shared().allocate(REQUEST_BUFFER_SIZE);
+        try {
+            ChannelWriter writer = new ChannelWriter(channel, buffer.buffer());
+            // 请求行
+            writer.ascii(method).put(' ').ascii(uri).put(' ').ascii(version).crlf();
+            // 头部
+            for (Map.Entry<String, String> e : headers.entrySet()) {
+                writer.ascii(e.getKey()).put(':').put(' ').ascii(e.getValue()).crlf();
+            }
+            // 空行
+            writer.crlf();
+            // body
+            if (body != null && body.length > 0) {
+                writer.bytes(body);
+            }
+            writer.flush();
+        } finally {
+            buffer.release();
+        }
+    }
+
     private static Map<String, String> getStringStringMap(URL newUrl, HttpRequest currentRequest) {
         String newHostHeader;
         int newPort = newUrl.getPort();
@@ -173,6 +336,10 @@ public class SimpleHttpClient {
      * @param urlString 目标 URL
      */
     public HttpResponse get(String urlString) throws Exception {
+        return send(getRequest(urlString));
+    }
+
+    private static HttpRequest getRequest(String urlString) throws Exception {
         URL url = new URL(urlString);
 
         String path = url.getPath();
@@ -195,15 +362,36 @@ public class SimpleHttpClient {
         headers.put("User-Agent", "SimpleHttpClient/1.0");
         headers.put("Accept", "*/*");
 
-        HttpRequest request = new HttpRequest("GET", path, "HTTP/1.1", headers, null);
-        return send(request);
+        return new HttpRequest("GET", path, "HTTP/1.1", headers, null);
+    }
+
+    /**
+     * 把 URL 指向的文件下载到 target：服务器支持 Range 时分成最多 segments 个区间并行下载，
+     * 每个区间直接写入文件的对应位置，失败的区间单独重试；否则经一条连接顺序下载。
+     * 与 {@link #get} 不同，响应体不经过内存中的 byte[]，适合大文件。
+     *
+     * @param urlString 目标 URL
+     * @param target    保存位置（已存在时覆盖）
+     * @param segments  最多并行的区间数
+     */
+    public DownloadResult download(String urlString, Path target, int segments) throws IOException {
+        if (segments <= 0) throw new IllegalArgumentException("segments must be positive");
+        return new RangeDownloader(downloadPool, DOWNLOAD_MAX_ATTEMPTS).download(new URL(urlString), target, segments);
+    }
+
+    /**
+     * 关闭下载连接池中的空闲连接。
+     */
+    public void close() {
+        downloadPool.close();
     }
 
     /**
      * 从输入流解析 HTTP 响应报文。
      */
     private HttpResponse readResponse(InputStream in) throws Exception {
-        BufferedInputStream bin = new BufferedInputStream(in);
+        BufferedInputStream bin = in instanceof BufferedInputStream
+                ? (BufferedInputStream) in : new BufferedInputStream(in);
 
         // 状态行
         String statusLine = readLine(bin);
@@ -219,7 +407,7 @@ public class SimpleHttpClient {
         String message = parts.length >= 3 ? parts[2] : "";
 
         // 响应头
-        Map<String, String> headers = new LinkedHashMap<>();
+        HttpHeaders headers = new HttpHeaders();
         String line;
         while ((line = readLine(bin)) != null) {
             if (line.isEmpty()) break;
@@ -227,19 +415,23 @@ public class SimpleHttpClient {
             if (idx <= 0) continue;
             String name = line.substring(0, idx).trim();
             String value = line.substring(idx + 1).trim();
-            headers.put(name, value);
+            headers.add(name, value); // 保留同名头部（如多个 Set-Cookie）
         }
 
         // body（仅处理 Content-Length，忽略 chunked）
         byte[] body = new byte[0];
-        String contentLengthValue = headers.get("Content-Length");
-        String transferEnc = headers.get("Transfer-Encoding");
+        String contentLengthValue = headers.get(HeaderName.CONTENT_LENGTH);
+        String transferEnc = headers.get(HeaderName.TRANSFER_ENCODING);
         if (transferEnc != null && transferEnc.toLowerCase().contains("chunked")) {
             throw new UnsupportedOperationException("chunked Transfer-Encoding not supported by SimpleHttpClient");
         } else if (contentLengthValue != null) {
-            int contentLength = Integer.parseInt(contentLengthValue.trim());
+            long contentLength = Long.parseLong(contentLengthValue.trim());
+            if (contentLength > Integer.MAX_VALUE - 8) {
+                throw new UnsupportedOperationException("Response body of " + contentLength
+                        + " bytes does not fit in memory, use sendStreaming or downloadTo");
+            }
             if (contentLength > 0) {
-                body = readFixedBytes(bin, contentLength);
+                body = readFixedBytes(bin, (int) contentLength);
             }
         }
 
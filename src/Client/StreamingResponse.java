@@ -0,0 +1,134 @@
+package Client;
+
+import common.ChunkedInputStream;
+import common.FixedLengthInputStream;
+import common.HttpResponse;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 流式响应（{@link SimpleHttpClient#sendStreaming} 的返回值）：
+ * 状态行与头部已解析，响应体留在连接上，由调用方按需读取或直接写入文件。
+ *
+ * 说明：
+ *  - 响应体按 Content-Length（long）、chunked 或读到连接关闭三种方式界定
+ *  - {@link #transferTo(Path)} 经 {@link FileChannel#transferFrom} 把响应体写入文件，
+ *    堆内存只占用一块固定大小的传输缓冲，与文件大小无关
+ *  - 使用完必须 {@link #close()}，关闭底层连接
+ */
+public final class StreamingResponse implements Closeable {
+
+    /** transferTo 在长度未知时每次调用 transferFrom 的最大字节数 */
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final HttpResponse head;
+    private final SocketChannel channel;
+    private final InputStream body;
+    private final long contentLength;
+
+    StreamingResponse(HttpResponse head, SocketChannel channel, BufferedInputStream in, boolean headRequest)
+            throws IOException {
+        this.head = head;
+        this.channel = channel;
+        int status = head.getStatusCode();
+        String te = head.getHeader("Transfer-Encoding");
+        String cl = head.getHeader("Content-Length");
+        if (headRequest || status == 204 || status == 304 || status / 100 == 1) {
+            this.contentLength = 0;
+            this.body = new FixedLengthInputStream(in, 0);
+        } else if (te != null && te.toLowerCase().contains("chunked")) {
+            this.contentLength = -1;
+            this.body = new ChunkedInputStream(in);
+        } else if (cl != null) {
+            try {
+                this.contentLength = Long.parseLong(cl.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + cl);
+            }
+            this.body = new FixedLengthInputStream(in, contentLength);
+        } else {
+            // 没有长度信息：响应体到连接关闭为止
+            this.contentLength = -1;
+            this.body = in;
+        }
+    }
+
+    /** 响应的状态行与头部（不含 body） */
+    public HttpResponse getHead() {
+        return head;
+    }
+
+    public int getStatusCode() {
+        return head.getStatusCode();
+    }
+
+    public String getHeader(String name) {
+        return head.getHeader(name);
+    }
+
+    /**
+     * @return 响应体长度，小于 0 表示未知（chunked 或读到连接关闭）
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return 响应体输入流，读到末尾返回 -1
+     */
+    public InputStream body() {
+        return body;
+    }
+
+    /**
+     * @return 响应体通道（与 {@link #body()} 读取同一份数据）
+     */
+    public ReadableByteChannel bodyChannel() {
+        return Channels.newChannel(body);
+    }
+
+    /**
+     * 把剩余的响应体写入文件（已存在时覆盖）。
+     *
+     * @return 写入的字节数
+     * @throws EOFException 连接在 Content-Length 之前结束
+     */
+    public long transferTo(Path target) throws IOException {
+        try (FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ReadableByteChannel src = bodyChannel();
+            long position = 0;
+            if (contentLength >= 0) {
+                while (position < contentLength) {
+                    long n = file.transferFrom(src, position, contentLength - position);
+                    if (n <= 0) throw new EOFException((contentLength - position) + " bytes missing");
+                    position += n;
+                }
+            } else {
+                long n;
+                while ((n = file.transferFrom(src, position, TRANSFER_CHUNK)) > 0) {
+                    position += n;
+                }
+            }
+            return position;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Client;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 吞吐爬升测量工具：
+ *  1. 轮询 GET /ready，直到服务器返回 200
+ *  2. 用 N 个长连接循环发送 GET 请求，按 100ms 窗口统计完成的请求数
+ *  3. 以最后 1/4 时间的平均吞吐为稳态，输出第一个达到稳态 90% 的窗口（time-to-peak）
+ *
+ * 用法：java Client.ThroughputProbe [host] [port] [path] [connections] [seconds]
+ * 用于比较 warmup.enabled 打开与关闭时服务器冷启动后的吞吐爬升。
+ */
+public class ThroughputProbe {
+
+    private static final int WINDOW_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        String path = args.length > 2 ? args[2] : "/index.html";
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        waitUntilReady(host, port);
+
+        int windows = seconds * 1000 / WINDOW_MILLIS;
+        AtomicLongArray completed = new AtomicLongArray(windows);
+        byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+
+        Thread[] workers = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            workers[i] = new Thread(() -> {
+                // 服务器按 keepalive.max-requests 关闭连接后重新连接
+                while (System.nanoTime() < end) {
+                    try (Socket socket = new Socket(host, port)) {
+                        socket.setTcpNoDelay(true);
+                        OutputStream out = socket.getOutputStream();
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        boolean open = true;
+                        while (open && System.nanoTime() < end) {
+                            out.write(request);
+                            out.flush();
+                            open = readResponse(in).keepAlive;
+                            int window = (int) ((System.nanoTime() - start) / 1_000_000 / WINDOW_MILLIS);
+                            if (window < windows) completed.incrementAndGet(window);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("connection failed: " + e.getMessage());
+                        return;
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        int tail = Math.max(1, windows / 4);
+        long tailSum = 0;
+        for (int i = windows - tail; i < windows; i++) tailSum += completed.get(i);
+        double steady = tailSum / (double) tail;
+        int peakWindow = -1;
+        long total = 0;
+        for (int i = 0; i < windows; i++) {
+            total += completed.get(i);
+            if (peakWindow < 0 && completed.get(i) >= steady * 0.9) peakWindow = i;
+        }
+
+        System.out.println("=== 每 " + WINDOW_MILLIS + "ms 完成的请求数 ===");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < windows; i++) {
+            line.append(completed.get(i)).append(i % 10 == 9 ? "\n" : " ");
+        }
+        System.out.println(line.toString().trim());
+        System.out.printf("requests=%d, steady=%.0f req/s, first window=%.0f req/s, time-to-peak(90%%)=%d ms%n",
+                total, steady * 1000 / WINDOW_MILLIS, completed.get(0) * 1000.0 / WINDOW_MILLIS,
+                (peakWindow + 1) * WINDOW_MILLIS);
+    }
+
+    private static void waitUntilReady(String host, int port) throws InterruptedException {
+        byte[] probe = ("GET /ready HTTP/1.1\r\nHost: " + host + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        while (true) {
+            try (Socket socket = new Socket(host, port)) {
+                socket.getOutputStream().write(probe);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                if (readResponse(in).status == 200) return;
+            } catch (IOException ignored) {
+                // 端口尚未打开
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static final class Response {
+        int status;
+        boolean keepAlive = true;
+    }
+
+    /**
+     * 读取一个带 Content-Length 的响应并丢弃响应体。
+     */
+    private static Response readResponse(InputStream in) throws IOException {
+        Response response = new Response();
+        response.status = Integer.parseInt(readLine(in).split(" ")[1]);
+        long length = 0;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                length = Long.parseLong(value);
+            } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                response.keepAlive = false;
+            }
+        }
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new IOException("connection closed in body");
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+        return response;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new IOException("connection closed");
+            if (b != '\r') sb.append((char) b);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package Server;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import common.HeaderLimits;
+
+/**
+ * 慢客户端与超大请求的限制 (Role B)
+ * 职责：汇总连接上对请求大小与收发速度的约束，防止少量慢连接（slowloris）占满工作线程。
+ *
+ * 说明：
+ *  - headerLimits：请求行与头部的大小上限，超出返回 414 / 431
+ *  - headerTimeout：从请求首字节到头部读完的总时长上限，超出返回 408；
+ *    单次读超时（readTimeout）只能限制两个字节之间的间隔，挡不住每隔几十秒发一个字节的客户端
+ *  - minBodyRate / bodyRateGrace：读取请求体时的最低速率（字节/秒），宽限期后按阻塞在读取上的累计时间计算，
+ *    处理器自身慢（如上游背压）不计入；为 0 表示不限制
+ *  - writeTimeout：单次写出（一块缓冲）阻塞的最长时间，超出时关闭连接；为 0 表示不限制
+ *  - maxBodySize：读入内存的请求体大小上限，按 Content-Length 在读取请求体之前检查，超出返回 413
+ */
+public class ClientLimits {
+
+    private final HeaderLimits headerLimits;
+    private final int headerTimeoutMillis;
+    private final int minBodyRate;
+    private final int bodyRateGraceMillis;
+    private final int writeTimeoutMillis;
+    private final int maxBodySize;
+
+    /**
+     * @param headerLimits        请求行与头部的大小上限
+     * @param headerTimeoutMillis 接收完整头部的总时长上限（毫秒）
+     * @param minBodyRate         请求体最低速率（字节/秒），0 表示不限制
+     * @param bodyRateGraceMillis 开始检查速率前的宽限期（毫秒）
+     * @param writeTimeoutMillis  单次写出的最长阻塞时间（毫秒），0 表示不限制
+     * @param maxBodySize         读入内存的请求体大小上限（字节）
+     */
+    public ClientLimits(HeaderLimits headerLimits, int headerTimeoutMillis, int minBodyRate,
+                        int bodyRateGraceMillis, int writeTimeoutMillis, int maxBodySize) {
+        if (headerTimeoutMillis <= 0) throw new IllegalArgumentException("headerTimeoutMillis must be positive");
+        if (minBodyRate < 0 || bodyRateGraceMillis < 0 || writeTimeoutMillis < 0 || maxBodySize < 0) {
+            throw new IllegalArgumentException("limits cannot be negative");
+        }
+        this.headerLimits = headerLimits;
+        this.headerTimeoutMillis = headerTimeoutMillis;
+        this.minBodyRate = minBodyRate;
+        this.bodyRateGraceMillis = bodyRateGraceMillis;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * 默认限制：头部上限见 {@link HeaderLimits#defaults()}、头部 10s 内收完、
+     * 请求体 5s 宽限后不低于 1 KiB/s、单次写出最多阻塞 20s、请求体最大 10 MiB。
+     */
+    public static ClientLimits defaults() {
+        return new ClientLimits(HeaderLimits.defaults(), 10_000, 1024, 5000, 20_000, 10 << 20);
+    }
+
+    /**
+     * 从服务器配置构建限制。
+     */
+    public static ClientLimits from(ServerConfig config) {
+        return new ClientLimits(
+                new HeaderLimits(
+                        config.get(ConfigKeys.MAX_REQUEST_LINE),
+                        config.get(ConfigKeys.MAX_HEADER_SIZE),
+                        config.get(ConfigKeys.MAX_HEADER_COUNT)),
+                config.get(ConfigKeys.HEADER_TIMEOUT_MS),
+                config.get(ConfigKeys.MIN_BODY_RATE),
+                config.get(ConfigKeys.BODY_RATE_GRACE_MS),
+                config.get(ConfigKeys.WRITE_TIMEOUT_MS),
+                config.get(ConfigKeys.MAX_BODY_SIZE));
+    }
+
+    public HeaderLimits getHeaderLimits() { return headerLimits; }
+    public int getHeaderTimeoutMillis() { return headerTimeoutMillis; }
+    public int getMinBodyRate() { return minBodyRate; }
+    public int getBodyRateGraceMillis() { return bodyRateGraceMillis; }
+    public int getWriteTimeoutMillis() { return writeTimeoutMillis; }
+    public int getMaxBodySize() { return maxBodySize; }
+
+    @Override
+    public String toString() {
+        return "ClientLimits{" + headerLimits +
+                ", headerTimeout=" + headerTimeoutMillis + "ms" +
+                ", minBodyRate=" + minBodyRate + "B/s" +
+                ", bodyRateGrace=" + bodyRateGraceMillis + "ms" +
+                ", writeTimeout=" + writeTimeoutMillis + "ms" +
+                ", maxBodySize=" + maxBodySize + "}";
+    }
+}
@@ -1,21 +1,49 @@
 package Server;
 
 import Server.dispatcher.RequestDispatcher;
+import Server.http2.Http2Handler;
+import common.BufferPool;
 import common.HttpRequest;
 import common.HttpResponse;
+import common.RequestContext;
+import common.RequestTooLargeException;
+import common.buffer.DirectBufferPool;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.DoubleSupplier;
 
 /**
  * 单个连接的处理器 (Role B)
  * 职责：处理单个 Socket 连接，实现 HTTP 长连接 (Keep-Alive) 逻辑。
  */
 public class ConnectionHandler implements Runnable{
+    /** Expect: 100-continue 的中间响应 */
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
     private final Socket socket;
     private final RequestDispatcher dispatcher;
+    private final KeepAlivePolicy keepAlivePolicy;
+    /** 当前占用率（连接数 / 工作线程数），用于自适应空闲超时 */
+    private final DoubleSupplier utilisation;
+    /** 连接上下文的缓冲来源 */
+    private final BufferPool bufferPool;
+    /** 响应写出使用的直接内存缓冲来源（仅通道连接使用） */
+    private final DirectBufferPool directBufferPool;
+    /** h2c 入口；为 null 表示不支持 HTTP/2 */
+    private final Http2Handler http2;
+    /** 请求大小与收发速度的限制 */
+    private final ClientLimits limits;
+    /** 连接在工作队列中的等待时间，计入第一个请求 */
+    private long queueNanos;
 
     /**
      * 构造函数
@@ -23,8 +51,46 @@ public class ConnectionHandler implements Runnable{
      * @param dispatcher 请求分发器
      */
     public ConnectionHandler(Socket socket, RequestDispatcher dispatcher) {
+        this(socket, dispatcher, KeepAlivePolicy.defaults(), () -> 0.0, BufferPool.shared(),
+                DirectBufferPool.shared(), null, ClientLimits.defaults());
+    }
+
+    /**
+     * 构造函数
+     * @param socket 客户端连接 Socket
+     * @param dispatcher 请求分发器
+     * @param keepAlivePolicy 长连接策略
+     * @param utilisation 当前占用率的提供者
+     * @param bufferPool 连接缓冲池
+     * @param directBufferPool 直接内存缓冲池（socket 由 SocketChannel 创建时用于写出响应）
+     * @param http2 h2c 入口，为 null 时只支持 HTTP/1.x
+     * @param limits 请求大小、头部截止时间、请求体最低速率与写出截止时间
+     */
+    public ConnectionHandler(Socket socket, RequestDispatcher dispatcher,
+                             KeepAlivePolicy keepAlivePolicy, DoubleSupplier utilisation, BufferPool bufferPool,
+                             DirectBufferPool directBufferPool, Http2Handler http2, ClientLimits limits) {
         this.socket = socket;
         this.dispatcher = dispatcher;
+        this.keepAlivePolicy = keepAlivePolicy;
+        this.utilisation = utilisation;
+        this.bufferPool = bufferPool;
+        this.directBufferPool = directBufferPool;
+        this.http2 = http2;
+        this.limits = limits;
+    }
+
+    /**
+     * 记录连接在工作队列中的等待时间（在 run 之前由接收方调用）。
+     */
+    void setQueueWait(long nanos) {
+        this.queueNanos = nanos;
+    }
+
+    /**
+     * HTTP/2 的写出通道：沿用（已受写出截止时间监视的）连接通道，没有通道时包装输出流。
+     */
+    private static WritableByteChannel h2Channel(WritableByteChannel channel, OutputStream out) {
+        return channel != null ? channel : Channels.newChannel(out);
     }
 
     /**
@@ -33,48 +99,153 @@ public class ConnectionHandler implements Runnable{
      */
     @Override
     public void run() {
+        // 连接级上下文：请求对象与缓冲在本连接的所有请求间复用，连接结束时归还缓冲
+        // socket 由 ServerSocketChannel 接收时，响应经通道从直接内存写出；读取仍走 socket 流以保留读超时
+        // 写出经写出截止时间的守卫进行：客户端长时间不读取时关闭连接
+        WriteWatchdog.Guard writeGuard = limits.getWriteTimeoutMillis() > 0
+                ? WriteWatchdog.shared().register(socket, limits.getWriteTimeoutMillis())
+                : null;
+        WritableByteChannel channel = writeGuard != null ? writeGuard.wrap(socket.getChannel()) : socket.getChannel();
+        RequestContext context = new RequestContext(bufferPool, directBufferPool, channel);
+        context.setHeaderLimits(limits.getHeaderLimits());
+        RequestTiming timing = new RequestTiming("HTTP/1.1");
         try {
-            // 1. 设置 Socket 超时 (防止恶意连接占用资源)
-            socket.setSoTimeout(60000);
+            // 整个连接共用一个缓冲流，避免每个请求新建缓冲导致预读数据丢失
+            // 底层是带截止时间的流：头部必须在 header-timeout 内收完，请求体不得低于最低速率
+            DeadlineInputStream deadlines = new DeadlineInputStream(socket, socket.getInputStream());
+            BufferedInputStream in = new BufferedInputStream(deadlines);
+            OutputStream out = writeGuard != null ? writeGuard.wrap(socket.getOutputStream()) : socket.getOutputStream();
+            int handled = 0;
+            InetAddress remote = socket.getInetAddress();
+            String remoteAddress = remote.getHostAddress();
 
             // 核心长连接逻辑
             while(true){
-                // 2. 从 socket.getInputStream() 构建 HttpRequest (Role A)
-                // 如果构建失败或超时(Read timeout)，说明连接已断开或空闲过久，跳出循环。
+                // 1. 等待下一个请求的首字节：使用（可能随负载缩短的）空闲超时
+                socket.setSoTimeout(keepAlivePolicy.idleTimeoutMillis(utilisation.getAsDouble()));
+                in.mark(1);
+                if (in.read() == -1) {
+                    break; // 客户端已关闭连接
+                }
+                in.reset();
+
+                // 被封禁的地址：在读取请求头与请求体之前直接拒绝并关闭连接（黑名单可能被热更新，逐请求检查）
+                if (dispatcher.isAddressBlocked(remote)) {
+                    HttpResponse forbidden = RequestDispatcher.forbidden();
+                    forbidden.addHeader("Connection", "close");
+                    context.writeResponse(forbidden, out);
+                    break;
+                }
+
+                // 请求已开始到达，切换为读取超时 (防止恶意连接占用资源)，并开始头部截止时间
+                timing.start(handled == 0 ? queueNanos : 0);
+                int readTimeout = keepAlivePolicy.getReadTimeoutMillis();
+                socket.setSoTimeout(readTimeout);
+                deadlines.startHeader(limits.getHeaderTimeoutMillis(), readTimeout);
+
+                // 连接的第一个请求以 HTTP/2 前言开头：整个连接交给 HTTP/2 处理
+                if (handled == 0 && http2 != null && Http2Handler.isPreface(in)) {
+                    deadlines.clear(); // 头部截止、请求体速率与大小限制由 Http2Connection 按 limits 执行
+                    http2.serve(socket, in, h2Channel(channel, out), keepAlivePolicy, limits, utilisation);
+                    break;
+                }
+
+                // 2. 从连接输入流解析 HttpRequest (Role A)，复用上下文中的请求对象
+                // 先解析请求行与头部，再按路由决定请求体一次性读入还是流式交给处理器（如反向代理）
+                // 如果解析失败或超时(Read timeout)，说明连接已断开或请求不完整，跳出循环。
                 HttpRequest request;
+                HttpResponse rejected = null;
                 try {
-                    request = new HttpRequest(socket.getInputStream());
+                    request = context.readRequestHead(in);
+                    if (request != null) {
+                        request.setRemoteAddress(remoteAddress);
+                        rejected = checkBeforeBody(request, out);
+                    }
+                    if (rejected != null) {
+                        deadlines.clear(); // 请求体不会被读取
+                    } else if (request != null) {
+                        if (request.getContentLength() > 0) {
+                            deadlines.startBody(limits.getMinBodyRate(), limits.getBodyRateGraceMillis(), readTimeout);
+                        } else {
+                            deadlines.clear();
+                        }
+                        if (dispatcher.streamsRequestBody(request)) {
+                            context.streamRequestBody(in); // 速率限制在处理器读取请求体期间继续生效
+                        } else {
+                            context.readRequestBody(in);
+                            deadlines.clear();
+                        }
+                    }
+                } catch (RequestTooLargeException e) {
+                    // 请求行或头部超限：剩余头部没有读取，回复 414/431 后关闭连接
+                    rejectAndClose(context, out, e.getStatusCode(), e.getMessage());
+                    break;
+                } catch (DeadlineInputStream.DeadlineExceededException e) {
+                    // 头部没有在截止时间内收完，或请求体速率过低（slowloris）
+                    rejectAndClose(context, out, 408, e.getMessage());
+                    break;
                 }catch (Exception e){
-                    // 解析失败（如客户端关闭连接）或超时，结束当前连接处理
+                    // 解析失败或超时，结束当前连接处理
+                    break;
+                }
+                if (request == null) break; // 客户端已关闭连接
+                timing.parsed();
+                handled++;
+                if (rejected != null) {
+                    // 请求体留在连接上（或客户端根本不会发送），无法定位下一个请求：回复后关闭连接
+                    timing.handled(rejected);
+                    rejected.addHeader("Connection", "close");
+                    context.writeResponse(rejected, out);
+                    timing.written(request, rejected);
                     break;
                 }
                 System.out.println("Received request: " + request.getUri());
 
+                // Upgrade: h2c —— 回复 101 后连接切换为 HTTP/2，本请求作为流 1 处理
+                if (http2 != null && Http2Handler.isUpgradeRequest(request)) {
+                    deadlines.clear(); // 之后的限制由 Http2Connection 按 limits 执行
+                    http2.upgrade(socket, in, out, h2Channel(channel, out), request, keepAlivePolicy, limits,
+                            utilisation);
+                    break;
+                }
+
                 // 3. 调用 dispatcher.dispatch(request) 获取 HttpResponse (Role C)
                 HttpResponse response = dispatcher.dispatch(request);
+                deadlines.clear();
+                timing.handled(response);
+                if ("HEAD".equals(request.getMethod())) response.omitBody();
 
-                // 4. 检查请求头中是否包含 "Connection: close"
-                boolean keepAlive = true;
-                if (request.isConnectionCloseRequested()) {
-                    keepAlive = false;
+                // 4. 检查 "Connection: close" 以及单连接请求数上限
+                // 流式请求体没有被处理器读完时，连接上剩余的字节无法定位下一个请求，只能关闭连接
+                int remaining = keepAlivePolicy.getMaxRequestsPerConnection() - handled;
+                boolean keepAlive = !request.isConnectionCloseRequested() && remaining > 0
+                        && !request.hasUnreadBody();
+                if (keepAlive) {
+                    response.addHeader("Connection", "keep-alive");
+                    int nextIdle = keepAlivePolicy.idleTimeoutMillis(utilisation.getAsDouble());
+                    response.addHeader("Keep-Alive", KeepAlivePolicy.headerValue(nextIdle, remaining));
+                } else {
                     // 设置响应头也为 "Connection: close"
                     response.addHeader("Connection", "close");
-                } else {
-                    response.addHeader("Connection", "keep-alive");
                 }
 
                 // 5. 将 HttpResponse 写入 socket.getOutputStream() (Role A)
-                response.write(socket.getOutputStream());
+                context.writeResponse(response, out);
+                timing.written(request, response);
                 // 6. 如果需要关闭连接，跳出循环
                 if(!keepAlive) break;
             }
         }catch (SocketTimeoutException e){
             System.out.println("Connection timed out (Idle for too long).");
+        }catch (SocketException e){
+            System.out.println("Connection reset: " + e.getMessage());
         }catch (IOException e){
             System.out.println("IO Error: " + e.getMessage());
         }catch (Exception e) {
-            e.printStackTrace();;
+            e.printStackTrace();
         }finally {
+            if (writeGuard != null) writeGuard.close();
+            context.close();
             try {
                 if(socket != null && !socket.isClosed()){
                     socket.close();
@@ -84,4 +255,57 @@ public class ConnectionHandler implements Runnable{
             }
         }
     }
+
+    /**
+     * 读取请求体之前的检查（只针对带请求体的请求）：
+     *  - 读入内存的请求体超出 maxBodySize：413
+     *  - Expect 不是 100-continue：417
+     *  - 由分发器按请求行与头部判断，一定会被拒绝的请求（404 / 405 / 401 / 429 等）直接返回最终响应，
+     *    不读取请求体（带 Expect 的客户端不必上传请求体）
+     *  - Expect: 100-continue 且通过检查：回复 100 Continue，客户端随后发送请求体
+     * HTTP/1.0 客户端不理解 1xx，忽略其 Expect。
+     *
+     * @return 不读取请求体、直接回复的响应；null 表示继续读取请求体
+     */
+    private HttpResponse checkBeforeBody(HttpRequest request, OutputStream out) throws IOException {
+        if (request.getContentLength() <= 0) return null;
+        if (!dispatcher.streamsRequestBody(request) && request.getContentLength() > limits.getMaxBodySize()) {
+            return statusResponse(413);
+        }
+        String expect = "HTTP/1.0".equals(request.getHttpVersion()) ? null : request.getHeader("Expect");
+        if (expect != null && !"100-continue".equalsIgnoreCase(expect.trim())) {
+            return statusResponse(417);
+        }
+        HttpResponse rejected = dispatcher.checkBeforeBody(request);
+        if (rejected != null) return rejected;
+        if (expect != null) {
+            out.write(CONTINUE);
+            out.flush();
+        }
+        return null;
+    }
+
+    private static HttpResponse statusResponse(int status) {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(status);
+        response.addHeader("Content-Type", "text/plain; charset=UTF-8");
+        response.setStringBody(status + " " + response.getStatusMessage());
+        return response;
+    }
+
+    /**
+     * 回复一个错误状态并关闭连接（客户端可能已断开，写出失败时忽略）。
+     */
+    private static void rejectAndClose(RequestContext context, OutputStream out, int status, String reason) {
+        System.out.println("Rejecting request with " + status + ": " + reason);
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(status);
+        response.addHeader("Connection", "close");
+        response.addHeader("Content-Type", "text/plain; charset=UTF-8");
+        response.setStringBody(status + " " + response.getStatusMessage());
+        try {
+            context.writeResponse(response, out);
+        } catch (IOException ignored) {
+        }
+    }
 }
@@ -0,0 +1,135 @@
+package Server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带截止时间的连接输入流 (Role B)
+ * 职责：位于 socket 输入流与连接的缓冲流之间，在读取头部时执行总截止时间，在读取请求体时执行最低速率。
+ *
+ * 实现：
+ *  - 阻塞读无法被其他线程打断，因此每次读取前把 SO_TIMEOUT 设为
+ *    min(单次读超时, 距截止时间的剩余量)，读超时即说明截止时间已到
+ *  - 请求体速率只统计阻塞在本流读取上的时间：累计读到 B 字节、阻塞 T 时，本次读取最多还能阻塞
+ *    max(宽限期, B / minRate) - T，超过即速率低于下限
+ *  - 未设置截止时间时直接透传，不修改 SO_TIMEOUT（空闲等待与 HTTP/2 由调用方自行设置超时）
+ *  - 只由处理该连接的线程使用
+ */
+final class DeadlineInputStream extends FilterInputStream {
+
+    private static final int NONE = 0;
+    private static final int HEADER = 1;
+    private static final int BODY = 2;
+
+    /** 截止时间到期：调用方据此回复 408 */
+    static final class DeadlineExceededException extends SocketTimeoutException {
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final Socket socket;
+    private final byte[] single = new byte[1];
+    private int mode = NONE;
+    private int readTimeoutMillis;
+
+    /** HEADER：截止时刻 */
+    private long deadline;
+    /** BODY：最低速率、宽限期、累计字节与累计阻塞时间 */
+    private long minRate;
+    private long graceNanos;
+    private long bodyBytes;
+    private long blockedNanos;
+
+    DeadlineInputStream(Socket socket, InputStream in) {
+        super(in);
+        this.socket = socket;
+    }
+
+    /**
+     * 开始读取头部：从现在起 timeoutMillis 内必须读完。
+     *
+     * @param readTimeoutMillis 单次读超时（截止时间之外的上限）
+     */
+    void startHeader(int timeoutMillis, int readTimeoutMillis) {
+        this.mode = HEADER;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * 开始读取请求体：宽限期后平均速率不得低于 minRate（字节/秒）；minRate 为 0 时不限制。
+     */
+    void startBody(int minRate, int graceMillis, int readTimeoutMillis) throws IOException {
+        clear();
+        if (minRate <= 0) return;
+        this.mode = BODY;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.minRate = minRate;
+        this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMillis);
+        this.bodyBytes = 0;
+        this.blockedNanos = 0;
+    }
+
+    /**
+     * 取消截止时间，恢复单次读超时。
+     */
+    void clear() throws IOException {
+        if (mode == NONE) return;
+        mode = NONE;
+        socket.setSoTimeout(readTimeoutMillis);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return n <= 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (mode == NONE) return in.read(b, off, len);
+        long start = System.nanoTime();
+        long allowed = mode == HEADER
+                ? deadline - start
+                : Math.max(graceNanos, (long) (bodyBytes * 1e9 / minRate)) - blockedNanos;
+        if (allowed <= 0) throw expired();
+        long allowedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(allowed));
+        boolean limitedByDeadline = allowedMillis < readTimeoutMillis;
+        socket.setSoTimeout(limitedByDeadline ? (int) allowedMillis : readTimeoutMillis);
+        int n = 0;
+        try {
+            n = in.read(b, off, len);
+            return n;
+        } catch (SocketTimeoutException e) {
+            if (limitedByDeadline) throw expired();
+            throw e;
+        } finally {
+            if (mode == BODY) {
+                blockedNanos += System.nanoTime() - start;
+                if (n > 0) bodyBytes += n;
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (mode == NONE) return in.skip(n);
+        if (n <= 0) return 0;
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        int r = read(buf, 0, buf.length);
+        return Math.max(r, 0);
+    }
+
+    private DeadlineExceededException expired() {
+        return new DeadlineExceededException(mode == HEADER
+                ? "Request header deadline exceeded"
+                : "Request body rate below " + minRate + " B/s");
+    }
+}
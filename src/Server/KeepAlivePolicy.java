@@ -0,0 +1,133 @@
+package Server;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+/**
+ * 长连接策略 (Role B)
+ * 职责：决定空闲连接最多等待多久、单连接最多处理多少个请求，
+ * 并在自适应模式下随线程池/连接占用率升高而缩短空闲超时。
+ *
+ * 说明：
+ *  - idleTimeout：两次请求之间等待下一个请求首字节的超时
+ *  - readTimeout：请求开始到达后，读取剩余请求报文时的单次读超时
+ *  - 占用率 utilisation = 当前连接数 / 工作线程数，可能大于 1（有排队）
+ */
+public class KeepAlivePolicy {
+
+    private final int idleTimeoutMillis;
+    private final int minIdleTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int maxRequestsPerConnection;
+    private final boolean adaptive;
+    /** 占用率低于该值时使用完整的空闲超时 */
+    private final double lowWatermark;
+    /** 占用率高于该值时使用最小空闲超时 */
+    private final double highWatermark;
+
+    /**
+     * 构造函数
+     *
+     * @param idleTimeoutMillis        空闲超时（毫秒）
+     * @param minIdleTimeoutMillis     自适应模式下的最小空闲超时（毫秒）
+     * @param readTimeoutMillis        请求读取中的单次读超时（毫秒）
+     * @param maxRequestsPerConnection 单连接最多处理的请求数
+     * @param adaptive                 是否启用自适应空闲超时
+     * @param lowWatermark             开始缩短超时的占用率
+     * @param highWatermark            缩短到最小超时的占用率
+     */
+    public KeepAlivePolicy(int idleTimeoutMillis,
+                           int minIdleTimeoutMillis,
+                           int readTimeoutMillis,
+                           int maxRequestsPerConnection,
+                           boolean adaptive,
+                           double lowWatermark,
+                           double highWatermark) {
+        if (idleTimeoutMillis <= 0 || minIdleTimeoutMillis <= 0 || readTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeouts must be positive");
+        }
+        if (minIdleTimeoutMillis > idleTimeoutMillis) {
+            throw new IllegalArgumentException("minIdleTimeoutMillis cannot exceed idleTimeoutMillis");
+        }
+        if (maxRequestsPerConnection <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerConnection must be positive");
+        }
+        if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("watermarks must satisfy 0 <= low < high");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.minIdleTimeoutMillis = minIdleTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.adaptive = adaptive;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * 默认策略：空闲 15s（高负载下最低 1s）、读超时 60s、单连接最多 100 个请求。
+     */
+    public static KeepAlivePolicy defaults() {
+        return new KeepAlivePolicy(15000, 1000, 60000, 100, true, 0.5, 0.9);
+    }
+
+    /**
+     * 从服务器配置构建长连接策略。
+     */
+    public static KeepAlivePolicy from(ServerConfig config) {
+        return new KeepAlivePolicy(
+                config.get(ConfigKeys.IDLE_TIMEOUT_MS),
+                config.get(ConfigKeys.MIN_IDLE_TIMEOUT_MS),
+                config.get(ConfigKeys.READ_TIMEOUT_MS),
+                config.get(ConfigKeys.MAX_REQUESTS),
+                config.get(ConfigKeys.ADAPTIVE_IDLE),
+                config.get(ConfigKeys.LOW_WATERMARK),
+                config.get(ConfigKeys.HIGH_WATERMARK));
+    }
+
+    /**
+     * 根据当前占用率计算空闲超时。
+     * 自适应模式下，占用率在 [low, high] 之间时线性缩短，高于 high 时取最小值。
+     *
+     * @param utilisation 当前占用率（连接数 / 工作线程数）
+     * @return 空闲超时（毫秒）
+     */
+    public int idleTimeoutMillis(double utilisation) {
+        if (!adaptive || utilisation <= lowWatermark) {
+            return idleTimeoutMillis;
+        }
+        if (utilisation >= highWatermark) {
+            return minIdleTimeoutMillis;
+        }
+        double ratio = (utilisation - lowWatermark) / (highWatermark - lowWatermark);
+        return (int) (idleTimeoutMillis - ratio * (idleTimeoutMillis - minIdleTimeoutMillis));
+    }
+
+    /**
+     * 生成 Keep-Alive 响应头的值，例如 "timeout=15, max=99"。
+     *
+     * @param idleTimeoutMillis 下一次空闲等待的超时（毫秒）
+     * @param remainingRequests 该连接剩余可处理的请求数
+     */
+    public static String headerValue(int idleTimeoutMillis, int remainingRequests) {
+        int seconds = Math.max(1, (idleTimeoutMillis + 999) / 1000);
+        return "timeout=" + seconds + ", max=" + remainingRequests;
+    }
+
+    public int getIdleTimeoutMillis() { return idleTimeoutMillis; }
+    public int getMinIdleTimeoutMillis() { return minIdleTimeoutMillis; }
+    public int getReadTimeoutMillis() { return readTimeoutMillis; }
+    public int getMaxRequestsPerConnection() { return maxRequestsPerConnection; }
+    public boolean isAdaptive() { return adaptive; }
+
+    @Override
+    public String toString() {
+        return "KeepAlivePolicy{" +
+                "idleTimeoutMillis=" + idleTimeoutMillis +
+                ", minIdleTimeoutMillis=" + minIdleTimeoutMillis +
+                ", readTimeoutMillis=" + readTimeoutMillis +
+                ", maxRequestsPerConnection=" + maxRequestsPerConnection +
+                ", adaptive=" + adaptive +
+                '}';
+    }
+}
@@ -0,0 +1,111 @@
+package Server;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+/**
+ * 监听配置 (Role B)
+ * 职责：描述监听 Socket 与已接收连接的 Socket 选项，以及接收线程数量。
+ *
+ * 说明：
+ *  - backlog：内核全连接队列长度（listen backlog）
+ *  - tcpNoDelay：关闭 Nagle 算法，避免长连接上的小响应被延迟
+ *  - sendBufferSize / receiveBufferSize：Socket 缓冲区大小，0 表示使用系统默认值
+ *  - reuseAddress：SO_REUSEADDR，重启时可立即复用处于 TIME_WAIT 的端口
+ *  - acceptorThreads：接收线程数；平台支持 SO_REUSEPORT 时每个线程拥有独立监听 Socket，
+ *    由内核在它们之间分配新连接，否则所有线程共享同一个监听 Socket
+ */
+public class ListenerSettings {
+
+    private final int backlog;
+    private final boolean tcpNoDelay;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final boolean reuseAddress;
+    private final int acceptorThreads;
+    private final boolean reusePort;
+
+    /**
+     * 构造函数
+     *
+     * @param backlog           监听队列长度
+     * @param tcpNoDelay        是否设置 TCP_NODELAY
+     * @param sendBufferSize    发送缓冲区大小（字节），0 表示系统默认
+     * @param receiveBufferSize 接收缓冲区大小（字节），0 表示系统默认
+     * @param reuseAddress      是否设置 SO_REUSEADDR
+     * @param acceptorThreads   接收线程数
+     * @param reusePort         多接收线程时是否尝试使用 SO_REUSEPORT
+     */
+    public ListenerSettings(int backlog,
+                            boolean tcpNoDelay,
+                            int sendBufferSize,
+                            int receiveBufferSize,
+                            boolean reuseAddress,
+                            int acceptorThreads,
+                            boolean reusePort) {
+        if (backlog <= 0) throw new IllegalArgumentException("backlog must be positive");
+        if (sendBufferSize < 0 || receiveBufferSize < 0) {
+            throw new IllegalArgumentException("buffer sizes cannot be negative");
+        }
+        if (acceptorThreads <= 0) throw new IllegalArgumentException("acceptorThreads must be positive");
+        this.backlog = backlog;
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.reuseAddress = reuseAddress;
+        this.acceptorThreads = acceptorThreads;
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * 默认配置：backlog 1024、开启 TCP_NODELAY 与 SO_REUSEADDR、系统默认缓冲区、单接收线程。
+     */
+    public static ListenerSettings defaults() {
+        return new ListenerSettings(1024, true, 0, 0, true, 1, true);
+    }
+
+    /**
+     * 从服务器配置构建监听配置。
+     */
+    public static ListenerSettings from(ServerConfig config) {
+        return new ListenerSettings(
+                config.get(ConfigKeys.BACKLOG),
+                config.get(ConfigKeys.TCP_NODELAY),
+                config.get(ConfigKeys.SEND_BUFFER),
+                config.get(ConfigKeys.RECEIVE_BUFFER),
+                config.get(ConfigKeys.REUSE_ADDRESS),
+                config.get(ConfigKeys.ACCEPTOR_THREADS),
+                config.get(ConfigKeys.REUSE_PORT));
+    }
+
+    /**
+     * 需要打开的监听 Socket 数量：多接收线程、启用 reusePort 且平台支持 SO_REUSEPORT 时每个线程一个，
+     * 否则退回为所有接收线程共享一个。
+     *
+     * @param reusePortSupported 平台是否支持 SO_REUSEPORT
+     */
+    public int listenerCount(boolean reusePortSupported) {
+        return acceptorThreads > 1 && reusePort && reusePortSupported ? acceptorThreads : 1;
+    }
+
+    public int getBacklog() { return backlog; }
+    public boolean isTcpNoDelay() { return tcpNoDelay; }
+    public int getSendBufferSize() { return sendBufferSize; }
+    public int getReceiveBufferSize() { return receiveBufferSize; }
+    public boolean isReuseAddress() { return reuseAddress; }
+    public int getAcceptorThreads() { return acceptorThreads; }
+    public boolean isReusePort() { return reusePort; }
+
+    @Override
+    public String toString() {
+        return "ListenerSettings{" +
+                "backlog=" + backlog +
+                ", tcpNoDelay=" + tcpNoDelay +
+                ", sendBufferSize=" + sendBufferSize +
+                ", receiveBufferSize=" + receiveBufferSize +
+                ", reuseAddress=" + reuseAddress +
+                ", acceptorThreads=" + acceptorThreads +
+                ", reusePort=" + reusePort +
+                '}';
+    }
+}
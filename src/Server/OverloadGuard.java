@@ -0,0 +1,217 @@
+package Server;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 过载保护 (Role B)
+ * 职责：为有界工作队列提供准入控制，在过载时快速返回 503，保证尾延迟有界。
+ *
+ * 机制：
+ *  - 排队截止时间：连接在队列中等待超过 maxQueueTime，工作线程取到后直接返回 503，不再处理
+ *  - CoDel 式自适应准入：统计每个时间窗口内的最小排队时间（sojourn time），
+ *    若整个窗口内最小值都高于 target，说明队列持续积压（而非瞬时突发），进入过载状态：
+ *      1) 接收线程在队列非空时直接拒绝新连接
+ *      2) 排队截止时间收紧为 2 * target
+ *    某个窗口内最小排队时间回落到 target 以下即退出过载状态
+ *  - 拒绝响应为预先编码好的字节，由接收线程直接写出，不占用工作线程
+ *  - 写出后先半关闭并短暂丢弃客户端已发来的数据再关闭：未读数据留在接收缓冲时 close 会发 RST，
+ *    客户端可能来不及读到 503
+ */
+public class OverloadGuard {
+
+    /** 拒绝后丢弃客户端数据的上限：字节数与总时长（接收线程也会调用，必须很短） */
+    private static final int DRAIN_LIMIT_BYTES = 4096;
+    private static final long DRAIN_MILLIS = 20;
+
+    private final int queueCapacity;
+    private final long maxQueueTimeNanos;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final byte[] rejectResponse;
+
+    // CoDel 窗口状态（仅在 synchronized 方法中访问）
+    private long windowEnd;
+    private long windowMinSojourn = Long.MAX_VALUE;
+    private volatile boolean overloaded;
+
+    private final AtomicLong shedAtAccept = new AtomicLong();
+    private final AtomicLong shedInQueue = new AtomicLong();
+
+    /**
+     * 构造函数
+     *
+     * @param queueCapacity       工作队列容量
+     * @param maxQueueTimeMillis  连接最长排队时间（毫秒）
+     * @param targetMillis        CoDel 目标排队时间（毫秒）
+     * @param intervalMillis      CoDel 统计窗口（毫秒）
+     * @param retryAfterSeconds   503 响应中 Retry-After 的秒数
+     */
+    public OverloadGuard(int queueCapacity, int maxQueueTimeMillis, int targetMillis,
+                         int intervalMillis, int retryAfterSeconds) {
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive");
+        if (maxQueueTimeMillis <= 0 || targetMillis <= 0 || intervalMillis <= 0) {
+            throw new IllegalArgumentException("queue timings must be positive");
+        }
+        if (retryAfterSeconds < 0) throw new IllegalArgumentException("retryAfterSeconds cannot be negative");
+        this.queueCapacity = queueCapacity;
+        this.maxQueueTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueTimeMillis);
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.rejectResponse = buildRejectResponse(retryAfterSeconds);
+    }
+
+    /**
+     * 默认配置：队列 200、最长排队 2s、CoDel target 50ms / interval 500ms、Retry-After 1s。
+     */
+    public static OverloadGuard defaults() {
+        return new OverloadGuard(200, 2000, 50, 500, 1);
+    }
+
+    /**
+     * 从服务器配置构建过载保护。
+     */
+    public static OverloadGuard from(ServerConfig config) {
+        return new OverloadGuard(
+                config.get(ConfigKeys.QUEUE_CAPACITY),
+                config.get(ConfigKeys.QUEUE_MAX_WAIT_MS),
+                config.get(ConfigKeys.CODEL_TARGET_MS),
+                config.get(ConfigKeys.CODEL_INTERVAL_MS),
+                config.get(ConfigKeys.RETRY_AFTER_SECONDS));
+    }
+
+    private static byte[] buildRejectResponse(int retryAfterSeconds) {
+        String body = "503 Service Unavailable";
+        String raw = "HTTP/1.1 503 Service Unavailable\r\n" +
+                "Retry-After: " + retryAfterSeconds + "\r\n" +
+                "Content-Type: text/plain; charset=UTF-8\r\n" +
+                "Content-Length: " + body.length() + "\r\n" +
+                "Connection: close\r\n" +
+                "\r\n" +
+                body;
+        return raw.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 接收线程在提交连接前调用：过载状态下只要队列中还有积压就拒绝新连接。
+     *
+     * @param queueDepth 当前队列长度
+     * @return true 表示允许入队
+     */
+    public boolean admit(int queueDepth) {
+        return !overloaded || queueDepth == 0;
+    }
+
+    /**
+     * 工作线程取到连接时调用，更新 CoDel 状态并判断是否已超过排队截止时间。
+     *
+     * @param enqueuedAtNanos 入队时间（System.nanoTime）
+     * @return true 表示该连接仍应被处理；false 表示应直接返回 503
+     */
+    public boolean onDequeue(long enqueuedAtNanos) {
+        return onDequeue(enqueuedAtNanos, System.nanoTime());
+    }
+
+    /**
+     * 同 {@link #onDequeue(long)}，当前时间由调用方给出（System.nanoTime 时间基准）。
+     */
+    public boolean onDequeue(long enqueuedAtNanos, long now) {
+        long sojourn = now - enqueuedAtNanos;
+        updateWindow(now, sojourn);
+        long deadline = overloaded ? Math.min(maxQueueTimeNanos, 2 * targetNanos) : maxQueueTimeNanos;
+        return sojourn <= deadline;
+    }
+
+    private synchronized void updateWindow(long now, long sojourn) {
+        if (sojourn < windowMinSojourn) {
+            windowMinSojourn = sojourn;
+        }
+        if (sojourn < targetNanos) {
+            // 队列曾经排空到目标以下：立即退出过载状态
+            overloaded = false;
+        }
+        if (now - windowEnd >= 0) {
+            if (windowEnd != 0) {
+                overloaded = windowMinSojourn > targetNanos;
+            }
+            windowEnd = now + intervalNanos;
+            windowMinSojourn = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 直接向客户端写出 503 + Retry-After 并关闭连接（接收线程与工作线程均可调用）。
+     *
+     * @param socket      被拒绝的连接
+     * @param atAccept    true 表示在接收阶段被拒绝，false 表示排队超时被丢弃
+     */
+    public void reject(Socket socket, boolean atAccept) {
+        if (atAccept) {
+            shedAtAccept.incrementAndGet();
+        } else {
+            shedInQueue.incrementAndGet();
+        }
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(rejectResponse);
+            out.flush();
+            socket.shutdownOutput();
+            drainInput(socket);
+        } catch (IOException ignored) {
+            // 客户端已断开，无需处理
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 在有限的字节数与时间内读掉客户端已发送的数据（请求头、部分请求体），读到 EOF 或超时即停止。
+     */
+    private static void drainInput(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        byte[] discard = new byte[1024];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+        int drained = 0;
+        while (drained < DRAIN_LIMIT_BYTES) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) return;
+            socket.setSoTimeout((int) left);
+            int n;
+            try {
+                n = in.read(discard);
+            } catch (SocketTimeoutException e) {
+                return;
+            }
+            if (n < 0) return;
+            drained += n;
+        }
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public long getShedAtAccept() {
+        return shedAtAccept.get();
+    }
+
+    public long getShedInQueue() {
+        return shedInQueue.get();
+    }
+}
@@ -0,0 +1,56 @@
+package Server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 单个请求的 JFR 事件 (Role B)
+ * 职责：记录请求各阶段耗时，随 JDK Flight Recorder 录制输出，无需外部探针。
+ *
+ * 使用：java -XX:StartFlightRecording=filename=rec.jfr ... 或 jcmd <pid> JFR.start，
+ * 之后 jfr print --events socketproject.HttpRequest rec.jfr；未启用录制时不会创建事件对象。
+ */
+@Name("socketproject.HttpRequest")
+@Label("HTTP Request")
+@Category({"Socket Project", "HTTP"})
+@Description("Per-phase timing of one HTTP request")
+@StackTrace(false)
+class RequestEvent extends Event {
+
+    @Label("Protocol")
+    String protocol;
+
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+
+    @Label("Queue Wait")
+    @Description("Time spent waiting for a worker thread")
+    @Timespan(Timespan.NANOSECONDS)
+    long queue;
+
+    @Label("Parse")
+    @Description("Reading and parsing the request head and body")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    @Label("Handle")
+    @Description("Time spent in the dispatcher and handler")
+    @Timespan(Timespan.NANOSECONDS)
+    long handle;
+
+    @Label("Write")
+    @Description("Encoding and writing the response")
+    @Timespan(Timespan.NANOSECONDS)
+    long write;
+}
@@ -0,0 +1,121 @@
+package Server;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import common.HttpRequest;
+import common.HttpResponse;
+import jdk.jfr.EventType;
+
+import java.util.Locale;
+
+/**
+ * 请求分阶段计时 (Role B)
+ * 职责：记录一个请求在 排队 / 解析 / 处理 / 写出 各阶段的耗时，
+ * 输出为 JFR 事件（{@link RequestEvent}）和可选的 Server-Timing 响应头。
+ *
+ * 设计说明：
+ *  - 每个连接（HTTP/2 为每个流）持有一个实例，逐请求复用
+ *  - 请求开始时只检查一次开关：JFR 未录制该事件且未开启 Server-Timing 时，后续各阶段只有一次布尔判断，
+ *    不读时钟、不分配对象
+ *  - Server-Timing 在写出前加入响应，只包含 queue / parse / handle；write 阶段只出现在 JFR 事件中
+ *  - 排队时间只属于连接上的第一个请求（之后的请求不经过工作队列）
+ */
+public final class RequestTiming {
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(RequestEvent.class);
+
+    /** 是否在响应中加入 Server-Timing 头（可热更新） */
+    private static volatile boolean serverTimingHeader;
+
+    private final String protocol;
+
+    private boolean active;
+    private boolean emitHeader;
+    private RequestEvent event;
+    private long queueNanos;
+    private long startedAt;
+    private long parsedAt;
+    private long handledAt;
+
+    /**
+     * @param protocol 记录在事件中的协议名（HTTP/1.1、h2）
+     */
+    public RequestTiming(String protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * 按配置设置 Server-Timing 开关，并在配置热更新时刷新。
+     */
+    public static void configure(ServerConfig config) {
+        serverTimingHeader = config.get(ConfigKeys.TIMING_SERVER_TIMING);
+        config.addListener(c -> serverTimingHeader = c.get(ConfigKeys.TIMING_SERVER_TIMING));
+    }
+
+    public static void setServerTimingHeader(boolean enabled) {
+        serverTimingHeader = enabled;
+    }
+
+    /**
+     * 请求开始到达（解析阶段开始）。
+     *
+     * @param queueNanos 此前在工作队列中的等待时间
+     */
+    public void start(long queueNanos) {
+        emitHeader = serverTimingHeader;
+        boolean recording = EVENT_TYPE.isEnabled();
+        active = emitHeader || recording;
+        if (!active) return;
+        this.queueNanos = queueNanos;
+        event = recording ? new RequestEvent() : null;
+        if (event != null) event.begin();
+        startedAt = System.nanoTime();
+        parsedAt = handledAt = startedAt;
+    }
+
+    /**
+     * 请求已解析完毕（处理阶段开始）。
+     */
+    public void parsed() {
+        if (active) parsedAt = System.nanoTime();
+    }
+
+    /**
+     * 处理器已返回响应（写出阶段开始）；开启时在响应中加入 Server-Timing。
+     */
+    public void handled(HttpResponse response) {
+        if (!active) return;
+        handledAt = System.nanoTime();
+        if (emitHeader) {
+            response.addHeader("Server-Timing", "queue;dur=" + millis(queueNanos)
+                    + ", parse;dur=" + millis(parsedAt - startedAt)
+                    + ", handle;dur=" + millis(handledAt - parsedAt));
+        }
+    }
+
+    /**
+     * 响应已写出：提交 JFR 事件。
+     */
+    public void written(HttpRequest request, HttpResponse response) {
+        if (!active) return;
+        active = false;
+        RequestEvent e = event;
+        event = null;
+        if (e == null) return;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.protocol = protocol;
+        e.method = request.getMethod();
+        e.path = request.getPath();
+        e.status = response.getStatusCode();
+        e.queue = queueNanos;
+        e.parse = parsedAt - startedAt;
+        e.handle = handledAt - parsedAt;
+        e.write = System.nanoTime() - handledAt;
+        e.commit();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+}
@@ -1,16 +1,37 @@
 package Server;
 
 import Server.SimpleHttpServer;
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
 import Server.dispatcher.RequestDispatcher;
 
 public class ServerBoot {
     public static void main(String[] args) {
+        // 0. 加载并校验配置（配置文件 / 环境变量 / 命令行 --key=value）
+        ServerConfig config;
+        try {
+            config = ServerConfig.load(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Loaded " + config);
+
         try {
             // 1. 创建你的分发器 (Role C)
-            RequestDispatcher dispatcher = new RequestDispatcher();
+            RequestDispatcher dispatcher = new RequestDispatcher(config);
 
             // 2. 将分发器注入到服务器 (Role B)
-            SimpleHttpServer server = new SimpleHttpServer(80035, dispatcher);
+            SimpleHttpServer server = new SimpleHttpServer(config, dispatcher);
+
+            // 可选：打开端口之前预热热路径，完成后 /ready 才会随端口一起可用
+            if (config.get(ConfigKeys.WARMUP_ENABLED)) {
+                System.out.println("Warm-up: " + Warmup.from(config, dispatcher).run());
+            }
+
+            // 3. 监视配置文件，热更新可安全调整的配置项
+            config.startWatching();
 
             server.start();
 
@@ -18,4 +39,4 @@ public class ServerBoot {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,25 @@
 package Server;
 
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
 import Server.dispatcher.RequestDispatcher;
+import Server.http2.Http2Handler;
+import Server.http2.Http2Settings;
+import common.BufferPool;
+import common.buffer.DirectBufferPool;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HTTP 服务器主类 (Role B)
@@ -14,9 +28,27 @@ import java.util.concurrent.Executors;
 
 public class SimpleHttpServer {
 
+    private static final int DEFAULT_POOL_SIZE = 50;
+
     private final int port;
-    private final ExecutorService threadPool;
+    private final int poolSize;
+    private final ThreadPoolExecutor threadPool;
     private final RequestDispatcher dispatcher;
+    /** 可随配置热更新，新连接使用最新策略 */
+    private volatile KeepAlivePolicy keepAlivePolicy;
+    /** 请求大小与慢客户端限制（可热更新，新连接使用最新限制） */
+    private volatile ClientLimits clientLimits = ClientLimits.defaults();
+    private final OverloadGuard overloadGuard;
+    private final ListenerSettings listenerSettings;
+    /** 连接上下文使用的缓冲池（行缓冲与响应编码缓冲） */
+    private final BufferPool bufferPool;
+    /** 响应写出使用的直接内存缓冲池 */
+    private final DirectBufferPool directBufferPool;
+    /** h2c 入口（未启用时为 null） */
+    private final Http2Handler http2;
+    /** 已接收但尚未处理完毕的连接数（含排队中的连接） */
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
     private volatile boolean isRunning = true;
 
     /**
@@ -25,45 +57,232 @@ public class SimpleHttpServer {
      * @param port 服务器监听的端口号
      */
     public SimpleHttpServer(int port) {
-        this.port = port;
         // 初始化 RequestDispatcher (由 Role C 实现)
-        this.dispatcher = new RequestDispatcher();
-        // 初始化固定大小线程池，处理并发连接
-        this.threadPool = Executors.newFixedThreadPool(50);
+        this(port, new RequestDispatcher());
     }
 
     public SimpleHttpServer(int port, RequestDispatcher dispatcher) {
+        this(port, dispatcher, KeepAlivePolicy.defaults());
+    }
+
+    public SimpleHttpServer(int port, RequestDispatcher dispatcher, KeepAlivePolicy keepAlivePolicy) {
+        this(port, dispatcher, keepAlivePolicy, OverloadGuard.defaults(), ListenerSettings.defaults());
+    }
+
+    public SimpleHttpServer(int port, RequestDispatcher dispatcher, KeepAlivePolicy keepAlivePolicy,
+                            OverloadGuard overloadGuard, ListenerSettings listenerSettings) {
+        this(port, DEFAULT_POOL_SIZE, dispatcher, keepAlivePolicy, overloadGuard, listenerSettings,
+                BufferPool.shared(), DirectBufferPool.shared(), Http2Settings.defaults());
+    }
+
+    /**
+     * 按服务器配置构建，并在配置热更新时刷新长连接策略。
+     *
+     * @param config     服务器配置
+     * @param dispatcher 请求分发器
+     */
+    public SimpleHttpServer(ServerConfig config, RequestDispatcher dispatcher) {
+        this(config.get(ConfigKeys.PORT), config.get(ConfigKeys.WORKER_THREADS), dispatcher,
+                KeepAlivePolicy.from(config), OverloadGuard.from(config), ListenerSettings.from(config),
+                new BufferPool(config.get(ConfigKeys.BUFFER_SIZE), config.get(ConfigKeys.BUFFER_POOL_MAX)),
+                new DirectBufferPool(config.get(ConfigKeys.DIRECT_BUFFER_SLABS),
+                        config.get(ConfigKeys.BUFFER_LEAK_DETECTION)),
+                Http2Settings.from(config));
+        this.clientLimits = ClientLimits.from(config);
+        config.addListener(c -> keepAlivePolicy = KeepAlivePolicy.from(c));
+        config.addListener(c -> clientLimits = ClientLimits.from(c));
+        RequestTiming.configure(config);
+    }
+
+    private SimpleHttpServer(int port, int poolSize, RequestDispatcher dispatcher, KeepAlivePolicy keepAlivePolicy,
+                             OverloadGuard overloadGuard, ListenerSettings listenerSettings,
+                             BufferPool bufferPool, DirectBufferPool directBufferPool,
+                             Http2Settings http2Settings) {
         this.port = port;
+        this.poolSize = poolSize;
         this.dispatcher = dispatcher;
-        this.threadPool = Executors.newFixedThreadPool(50);
+        this.keepAlivePolicy = keepAlivePolicy;
+        this.overloadGuard = overloadGuard;
+        this.listenerSettings = listenerSettings;
+        this.bufferPool = bufferPool;
+        this.directBufferPool = directBufferPool;
+        this.http2 = http2Settings.isEnabled()
+                ? new Http2Handler(http2Settings, dispatcher, directBufferPool)
+                : null;
+        // 初始化固定大小线程池 + 有界队列，处理并发连接；队列满时由接收线程直接返回 503
+        this.threadPool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(overloadGuard.getQueueCapacity()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 当前占用率：连接数 / 工作线程数。超过 1 表示有连接在排队。
+     */
+    public double utilisation() {
+        return openConnections.get() / (double) poolSize;
     }
 
     /**
      * 启动服务器
-     * 在循环中接收客户端连接，并交给线程池处理。
+     * 打开监听 Socket 并启动接收线程，阻塞直到服务器停止。
      */
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("Server started on port: " + port);
+        List<Thread> acceptors = new ArrayList<>();
+        try {
+            openListeners();
+            System.out.println("Server started on port: " + port + " (" + listenerSettings + ")");
+            // 监听已打开：/ready 开始返回 200（预热在 start 之前完成）
+            dispatcher.setReady(true);
 
-            while (isRunning) {
+            int threads = listenerSettings.getAcceptorThreads();
+            for (int i = 0; i < threads; i++) {
+                // 独立监听 Socket 时一一对应；共享时所有线程在同一个 Socket 上 accept
+                ServerSocketChannel listener = listeners.get(i % listeners.size());
+                Thread acceptor = new Thread(() -> acceptLoop(listener), "acceptor-" + i);
+                acceptors.add(acceptor);
+                acceptor.start();
+            }
+            for (Thread acceptor : acceptors) {
+                acceptor.join();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not listen on port: " + port);
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeListeners();
+        }
+    }
+
+    /**
+     * 停止服务器：关闭监听 Socket（接收线程随之退出），并关闭线程池。
+     */
+    public void stop() {
+        dispatcher.setReady(false);
+        isRunning = false;
+        closeListeners();
+        threadPool.shutdown();
+        if (http2 != null) http2.shutdown();
+    }
+
+    /**
+     * 按配置打开监听 Socket。
+     * 多接收线程且平台支持 SO_REUSEPORT 时，为每个接收线程打开一个独立的监听 Socket。
+     * 监听使用阻塞模式的 ServerSocketChannel，接收到的连接带有通道，响应可直接从直接内存写出。
+     */
+    private void openListeners() throws IOException {
+        boolean supported = false;
+        if (listenerSettings.getAcceptorThreads() > 1 && listenerSettings.isReusePort()) {
+            try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+                supported = probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            }
+            if (!supported) {
+                System.out.println("SO_REUSEPORT not supported, acceptors share one listener");
+            }
+        }
+        int count = listenerSettings.listenerCount(supported);
+        boolean reusePort = count > 1;
+        synchronized (listeners) {
+            for (int i = 0; i < count; i++) {
+                ServerSocketChannel listener = ServerSocketChannel.open();
+                listener.setOption(StandardSocketOptions.SO_REUSEADDR, listenerSettings.isReuseAddress());
+                if (reusePort) {
+                    listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                // 接收缓冲区需在 bind 前设置，才能影响 TCP 窗口协商，已接收的连接会继承该值
+                if (listenerSettings.getReceiveBufferSize() > 0) {
+                    listener.setOption(StandardSocketOptions.SO_RCVBUF, listenerSettings.getReceiveBufferSize());
+                }
+                listeners.add(listener);
+                listener.bind(new InetSocketAddress(port), listenerSettings.getBacklog());
+            }
+        }
+    }
+
+    private void closeListeners() {
+        synchronized (listeners) {
+            for (ServerSocketChannel listener : listeners) {
                 try {
-                    // 1. 阻塞等待客户端连接
-                    Socket socket = serverSocket.accept();
+                    listener.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 接收循环：阻塞接收客户端连接，并交给线程池处理。
+     */
+    private void acceptLoop(ServerSocketChannel serverChannel) {
+        while (isRunning && serverChannel.isOpen()) {
+            try {
+                // 1. 阻塞等待客户端连接
+                Socket socket = serverChannel.accept().socket();
+                if (!configureSocket(socket)) {
+                    continue;
+                }
 
-                    // 2. 创建连接处理器 (将 Socket 和 分发器 传入)
-                    ConnectionHandler handler = new ConnectionHandler(socket, dispatcher);
+                // 2. 创建连接处理器 (将 Socket 和 分发器 传入)
+                ConnectionHandler handler =
+                        new ConnectionHandler(socket, dispatcher, keepAlivePolicy, this::utilisation, bufferPool,
+                                directBufferPool, http2, clientLimits);
+
+                // 3. 准入控制：过载且队列仍有积压时直接返回 503
+                if (!overloadGuard.admit(threadPool.getQueue().size())) {
+                    overloadGuard.reject(socket, true);
+                    continue;
+                }
 
-                    // 3. 将任务提交给线程池执行
-                    threadPool.execute(handler);
+                // 4. 将任务提交给线程池执行（统计连接数，供自适应空闲超时使用）
+                long enqueuedAt = System.nanoTime();
+                openConnections.incrementAndGet();
+                try {
+                    threadPool.execute(() -> {
+                        try {
+                            // 排队超过截止时间的连接不再处理，直接 503
+                            if (overloadGuard.onDequeue(enqueuedAt)) {
+                                handler.setQueueWait(System.nanoTime() - enqueuedAt);
+                                handler.run();
+                            } else {
+                                overloadGuard.reject(socket, false);
+                            }
+                        } finally {
+                            openConnections.decrementAndGet();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // 队列已满
+                    openConnections.decrementAndGet();
+                    overloadGuard.reject(socket, true);
+                }
 
-                } catch (IOException e) {
+            } catch (ClosedChannelException e) {
+                break; // 服务器停止，监听通道已关闭
+            } catch (IOException e) {
+                if (isRunning && serverChannel.isOpen()) {
                     System.err.println("Error accepting connection: " + e.getMessage());
                 }
             }
+        }
+    }
+
+    /**
+     * 为已接收的连接设置 Socket 选项；失败说明连接已失效，直接关闭。
+     */
+    private boolean configureSocket(Socket socket) {
+        try {
+            socket.setTcpNoDelay(listenerSettings.isTcpNoDelay());
+            if (listenerSettings.getSendBufferSize() > 0) {
+                socket.setSendBufferSize(listenerSettings.getSendBufferSize());
+            }
+            return true;
         } catch (IOException e) {
-            System.err.println("Could not listen on port: " + port);
-            e.printStackTrace();
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            return false;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,168 @@
+package Server;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import Server.dispatcher.RequestDispatcher;
+import common.BufferPool;
+import common.HttpRequest;
+import common.HttpResponse;
+import common.RequestContext;
+import common.buffer.DirectBufferPool;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 启动预热 (Role B)
+ * 职责：在监听端口打开之前，用合成请求反复走一遍 解析 → 分发 → 序列化 的热路径，
+ * 让 JIT 编译完成、静态文件进入页缓存，避免发布后最初的真实请求承担解释执行与冷缓存的延迟。
+ *
+ * 设计说明：
+ *  - 合成请求覆盖：web 根目录下不超过 {@link #HOT_FILE_MAX_SIZE} 的已索引文件（首次读取即把文件预读进页缓存；
+ *    更大的文件不预读，避免启动时读遍整个 web 根目录而超出 maxMillis）、带 If-None-Match 的 304、
+ *    404、重定向，以及一个带请求体的 POST（405）；不触发注册/登录（口令哈希、限流与用户存储有副作用），
+ *    也不访问反向代理路由
+ *  - 请求以原始字节经 {@link RequestContext} 解析，响应经直接内存缓冲写入一个丢弃数据的通道，
+ *    与真实连接走同一套代码
+ *  - 按批执行，每批结束时读取 JIT 累计编译时间：连续两批几乎没有新的编译且吞吐不再提升即认为已预热，
+ *    否则最多执行 maxMillis
+ */
+public class Warmup {
+
+    /** 一批中新增编译时间低于批耗时的该比例即视为编译已平稳 */
+    private static final double COMPILE_QUIET_RATIO = 0.02;
+    /** 预读与反复请求的静态文件大小上限；更大的文件在真实请求到来时才从磁盘读取 */
+    private static final long HOT_FILE_MAX_SIZE = 64 * 1024;
+    /** 直接放进请求行的路径（其余路径需要百分号编码，预热时跳过） */
+    private static final Pattern PLAIN_PATH = Pattern.compile("[A-Za-z0-9/._~-]+");
+
+    private final RequestDispatcher dispatcher;
+    private final long maxMillis;
+    private final int batchSize;
+
+    /**
+     * @param dispatcher 请求分发器
+     * @param maxMillis  最长预热时间
+     * @param batchSize  每批请求数
+     */
+    public Warmup(RequestDispatcher dispatcher, long maxMillis, int batchSize) {
+        if (maxMillis <= 0 || batchSize <= 0) throw new IllegalArgumentException("invalid warm-up settings");
+        this.dispatcher = dispatcher;
+        this.maxMillis = maxMillis;
+        this.batchSize = batchSize;
+    }
+
+    public static Warmup from(ServerConfig config, RequestDispatcher dispatcher) {
+        return new Warmup(dispatcher, config.get(ConfigKeys.WARMUP_MAX_MS), config.get(ConfigKeys.WARMUP_BATCH));
+    }
+
+    /**
+     * 执行预热，返回摘要（请求数、耗时、是否在时限内达到平稳）。
+     */
+    public String run() throws Exception {
+        List<byte[]> requests = syntheticRequests();
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean canMonitorJit = jit != null && jit.isCompilationTimeMonitoringSupported();
+
+        long start = System.nanoTime();
+        long deadline = start + maxMillis * 1_000_000L;
+        long total = 0;
+        int quietBatches = 0;
+        double bestRate = 0;
+        try (RequestContext context = new RequestContext(BufferPool.shared(), DirectBufferPool.shared(), DISCARD)) {
+            // 每个文件读取一次：预读进页缓存，文件很多时同样受 maxMillis 限制
+            for (String path : dispatcher.getStaticPaths(HOT_FILE_MAX_SIZE)) {
+                if (System.nanoTime() >= deadline) break;
+                if (PLAIN_PATH.matcher(path).matches()) serve(context, get(path, ""));
+            }
+            while (System.nanoTime() < deadline && quietBatches < 2) {
+                long compileBefore = canMonitorJit ? jit.getTotalCompilationTime() : 0;
+                long batchStart = System.nanoTime();
+                for (int i = 0; i < batchSize; i++) {
+                    serve(context, requests.get(i % requests.size()));
+                }
+                long batchNanos = System.nanoTime() - batchStart;
+                total += batchSize;
+                double rate = batchSize * 1e9 / batchNanos;
+                long compileMillis = canMonitorJit ? jit.getTotalCompilationTime() - compileBefore : 0;
+                boolean compileQuiet = !canMonitorJit || compileMillis <= batchNanos / 1e6 * COMPILE_QUIET_RATIO;
+                // 吞吐仍在明显提升（>5%）时继续
+                boolean plateau = rate < bestRate * 1.05;
+                bestRate = Math.max(bestRate, rate);
+                quietBatches = compileQuiet && plateau ? quietBatches + 1 : 0;
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return String.format("%d synthetic requests in %d ms, %.0f req/s at the end%s",
+                total, elapsedMillis, bestRate, quietBatches >= 2 ? "" : " (stopped at the time limit)");
+    }
+
+    /**
+     * 一次完整的请求处理：解析原始字节 → 分发 → 写出（与 ConnectionHandler 相同的调用顺序）。
+     */
+    private void serve(RequestContext context, byte[] raw) throws Exception {
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(raw), raw.length);
+        HttpRequest request = context.readRequestHead(in);
+        context.readRequestBody(in);
+        request.setRemoteAddress("127.0.0.1");
+        HttpResponse response = dispatcher.dispatch(request);
+        response.addHeader("Connection", "keep-alive");
+        response.addHeader("Keep-Alive", KeepAlivePolicy.headerValue(15000, 99));
+        context.writeResponse(response, OutputStream.nullOutputStream());
+    }
+
+    private List<byte[]> syntheticRequests() {
+        List<byte[]> requests = new ArrayList<>();
+        for (String path : dispatcher.getStaticPaths(HOT_FILE_MAX_SIZE)) {
+            if (!PLAIN_PATH.matcher(path).matches()) continue;
+            requests.add(get(path, ""));
+            requests.add(get(path, "If-None-Match: \"warmup\"\r\n"));
+        }
+        requests.add(get("/", "If-None-Match: *\r\n"));
+        requests.add(get("/warmup-not-found.html", ""));
+        requests.add(get("/old-page", ""));
+        String form = "username=warmup&password=warmup";
+        requests.add(("POST /warmup-form HTTP/1.1\r\nHost: localhost\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\n"
+                + "Content-Length: " + form.length() + "\r\n\r\n" + form).getBytes(StandardCharsets.ISO_8859_1));
+        return requests;
+    }
+
+    private static byte[] get(String path, String extraHeaders) {
+        return ("GET " + path + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "User-Agent: warmup\r\n"
+                + "Accept: */*\r\n"
+                + "Accept-Encoding: gzip, deflate\r\n"
+                + extraHeaders
+                + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** 丢弃写入数据的通道（响应经直接内存缓冲编码，与真实连接相同） */
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+}
@@ -0,0 +1,188 @@
+package Server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写出截止时间 (Role B)
+ * 职责：发现长时间不读取响应的客户端并关闭其连接，避免工作线程永远阻塞在写出上。
+ *
+ * 实现：
+ *  - 阻塞写没有超时参数，这里由一个共享的守护线程每 {@link #SWEEP_MILLIS} 毫秒扫描一次，
+ *    某个连接的单次写出阻塞超过 writeTimeout 即关闭 socket，被阻塞的写出随之抛出异常
+ *  - 写出经包装后的通道/输出流进行，每次写出前后只记录一个时间戳，不加锁
+ *  - 写出按缓冲块进行，因此限制的是"一块缓冲写不出去"的时间，而不是整个响应的传输时间，
+ *    正常速度下载的大文件不受影响
+ */
+final class WriteWatchdog {
+
+    static final long SWEEP_MILLIS = 100;
+
+    private static volatile WriteWatchdog shared;
+
+    private final Set<Guard> guards = ConcurrentHashMap.newKeySet();
+
+    private WriteWatchdog() {
+        Thread sweeper = new Thread(this::sweepLoop, "write-watchdog");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * 进程内共享的实例（首次使用时启动扫描线程）。
+     */
+    static WriteWatchdog shared() {
+        WriteWatchdog w = shared;
+        if (w == null) {
+            synchronized (WriteWatchdog.class) {
+                w = shared;
+                if (w == null) shared = w = new WriteWatchdog();
+            }
+        }
+        return w;
+    }
+
+    /**
+     * 为一个连接登记写出截止时间；连接结束时必须调用 {@link Guard#close()}。
+     */
+    Guard register(Socket socket, int writeTimeoutMillis) {
+        Guard guard = new Guard(socket, TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis));
+        guards.add(guard);
+        return guard;
+    }
+
+    private void sweepLoop() {
+        while (true) {
+            try {
+                Thread.sleep(SWEEP_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Guard guard : guards) {
+                long since = guard.writingSince;
+                if (since != 0 && now - since > guard.timeoutNanos) {
+                    guard.expire();
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个连接的写出守卫。
+     */
+    final class Guard implements AutoCloseable {
+        private final Socket socket;
+        private final long timeoutNanos;
+        /** 当前写出开始的时刻；0 表示没有在写 */
+        private volatile long writingSince;
+        private volatile boolean expired;
+
+        private Guard(Socket socket, long timeoutNanos) {
+            this.socket = socket;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        private void begin() {
+            writingSince = System.nanoTime() | 1;
+        }
+
+        private void end() {
+            writingSince = 0;
+        }
+
+        private void expire() {
+            if (expired) return;
+            expired = true;
+            System.out.println("Write deadline exceeded, closing connection to " + socket.getInetAddress());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * @return 连接是否因写出超时被关闭
+         */
+        boolean isExpired() {
+            return expired;
+        }
+
+        /**
+         * 包装通道：每次写出都在截止时间的监视下进行。
+         */
+        WritableByteChannel wrap(WritableByteChannel channel) {
+            if (channel == null) return null;
+            return new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) throws IOException {
+                    begin();
+                    try {
+                        return channel.write(src);
+                    } finally {
+                        end();
+                    }
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        /**
+         * 包装输出流：每次写出与 flush 都在截止时间的监视下进行。
+         */
+        OutputStream wrap(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    begin();
+                    try {
+                        out.write(b);
+                    } finally {
+                        end();
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    begin();
+                    try {
+                        out.write(b, off, len);
+                    } finally {
+                        end();
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    begin();
+                    try {
+                        out.flush();
+                    } finally {
+                        end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            guards.remove(this);
+        }
+    }
+}
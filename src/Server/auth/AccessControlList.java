@@ -0,0 +1,230 @@
+package Server.auth;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import utils.BloomFilter;
+import utils.IpPrefixTrie;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 访问控制列表 (Role C)
+ * 职责：保存被封禁的用户名与 IP 网段，供请求分发前快速判断是否拒绝。
+ *
+ * 文件格式（默认 conf/acl.txt，每行一条，# 开头为注释）：
+ * <pre>
+ *   user:blackuser
+ *   ip:10.0.0.0/8
+ *   ip:2001:db8::/32
+ * </pre>
+ *
+ * 设计说明：
+ *  - 数据组织为不可变快照：用户名用布隆过滤器预筛，绝大多数未封禁的用户名只需几次位运算即可放行，
+ *    命中后再查哈希集合确认；IP 网段用路径压缩前缀树匹配
+ *  - 重新加载时在后台构建新快照，再通过 volatile 引用一次性替换，查询方从不加锁、从不等待
+ *  - 运行时通过 {@link #addUser}/{@link #removeUser} 做的修改会合并进之后重新加载的每个快照；
+ *    需要长期生效的条目应写入文件
+ */
+public class AccessControlList {
+
+    /**
+     * 某一时刻的完整 ACL，构建完成后只读。
+     */
+    private static final class Snapshot {
+        final BloomFilter userFilter;
+        final Set<String> users;
+        final IpPrefixTrie networks;
+
+        Snapshot(Set<String> users, IpPrefixTrie networks, double falsePositiveRate) {
+            this.users = users;
+            this.networks = networks;
+            this.userFilter = new BloomFilter(users.size(), falsePositiveRate);
+            for (String user : users) userFilter.add(user);
+        }
+    }
+
+    private final Path file;
+    private final double falsePositiveRate;
+    private volatile Snapshot snapshot;
+    /** 文件中的条目（最近一次成功加载） */
+    private Set<String> fileUsers = Collections.emptySet();
+    private IpPrefixTrie fileNetworks = new IpPrefixTrie();
+    /** 运行时增删的用户名 */
+    private final Set<String> addedUsers = new HashSet<>();
+    private final Set<String> removedUsers = new HashSet<>();
+    private long fileLastModified;
+    private ScheduledExecutorService watcher;
+
+    /**
+     * @param file              ACL 文件，为 null 或不存在时视为空列表
+     * @param falsePositiveRate 布隆过滤器误判率
+     */
+    public AccessControlList(Path file, double falsePositiveRate) {
+        this.file = file;
+        this.falsePositiveRate = falsePositiveRate;
+        this.snapshot = new Snapshot(Collections.emptySet(), new IpPrefixTrie(), falsePositiveRate);
+        reload();
+    }
+
+    /**
+     * 按配置创建 ACL（acl.file、acl.bloom-fpp），并按 acl.reload-interval-ms 监视文件变化。
+     */
+    public static AccessControlList from(ServerConfig config) {
+        AccessControlList acl = new AccessControlList(Paths.get(config.get(ConfigKeys.ACL_FILE)),
+                config.get(ConfigKeys.ACL_BLOOM_FPP));
+        acl.startWatching(config.get(ConfigKeys.ACL_RELOAD_INTERVAL_MS));
+        return acl;
+    }
+
+    /**
+     * @return 用户名是否被封禁
+     */
+    public boolean isUserBlocked(String username) {
+        if (username == null) return false;
+        Snapshot s = snapshot;
+        return s.userFilter.mightContain(username) && s.users.contains(username);
+    }
+
+    /**
+     * @return 地址是否落在被封禁的网段内
+     */
+    public boolean isAddressBlocked(InetAddress address) {
+        if (address == null) return false;
+        IpPrefixTrie networks = snapshot.networks;
+        return !networks.isEmpty() && networks.contains(address);
+    }
+
+    /**
+     * 运行时封禁用户名（重建快照，适合低频的管理操作）。
+     */
+    public synchronized void addUser(String username) {
+        removedUsers.remove(username);
+        addedUsers.add(username);
+        publish();
+    }
+
+    /**
+     * 运行时解封用户名（包括文件中列出的用户名，直到进程重启）。
+     */
+    public synchronized void removeUser(String username) {
+        addedUsers.remove(username);
+        removedUsers.add(username);
+        publish();
+    }
+
+    public int blockedUserCount() {
+        return snapshot.users.size();
+    }
+
+    public int blockedNetworkCount() {
+        return snapshot.networks.size();
+    }
+
+    /**
+     * 重新读取 ACL 文件并替换快照。文件有错误时保留当前快照并打印错误。
+     */
+    public synchronized void reload() {
+        if (file == null) return;
+        fileLastModified = lastModified();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            lines = Collections.emptyList();
+        } catch (IOException e) {
+            System.err.println("Cannot read ACL file " + file + ": " + e.getMessage());
+            return;
+        }
+        Set<String> users = new HashSet<>();
+        IpPrefixTrie networks = new IpPrefixTrie();
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                if (line.startsWith("user:")) {
+                    String user = line.substring(5).trim();
+                    if (user.isEmpty()) throw new IllegalArgumentException("Empty username");
+                    users.add(user);
+                } else if (line.startsWith("ip:")) {
+                    networks.add(line.substring(3));
+                } else {
+                    throw new IllegalArgumentException("Expected user:<name> or ip:<cidr>");
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid ACL entry at " + file + ":" + lineNo + " (" + e.getMessage()
+                        + "), keeping previous ACL");
+                return;
+            }
+        }
+        fileUsers = users;
+        fileNetworks = networks;
+        publish();
+        System.out.println("Loaded ACL " + file + ": " + users.size() + " users, "
+                + networks.size() + " networks");
+    }
+
+    public synchronized void startWatching(long intervalMillis) {
+        if (file == null || intervalMillis <= 0 || watcher != null) return;
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "acl-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(this::checkFile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * 定时任务入口：任何异常都要在这里吞掉并记录，否则 scheduleWithFixedDelay 会静默停止后续检查。
+     */
+    private void checkFile() {
+        try {
+            long modified = lastModified();
+            synchronized (this) {
+                if (modified == fileLastModified) return;
+            }
+            reload();
+        } catch (RuntimeException e) {
+            System.err.println("ACL reload failed for " + file + ": " + e);
+        }
+    }
+
+    private long lastModified() {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 合并文件条目与运行时修改，构建并发布新快照（调用方持有 this 锁）。
+     */
+    private void publish() {
+        Set<String> users = new HashSet<>(fileUsers);
+        users.addAll(addedUsers);
+        users.removeAll(removedUsers);
+        snapshot = new Snapshot(Collections.unmodifiableSet(users), fileNetworks, falsePositiveRate);
+    }
+}
@@ -0,0 +1,19 @@
+package Server.auth;
+
+/**
+ * 认证繁忙异常：口令哈希线程池已满或等待超时。
+ *
+ * 建议上层处理：返回 503 Service Unavailable + Retry-After，而不是阻塞请求线程。
+ */
+public class AuthBusyException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public AuthBusyException(String message) {
+        super(message);
+    }
+
+    public AuthBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,171 @@
+package Server.auth;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 凭证校验器 (Role C)
+ * 职责：把慢速口令哈希隔离到专用的有界线程池，并缓存近期校验成功的结果。
+ *
+ * 设计说明：
+ *  - 哈希线程池大小与队列长度有限，队列满或等待超时时抛出 {@link AuthBusyException}，
+ *    请求线程不会无限等待，静态资源等其他请求不受登录风暴拖累
+ *  - 校验缓存的键为 HMAC(进程内随机密钥, 用户名 + 口令 + 存储哈希)，缓存中不保存明文口令；
+ *    存储哈希参与计算，因此口令变更后旧缓存自然失效
+ *  - 只缓存成功结果，TTL 很短；缓存大小与 TTL 支持热更新
+ *  - 用户不存在时对一个固定的假哈希做一次校验，使响应时间不暴露用户是否存在
+ */
+public class CredentialVerifier {
+
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor hashPool;
+    private final byte[] cacheKeySecret = new byte[32];
+    private final Map<String, Long> verifiedCache = new ConcurrentHashMap<>();
+    private final String dummyHash;
+
+    private volatile long timeoutMillis;
+    private volatile long cacheTtlMillis;
+    private volatile int cacheSize;
+
+    public CredentialVerifier(ServerConfig config) {
+        this.hasher = new PasswordHasher(config.get(ConfigKeys.PBKDF2_ITERATIONS));
+        int threads = config.get(ConfigKeys.HASH_THREADS);
+        AtomicInteger seq = new AtomicInteger();
+        this.hashPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.get(ConfigKeys.HASH_QUEUE)),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        new SecureRandom().nextBytes(cacheKeySecret);
+        applyConfig(config);
+        config.addListener(this::applyConfig);
+        this.dummyHash = hasher.hash("dummy-password-for-timing");
+    }
+
+    private void applyConfig(ServerConfig config) {
+        hasher.setIterations(config.get(ConfigKeys.PBKDF2_ITERATIONS));
+        this.timeoutMillis = config.get(ConfigKeys.HASH_TIMEOUT_MS);
+        this.cacheTtlMillis = config.get(ConfigKeys.VERIFY_CACHE_TTL_MS);
+        this.cacheSize = config.get(ConfigKeys.VERIFY_CACHE_SIZE);
+    }
+
+    /**
+     * 在哈希线程池中为新口令生成存储哈希。
+     *
+     * @throws AuthBusyException 线程池繁忙或超时
+     */
+    public String hash(String password) throws AuthBusyException {
+        return runOnHashPool(() -> hasher.hash(password));
+    }
+
+    /**
+     * 校验用户口令。命中近期成功缓存时不再计算哈希。
+     *
+     * @param username      用户名
+     * @param password      明文口令
+     * @param storedHash    存储的哈希，用户不存在时为 null
+     * @return 是否校验通过
+     * @throws AuthBusyException 线程池繁忙或超时
+     */
+    public boolean verify(String username, String password, String storedHash) throws AuthBusyException {
+        if (storedHash == null) {
+            // 用户不存在：仍计算一次哈希，避免通过响应时间探测用户名
+            runOnHashPool(() -> hasher.verify(password, dummyHash));
+            return false;
+        }
+        String cacheKey = cacheKey(username, password, storedHash);
+        long now = System.currentTimeMillis();
+        Long expiresAt = verifiedCache.get(cacheKey);
+        if (expiresAt != null) {
+            if (expiresAt > now) return true;
+            verifiedCache.remove(cacheKey, expiresAt);
+        }
+
+        boolean ok = runOnHashPool(() -> hasher.verify(password, storedHash));
+        if (ok) remember(cacheKey, now);
+        return ok;
+    }
+
+    private void remember(String cacheKey, long now) {
+        long ttl = cacheTtlMillis;
+        int maxSize = cacheSize;
+        if (ttl <= 0 || maxSize <= 0) return;
+        if (verifiedCache.size() >= maxSize) {
+            // 先清理过期项，仍然满则放弃缓存本次结果（缓存只是加速，不影响正确性）
+            for (Iterator<Long> it = verifiedCache.values().iterator(); it.hasNext(); ) {
+                if (it.next() <= now) it.remove();
+            }
+            if (verifiedCache.size() >= maxSize) return;
+        }
+        verifiedCache.put(cacheKey, now + ttl);
+    }
+
+    private String cacheKey(String username, String password, String storedHash) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(cacheKeySecret, "HmacSHA256"));
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(password.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(storedHash.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private <T> T runOnHashPool(Callable<T> task) throws AuthBusyException {
+        Future<T> future;
+        try {
+            future = hashPool.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new AuthBusyException("Password hashing queue is full");
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new AuthBusyException("Password hashing timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new AuthBusyException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * 当前哈希队列中等待的任务数。
+     */
+    public int getQueueDepth() {
+        return hashPool.getQueue().size();
+    }
+
+    public void shutdown() {
+        hashPool.shutdownNow();
+    }
+}
@@ -0,0 +1,36 @@
+package Server.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 纯内存用户存储：进程重启后数据丢失。
+ */
+public class InMemoryUserStore implements UserStore {
+
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+
+    @Override
+    public String get(String username) {
+        return users.get(username);
+    }
+
+    @Override
+    public boolean contains(String username) {
+        return users.containsKey(username);
+    }
+
+    @Override
+    public boolean putIfAbsent(String username, String passwordHash) {
+        return users.putIfAbsent(username, passwordHash) == null;
+    }
+
+    @Override
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public void close() {
+    }
+}
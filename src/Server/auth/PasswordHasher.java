@@ -0,0 +1,81 @@
+package Server.auth;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * 口令哈希 (Role C)
+ * 职责：使用加盐的 PBKDF2-HMAC-SHA256 生成与校验口令哈希。
+ *
+ * 存储格式：pbkdf2-sha256$迭代次数$Base64(盐)$Base64(哈希)
+ * 迭代次数随哈希一起保存，调高配置后旧哈希仍可校验。
+ * 本类只做计算，不做线程调度；调用方应在专用的有界线程池中执行（见 {@link CredentialVerifier}）。
+ */
+public class PasswordHasher {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private volatile int iterations;
+
+    public PasswordHasher(int iterations) {
+        setIterations(iterations);
+    }
+
+    public void setIterations(int iterations) {
+        if (iterations <= 0) throw new IllegalArgumentException("iterations must be positive");
+        this.iterations = iterations;
+    }
+
+    /**
+     * 为口令生成新的加盐哈希。
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        int iter = iterations;
+        byte[] hash = pbkdf2(password, salt, iter);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iter + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+    }
+
+    /**
+     * 校验口令是否与存储的哈希匹配（常量时间比较）。
+     *
+     * @param password 明文口令
+     * @param encoded  hash() 生成的存储格式
+     * @return 是否匹配；存储格式非法时返回 false
+     */
+    public boolean verify(String password, String encoded) {
+        if (password == null || encoded == null) return false;
+        String[] parts = encoded.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) return false;
+        try {
+            int iter = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            byte[] actual = pbkdf2(password, salt, iter);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package Server.auth;
+
+import utils.TimerWheel;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 会话存储 (Role C)
+ * 职责：登录成功后签发会话令牌，并以 O(1) 代价校验后续请求携带的令牌。
+ *
+ * 设计说明：
+ *  - 会话表按令牌哈希分成若干段（lock striping），每段一把锁，不同段的请求互不竞争
+ *  - 滑动过期：每次校验成功刷新最后访问时间
+ *  - 过期清理使用时间轮而非全表扫描：会话只在"可能到期"时被检查一次，
+ *    若期间被访问续期，则按新的截止时间重新登记
+ *  - 校验时也会判断是否已过期，因此时间轮的触发延迟不影响正确性
+ */
+public class SessionStore {
+
+    /**
+     * 一个已登录的会话。
+     */
+    public static final class Session {
+        private final String token;
+        private final String username;
+        private final long createdAt;
+        private volatile long lastAccess;
+
+        Session(String token, String username, long now) {
+            this.token = token;
+            this.username = username;
+            this.createdAt = now;
+            this.lastAccess = now;
+        }
+
+        public String getToken() { return token; }
+        public String getUsername() { return username; }
+        public long getCreatedAt() { return createdAt; }
+        public long getLastAccess() { return lastAccess; }
+    }
+
+    private static final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, Session> sessions = new HashMap<>();
+    }
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final TimerWheel<Session> wheel;
+    private final ScheduledExecutorService ticker;
+    private final SecureRandom random = new SecureRandom();
+    private volatile long ttlMillis;
+
+    /**
+     * @param ttlMillis  空闲多久后过期（毫秒，滑动）
+     * @param stripes    分段数（向上取整为 2 的幂）
+     * @param tickMillis 时间轮精度（毫秒）
+     */
+    public SessionStore(long ttlMillis, int stripes, long tickMillis) {
+        if (ttlMillis <= 0 || stripes <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("ttl, stripes and tick must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) segments[i] = new Segment();
+        this.segmentMask = size - 1;
+        this.ttlMillis = ttlMillis;
+        this.wheel = new TimerWheel<>(tickMillis, 512, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        // 周期任务抛出异常会被静默取消，因此在内部兜底
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                wheel.advance(System.currentTimeMillis(), this::onMaybeExpired);
+            } catch (RuntimeException e) {
+                System.err.println("Session expiry tick failed: " + e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        if (ttlMillis <= 0) throw new IllegalArgumentException("ttl must be positive");
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * 为用户创建新会话。
+     *
+     * @return 新会话（令牌为 256 位随机数的 Base64URL 编码）
+     */
+    public Session create(String username) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = System.currentTimeMillis();
+        Session session = new Session(token, username, now);
+        Segment seg = segmentFor(token);
+        seg.lock.lock();
+        try {
+            seg.sessions.put(token, session);
+        } finally {
+            seg.lock.unlock();
+        }
+        wheel.schedule(session, now + ttlMillis);
+        return session;
+    }
+
+    /**
+     * 校验令牌：有效则续期并返回会话，否则返回 null。
+     */
+    public Session validate(String token) {
+        if (token == null || token.isEmpty()) return null;
+        long now = System.currentTimeMillis();
+        Segment seg = segmentFor(token);
+        seg.lock.lock();
+        try {
+            Session session = seg.sessions.get(token);
+            if (session == null) return null;
+            if (now - session.lastAccess > ttlMillis) {
+                seg.sessions.remove(token);
+                return null;
+            }
+            session.lastAccess = now;
+            return session;
+        } finally {
+            seg.lock.unlock();
+        }
+    }
+
+    /**
+     * 注销会话。
+     *
+     * @return 会话是否存在
+     */
+    public boolean invalidate(String token) {
+        if (token == null) return false;
+        Segment seg = segmentFor(token);
+        seg.lock.lock();
+        try {
+            return seg.sessions.remove(token) != null;
+        } finally {
+            seg.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int total = 0;
+        for (Segment seg : segments) {
+            seg.lock.lock();
+            try {
+                total += seg.sessions.size();
+            } finally {
+                seg.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * 时间轮回调：确认是否真的过期，被续期的会话按新的截止时间重新登记。
+     */
+    private void onMaybeExpired(Session session) {
+        long now = System.currentTimeMillis();
+        long deadline = session.lastAccess + ttlMillis;
+        if (deadline > now) {
+            // 仍在表中才需要继续跟踪
+            Segment seg = segmentFor(session.token);
+            seg.lock.lock();
+            try {
+                if (seg.sessions.get(session.token) != session) return;
+            } finally {
+                seg.lock.unlock();
+            }
+            wheel.schedule(session, deadline);
+            return;
+        }
+        Segment seg = segmentFor(session.token);
+        seg.lock.lock();
+        try {
+            // 加锁后再确认一次，避免与并发的续期竞争
+            if (seg.sessions.get(session.token) == session && now - session.lastAccess > ttlMillis) {
+                seg.sessions.remove(session.token);
+            } else if (seg.sessions.get(session.token) == session) {
+                wheel.schedule(session, session.lastAccess + ttlMillis);
+            }
+        } finally {
+            seg.lock.unlock();
+        }
+    }
+
+    private Segment segmentFor(String token) {
+        int h = token.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+}
@@ -0,0 +1,51 @@
+package Server.auth;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 用户存储 (Role C)
+ * 职责：保存 用户名 -> 口令哈希 的映射，供 UserAuthHandler 注册与登录使用。
+ *
+ * 实现：
+ *  - {@link InMemoryUserStore}：纯内存，重启丢失（测试/演示用）
+ *  - {@link LogUserStore}：追加日志 + 快照，重启后恢复
+ */
+public interface UserStore extends Closeable {
+
+    /**
+     * @return 用户的口令哈希，不存在时返回 null
+     */
+    String get(String username);
+
+    boolean contains(String username);
+
+    /**
+     * 新增用户。持久化实现在方法返回前保证记录已落盘。
+     *
+     * @return true 表示新增成功；false 表示用户已存在
+     * @throws IOException 持久化失败（此时用户不会被新增）
+     */
+    boolean putIfAbsent(String username, String passwordHash) throws IOException;
+
+    int size();
+
+    /**
+     * 按配置创建用户存储（store.type = log | memory）。
+     */
+    static UserStore open(ServerConfig config) throws IOException {
+        if ("memory".equals(config.get(ConfigKeys.USER_STORE_TYPE))) {
+            return new InMemoryUserStore();
+        }
+        return new LogUserStore(
+                Paths.get(config.get(ConfigKeys.USER_STORE_DIR)),
+                config.get(ConfigKeys.GROUP_COMMIT_MAX_BATCH),
+                config.get(ConfigKeys.GROUP_COMMIT_WAIT_MICROS),
+                config.get(ConfigKeys.SNAPSHOT_INTERVAL_MS),
+                config.get(ConfigKeys.SNAPSHOT_LOG_BYTES));
+    }
+}
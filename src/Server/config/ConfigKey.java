@@ -0,0 +1,115 @@
+package Server.config;
+
+import java.util.function.Function;
+
+/**
+ * 配置项定义 (Role B)
+ * 职责：描述一个配置项的名称、默认值、解析方式、取值校验以及是否支持热更新。
+ *
+ * @param <T> 配置值类型
+ */
+public final class ConfigKey<T> {
+
+    /**
+     * 取值校验：返回 null 表示合法，否则返回错误描述。
+     */
+    public interface Validator<T> {
+        String validate(T value);
+    }
+
+    private final String name;
+    private final T defaultValue;
+    private final Function<String, T> parser;
+    private final Validator<T> validator;
+    private final boolean reloadable;
+
+    private ConfigKey(String name, T defaultValue, Function<String, T> parser,
+                      Validator<T> validator, boolean reloadable) {
+        this.name = name;
+        this.defaultValue = defaultValue;
+        this.parser = parser;
+        this.validator = validator;
+        this.reloadable = reloadable;
+    }
+
+    public static ConfigKey<Integer> intKey(String name, int defaultValue, int min, int max, boolean reloadable) {
+        return new ConfigKey<>(name, defaultValue, s -> Integer.parseInt(s.trim()),
+                v -> (v < min || v > max) ? "must be between " + min + " and " + max : null,
+                reloadable);
+    }
+
+    public static ConfigKey<Long> longKey(String name, long defaultValue, long min, long max, boolean reloadable) {
+        return new ConfigKey<>(name, defaultValue, s -> Long.parseLong(s.trim()),
+                v -> (v < min || v > max) ? "must be between " + min + " and " + max : null,
+                reloadable);
+    }
+
+    public static ConfigKey<Double> doubleKey(String name, double defaultValue, double min, double max,
+                                              boolean reloadable) {
+        return new ConfigKey<>(name, defaultValue, s -> Double.parseDouble(s.trim()),
+                v -> (v.isNaN() || v < min || v > max) ? "must be between " + min + " and " + max : null,
+                reloadable);
+    }
+
+    public static ConfigKey<Boolean> boolKey(String name, boolean defaultValue, boolean reloadable) {
+        return new ConfigKey<>(name, defaultValue, ConfigKey::parseBoolean, v -> null, reloadable);
+    }
+
+    public static ConfigKey<String> stringKey(String name, String defaultValue, boolean reloadable) {
+        return stringKey(name, defaultValue, v -> null, reloadable);
+    }
+
+    public static ConfigKey<String> stringKey(String name, String defaultValue, Validator<String> validator,
+                                              boolean reloadable) {
+        return new ConfigKey<>(name, defaultValue, String::trim, validator, reloadable);
+    }
+
+    private static Boolean parseBoolean(String s) {
+        String v = s.trim().toLowerCase();
+        switch (v) {
+            case "true": case "yes": case "on": case "1": return Boolean.TRUE;
+            case "false": case "no": case "off": case "0": return Boolean.FALSE;
+            default: throw new IllegalArgumentException("not a boolean: " + s);
+        }
+    }
+
+    /**
+     * 解析并校验原始字符串。
+     *
+     * @throws IllegalArgumentException 无法解析或取值非法
+     */
+    T parse(String raw) {
+        T value;
+        try {
+            value = parser.apply(raw);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(name + ": cannot parse '" + raw + "'");
+        }
+        check(value);
+        return value;
+    }
+
+    void check(T value) {
+        String error = validator.validate(value);
+        if (error != null) {
+            throw new IllegalArgumentException(name + ": " + error + " (got '" + value + "')");
+        }
+    }
+
+    public String getName() { return name; }
+    public T getDefaultValue() { return defaultValue; }
+    public boolean isReloadable() { return reloadable; }
+
+    /**
+     * 环境变量名：前缀 HTTP_，点号与横线替换为下划线并转大写。
+     * 例如 keepalive.idle-timeout-ms -> HTTP_KEEPALIVE_IDLE_TIMEOUT_MS
+     */
+    public String envName() {
+        return "HTTP_" + name.replace('.', '_').replace('-', '_').toUpperCase();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,274 @@
+package Server.config;
+
+import Server.proxy.ProxySettings;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 全部配置项 (Role B)
+ * 职责：集中声明服务器各组件使用的配置项，ServerConfig 按此表加载与校验。
+ * 标记为可热更新的配置项会在配置文件变化时立即生效，其余配置项需重启。
+ */
+public final class ConfigKeys {
+
+    private static final List<ConfigKey<?>> ALL = new ArrayList<>();
+
+    private ConfigKeys() {
+    }
+
+    // ========== 服务器与线程池 ==========
+    public static final ConfigKey<Integer> PORT =
+            register(ConfigKey.intKey("server.port", 8080, 1, 65535, false));
+    public static final ConfigKey<Integer> WORKER_THREADS =
+            register(ConfigKey.intKey("server.worker-threads", 50, 1, 10000, false));
+    public static final ConfigKey<Integer> QUEUE_CAPACITY =
+            register(ConfigKey.intKey("server.queue-capacity", 200, 1, 1_000_000, false));
+    public static final ConfigKey<Integer> QUEUE_MAX_WAIT_MS =
+            register(ConfigKey.intKey("server.queue-max-wait-ms", 2000, 1, 600_000, false));
+    public static final ConfigKey<Integer> CODEL_TARGET_MS =
+            register(ConfigKey.intKey("server.codel-target-ms", 50, 1, 60_000, false));
+    public static final ConfigKey<Integer> CODEL_INTERVAL_MS =
+            register(ConfigKey.intKey("server.codel-interval-ms", 500, 1, 600_000, false));
+    public static final ConfigKey<Integer> RETRY_AFTER_SECONDS =
+            register(ConfigKey.intKey("server.retry-after-seconds", 1, 0, 3600, false));
+
+    public static final ConfigKey<Integer> BUFFER_SIZE =
+            register(ConfigKey.intKey("server.buffer-size", 8192, 1024, 1024 * 1024, false));
+    public static final ConfigKey<Integer> BUFFER_POOL_MAX =
+            register(ConfigKey.intKey("server.buffer-pool-max", 256, 1, 1_000_000, false));
+    public static final ConfigKey<Integer> DIRECT_BUFFER_SLABS =
+            register(ConfigKey.intKey("server.direct-buffer-slabs", 16, 1, 4096, false));
+    public static final ConfigKey<Boolean> BUFFER_LEAK_DETECTION =
+            register(ConfigKey.boolKey("server.buffer-leak-detection", false, false));
+
+    // ========== 监听 Socket ==========
+    public static final ConfigKey<Integer> BACKLOG =
+            register(ConfigKey.intKey("listener.backlog", 1024, 1, 65535, false));
+    public static final ConfigKey<Boolean> TCP_NODELAY =
+            register(ConfigKey.boolKey("listener.tcp-nodelay", true, false));
+    public static final ConfigKey<Integer> SEND_BUFFER =
+            register(ConfigKey.intKey("listener.send-buffer", 0, 0, 64 * 1024 * 1024, false));
+    public static final ConfigKey<Integer> RECEIVE_BUFFER =
+            register(ConfigKey.intKey("listener.receive-buffer", 0, 0, 64 * 1024 * 1024, false));
+    public static final ConfigKey<Boolean> REUSE_ADDRESS =
+            register(ConfigKey.boolKey("listener.reuse-address", true, false));
+    public static final ConfigKey<Integer> ACCEPTOR_THREADS =
+            register(ConfigKey.intKey("listener.acceptors", 1, 1, 64, false));
+    public static final ConfigKey<Boolean> REUSE_PORT =
+            register(ConfigKey.boolKey("listener.reuse-port", true, false));
+
+    // ========== 长连接 ==========
+    public static final ConfigKey<Integer> IDLE_TIMEOUT_MS =
+            register(ConfigKey.intKey("keepalive.idle-timeout-ms", 15000, 1, 3_600_000, true));
+    public static final ConfigKey<Integer> MIN_IDLE_TIMEOUT_MS =
+            register(ConfigKey.intKey("keepalive.min-idle-timeout-ms", 1000, 1, 3_600_000, true));
+    public static final ConfigKey<Integer> READ_TIMEOUT_MS =
+            register(ConfigKey.intKey("keepalive.read-timeout-ms", 60000, 1, 3_600_000, true));
+    public static final ConfigKey<Integer> MAX_REQUESTS =
+            register(ConfigKey.intKey("keepalive.max-requests", 100, 1, 1_000_000, true));
+    public static final ConfigKey<Boolean> ADAPTIVE_IDLE =
+            register(ConfigKey.boolKey("keepalive.adaptive", true, true));
+    public static final ConfigKey<Double> LOW_WATERMARK =
+            register(ConfigKey.doubleKey("keepalive.low-watermark", 0.5, 0.0, 100.0, true));
+    public static final ConfigKey<Double> HIGH_WATERMARK =
+            register(ConfigKey.doubleKey("keepalive.high-watermark", 0.9, 0.0, 100.0, true));
+
+    // ========== 慢客户端与请求大小限制 ==========
+    public static final ConfigKey<Integer> MAX_REQUEST_LINE =
+            register(ConfigKey.intKey("limits.max-request-line", 8192, 256, 1024 * 1024, true));
+    public static final ConfigKey<Integer> MAX_HEADER_SIZE =
+            register(ConfigKey.intKey("limits.max-header-size", 32 * 1024, 1024, 16 * 1024 * 1024, true));
+    public static final ConfigKey<Integer> MAX_HEADER_COUNT =
+            register(ConfigKey.intKey("limits.max-header-count", 100, 1, 10_000, true));
+    public static final ConfigKey<Integer> HEADER_TIMEOUT_MS =
+            register(ConfigKey.intKey("limits.header-timeout-ms", 10_000, 1, 3_600_000, true));
+    public static final ConfigKey<Integer> MIN_BODY_RATE =
+            register(ConfigKey.intKey("limits.min-body-rate", 1024, 0, Integer.MAX_VALUE, true));
+    public static final ConfigKey<Integer> BODY_RATE_GRACE_MS =
+            register(ConfigKey.intKey("limits.body-rate-grace-ms", 5000, 0, 3_600_000, true));
+    public static final ConfigKey<Integer> WRITE_TIMEOUT_MS =
+            register(ConfigKey.intKey("limits.write-timeout-ms", 20_000, 0, 3_600_000, true));
+    public static final ConfigKey<Integer> MAX_BODY_SIZE =
+            register(ConfigKey.intKey("limits.max-body-size", 10 << 20, 0, Integer.MAX_VALUE, true));
+
+    // ========== 隔离舱（按执行类别划分的线程池） ==========
+    public static final ConfigKey<Boolean> BULKHEAD_ENABLED =
+            register(ConfigKey.boolKey("bulkhead.enabled", true, false));
+    public static final ConfigKey<Integer> BULKHEAD_QUEUE_TIMEOUT_MS =
+            register(ConfigKey.intKey("bulkhead.queue-timeout-ms", 2000, 1, 600_000, false));
+    public static final ConfigKey<Integer> BULKHEAD_IO_THREADS =
+            register(ConfigKey.intKey("bulkhead.io.threads", 8, 1, 10_000, false));
+    public static final ConfigKey<Integer> BULKHEAD_IO_QUEUE =
+            register(ConfigKey.intKey("bulkhead.io.queue", 8, 1, 1_000_000, false));
+    public static final ConfigKey<Integer> BULKHEAD_STATIC_THREADS =
+            register(ConfigKey.intKey("bulkhead.static.threads", 16, 1, 10_000, false));
+    public static final ConfigKey<Integer> BULKHEAD_STATIC_QUEUE =
+            register(ConfigKey.intKey("bulkhead.static.queue", 24, 1, 1_000_000, false));
+    public static final ConfigKey<Integer> BULKHEAD_AUTH_THREADS =
+            register(ConfigKey.intKey("bulkhead.auth.threads", 4, 1, 10_000, false));
+    public static final ConfigKey<Integer> BULKHEAD_AUTH_QUEUE =
+            register(ConfigKey.intKey("bulkhead.auth.queue", 8, 1, 1_000_000, false));
+
+    // ========== 启动预热 ==========
+    public static final ConfigKey<Boolean> WARMUP_ENABLED =
+            register(ConfigKey.boolKey("warmup.enabled", false, false));
+    public static final ConfigKey<Integer> WARMUP_MAX_MS =
+            register(ConfigKey.intKey("warmup.max-ms", 15_000, 1, 600_000, false));
+    public static final ConfigKey<Integer> WARMUP_BATCH =
+            register(ConfigKey.intKey("warmup.batch", 2000, 1, 1_000_000, false));
+
+    // ========== 请求计时 ==========
+    public static final ConfigKey<Boolean> TIMING_SERVER_TIMING =
+            register(ConfigKey.boolKey("timing.server-timing", false, true));
+
+    // ========== HTTP/2 (h2c) ==========
+    public static final ConfigKey<Boolean> HTTP2_ENABLED =
+            register(ConfigKey.boolKey("http2.enabled", true, false));
+    public static final ConfigKey<Integer> HTTP2_MAX_CONCURRENT_STREAMS =
+            register(ConfigKey.intKey("http2.max-concurrent-streams", 100, 1, 10_000, false));
+    public static final ConfigKey<Integer> HTTP2_INITIAL_WINDOW_SIZE =
+            register(ConfigKey.intKey("http2.initial-window-size", 1024 * 1024, 65535, Integer.MAX_VALUE, false));
+    public static final ConfigKey<Integer> HTTP2_MAX_FRAME_SIZE =
+            register(ConfigKey.intKey("http2.max-frame-size", 16384, 16384, 16_777_215, false));
+    public static final ConfigKey<Integer> HTTP2_MAX_HEADER_LIST_SIZE =
+            register(ConfigKey.intKey("http2.max-header-list-size", 65536, 1024, 16 * 1024 * 1024, false));
+    public static final ConfigKey<Integer> HTTP2_STREAM_THREADS =
+            register(ConfigKey.intKey("http2.stream-threads", 32, 1, 4096, false));
+    public static final ConfigKey<Integer> HTTP2_STREAM_QUEUE =
+            register(ConfigKey.intKey("http2.stream-queue", 1024, 1, 1_000_000, false));
+
+    // ========== 静态资源 ==========
+    public static final ConfigKey<String> WEB_ROOT =
+            register(ConfigKey.stringKey("static.web-root", "res",
+                    v -> new File(v).isDirectory() ? null : "directory does not exist", false));
+    public static final ConfigKey<Boolean> STATIC_WATCH =
+            register(ConfigKey.boolKey("static.watch", true, false));
+
+    // ========== 上传 ==========
+    public static final ConfigKey<String> UPLOAD_PREFIXES =
+            register(ConfigKey.stringKey("upload.prefixes", "", false));
+    public static final ConfigKey<Long> UPLOAD_MAX_BYTES =
+            register(ConfigKey.longKey("upload.max-bytes", 10L * 1024 * 1024 * 1024, 0, Long.MAX_VALUE, true));
+    public static final ConfigKey<Boolean> UPLOAD_REQUIRE_AUTH =
+            register(ConfigKey.boolKey("upload.require-auth", true, true));
+
+    // ========== 反向代理 ==========
+    public static final ConfigKey<String> PROXY_ROUTES =
+            register(ConfigKey.stringKey("proxy.routes", "", ProxySettings::validateRoutes, false));
+    public static final ConfigKey<String> PROXY_BALANCER =
+            register(ConfigKey.stringKey("proxy.balancer", ProxySettings.LEAST_OUTSTANDING,
+                    v -> (ProxySettings.LEAST_OUTSTANDING.equals(v) || ProxySettings.CONSISTENT_HASH.equals(v))
+                            ? null : "must be 'least-outstanding' or 'consistent-hash'", false));
+    public static final ConfigKey<String> PROXY_HASH_KEY =
+            register(ConfigKey.stringKey("proxy.hash-key", "client-ip",
+                    v -> (v.equals("client-ip") || v.equals("path") || v.startsWith("header:")
+                            || v.startsWith("cookie:")) ? null : "must be client-ip, path, header:<name> or cookie:<name>",
+                    false));
+    public static final ConfigKey<Integer> PROXY_CONNECT_TIMEOUT_MS =
+            register(ConfigKey.intKey("proxy.connect-timeout-ms", 2000, 1, 600_000, false));
+    public static final ConfigKey<Integer> PROXY_READ_TIMEOUT_MS =
+            register(ConfigKey.intKey("proxy.read-timeout-ms", 30_000, 1, 3_600_000, false));
+    public static final ConfigKey<Integer> PROXY_MAX_IDLE =
+            register(ConfigKey.intKey("proxy.max-idle-per-upstream", 32, 0, 10_000, false));
+    public static final ConfigKey<Integer> PROXY_IDLE_TIMEOUT_MS =
+            register(ConfigKey.intKey("proxy.idle-timeout-ms", 30_000, 1, 3_600_000, false));
+    public static final ConfigKey<Integer> PROXY_MAX_FAILS =
+            register(ConfigKey.intKey("proxy.max-fails", 3, 1, 1000, false));
+    public static final ConfigKey<Integer> PROXY_EJECT_MS =
+            register(ConfigKey.intKey("proxy.eject-ms", 10_000, 0, 3_600_000, false));
+
+    // ========== 微缓存 ==========
+    public static final ConfigKey<String> CACHE_PREFIXES =
+            register(ConfigKey.stringKey("cache.prefixes", "", false));
+    public static final ConfigKey<String> CACHE_VARY_HEADERS =
+            register(ConfigKey.stringKey("cache.vary-headers", "Accept,Accept-Encoding", false));
+    public static final ConfigKey<Integer> CACHE_TTL_MS =
+            register(ConfigKey.intKey("cache.ttl-ms", 1000, 1, 3_600_000, false));
+    public static final ConfigKey<Integer> CACHE_STALE_MS =
+            register(ConfigKey.intKey("cache.stale-ms", 10_000, 0, 3_600_000, false));
+    public static final ConfigKey<Integer> CACHE_LOCK_TIMEOUT_MS =
+            register(ConfigKey.intKey("cache.lock-timeout-ms", 5000, 1, 600_000, false));
+    public static final ConfigKey<Integer> CACHE_MAX_ENTRIES =
+            register(ConfigKey.intKey("cache.max-entries", 10_000, 1, 10_000_000, false));
+    public static final ConfigKey<Integer> CACHE_MAX_BODY_BYTES =
+            register(ConfigKey.intKey("cache.max-body-bytes", 1 << 20, 0, 64 << 20, false));
+
+    // ========== 用户认证 ==========
+    public static final ConfigKey<Integer> PBKDF2_ITERATIONS =
+            register(ConfigKey.intKey("auth.pbkdf2-iterations", 120_000, 10_000, 10_000_000, true));
+    public static final ConfigKey<Integer> HASH_THREADS =
+            register(ConfigKey.intKey("auth.hash-threads",
+                    Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1, 256, false));
+    public static final ConfigKey<Integer> HASH_QUEUE =
+            register(ConfigKey.intKey("auth.hash-queue", 64, 1, 100_000, false));
+    public static final ConfigKey<Integer> HASH_TIMEOUT_MS =
+            register(ConfigKey.intKey("auth.hash-timeout-ms", 5000, 1, 600_000, true));
+    public static final ConfigKey<Integer> VERIFY_CACHE_TTL_MS =
+            register(ConfigKey.intKey("auth.verify-cache-ttl-ms", 60_000, 0, 3_600_000, true));
+    public static final ConfigKey<Integer> VERIFY_CACHE_SIZE =
+            register(ConfigKey.intKey("auth.verify-cache-size", 10_000, 0, 10_000_000, true));
+
+    // ========== 登录/注册限流 ==========
+    public static final ConfigKey<Integer> RATE_IP_PER_MINUTE =
+            register(ConfigKey.intKey("auth.rate.ip-per-minute", 60, 1, 1_000_000, true));
+    public static final ConfigKey<Integer> RATE_IP_BURST =
+            register(ConfigKey.intKey("auth.rate.ip-burst", 20, 1, 1_000_000, true));
+    public static final ConfigKey<Integer> RATE_USER_PER_MINUTE =
+            register(ConfigKey.intKey("auth.rate.user-per-minute", 6, 1, 1_000_000, true));
+    public static final ConfigKey<Integer> RATE_USER_BURST =
+            register(ConfigKey.intKey("auth.rate.user-burst", 5, 1, 1_000_000, true));
+    public static final ConfigKey<Integer> RATE_MAX_KEYS =
+            register(ConfigKey.intKey("auth.rate.max-keys", 100_000, 1, 100_000_000, false));
+
+    // ========== 访问控制列表 ==========
+    public static final ConfigKey<String> ACL_FILE =
+            register(ConfigKey.stringKey("acl.file", "conf/acl.txt", false));
+    public static final ConfigKey<Double> ACL_BLOOM_FPP =
+            register(ConfigKey.doubleKey("acl.bloom-fpp", 0.01, 0.000001, 0.5, false));
+    public static final ConfigKey<Integer> ACL_RELOAD_INTERVAL_MS =
+            register(ConfigKey.intKey("acl.reload-interval-ms", 5000, 0, 3_600_000, false));
+
+    // ========== 会话 ==========
+    public static final ConfigKey<Integer> SESSION_TTL_MS =
+            register(ConfigKey.intKey("auth.session-ttl-ms", 30 * 60 * 1000, 1000, Integer.MAX_VALUE, true));
+    public static final ConfigKey<Integer> SESSION_STRIPES =
+            register(ConfigKey.intKey("auth.session-stripes", 64, 1, 65536, false));
+    public static final ConfigKey<Integer> SESSION_TICK_MS =
+            register(ConfigKey.intKey("auth.session-tick-ms", 1000, 10, 60_000, false));
+    public static final ConfigKey<String> PROTECTED_PREFIXES =
+            register(ConfigKey.stringKey("auth.protected-prefixes", "/private/", true));
+
+    // ========== 用户存储 ==========
+    public static final ConfigKey<String> USER_STORE_TYPE =
+            register(ConfigKey.stringKey("store.type", "log",
+                    v -> ("log".equals(v) || "memory".equals(v)) ? null : "must be 'log' or 'memory'", false));
+    public static final ConfigKey<String> USER_STORE_DIR =
+            register(ConfigKey.stringKey("store.dir", "data/users", false));
+    public static final ConfigKey<Integer> GROUP_COMMIT_MAX_BATCH =
+            register(ConfigKey.intKey("store.group-commit-max-batch", 1024, 1, 1_000_000, false));
+    public static final ConfigKey<Integer> GROUP_COMMIT_WAIT_MICROS =
+            register(ConfigKey.intKey("store.group-commit-wait-micros", 0, 0, 100_000, false));
+    public static final ConfigKey<Integer> SNAPSHOT_INTERVAL_MS =
+            register(ConfigKey.intKey("store.snapshot-interval-ms", 600_000, 0, Integer.MAX_VALUE, false));
+    public static final ConfigKey<Long> SNAPSHOT_LOG_BYTES =
+            register(ConfigKey.longKey("store.snapshot-log-bytes", 64L * 1024 * 1024, 1024, Long.MAX_VALUE, false));
+
+    // ========== 配置热更新 ==========
+    public static final ConfigKey<Integer> RELOAD_INTERVAL_MS =
+            register(ConfigKey.intKey("config.reload-interval-ms", 5000, 0, 3_600_000, false));
+
+    private static <T> ConfigKey<T> register(ConfigKey<T> key) {
+        ALL.add(key);
+        return key;
+    }
+
+    /**
+     * 所有已声明的配置项（按声明顺序）。
+     */
+    public static List<ConfigKey<?>> all() {
+        return Collections.unmodifiableList(ALL);
+    }
+}
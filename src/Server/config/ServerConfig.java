@@ -0,0 +1,394 @@
+package Server.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 服务器配置 (Role B)
+ * 职责：从配置文件、环境变量与命令行参数加载配置，启动时统一校验，并支持热更新。
+ *
+ * 优先级（后者覆盖前者）：内置默认值 < 配置文件 < 环境变量 < 命令行参数
+ *  - 配置文件：--config=路径 或环境变量 HTTP_SERVER_CONFIG 指定，默认 conf/server.properties（存在时）；
+ *    支持 .properties 与简单的 .yml/.yaml（键值对与按缩进嵌套的节）
+ *  - 环境变量：见 {@link ConfigKey#envName()}，例如 HTTP_SERVER_PORT=8080
+ *  - 命令行：--server.port=8080
+ *
+ * 热更新：定期检查配置文件修改时间，仅可热更新的配置项会生效，
+ * 其余配置项的变化只打印提示（需重启），随后通知已注册的监听器。
+ */
+public class ServerConfig {
+
+    /** 默认配置文件路径 */
+    public static final String DEFAULT_CONFIG_FILE = "conf/server.properties";
+
+    private final Path file;
+    private final Map<String, String> env;
+    private final Map<String, String> cli;
+    private final List<Consumer<ServerConfig>> listeners = new CopyOnWriteArrayList<>();
+    private volatile Map<ConfigKey<?>, Object> values;
+    private long fileLastModified;
+    private ScheduledExecutorService watcher;
+
+    private ServerConfig(Path file, Map<String, String> env, Map<String, String> cli) {
+        this.file = file;
+        this.env = env;
+        this.cli = cli;
+        this.values = resolve(readFile());
+        this.fileLastModified = lastModified();
+    }
+
+    /**
+     * 按命令行参数、环境变量与配置文件加载配置。
+     *
+     * @param args 命令行参数
+     * @throws IllegalArgumentException 配置非法（包含所有错误项）
+     */
+    public static ServerConfig load(String[] args) {
+        Map<String, String> cli = parseArgs(args);
+        String configPath = cli.remove("config");
+        if (configPath == null) configPath = System.getenv("HTTP_SERVER_CONFIG");
+        Path file = null;
+        if (configPath != null) {
+            file = Paths.get(configPath);
+            if (!Files.isRegularFile(file)) {
+                throw new IllegalArgumentException("Config file not found: " + configPath);
+            }
+        } else if (Files.isRegularFile(Paths.get(DEFAULT_CONFIG_FILE))) {
+            file = Paths.get(DEFAULT_CONFIG_FILE);
+        }
+        return new ServerConfig(file, System.getenv(), cli);
+    }
+
+    /**
+     * 仅使用内置默认值的配置（不读取文件与环境变量）。
+     */
+    public static ServerConfig defaults() {
+        return new ServerConfig(null, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * 使用给定键值覆盖默认值的配置，便于嵌入或测试。
+     *
+     * @param overrides 配置项名称 -> 原始字符串值
+     */
+    public static ServerConfig of(Map<String, String> overrides) {
+        return new ServerConfig(null, Collections.emptyMap(), new HashMap<>(overrides));
+    }
+
+    /**
+     * 显式给出各来源的配置，优先级与 {@link #load(String[])} 相同，便于嵌入或测试。
+     *
+     * @param file      配置文件（可为 null）
+     * @param env       环境变量（变量名见 {@link ConfigKey#envName()}）
+     * @param overrides 配置项名称 -> 原始字符串值，相当于命令行参数
+     */
+    public static ServerConfig of(Path file, Map<String, String> env, Map<String, String> overrides) {
+        return new ServerConfig(file, new HashMap<>(env), new HashMap<>(overrides));
+    }
+
+    /**
+     * 读取配置值（已解析与校验）。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ConfigKey<T> key) {
+        return (T) values.get(key);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 注册热更新监听器，配置成功重新加载后回调。
+     */
+    public void addListener(Consumer<ServerConfig> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 重新加载配置：新配置不合法时保留旧配置并打印错误。
+     *
+     * @return 是否有可热更新的配置项发生变化
+     */
+    public synchronized boolean reload() {
+        Map<ConfigKey<?>, Object> fresh;
+        try {
+            fresh = resolve(readFile());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Config reload rejected: " + e.getMessage());
+            return false;
+        }
+        Map<ConfigKey<?>, Object> merged = new LinkedHashMap<>(values);
+        boolean changed = false;
+        for (ConfigKey<?> key : ConfigKeys.all()) {
+            Object oldValue = values.get(key);
+            Object newValue = fresh.get(key);
+            if (Objects.equals(oldValue, newValue)) continue;
+            if (key.isReloadable()) {
+                merged.put(key, newValue);
+                changed = true;
+                System.out.println("Config reloaded: " + key + " = " + newValue);
+            } else {
+                System.out.println("Config change ignored (restart required): " + key);
+            }
+        }
+        if (!changed) return false;
+        try {
+            validateCombination(merged);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Config reload rejected: " + e.getMessage());
+            return false;
+        }
+        values = Collections.unmodifiableMap(merged);
+        for (Consumer<ServerConfig> listener : listeners) {
+            try {
+                listener.accept(this);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 启动配置文件监视线程（未使用配置文件或间隔为 0 时不启动）。
+     */
+    public synchronized void startWatching() {
+        int interval = get(ConfigKeys.RELOAD_INTERVAL_MS);
+        if (file == null || interval <= 0 || watcher != null) return;
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "config-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(this::checkFile, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    private void checkFile() {
+        long modified = lastModified();
+        synchronized (this) {
+            if (modified == fileLastModified) return;
+            fileLastModified = modified;
+        }
+        reload();
+    }
+
+    private long lastModified() {
+        if (file == null) return 0L;
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    // ========== 加载与校验 ==========
+
+    /**
+     * 合并各来源并逐项解析校验，收集全部错误后一次性抛出。
+     */
+    private Map<ConfigKey<?>, Object> resolve(Map<String, String> fromFile) {
+        List<String> errors = new ArrayList<>();
+        for (String name : fromFile.keySet()) {
+            if (findKey(name) == null) errors.add("unknown key in config file: " + name);
+        }
+        for (String name : cli.keySet()) {
+            if (findKey(name) == null) errors.add("unknown command line option: --" + name);
+        }
+
+        Map<ConfigKey<?>, Object> resolved = new LinkedHashMap<>();
+        for (ConfigKey<?> key : ConfigKeys.all()) {
+            String raw = cli.get(key.getName());
+            if (raw == null) raw = env.get(key.envName());
+            if (raw == null) raw = fromFile.get(key.getName());
+            try {
+                resolved.put(key, raw == null ? key.getDefaultValue() : key.parse(raw));
+            } catch (IllegalArgumentException e) {
+                errors.add(e.getMessage());
+                resolved.put(key, key.getDefaultValue());
+            }
+        }
+        try {
+            validateCombination(resolved);
+        } catch (IllegalArgumentException e) {
+            errors.add(e.getMessage());
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid configuration:\n - " + String.join("\n - ", errors));
+        }
+        return Collections.unmodifiableMap(resolved);
+    }
+
+    /**
+     * 跨配置项的约束校验。
+     */
+    private static void validateCombination(Map<ConfigKey<?>, Object> v) {
+        if ((Integer) v.get(ConfigKeys.MIN_IDLE_TIMEOUT_MS) > (Integer) v.get(ConfigKeys.IDLE_TIMEOUT_MS)) {
+            throw new IllegalArgumentException(ConfigKeys.MIN_IDLE_TIMEOUT_MS + " cannot exceed "
+                    + ConfigKeys.IDLE_TIMEOUT_MS);
+        }
+        if ((Double) v.get(ConfigKeys.LOW_WATERMARK) >= (Double) v.get(ConfigKeys.HIGH_WATERMARK)) {
+            throw new IllegalArgumentException(ConfigKeys.LOW_WATERMARK + " must be below "
+                    + ConfigKeys.HIGH_WATERMARK);
+        }
+        if ((Boolean) v.get(ConfigKeys.BULKHEAD_ENABLED)) {
+            // 一个类别占满时，其他类别仍要有空闲的连接线程
+            int workers = (Integer) v.get(ConfigKeys.WORKER_THREADS);
+            checkBulkhead(v, ConfigKeys.BULKHEAD_IO_THREADS, ConfigKeys.BULKHEAD_IO_QUEUE, workers);
+            checkBulkhead(v, ConfigKeys.BULKHEAD_STATIC_THREADS, ConfigKeys.BULKHEAD_STATIC_QUEUE, workers);
+            checkBulkhead(v, ConfigKeys.BULKHEAD_AUTH_THREADS, ConfigKeys.BULKHEAD_AUTH_QUEUE, workers);
+        }
+    }
+
+    private static void checkBulkhead(Map<ConfigKey<?>, Object> v, ConfigKey<Integer> threads,
+                                      ConfigKey<Integer> queue, int workers) {
+        if ((Integer) v.get(threads) + (Integer) v.get(queue) >= workers) {
+            throw new IllegalArgumentException(threads + " + " + queue + " must be below "
+                    + ConfigKeys.WORKER_THREADS + " (" + workers + ")");
+        }
+    }
+
+    private static ConfigKey<?> findKey(String name) {
+        for (ConfigKey<?> key : ConfigKeys.all()) {
+            if (key.getName().equals(name)) return key;
+        }
+        return null;
+    }
+
+    private Map<String, String> readFile() {
+        if (file == null) return Collections.emptyMap();
+        String name = file.getFileName().toString().toLowerCase();
+        try {
+            if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+                return parseYaml(Files.readAllLines(file, StandardCharsets.UTF_8));
+            }
+            Properties props = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            }
+            Map<String, String> map = new LinkedHashMap<>();
+            for (String key : props.stringPropertyNames()) {
+                map.put(key.trim(), props.getProperty(key));
+            }
+            return map;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read config file " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 解析简单 YAML：支持 "key: value"、按缩进嵌套的节（展开为点号分隔的键）、# 注释与引号。
+     * 不支持列表、多行字符串等复杂结构。
+     */
+    static Map<String, String> parseYaml(List<String> lines) {
+        Map<String, String> map = new LinkedHashMap<>();
+        // 栈中保存 {缩进, 节前缀}
+        Deque<Object[]> sections = new ArrayDeque<>();
+        int lineNo = 0;
+        for (String rawLine : lines) {
+            lineNo++;
+            String line = stripComment(rawLine);
+            if (line.isBlank() || line.trim().equals("---")) continue;
+            int indent = 0;
+            while (indent < line.length() && line.charAt(indent) == ' ') indent++;
+            String content = line.trim();
+            if (content.startsWith("- ")) {
+                throw new IllegalArgumentException("YAML lists are not supported (line " + lineNo + ")");
+            }
+            int colon = content.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Malformed YAML line " + lineNo + ": " + rawLine);
+            }
+            while (!sections.isEmpty() && (int) sections.peek()[0] >= indent) {
+                sections.pop();
+            }
+            String prefix = sections.isEmpty() ? "" : (String) sections.peek()[1];
+            String key = prefix + content.substring(0, colon).trim();
+            String value = content.substring(colon + 1).trim();
+            if (value.isEmpty()) {
+                sections.push(new Object[]{indent, key + "."});
+            } else {
+                map.put(key, unquote(value));
+            }
+        }
+        return map;
+    }
+
+    private static String stripComment(String line) {
+        boolean inSingle = false, inDouble = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\'' && !inDouble) inSingle = !inSingle;
+            else if (c == '"' && !inSingle) inDouble = !inDouble;
+            else if (c == '#' && !inSingle && !inDouble && (i == 0 || Character.isWhitespace(line.charAt(i - 1)))) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0), last = value.charAt(value.length() - 1);
+            if ((first == '"' && last == '"') || (first == '\'' && last == '\'')) {
+                return value.substring(1, value.length() - 1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 解析形如 --key=value 的命令行参数。
+     */
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (args == null) return map;
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Invalid argument '" + arg + "', expected --key=value");
+            }
+            int eq = arg.indexOf('=');
+            map.put(arg.substring(2, eq).trim(), arg.substring(eq + 1));
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ServerConfig{");
+        if (file != null) sb.append("file=").append(file).append(", ");
+        boolean first = true;
+        for (Map.Entry<ConfigKey<?>, Object> e : values.entrySet()) {
+            if (!first) sb.append(", ");
+            sb.append(e.getKey()).append('=').append(e.getValue());
+            first = false;
+        }
+        return sb.append('}').toString();
+    }
+}
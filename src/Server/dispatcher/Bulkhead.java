@@ -0,0 +1,166 @@
+package Server.dispatcher;
+
+import Server.config.ConfigKey;
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 隔离舱执行器 (Role C)
+ * 职责：为一个执行类别提供独立的有界线程池、队列上限与统计，
+ * 使某一类路由过载时只影响自己，不拖慢其他类别。
+ *
+ * 设计说明：
+ *  - 连接线程把路由交给所属类别的线程池后等待结果；队列已满立即失败，
+ *    排队超过 queueTimeout 仍未开始的任务被取消，都抛出 {@link BulkheadFullException}（上层返回 503）
+ *  - 因此一个类别最多占用 threads + queue 个连接线程，其余连接线程始终留给其他类别
+ *  - 任务一旦开始执行就等待其完成：处理器可能正在读取连接上的流式请求体，不能中途放弃
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final ThreadPoolExecutor pool;
+    private final long queueTimeoutMillis;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+
+    /**
+     * @param name               类别名（用于线程名与统计）
+     * @param threads            线程数
+     * @param queueCapacity      等待队列长度
+     * @param queueTimeoutMillis 任务最长排队时间
+     */
+    public Bulkhead(String name, int threads, int queueCapacity, long queueTimeoutMillis) {
+        if (threads <= 0 || queueCapacity <= 0 || queueTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("invalid bulkhead settings for " + name);
+        }
+        this.name = name;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bulkhead-" + name + "-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 按配置为一个执行类别创建隔离舱。
+     */
+    public static Bulkhead from(ServerConfig config, ExecutionClass executionClass) {
+        ConfigKey<Integer> threads;
+        ConfigKey<Integer> queue;
+        switch (executionClass) {
+            case IO:
+                threads = ConfigKeys.BULKHEAD_IO_THREADS;
+                queue = ConfigKeys.BULKHEAD_IO_QUEUE;
+                break;
+            case AUTH:
+                threads = ConfigKeys.BULKHEAD_AUTH_THREADS;
+                queue = ConfigKeys.BULKHEAD_AUTH_QUEUE;
+                break;
+            default:
+                threads = ConfigKeys.BULKHEAD_STATIC_THREADS;
+                queue = ConfigKeys.BULKHEAD_STATIC_QUEUE;
+        }
+        return new Bulkhead(executionClass.configName(), config.get(threads), config.get(queue),
+                config.get(ConfigKeys.BULKHEAD_QUEUE_TIMEOUT_MS));
+    }
+
+    /**
+     * 在本类别的线程池中执行任务并等待结果。
+     *
+     * @throws BulkheadFullException 队列已满或排队超时
+     * @throws Exception             任务本身抛出的异常
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        long enqueuedAt = System.nanoTime();
+        // 任务开始执行与等待方放弃排队互斥：先置位者胜出
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = pool.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) return null; // 等待方已放弃
+                started.incrementAndGet();
+                queueWaitNanos.addAndGet(System.nanoTime() - enqueuedAt);
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new BulkheadFullException(name + " queue is full");
+        }
+        submitted.incrementAndGet();
+        try {
+            try {
+                return future.get(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 仍在排队则取消；已经开始执行的任务等它完成
+                if (claimed.compareAndSet(false, true)) {
+                    future.cancel(false);
+                    expired.incrementAndGet();
+                    throw new BulkheadFullException(name + " queue wait exceeded " + queueTimeoutMillis + " ms");
+                }
+                return future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get() + expired.get();
+    }
+
+    /**
+     * @return 已开始执行的任务的平均排队时间（毫秒）
+     */
+    public double getAverageQueueWaitMillis() {
+        long n = started.get();
+        return n == 0 ? 0 : queueWaitNanos.get() / (double) n / 1_000_000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Bulkhead{%s, active=%d/%d, queued=%d, submitted=%d, rejected=%d, expired=%d, "
+                        + "avgQueueWait=%.2fms}",
+                name, pool.getActiveCount(), pool.getMaximumPoolSize(), pool.getQueue().size(), submitted.get(),
+                rejected.get(), expired.get(), getAverageQueueWaitMillis());
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,15 @@
+package Server.dispatcher;
+
+/**
+ * 隔离舱繁忙异常：执行类别的队列已满，或任务排队超过截止时间仍未开始。
+ *
+ * 上层处理：返回 503 Service Unavailable + Retry-After，不影响其他类别的路由。
+ */
+public class BulkheadFullException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+package Server.dispatcher;
+
+/**
+ * 路由的执行类别 (Role C)
+ * 职责：把路由划分为互相隔离的几类，每类在各自的 {@link Bulkhead} 中执行。
+ */
+public enum ExecutionClass {
+    /** 等待外部 I/O 的路由（反向代理） */
+    IO("io"),
+    /** 静态资源与其他轻量路由 */
+    STATIC("static"),
+    /** 注册 / 登录 / 登出：口令哈希与用户存储写入，CPU 与磁盘开销大 */
+    AUTH("auth");
+
+    private final String configName;
+
+    ExecutionClass(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * @return 配置项中使用的名称（bulkhead.&lt;名称&gt;.threads）
+     */
+    public String configName() {
+        return configName;
+    }
+}
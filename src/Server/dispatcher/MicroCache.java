@@ -0,0 +1,346 @@
+package Server.dispatcher;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import common.HeaderName;
+import common.HttpHeaders;
+import common.HttpRequest;
+import common.HttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 动态响应的微缓存 (Role C)
+ * 职责：对配置的路径前缀下的 GET 响应做秒级缓存，并把同一个键上并发的未命中合并为一次计算。
+ *
+ * 设计说明：
+ *  - 键：方法 + URI + 选定的请求头（cache.vary-headers）的值
+ *  - 新鲜期（ttl）内直接返回缓存；过期但仍在 stale 窗口内时立即返回旧响应，同时在后台刷新
+ *    （stale-while-revalidate），同一个键同时只有一个刷新任务
+ *  - 单飞（single-flight）：未命中的键由第一个请求计算，其他并发请求等待同一个结果，
+ *    冷启动或过期时的惊群只会变成一次后端计算；等待超过 lockTimeout 时各自计算（不缓存等待方的结果）
+ *  - 只缓存 200/301/404 且不带 Set-Cookie、Cache-Control 不含 no-store/private 的响应；
+ *    携带 Authorization 的请求与需要登录的路由不经过缓存
+ *  - 流式响应体（如反向代理）不超过 maxBodyBytes 时读入内存后缓存，超出时原样透传不缓存
+ *  - 条目数达到上限时先清理彻底过期的条目，仍满则不再缓存新键
+ */
+public class MicroCache {
+
+    /** 读取上限之外的流式响应体时使用的探测大小 */
+    private static final int STREAM_READ_CHUNK = 16 * 1024;
+
+    /**
+     * 计算响应的路由函数。
+     */
+    public interface Loader {
+        HttpResponse load(HttpRequest request) throws Exception;
+    }
+
+    /** 缓存的响应（不可变） */
+    private static final class Entry {
+        final HttpResponse response;
+        final long freshUntil;
+        final long staleUntil;
+        final AtomicBoolean revalidating = new AtomicBoolean();
+
+        Entry(HttpResponse response, long freshUntil, long staleUntil) {
+            this.response = response;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+    }
+
+    /** 计算结果：response 为 null 表示不可缓存，等待方需要自己计算 */
+    private static final class Flight {
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+    }
+
+    private final String[] prefixes;
+    private final HeaderName[] varyHeaders;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final long lockTimeoutMillis;
+    private final int maxEntries;
+    private final int maxBodyBytes;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refresher;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param prefixes          需要缓存的路径前缀
+     * @param varyHeaders       参与缓存键的请求头
+     * @param ttlMillis         新鲜期
+     * @param staleMillis       新鲜期之后仍可返回旧响应并后台刷新的时长
+     * @param lockTimeoutMillis 等待同键计算结果的最长时间
+     * @param maxEntries        最大条目数
+     * @param maxBodyBytes      可缓存的最大响应体
+     */
+    public MicroCache(String[] prefixes, String[] varyHeaders, long ttlMillis, long staleMillis,
+                      long lockTimeoutMillis, int maxEntries, int maxBodyBytes) {
+        if (ttlMillis <= 0 || staleMillis < 0 || lockTimeoutMillis <= 0 || maxEntries <= 0 || maxBodyBytes < 0) {
+            throw new IllegalArgumentException("invalid micro cache settings");
+        }
+        this.prefixes = prefixes.clone();
+        this.varyHeaders = Arrays.stream(varyHeaders).map(HeaderName::of).toArray(HeaderName[]::new);
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.maxEntries = maxEntries;
+        this.maxBodyBytes = maxBodyBytes;
+        this.refresher = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(256),
+                r -> {
+                    Thread t = new Thread(r, "micro-cache-refresh");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 按配置创建；没有配置缓存路径时返回 null（不启用）。
+     */
+    public static MicroCache from(ServerConfig config) {
+        String[] prefixes = split(config.get(ConfigKeys.CACHE_PREFIXES));
+        if (prefixes.length == 0) return null;
+        return new MicroCache(prefixes,
+                split(config.get(ConfigKeys.CACHE_VARY_HEADERS)),
+                config.get(ConfigKeys.CACHE_TTL_MS),
+                config.get(ConfigKeys.CACHE_STALE_MS),
+                config.get(ConfigKeys.CACHE_LOCK_TIMEOUT_MS),
+                config.get(ConfigKeys.CACHE_MAX_ENTRIES),
+                config.get(ConfigKeys.CACHE_MAX_BODY_BYTES));
+    }
+
+    private static String[] split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    /**
+     * @return 请求是否走缓存（不带请求体的 GET、路径匹配、未携带 Authorization）
+     */
+    public boolean isCacheable(HttpRequest request) {
+        if (!"GET".equals(request.getMethod()) || request.getContentLength() > 0
+                || request.getHeader(HeaderName.AUTHORIZATION) != null) {
+            return false;
+        }
+        String path = request.getPath();
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 从缓存取响应，未命中时通过 loader 计算（同键并发请求只计算一次）。
+     * 返回的响应是副本，调用方可以随意修改头部。
+     */
+    public HttpResponse get(HttpRequest request, Loader loader) throws Exception {
+        String key = key(request);
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (now < entry.freshUntil) {
+                hits.incrementAndGet();
+                return copy(entry.response, "HIT");
+            }
+            if (now < entry.staleUntil) {
+                staleHits.incrementAndGet();
+                revalidate(key, entry, request, loader);
+                return copy(entry.response, "STALE");
+            }
+        }
+
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            // 同一个键正在计算：等待其结果
+            coalesced.incrementAndGet();
+            HttpResponse shared = await(existing);
+            if (shared != null) return copy(shared, "HIT");
+            return loader.load(request);
+        }
+        misses.incrementAndGet();
+        HttpResponse cached = null;
+        try {
+            HttpResponse response = loader.load(request);
+            cached = store(key, response);
+            return cached != null ? copy(cached, "MISS") : response;
+        } finally {
+            flights.remove(key, flight);
+            flight.result.complete(cached);
+        }
+    }
+
+    private HttpResponse await(Flight flight) throws InterruptedException {
+        try {
+            return flight.result.get(lockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 后台刷新过期条目（同一条目只提交一次）。请求对象属于连接且会被复用，这里复制一份只读请求。
+     */
+    private void revalidate(String key, Entry entry, HttpRequest request, Loader loader) {
+        if (!entry.revalidating.compareAndSet(false, true)) return;
+        HttpRequest copy = new HttpRequest(request.getMethod(), request.getUri(), request.getHttpVersion(),
+                new HttpHeaders(request.getHttpHeaders()), null);
+        copy.setRemoteAddress(request.getRemoteAddress());
+        try {
+            refresher.execute(() -> {
+                try {
+                    HttpResponse fresh = loader.load(copy);
+                    if (store(key, fresh) == null) {
+                        // 新响应不可缓存：保留旧条目直到 stale 窗口结束，期间不再刷新
+                        fresh.discardBodyStream();
+                    }
+                } catch (Exception e) {
+                    System.out.println("Micro cache refresh failed for " + key + ": " + e.getMessage());
+                    entry.revalidating.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.revalidating.set(false);
+        }
+    }
+
+    /**
+     * 可缓存时保存并返回缓存用的响应（流式响应体已读入内存），否则返回 null。
+     * 流式响应体超过上限时，已读出的部分会拼回原响应，调用方照常返回原响应。
+     */
+    private HttpResponse store(String key, HttpResponse response) throws IOException {
+        if (!isStorable(response)) return null;
+        if (response.isStreaming()) {
+            if (!readBounded(response)) return null;
+        } else if (response.getBodyLength() > maxBodyBytes) {
+            return null;
+        }
+        HttpResponse stored = new HttpResponse(response);
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            entries.values().removeIf(e -> e.staleUntil <= now);
+            if (entries.size() >= maxEntries) return null;
+        }
+        entries.put(key, new Entry(stored, now + ttlMillis, now + ttlMillis + staleMillis));
+        return stored;
+    }
+
+    private static boolean isStorable(HttpResponse response) {
+        int status = response.getStatusCode();
+        if (status != 200 && status != 301 && status != 404) return false;
+        if (response.getHeader("Set-Cookie") != null) return false;
+        String cacheControl = response.getHeader("Cache-Control");
+        if (cacheControl != null) {
+            String cc = cacheControl.toLowerCase();
+            if (cc.contains("no-store") || cc.contains("private") || cc.contains("no-cache")) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 把流式响应体读入内存，原响应改为内存中的响应体；超过上限时把已读部分与剩余的流重新拼接到原响应上，
+     * 返回 false。
+     */
+    private boolean readBounded(HttpResponse response) throws IOException {
+        long declared = response.getBodyStreamLength();
+        InputStream in = response.getBodyStream();
+        if (declared > maxBodyBytes) return false;
+        byte[] buf = new byte[declared >= 0 ? (int) declared : Math.min(maxBodyBytes + 1, STREAM_READ_CHUNK)];
+        int n = 0;
+        while (true) {
+            if (n == buf.length) {
+                if (declared >= 0 || n > maxBodyBytes) break;
+                buf = Arrays.copyOf(buf, Math.min(maxBodyBytes + 1, buf.length * 2));
+            }
+            int r = in.read(buf, n, buf.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        if (n > maxBodyBytes) {
+            response.setBodyStream(new SequenceInputStream(new ByteArrayInputStream(buf, 0, n), in), declared);
+            return false;
+        }
+        in.close();
+        response.setBody(n == buf.length ? buf : Arrays.copyOf(buf, n));
+        return true;
+    }
+
+    private String key(HttpRequest request) {
+        StringBuilder sb = new StringBuilder(request.getMethod()).append(' ').append(request.getUri());
+        for (HeaderName name : varyHeaders) {
+            String value = request.getHeader(name);
+            sb.append('\n').append(value == null ? "" : value);
+        }
+        return sb.toString();
+    }
+
+    private static HttpResponse copy(HttpResponse response, String status) {
+        HttpResponse copy = new HttpResponse(response);
+        copy.addHeader("X-Cache", status);
+        return copy;
+    }
+
+    /**
+     * 丢弃某个路径的所有缓存条目（不论查询串与 vary 头部取值），用于资源被上传替换之后。
+     */
+    public void invalidate(String path) {
+        String prefix = "GET " + path;
+        entries.keySet().removeIf(key -> {
+            if (!key.startsWith(prefix)) return false;
+            if (key.length() == prefix.length()) return true;
+            char next = key.charAt(prefix.length());
+            return next == '\n' || next == '?';
+        });
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 命中 / 过期命中 / 未命中 / 合并等待 次数
+     */
+    @Override
+    public String toString() {
+        return "MicroCache{entries=" + entries.size() + ", hits=" + hits + ", stale=" + staleHits
+                + ", misses=" + misses + ", coalesced=" + coalesced + "}";
+    }
+
+    /**
+     * 停止后台刷新线程。
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+        Iterator<Flight> it = flights.values().iterator();
+        while (it.hasNext()) {
+            it.next().result.complete(null);
+            it.remove();
+        }
+    }
+}
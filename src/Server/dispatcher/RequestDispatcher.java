@@ -1,7 +1,19 @@
 package Server.dispatcher;
 
+import Server.auth.AccessControlList;
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import Server.proxy.ProxyHandler;
+import Server.proxy.ProxySettings;
 import common.HttpRequest;
 import common.HttpResponse;
+import common.buffer.DirectBufferPool;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 角色 C：请求分发器
@@ -11,75 +23,162 @@ public class RequestDispatcher {
 
     private final StaticFileHandler fileHandler;
     private final UserAuthHandler authHandler;
+    /** 反向代理路由（按配置顺序匹配路径前缀） */
+    private final List<ProxyHandler> proxies;
+    /** 黑名单：用户名与 IP 网段 */
+    private final AccessControlList acl;
+    /** 需要登录会话才能访问的路径前缀（可热更新） */
+    private volatile String[] protectedPrefixes;
+    /** PUT 上传；未配置 upload.prefixes 时为 null */
+    private final UploadHandler uploadHandler;
+    /** 上传是否需要登录会话（可热更新） */
+    private volatile boolean uploadRequiresAuth;
+    /** 动态响应微缓存；未配置 cache.prefixes 时为 null */
+    private final MicroCache microCache;
+    /** 各执行类别的隔离舱；bulkhead.enabled=false 时为空，路由在连接线程上直接执行 */
+    private final Map<ExecutionClass, Bulkhead> bulkheads = new EnumMap<>(ExecutionClass.class);
+    /** 就绪状态：监听端口打开（且预热完成）后为 true，/ready 据此返回 200 或 503 */
+    private volatile boolean ready;
 
     public RequestDispatcher() {
-        this.fileHandler = new StaticFileHandler("res");
-        this.authHandler = new UserAuthHandler();
+        this(ServerConfig.defaults());
     }
 
-    public HttpResponse dispatch(HttpRequest request) {
-        String method = request.getMethod().toUpperCase();
-        String uri = request.getUri();
+    public RequestDispatcher(ServerConfig config) {
+        this.fileHandler = new StaticFileHandler(config.get(ConfigKeys.WEB_ROOT), config.get(ConfigKeys.STATIC_WATCH));
+        this.acl = AccessControlList.from(config);
+        this.authHandler = new UserAuthHandler(config, acl);
+        // 上游连接的写缓冲来自共享直接内存池
+        this.proxies = ProxyHandler.fromSettings(ProxySettings.from(config), DirectBufferPool.shared());
+        this.uploadHandler = UploadHandler.from(config, fileHandler);
+        this.microCache = MicroCache.from(config);
+        if (config.get(ConfigKeys.BULKHEAD_ENABLED)) {
+            for (ExecutionClass executionClass : ExecutionClass.values()) {
+                bulkheads.put(executionClass, Bulkhead.from(config, executionClass));
+            }
+        }
+        this.protectedPrefixes = parsePrefixes(config.get(ConfigKeys.PROTECTED_PREFIXES));
+        config.addListener(c -> protectedPrefixes = parsePrefixes(c.get(ConfigKeys.PROTECTED_PREFIXES)));
+        this.uploadRequiresAuth = config.get(ConfigKeys.UPLOAD_REQUIRE_AUTH);
+        config.addListener(c -> uploadRequiresAuth = c.get(ConfigKeys.UPLOAD_REQUIRE_AUTH));
+    }
 
-        try {
-            // 1. 处理 GET 请求
-            if ("GET".equals(method)) {
-                // 模拟重定向逻辑 (文档 Source 182)
-                if ("/old-page".equals(uri)) {
-                    HttpResponse response = new HttpResponse();
-                    response.setStatusCode(301);
-                    response.addHeader("Location", "/index.html");
-                    return response;
-                }else{
-                    if("/temp-page".equals(uri)){
-                        HttpResponse response = new HttpResponse();
-                        response.setStatusCode(302);
-                        response.addHeader("Location", "/index.html");
-                        return response;
-                    }
-                }
+    private static String[] parsePrefixes(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+    }
 
-                // 默认走静态资源处理 (文档 Source 180)
-                // 这里简单判断：如果是注册/登录的 API 路径则不走这里，其余都当静态文件
-                if (!"/register".equals(uri) && !"/login".equals(uri)) {
-                    return fileHandler.handle(request);
-                }else{
-                    HttpResponse response = new HttpResponse();
-                    response.setStatusCode(405);
+    private boolean isProtected(String uri) {
+        for (String prefix : protectedPrefixes) {
+            if (uri.startsWith(prefix)) return true;
+        }
+        return false;
+    }
 
-                    response.addHeader("Connection", "keep-alive");
-                    response.addHeader("Allow", "POST");
-                    response.setStringBody("405 Method Not Allowed<br>This API only supports POST requests");
-                    response.addHeader("Content-Type", "text/html; charset=UTF-8");
+    /**
+     * 是否需要登录会话：受保护路由，以及 upload.require-auth 开启时的上传请求。
+     */
+    private boolean requiresSession(HttpRequest request) {
+        return isProtected(request.getPath()) || (uploadRequiresAuth && isUpload(request));
+    }
 
-                    return response;
-                }
+    private ProxyHandler findProxy(String path) {
+        for (ProxyHandler proxy : proxies) {
+            if (proxy.matches(path)) return proxy;
+        }
+        return null;
+    }
+
+    /**
+     * 请求体是否应流式交给处理器（而不是先完整读入内存）：由 ConnectionHandler 在读完请求头后调用。
+     * 反向代理路由流式转发请求体，上传路由把请求体直接写入文件。
+     */
+    public boolean streamsRequestBody(HttpRequest request) {
+        return isProxied(request) || isUpload(request);
+    }
+
+    private boolean isProxied(HttpRequest request) {
+        return !proxies.isEmpty() && findProxy(request.getPath()) != null;
+    }
+
+    private boolean isUpload(HttpRequest request) {
+        return uploadHandler != null && uploadHandler.accepts(request);
+    }
+
+    /**
+     * 读取请求体之前的检查：由 ConnectionHandler 在回复 100 Continue 之前调用（Expect: 100-continue），
+     * 只依据请求行与头部判断请求是否一定会被拒绝 ——
+     * 未登录访问受保护路由或上传（401）或用户被封禁（403）、路由不接受请求体（404 / 405）、登录/注册超出限流（429）、
+     * 上传路径非法（403）或超出 upload.max-bytes（413）。
+     * 与 {@link #route} 的分支保持一致；反向代理路由由上游决定，总是放行。
+     *
+     * @return 拒绝响应（客户端不必发送请求体）；null 表示需要请求体
+     */
+    public HttpResponse checkBeforeBody(HttpRequest request) {
+        String method = request.getMethod().toUpperCase();
+        String uri = request.getPath();
+        if ("/ready".equals(uri)) return readiness();
+        if (isProxied(request)) return null;
+        if (requiresSession(request)) {
+            String user = authHandler.authenticate(request);
+            if (user == null) return unauthorized();
+            if (acl.isUserBlocked(user)) return forbidden();
+        }
+        if (isUpload(request)) return uploadHandler.checkBeforeBody(request);
+        if ("POST".equals(method)) {
+            if ("/register".equals(uri) || "/login".equals(uri) || "/logout".equals(uri)) {
+                return authHandler.checkBeforeBody(request);
             }
-            // 2. 处理 POST 请求 (注册/登录)
-            else if ("POST".equals(method)) {
-                if ("/register".equals(uri)) {
-                    return authHandler.register(request); // [cite: 187]
-                } else if ("/login".equals(uri)) {
-                    return authHandler.login(request);    // [cite: 189]
-                }else{
-                    HttpResponse response = new HttpResponse();
-                    response.setStatusCode(405);
+            return postNotAllowed();
+        }
+        if ("GET".equals(method) || "HEAD".equals(method)) return null;
+        return notFound();
+    }
+
+    /**
+     * 客户端地址是否被封禁：由 ConnectionHandler 在读取请求头与请求体之前调用
+     */
+    public boolean isAddressBlocked(InetAddress address) {
+        return acl.isAddressBlocked(address);
+    }
 
-                    response.addHeader("Connection", "keep-alive");
-                    response.addHeader("Allow", "POST");
-                    response.setStringBody("405 Method Not Allowed<br>This API only supports GET requests");
-                    response.addHeader("Content-Type", "text/html; charset=UTF-8");
+    /**
+     * 被封禁的客户端统一返回 403
+     */
+    public static HttpResponse forbidden() {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(403);
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        response.setStringBody("403 Forbidden<br>Access denied");
+        return response;
+    }
 
-                    return response;
+    public HttpResponse dispatch(HttpRequest request) {
+        String uri = request.getPath();
+        if ("/ready".equals(uri)) {
+            return readiness();
+        }
+
+        try {
+            // 0. 受保护路由与上传：先校验会话（一次会话表查询），未登录返回 401，已被封禁的用户返回 403
+            if (requiresSession(request)) {
+                String user = authHandler.authenticate(request);
+                if (user == null) {
+                    return unauthorized();
+                }
+                if (acl.isUserBlocked(user)) {
+                    return forbidden();
                 }
+            } else if (microCache != null && microCache.isCacheable(request)) {
+                // 微缓存：受保护路由的响应因人而异，不经过缓存
+                return microCache.get(request, this::execute);
             }
+            return execute(request);
 
-            // 3. 兜底：未匹配到任何路由，返回 404 或 405 [cite: 192]
-            HttpResponse response = new HttpResponse();
-            response.setStatusCode(404);
-            response.setStringBody("404 Not Found");
-            return response;
-
+        } catch (BulkheadFullException e) {
+            return serviceUnavailable(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             HttpResponse response = new HttpResponse();
@@ -88,4 +187,172 @@ public class RequestDispatcher {
             return response;
         }
     }
+
+    /**
+     * 路由的执行类别：反向代理与上传为 IO，注册/登录/登出为 AUTH，其余为 STATIC。
+     */
+    public ExecutionClass classify(HttpRequest request) {
+        String uri = request.getPath();
+        if (isProxied(request) || isUpload(request)) return ExecutionClass.IO;
+        if ("POST".equalsIgnoreCase(request.getMethod())
+                && ("/register".equals(uri) || "/login".equals(uri) || "/logout".equals(uri))) {
+            return ExecutionClass.AUTH;
+        }
+        return ExecutionClass.STATIC;
+    }
+
+    /**
+     * 在请求所属类别的隔离舱中执行路由。
+     */
+    private HttpResponse execute(HttpRequest request) throws Exception {
+        Bulkhead bulkhead = bulkheads.get(classify(request));
+        if (bulkhead == null) return route(request);
+        return bulkhead.call(() -> route(request));
+    }
+
+    /**
+     * @return 执行类别的隔离舱（未启用时为 null），用于查看统计
+     */
+    public Bulkhead getBulkhead(ExecutionClass executionClass) {
+        return bulkheads.get(executionClass);
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return 不超过 maxSize 的静态资源的请求路径（预热使用）
+     */
+    public List<String> getStaticPaths(long maxSize) {
+        return fileHandler.getIndexedPaths(maxSize);
+    }
+
+    /**
+     * 就绪探针：负载均衡器轮询，200 表示可以接收流量。
+     */
+    private HttpResponse readiness() {
+        HttpResponse response = new HttpResponse();
+        response.addHeader("Cache-Control", "no-store");
+        response.addHeader("Content-Type", "text/plain; charset=UTF-8");
+        if (ready) {
+            response.setStatusCode(200);
+            response.setStringBody("ready");
+        } else {
+            response.setStatusCode(503);
+            response.setStringBody("not ready");
+        }
+        return response;
+    }
+
+    private static HttpResponse serviceUnavailable(String reason) {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(503);
+        response.addHeader("Retry-After", "1");
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        response.setStringBody("503 Service Unavailable<br>" + reason);
+        return response;
+    }
+
+    private HttpResponse route(HttpRequest request) throws Exception {
+        String method = request.getMethod().toUpperCase();
+        String uri = request.getPath();
+
+        // 反向代理路由：任意方法原样转发给上游
+        ProxyHandler proxy = proxies.isEmpty() ? null : findProxy(uri);
+        if (proxy != null) {
+            return proxy.handle(request);
+        }
+
+        // 上传：请求体写入 web 根目录，成功后该路径的缓存响应立即失效
+        if (isUpload(request)) {
+            HttpResponse response = uploadHandler.handle(request);
+            if (microCache != null && response.getStatusCode() < 300) {
+                String raw = request.getUri();
+                int query = raw.indexOf('?');
+                microCache.invalidate(query < 0 ? raw : raw.substring(0, query));
+            }
+            return response;
+        }
+
+        // 1. 处理 GET / HEAD 请求（HEAD 与 GET 路由相同，响应体由连接层省略）
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            // 模拟重定向逻辑 (文档 Source 182)
+            if ("/old-page".equals(uri)) {
+                HttpResponse response = new HttpResponse();
+                response.setStatusCode(301);
+                response.addHeader("Location", "/index.html");
+                return response;
+            }else{
+                if("/temp-page".equals(uri)){
+                    HttpResponse response = new HttpResponse();
+                    response.setStatusCode(302);
+                    response.addHeader("Location", "/index.html");
+                    return response;
+                }
+            }
+
+            // 默认走静态资源处理 (文档 Source 180)
+            // 这里简单判断：如果是注册/登录的 API 路径则不走这里，其余都当静态文件
+            if (!"/register".equals(uri) && !"/login".equals(uri) && !"/logout".equals(uri)) {
+                return fileHandler.handle(request);
+            }else{
+                HttpResponse response = new HttpResponse();
+                response.setStatusCode(405);
+
+                response.addHeader("Connection", "keep-alive");
+                response.addHeader("Allow", "POST");
+                response.setStringBody("405 Method Not Allowed<br>This API only supports POST requests");
+                response.addHeader("Content-Type", "text/html; charset=UTF-8");
+
+                return response;
+            }
+        }
+        // 2. 处理 POST 请求 (注册/登录)
+        else if ("POST".equals(method)) {
+            if ("/register".equals(uri)) {
+                return authHandler.register(request); // [cite: 187]
+            } else if ("/login".equals(uri)) {
+                return authHandler.login(request);    // [cite: 189]
+            } else if ("/logout".equals(uri)) {
+                return authHandler.logout(request);
+            }else{
+                return postNotAllowed();
+            }
+        }
+
+        // 3. 兜底：未匹配到任何路由，返回 404 或 405 [cite: 192]
+        return notFound();
+    }
+
+    private static HttpResponse unauthorized() {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(401);
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        response.setStringBody("401 Unauthorized<br>Login required");
+        return response;
+    }
+
+    private static HttpResponse postNotAllowed() {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(405);
+
+        response.addHeader("Connection", "keep-alive");
+        response.addHeader("Allow", "POST");
+        response.setStringBody("405 Method Not Allowed<br>This API only supports GET requests");
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+
+        return response;
+    }
+
+    private static HttpResponse notFound() {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(404);
+        response.setStringBody("404 Not Found");
+        return response;
+    }
 }
\ No newline at end of file
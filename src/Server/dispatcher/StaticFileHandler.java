@@ -2,44 +2,67 @@ package Server.dispatcher;
 
 import common.HttpRequest;
 import common.HttpResponse;
-import utils.MimeTypes; // 确保 MimeTypes 工具类路径正确
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
 /**
  * 角色 C：静态资源处理器
- * 职责：处理文件读取、MIME 类型设置、304 缓存协商、405 方法校验、长连接支持
+ * 职责：处理文件读取、MIME 类型设置、304 缓存协商、Range 分段请求、405 方法校验、长连接支持
+ *
+ * 文件元数据（大小、MIME 类型、强 ETag、Last-Modified）来自启动时建立的 {@link StaticFileIndex}，
+ * 每个请求只做一次哈希查找，只有真正返回 200 / 206 时才读取文件内容；HEAD 请求只返回元数据。
+ *
+ * Range：只支持单个字节区间（bytes=a-b、bytes=a-、bytes=-n），返回 206 与 Content-Range，
+ * 区间与整个文件的内容都从文件通道按位置流式读出，不整体载入内存；多区间请求按普通 GET 返回整个文件；
+ * 带 If-Range 且与当前版本不一致时同样返回整个文件，避免客户端拼接出新旧混杂的内容。
  */
 public class StaticFileHandler {
 
-    private final String webRoot;
+    /** Range 头无法满足（起点超出文件大小） */
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final StaticFileIndex index;
 
     public StaticFileHandler(String webRoot) {
-        this.webRoot = webRoot;
+        this(webRoot, true);
+    }
+
+    /**
+     * @param watch 是否监听 web 根目录的变化并保持索引最新
+     */
+    public StaticFileHandler(String webRoot, boolean watch) {
+        try {
+            this.index = new StaticFileIndex(webRoot, watch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to index web root " + webRoot, e);
+        }
     }
 
     public HttpResponse handle(HttpRequest request) {
         HttpResponse response = new HttpResponse();
 
         // ========== 新增：1. 请求方法校验（核心405逻辑） ==========
-        // 静态资源仅支持 GET 方法，其他方法直接返回 405
-        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+        // 静态资源仅支持 GET / HEAD 方法，其他方法直接返回 405
+        boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+        if (!head && !"GET".equalsIgnoreCase(request.getMethod())) {
             response.setStatusCode(405);
-            response.addHeader("Allow", "GET"); // HTTP规范：标识支持的方法
+            response.addHeader("Allow", "GET, HEAD"); // HTTP规范：标识支持的方法
             response.addHeader("Connection", "keep-alive"); // 长连接支持
             response.setStringBody("<h1>405 Method Not Allowed</h1><p>Static resources only support GET method</p>");
             return response;
         }
 
         // ========== 原有逻辑：安全检查和路径拼接 ==========
-        // 防止路径遍历攻击 (e.g. ../../etc/passwd)
-        if (request.getUri().contains("..")) {
+        // 防止路径遍历攻击 (e.g. ../../etc/passwd)，对解码后的路径检查，%2e%2e 同样被拦截
+        String path = request.getPath();
+        if (path.contains("..")) {
             response.setStatusCode(403);
             response.addHeader("Connection", "keep-alive");
             response.setStringBody("<h1>403 Forbidden</h1><p>Path traversal is not allowed</p>");
@@ -47,25 +70,20 @@ public class StaticFileHandler {
         }
 
         // 默认访问 index.html
-        String relPath = request.getUri().equals("/") ? "/index.html" : request.getUri();
-        File file = new File(webRoot, relPath);
+        String relPath = path.equals("/") ? "/index.html" : path;
+        StaticFileIndex.Entry entry = index.lookup(relPath);
 
-        // ========== 原有逻辑：文件不存在处理 ==========
-        if (!file.exists() || !file.isFile()) {
+        // ========== 文件不存在处理：未被索引的路径一律 404，不访问磁盘 ==========
+        if (entry == null) {
             response.setStatusCode(404);
             response.addHeader("Connection", "keep-alive");
             response.setStringBody("<h1>404 File Not Found</h1><p>Resource " + relPath + " not found</p>");
             return response;
         }
 
-        // ========== 原有逻辑：准备缓存元数据 ==========
-        long lastModified = file.lastModified();
-        String etag = "W/\"" + lastModified + "-" + file.length() + "\""; // 简单生成 ETag
-
-        // 日期格式化为 HTTP 标准格式 (GMT)
-        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-        String lastModifiedStr = dateFormat.format(new Date(lastModified));
+        // ========== 缓存元数据：强 ETag 与 Last-Modified 均已预先计算 ==========
+        String etag = entry.getEtag();
+        String lastModifiedStr = entry.getLastModified();
 
         // ========== 原有逻辑：304 缓存校验逻辑 ==========
         String ifNoneMatch = request.getHeader("If-None-Match");
@@ -73,9 +91,9 @@ public class StaticFileHandler {
 
         boolean notModified = false;
 
-        // 优先检查 ETag
-        if (ifNoneMatch != null && ifNoneMatch.equals(etag)) {
-            notModified = true;
+        // 优先检查 ETag（可能是逗号分隔的列表或 "*"）
+        if (ifNoneMatch != null) {
+            notModified = matchesEtag(ifNoneMatch, etag);
         }
         // 其次检查 Last-Modified
         else if (ifModifiedSince != null && ifModifiedSince.equals(lastModifiedStr)) {
@@ -91,23 +109,65 @@ public class StaticFileHandler {
             return response;
         }
 
-        // ========== 原有逻辑：返回 200 和文件内容（完善版） ==========
+        // ========== Range：单区间返回 206，超出文件大小返回 416 ==========
+        long[] range = null;
+        String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null && ifRangeMatches(request.getHeader("If-Range"), etag, lastModifiedStr)) {
+            range = parseRange(rangeHeader, entry.getSize());
+        }
+        if (range == UNSATISFIABLE) {
+            response.setStatusCode(416);
+            response.addHeader("Connection", "keep-alive");
+            response.addHeader("Content-Range", "bytes */" + entry.getSize());
+            response.addHeader("Accept-Ranges", "bytes");
+            response.setBody(null);
+            return response;
+        }
+
+        // ========== 原有逻辑：返回 200 / 206 和文件内容（完善版） ==========
         try {
-            byte[] content = Files.readAllBytes(file.toPath());
-            response.setStatusCode(200);
-            response.setBody(content);
+            if (range != null) {
+                long length = range[1] - range[0] + 1;
+                response.setStatusCode(206);
+                response.addHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + entry.getSize());
+                if (head) {
+                    response.addHeader("Content-Length", String.valueOf(length));
+                } else {
+                    FileChannel channel = FileChannel.open(entry.getPath(), StandardOpenOption.READ);
+                    response.setBodyStream(new FileRangeInputStream(channel, range[0], length), length);
+                }
+            } else if (head) {
+                response.setStatusCode(200);
+                response.addHeader("Content-Length", String.valueOf(entry.getSize()));
+            } else {
+                // 整个文件同样从文件通道流式读出，大小以打开时为准（写入总是先写临时文件再改名，打开后内容不变）
+                FileChannel channel = FileChannel.open(entry.getPath(), StandardOpenOption.READ);
+                long size;
+                try {
+                    size = channel.size();
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+                response.setStatusCode(200);
+                response.setBodyStream(new FileRangeInputStream(channel, 0, size), size);
+            }
 
             // 设置 MIME 类型（至少支持 text/html、text/css、image/png 三种）
-            String contentType = MimeTypes.getContentType(file.getName());
-            response.addHeader("Content-Type", contentType);
-            // 设置内容长度
-            response.addHeader("Content-Length", String.valueOf(content.length));
+            response.addHeader("Content-Type", entry.getContentType());
+            response.addHeader("Accept-Ranges", "bytes");
             // 长连接支持
             response.addHeader("Connection", "keep-alive");
             // 缓存头
             response.addHeader("ETag", etag);
             response.addHeader("Last-Modified", lastModifiedStr);
 
+        } catch (NoSuchFileException e) {
+            // 文件刚被删除，监听线程还没来得及更新索引
+            index.evict(relPath, entry);
+            response.setStatusCode(404);
+            response.addHeader("Connection", "keep-alive");
+            response.setStringBody("<h1>404 File Not Found</h1><p>Resource " + relPath + " not found</p>");
         } catch (IOException e) {
             e.printStackTrace();
             response.setStatusCode(500);
@@ -117,4 +177,149 @@ public class StaticFileHandler {
 
         return response;
     }
-}
\ No newline at end of file
+
+    /**
+     * If-None-Match 使用弱比较（RFC 7232 2.3.2）：忽略 W/ 前缀后比较引号内的值。
+     */
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        String trimmed = ifNoneMatch.trim();
+        if (trimmed.equals("*")) return true;
+        for (String candidate : trimmed.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * If-Range 只接受强校验器：ETag 完全相同，或 HTTP 日期与 Last-Modified 相同。没有 If-Range 时视为匹配。
+     */
+    private static boolean ifRangeMatches(String ifRange, String etag, String lastModified) {
+        if (ifRange == null) return true;
+        String value = ifRange.trim();
+        if (value.startsWith("W/")) return false;
+        return value.startsWith("\"") ? value.equals(etag) : value.equals(lastModified);
+    }
+
+    /**
+     * 解析单区间 Range 头。
+     *
+     * @return {起点, 终点}（含终点）；{@link #UNSATISFIABLE} 表示区间在文件之外；
+     *         null 表示忽略该头部（格式错误、多区间或非 bytes 单位），按普通 GET 处理
+     */
+    static long[] parseRange(String header, long size) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, "bytes=", 0, 6)) return null;
+        String spec = value.substring(6).trim();
+        if (spec.indexOf(',') >= 0) return null;
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 后缀区间：最后 n 个字节
+                if (last.isEmpty()) return null;
+                long n = Long.parseLong(last);
+                if (n <= 0) return UNSATISFIABLE;
+                start = Math.max(0, size - n);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = size - 1;
+                } else {
+                    long lastByte = Long.parseLong(last);
+                    if (lastByte < start) return null;
+                    end = Math.min(lastByte, size - 1);
+                }
+            }
+            if (start < 0) return null;
+            if (start >= size) return UNSATISFIABLE;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按位置读取文件的一个区间，关闭时关闭文件通道。
+     */
+    private static final class FileRangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        FileRangeInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n < 0) throw new IOException("File shrank while serving a range");
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param maxSize 文件大小上限
+     * @return web 根目录下不超过 maxSize 的已索引文件的请求路径（预热使用）
+     */
+    public List<String> getIndexedPaths(long maxSize) {
+        List<String> paths = index.paths();
+        paths.removeIf(p -> {
+            StaticFileIndex.Entry entry = index.lookup(p);
+            return entry == null || entry.getSize() > maxSize;
+        });
+        return paths;
+    }
+
+    /**
+     * @return web 根目录的真实路径
+     */
+    public java.nio.file.Path getWebRoot() {
+        return index.getRoot();
+    }
+
+    /**
+     * 文件被替换后立即更新该路径的元数据（大小、ETag、Last-Modified）。
+     */
+    public void refresh(String requestPath) {
+        index.refresh(requestPath);
+    }
+
+    /**
+     * @return 路径当前的 ETag；未被索引时为 null
+     */
+    public String getEtag(String requestPath) {
+        StaticFileIndex.Entry entry = index.lookup(requestPath);
+        return entry == null ? null : entry.getEtag();
+    }
+
+    /**
+     * 停止索引的目录监听。
+     */
+    public void close() {
+        index.close();
+    }
+}
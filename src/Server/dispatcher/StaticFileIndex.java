@@ -0,0 +1,330 @@
+package Server.dispatcher;
+
+import utils.MimeTypes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 静态资源索引 (Role C)
+ * 职责：启动时遍历 web 根目录，把规范化的请求路径（如 "/css/app.css"）映射到预先计算好的文件元数据。
+ *
+ * 设计说明：
+ *  - 每个条目保存真实路径、大小、MIME 类型、基于内容 SHA-256 的强 ETag 与格式化好的 Last-Modified；
+ *    查找只是一次哈希表探测，不做任何系统调用，未知路径的 404 也不会访问磁盘
+ *  - 只索引真实路径位于根目录之内的普通文件：符号链接指向根目录之外的文件不会出现在索引中，
+ *    任何不在索引中的路径（包括 "..", "%2e%2e" 之类的穿越尝试）都无法被访问
+ *  - 后台线程通过 WatchService 监听各级目录：文件新建/修改时重新计算该文件的条目，删除时移除，
+ *    新建目录时注册并索引其内容；事件溢出时原地重新扫描整个根目录并清理已消失的路径（重建期间查找不受影响）
+ *  - 条目不可变，更新时整体替换，读者无需加锁
+ *  - 上传中的临时文件（以 {@link #UPLOAD_TEMP_PREFIX} 开头）不建立索引，写入过程中的修改事件也不会触发重复哈希
+ */
+public class StaticFileIndex implements AutoCloseable {
+
+    /** 上传临时文件的文件名前缀：写完后原子改名为目标文件，之前不可被访问 */
+    public static final String UPLOAD_TEMP_PREFIX = ".upload-";
+
+    /**
+     * 单个文件的预计算元数据（不可变）。
+     */
+    public static final class Entry {
+        private final Path path;
+        private final long size;
+        private final String contentType;
+        private final String etag;
+        private final long lastModifiedMillis;
+        private final String lastModified;
+
+        Entry(Path path, long size, String contentType, String etag, long lastModifiedMillis, String lastModified) {
+            this.path = path;
+            this.size = size;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.lastModified = lastModified;
+        }
+
+        /** @return 文件的真实路径 */
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /** @return 强 ETag（含双引号），内容不变则不变 */
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getLastModifiedMillis() {
+            return lastModifiedMillis;
+        }
+
+        /** @return HTTP 日期格式的最后修改时间 */
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    private final Path root;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * 建立索引（同步完成，返回时索引已就绪）。
+     *
+     * @param webRoot web 根目录
+     * @param watch   是否在后台监听目录变化并保持索引最新
+     */
+    public StaticFileIndex(String webRoot, boolean watch) throws IOException {
+        this.root = Path.of(webRoot).toRealPath();
+        if (watch) {
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+        long start = System.nanoTime();
+        indexTree(root);
+        System.out.println("Indexed " + entries.size() + " static files under " + root + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        if (watch) {
+            watcher = new Thread(this::watchLoop, "static-index-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * 查找请求路径对应的文件。
+     *
+     * @param requestPath 已解码的请求路径，以 "/" 开头
+     * @return 条目，不存在时返回 null
+     */
+    public Entry lookup(String requestPath) {
+        return entries.get(requestPath);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 当前索引中所有请求路径的快照
+     */
+    public List<String> paths() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * @return web 根目录的真实路径
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 立即重新计算某个请求路径的条目（文件被上传替换后调用，不等待监听线程）；文件已不存在时移除条目。
+     *
+     * @param requestPath 规范化的请求路径，以 "/" 开头且位于根目录之内
+     */
+    public void refresh(String requestPath) {
+        indexFile(root.resolve(requestPath.substring(1)));
+    }
+
+    /**
+     * 文件在读取时已经消失（监听线程尚未处理删除事件）：立即从索引中移除。
+     */
+    public void evict(String requestPath, Entry stale) {
+        entries.remove(requestPath, stale);
+    }
+
+    /**
+     * 停止监听线程。
+     */
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // ========== 建立与更新索引 ==========
+
+    /**
+     * 重新扫描整个根目录并覆盖已有条目，最后清理本次扫描未遇到的路径（不先清空索引，重建期间不会出现 404）。
+     */
+    private void reindex() {
+        Set<String> seen = new HashSet<>();
+        indexTree(root, seen);
+        for (String key : paths()) {
+            // 扫描期间新上传的文件同样不在 seen 中：按文件系统的当前状态决定保留还是移除
+            if (!seen.contains(key)) indexFile(root.resolve(key.substring(1)));
+        }
+    }
+
+    private void indexTree(Path dir) {
+        indexTree(dir, null);
+    }
+
+    /**
+     * @param seen 不为 null 时记录遇到的文件的请求路径
+     */
+    private void indexTree(Path dir, Set<String> seen) {
+        List<Path> children = new ArrayList<>();
+        registerDir(dir);
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.forEach(children::add);
+        } catch (IOException e) {
+            System.err.println("Failed to list " + dir + ": " + e.getMessage());
+            return;
+        }
+        for (Path child : children) {
+            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                indexTree(child, seen);
+            } else {
+                indexFile(child);
+                if (seen != null) seen.add(requestPath(child));
+            }
+        }
+    }
+
+    private void registerDir(Path dir) {
+        if (watchService == null) return;
+        try {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirs.put(key, dir);
+        } catch (IOException e) {
+            System.err.println("Failed to watch " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 计算单个文件的条目；文件已不存在、不是普通文件或真实路径位于根目录之外时移除条目。
+     */
+    private void indexFile(Path file) {
+        if (file.getFileName() != null && file.getFileName().toString().startsWith(UPLOAD_TEMP_PREFIX)) return;
+        String key = requestPath(file);
+        try {
+            Path real = file.toRealPath();
+            if (!real.startsWith(root) || !Files.isRegularFile(real)) {
+                entries.remove(key);
+                return;
+            }
+            long lastModified = Files.getLastModifiedTime(real).toMillis();
+            long size = Files.size(real);
+            String etag = contentHash(real);
+            entries.put(key, new Entry(real, size, MimeTypes.getContentType(real.getFileName().toString()),
+                    etag, lastModified, formatHttpDate(lastModified)));
+        } catch (IOException e) {
+            entries.remove(key);
+        }
+    }
+
+    private void removeTree(Path path) {
+        String prefix = requestPath(path);
+        entries.remove(prefix);
+        entries.keySet().removeIf(k -> k.startsWith(prefix + "/"));
+    }
+
+    /**
+     * 文件系统路径转为请求路径：相对根目录，分隔符统一为 "/"。
+     */
+    private String requestPath(Path file) {
+        StringBuilder sb = new StringBuilder();
+        for (Path part : root.relativize(file)) {
+            sb.append('/').append(part);
+        }
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    private static String contentHash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        // 取前 128 位即可保证唯一性，ETag 更短
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(34).append('"');
+        for (int i = 0; i < 16; i++) sb.append(String.format("%02x", hash[i]));
+        return sb.append('"').toString();
+    }
+
+    static String formatHttpDate(long millis) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return dateFormat.format(new Date(millis));
+    }
+
+    // ========== 目录监听 ==========
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // 丢失了事件：原地重建，重建期间查找照常命中
+                    reindex();
+                    continue;
+                }
+                if (dir == null) continue;
+                Path child = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    removeTree(child);
+                } else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) indexTree(child);
+                } else {
+                    indexFile(child);
+                }
+            }
+            if (!key.reset()) {
+                // 目录已被删除
+                watchedDirs.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package Server.dispatcher;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import common.HttpRequest;
+import common.HttpResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 角色 C：上传处理器（PUT）
+ * 职责：把请求体写入 web 根目录下的文件，写完后立即对 GET 可见
+ *
+ * 说明：
+ *  - 只接受 upload.prefixes 列出的路径前缀；请求体由 ConnectionHandler 流式交给本处理器，不在内存中聚合，
+ *    也不受 limits.max-body-size 限制（上限为 upload.max-bytes）
+ *  - 请求体经 {@link FileChannel#transferFrom} 写入同目录的临时文件（{@link StaticFileIndex#UPLOAD_TEMP_PREFIX}），
+ *    写满 Content-Length 后原子改名为目标文件：读者要么看到旧文件，要么看到完整的新文件
+ *  - 改名后立即刷新静态文件索引中该路径的元数据（大小、ETag），微缓存由 {@link RequestDispatcher} 失效
+ *  - 连接中断或超时时删除临时文件，目标文件保持不变
+ *  - 创建缺失的上级目录之前先解析最近一个已存在的上级目录的真实路径，经符号链接逃出 web 根目录的路径返回 403
+ */
+public class UploadHandler {
+
+    private final StaticFileHandler files;
+    private final String[] prefixes;
+    private volatile long maxBytes;
+
+    public UploadHandler(StaticFileHandler files, String[] prefixes, long maxBytes) {
+        this.files = files;
+        this.prefixes = prefixes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return 未配置 upload.prefixes 时返回 null（不接受上传）
+     */
+    public static UploadHandler from(ServerConfig config, StaticFileHandler files) {
+        String[] prefixes = Arrays.stream(config.get(ConfigKeys.UPLOAD_PREFIXES).split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+        if (prefixes.length == 0) return null;
+        UploadHandler handler = new UploadHandler(files, prefixes, config.get(ConfigKeys.UPLOAD_MAX_BYTES));
+        config.addListener(c -> handler.maxBytes = c.get(ConfigKeys.UPLOAD_MAX_BYTES));
+        return handler;
+    }
+
+    /**
+     * @return 是否为本处理器负责的上传请求（PUT 且路径匹配上传前缀）
+     */
+    public boolean accepts(HttpRequest request) {
+        if (!"PUT".equalsIgnoreCase(request.getMethod())) return false;
+        String path = request.getPath();
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取请求体之前的检查（Expect: 100-continue 时决定是否让客户端发送请求体）。
+     *
+     * @return 拒绝响应；null 表示可以接收请求体
+     */
+    public HttpResponse checkBeforeBody(HttpRequest request) {
+        if (resolve(request.getPath()) == null) {
+            return error(403, "403 Forbidden<br>Invalid upload path");
+        }
+        if (request.getContentLength() > maxBytes) {
+            return error(413, "413 Content Too Large<br>Uploads are limited to " + maxBytes + " bytes");
+        }
+        return null;
+    }
+
+    public HttpResponse handle(HttpRequest request) {
+        HttpResponse rejected = checkBeforeBody(request);
+        if (rejected != null) return rejected;
+        String path = request.getPath();
+        Path target = resolve(path);
+        if (Files.isDirectory(target)) {
+            return error(409, "409 Conflict<br>" + path + " is a directory");
+        }
+
+        long length = request.getContentLength();
+        Path temp = null;
+        try {
+            // 先检查最近一个已存在的上级目录的真实路径：经符号链接指向根目录之外时不创建任何目录
+            if (!insideRoot(nearestExisting(target.getParent()))) {
+                return error(403, "403 Forbidden<br>Invalid upload path");
+            }
+            Path parent = Files.createDirectories(target.getParent());
+            if (!insideRoot(parent)) {
+                return error(403, "403 Forbidden<br>Invalid upload path");
+            }
+            boolean existed = Files.exists(target);
+            temp = Files.createTempFile(parent, StaticFileIndex.UPLOAD_TEMP_PREFIX, ".tmp");
+            try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                // 非文件通道的来源由 JDK 经固定大小的缓冲拷贝，内存占用与文件大小无关
+                ReadableByteChannel body = Channels.newChannel(request.getBodyStream());
+                long position = 0;
+                while (position < length) {
+                    long n = file.transferFrom(body, position, length - position);
+                    if (n <= 0) throw new EOFException((length - position) + " bytes of upload body missing");
+                    position += n;
+                }
+                file.force(false);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+            files.refresh(path);
+
+            HttpResponse response = new HttpResponse();
+            if (existed) {
+                response.setStatusCode(204);
+            } else {
+                response.setStatusCode(201);
+                String uri = request.getUri();
+                int query = uri.indexOf('?');
+                response.addHeader("Location", query < 0 ? uri : uri.substring(0, query));
+                response.addHeader("Content-Type", "text/plain; charset=UTF-8");
+                response.setStringBody("201 Created");
+            }
+            String etag = files.getEtag(path);
+            if (etag != null) response.addHeader("ETag", etag);
+            return response;
+        } catch (IOException e) {
+            System.out.println("Upload of " + path + " failed: " + e.getMessage());
+            return error(500, "500 Internal Server Error<br>Upload failed");
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 请求路径转为 web 根目录下的目标文件；路径穿越、目录路径或落在根目录之外时返回 null。
+     */
+    private Path resolve(String path) {
+        if (path.contains("..") || path.endsWith("/") || path.indexOf('\0') >= 0) return null;
+        Path root = files.getWebRoot();
+        Path target = root.resolve(path.substring(1)).normalize();
+        if (!target.startsWith(root) || target.equals(root)) return null;
+        if (target.getFileName().toString().startsWith(StaticFileIndex.UPLOAD_TEMP_PREFIX)) return null;
+        return target;
+    }
+
+    private static Path nearestExisting(Path dir) {
+        Path existing = dir;
+        while (existing != null && !Files.exists(existing)) existing = existing.getParent();
+        return existing;
+    }
+
+    /**
+     * 目录解析符号链接后的真实路径是否仍在 web 根目录之内（检查与创建之间被替换成链接的情况由创建后的再次检查兜底）。
+     */
+    private boolean insideRoot(Path dir) throws IOException {
+        return dir != null && dir.toRealPath().startsWith(files.getWebRoot());
+    }
+
+    private static HttpResponse error(int status, String message) {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(status);
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        response.setStringBody(message);
+        return response;
+    }
+}
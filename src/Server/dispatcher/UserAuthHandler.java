@@ -1,31 +1,76 @@
 package Server.dispatcher;
 
+import Server.auth.AccessControlList;
+import Server.auth.AuthBusyException;
+import Server.auth.CredentialVerifier;
+import Server.auth.SessionStore;
+import Server.auth.UserStore;
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
 import common.HttpRequest;
 import common.HttpResponse;
+import utils.RateLimiter;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Collections;
-import java.util.Set;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * 角色 C：用户认证处理器
- * 新增：黑名单机制，黑名单用户登录返回 403 Forbidden
+ * 新增：黑名单机制，黑名单用户登录返回 403 Forbidden（黑名单由 AccessControlList 从文件加载，支持热更新）
+ * 新增：口令以加盐 PBKDF2 哈希保存，哈希计算在专用有界线程池中执行，繁忙时返回 503
+ * 新增：登录成功签发会话 Cookie，受保护路由只需一次会话表查询即可完成认证
+ * 新增：按客户端 IP 与用户名限流，超限返回 429，在解析请求体与校验口令之前拒绝
  */
 public class UserAuthHandler {
 
-    // 内存数据库（线程安全）
-    private final Map<String, String> userDatabase = new ConcurrentHashMap<>();
+    /** 会话 Cookie 名称 */
+    public static final String SESSION_COOKIE = "SID";
 
-    // 黑名单用户列表（不可变集合，支持动态添加）
-    private final Set<String> blacklist = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // 用户数据库（线程安全）：用户名 -> 口令哈希，默认持久化到追加日志 + 快照
+    private final UserStore userDatabase;
+
+    // 口令哈希与校验（独立线程池 + 成功结果短期缓存）
+    private final CredentialVerifier verifier;
+
+    // 会话表（分段加锁 + 时间轮过期）
+    private final SessionStore sessions;
+
+    // 限流：每个 IP 的登录/注册请求数；每个用户名的登录失败次数
+    private final RateLimiter ipLimiter;
+    private final RateLimiter userLimiter;
+
+    // 黑名单（用户名 + IP 网段，布隆过滤器预筛，快照整体替换）
+    private final AccessControlList acl;
 
-    // 初始化黑名单（可手动添加测试用户）
     public UserAuthHandler() {
-        // 预添加测试黑名单用户
-        blacklist.add("blackuser");
-        blacklist.add("test_black");
+        this(ServerConfig.defaults());
+    }
+
+    public UserAuthHandler(ServerConfig config) {
+        this(config, AccessControlList.from(config));
+    }
+
+    // 黑名单由调用方提供（RequestDispatcher 与本处理器共用同一份）
+    public UserAuthHandler(ServerConfig config, AccessControlList acl) {
+        this.acl = acl;
+        this.verifier = new CredentialVerifier(config);
+        this.sessions = new SessionStore(config.get(ConfigKeys.SESSION_TTL_MS),
+                config.get(ConfigKeys.SESSION_STRIPES), config.get(ConfigKeys.SESSION_TICK_MS));
+        config.addListener(c -> sessions.setTtlMillis(c.get(ConfigKeys.SESSION_TTL_MS)));
+        int maxKeys = config.get(ConfigKeys.RATE_MAX_KEYS);
+        this.ipLimiter = new RateLimiter(config.get(ConfigKeys.RATE_IP_PER_MINUTE),
+                config.get(ConfigKeys.RATE_IP_BURST), maxKeys, 10_000, "auth-ip-limiter");
+        this.userLimiter = new RateLimiter(config.get(ConfigKeys.RATE_USER_PER_MINUTE),
+                config.get(ConfigKeys.RATE_USER_BURST), maxKeys, 10_000, "auth-user-limiter");
+        config.addListener(c -> {
+            ipLimiter.setRate(c.get(ConfigKeys.RATE_IP_PER_MINUTE), c.get(ConfigKeys.RATE_IP_BURST));
+            userLimiter.setRate(c.get(ConfigKeys.RATE_USER_PER_MINUTE), c.get(ConfigKeys.RATE_USER_BURST));
+        });
+        try {
+            this.userDatabase = UserStore.open(config);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open user store", e);
+        }
     }
 
     /**
@@ -36,7 +81,7 @@ public class UserAuthHandler {
         response.addHeader("Connection", "keep-alive");
         response.addHeader("Content-Type", "text/html; charset=UTF-8");
 
-        String uri = request.getUri();
+        String uri = request.getPath();
         String method = request.getMethod();
 
         // 注册接口处理
@@ -82,13 +127,36 @@ public class UserAuthHandler {
     }
 
     /**
-     * 注册逻辑（无修改）
+     * 读取请求体之前的检查（Expect: 100-continue）：注册/登录已超出 IP 限流时直接返回 429，不再接收请求体。
+     * 只检查不消耗令牌，放行后仍由 register / login 扣减。
+     *
+     * @return 拒绝响应；null 表示放行
+     */
+    public HttpResponse checkBeforeBody(HttpRequest request) {
+        String uri = request.getPath();
+        if (!"/register".equals(uri) && !"/login".equals(uri)) return null;
+        long waitMillis = ipLimiter.check(request.getRemoteAddress());
+        if (waitMillis <= 0) return null;
+        HttpResponse response = new HttpResponse();
+        response.addHeader("Connection", "keep-alive");
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        return tooManyRequests(response, waitMillis);
+    }
+
+    /**
+     * 注册逻辑（口令哈希后保存）
      */
     public HttpResponse register(HttpRequest request) {
         HttpResponse response = new HttpResponse();
         response.addHeader("Connection", "keep-alive");
         response.addHeader("Content-Type", "text/html; charset=UTF-8");
 
+        // 先按 IP 限流：只需一次 CAS，放在解析请求体之前
+        long waitMillis = ipLimiter.tryAcquire(request.getRemoteAddress());
+        if (waitMillis > 0) {
+            return tooManyRequests(response, waitMillis);
+        }
+
         String[] credentials = parseBody(request);
         if (credentials == null) {
             response.setStatusCode(400);
@@ -104,11 +172,32 @@ public class UserAuthHandler {
             return response;
         }
 
-        if (userDatabase.containsKey(username)) {
+        if (userDatabase.contains(username)) {
+            response.setStatusCode(409);
+            response.setStringBody("409 Conflict<br>User already exists");
+            return response;
+        }
+
+        String passwordHash;
+        try {
+            passwordHash = verifier.hash(password);
+        } catch (AuthBusyException e) {
+            return serviceBusy(response);
+        }
+        // 哈希期间可能有并发注册同名用户，以 putIfAbsent 的结果为准（返回时记录已落盘）
+        boolean added;
+        try {
+            added = userDatabase.putIfAbsent(username, passwordHash);
+        } catch (IOException e) {
+            e.printStackTrace();
+            response.setStatusCode(500);
+            response.setStringBody("500 Internal Server Error<br>Register failed: cannot persist user");
+            return response;
+        }
+        if (!added) {
             response.setStatusCode(409);
             response.setStringBody("409 Conflict<br>User already exists");
         } else {
-            userDatabase.put(username, password);
             response.setStatusCode(200);
             response.setStringBody("200 OK<br>Register Success");
         }
@@ -123,6 +212,12 @@ public class UserAuthHandler {
         response.addHeader("Connection", "keep-alive");
         response.addHeader("Content-Type", "text/html; charset=UTF-8");
 
+        // 先按 IP 限流：只需一次 CAS，放在解析请求体之前
+        long waitMillis = ipLimiter.tryAcquire(request.getRemoteAddress());
+        if (waitMillis > 0) {
+            return tooManyRequests(response, waitMillis);
+        }
+
         String[] credentials = parseBody(request);
         if (credentials == null) {
             response.setStatusCode(400);
@@ -138,32 +233,113 @@ public class UserAuthHandler {
             return response;
         }
 
+        // 用户名限流：失败次数超限的账户在口令校验（PBKDF2）之前即被拒绝
+        waitMillis = userLimiter.check(username);
+        if (waitMillis > 0) {
+            return tooManyRequests(response, waitMillis);
+        }
+
         // ========== 核心新增：黑名单校验 ==========
-        if (blacklist.contains(username)) {
+        if (acl.isUserBlocked(username)) {
             response.setStatusCode(403); // 403 禁止访问（区别于 401 密码错误）
             response.setStringBody("403 Forbidden<br>User " + username + " is in blacklist, login denied");
             return response;
         }
 
-        // 原有密码校验逻辑
-        String storedPwd = userDatabase.get(username);
-        if (storedPwd != null && storedPwd.equals(password)) {
+        // 口令校验（哈希比较，常量时间）
+        boolean verified;
+        try {
+            verified = verifier.verify(username, password, userDatabase.get(username));
+        } catch (AuthBusyException e) {
+            return serviceBusy(response);
+        }
+        if (verified) {
+            // 签发会话令牌：后续请求携带 Cookie 即可，无需重复提交口令
+            SessionStore.Session session = sessions.create(username);
             response.setStatusCode(200);
+            response.appendHeader("Set-Cookie", SESSION_COOKIE + "=" + session.getToken()
+                    + "; Path=/; HttpOnly; SameSite=Lax");
             response.setStringBody("200 OK<br>Login Success");
         } else {
+            // 只有失败的登录消耗用户名令牌，正常用户的成功登录不计入
+            userLimiter.tryAcquire(username);
             response.setStatusCode(401);
             response.setStringBody("401 Unauthorized<br>Login Failed: Wrong username or password");
         }
         return response;
     }
 
+    /**
+     * 注销：使请求携带的会话令牌失效
+     */
+    public HttpResponse logout(HttpRequest request) {
+        HttpResponse response = new HttpResponse();
+        response.addHeader("Connection", "keep-alive");
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        sessions.invalidate(sessionToken(request));
+        response.setStatusCode(200);
+        response.appendHeader("Set-Cookie", SESSION_COOKIE + "=; Path=/; HttpOnly; SameSite=Lax; Max-Age=0");
+        response.setStringBody("200 OK<br>Logout Success");
+        return response;
+    }
+
+    /**
+     * 会话校验钩子：供 RequestDispatcher 在受保护路由前调用。
+     *
+     * @return 已登录的用户名；未登录或会话已过期时返回 null
+     */
+    public String authenticate(HttpRequest request) {
+        SessionStore.Session session = sessions.validate(sessionToken(request));
+        return session == null ? null : session.getUsername();
+    }
+
+    /**
+     * 从 Cookie 头中取出会话令牌
+     */
+    private static String sessionToken(HttpRequest request) {
+        String cookie = request.getHeader("Cookie");
+        if (cookie == null) return null;
+        // 多个 Cookie 头会被合并为逗号分隔，这里同时按 ';' 与 ',' 切分
+        int i = 0, n = cookie.length();
+        while (i < n) {
+            int end = i;
+            while (end < n && cookie.charAt(end) != ';' && cookie.charAt(end) != ',') end++;
+            int eq = cookie.indexOf('=', i);
+            if (eq > 0 && eq < end && cookie.substring(i, eq).trim().equals(SESSION_COOKIE)) {
+                return cookie.substring(eq + 1, end).trim();
+            }
+            i = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * 哈希线程池繁忙：快速返回 503，由客户端稍后重试
+     */
+    private HttpResponse serviceBusy(HttpResponse response) {
+        response.setStatusCode(503);
+        response.addHeader("Retry-After", "1");
+        response.setStringBody("503 Service Unavailable<br>Authentication service is busy, please retry");
+        return response;
+    }
+
+    /**
+     * 超出限流：返回 429，Retry-After 为令牌补充所需的秒数（向上取整）
+     */
+    private HttpResponse tooManyRequests(HttpResponse response, long waitMillis) {
+        response.setStatusCode(429);
+        response.addHeader("Retry-After", String.valueOf((waitMillis + 999) / 1000));
+        response.setStringBody("429 Too Many Requests<br>Too many attempts, please retry later");
+        return response;
+    }
+
     // ========== 可选：黑名单管理方法（扩展用） ==========
     /**
      * 添加用户到黑名单
      */
     public void addToBlacklist(String username) {
         if (username != null && !username.isBlank()) {
-            blacklist.add(username);
+            acl.addUser(username);
         }
     }
 
@@ -171,29 +347,15 @@ public class UserAuthHandler {
      * 从黑名单移除用户
      */
     public void removeFromBlacklist(String username) {
-        blacklist.remove(username);
+        acl.removeUser(username);
     }
 
     /**
-     * 解析请求体（无修改）
+     * 从表单参数中取出用户名与口令（已做百分号与 '+' 解码）
      */
     private String[] parseBody(HttpRequest request) {
-        byte[] bodyBytes = request.getBody();
-        if (bodyBytes == null || bodyBytes.length == 0) return null;
-
-        String bodyStr = new String(bodyBytes, StandardCharsets.UTF_8);
-        String username = null;
-        String password = null;
-
-        String[] pairs = bodyStr.split("&");
-        for (String pair : pairs) {
-            String[] kv = pair.split("=");
-            if (kv.length == 2) {
-                if ("username".equals(kv[0])) username = kv[1];
-                if ("password".equals(kv[0])) password = kv[1];
-            }
-        }
-
+        String username = request.getFormParam("username");
+        String password = request.getFormParam("password");
         if (username != null && password != null) {
             return new String[]{username, password};
         }
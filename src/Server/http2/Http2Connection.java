@@ -0,0 +1,920 @@
+package Server.http2;
+
+import Server.ClientLimits;
+import Server.KeepAlivePolicy;
+import Server.RequestTiming;
+import Server.dispatcher.RequestDispatcher;
+import common.HttpHeaders;
+import common.HttpRequest;
+import common.HttpResponse;
+import common.hpack.HpackDecoder;
+import common.hpack.HpackException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleSupplier;
+
+import static Server.http2.Http2Frames.*;
+
+/**
+ * 单个 HTTP/2 连接 (Role B)
+ * 职责：在一个 TCP 连接上复用多个请求流。
+ *
+ * 线程模型：
+ *  - 处理该连接的工作线程作为读线程：读帧、解码 HPACK、维护流状态，不执行业务逻辑
+ *  - 请求完整到达（END_STREAM）后，流被提交到共享的流处理线程池，由 RequestDispatcher 处理并写回响应
+ *  - 写帧通过 {@link Http2FrameWriter} 串行化；DATA 帧先从连接级与流级发送窗口中扣减，窗口不足时等待 WINDOW_UPDATE
+ *
+ * 超时：
+ *  - 没有活动流时按长连接策略的空闲超时等待下一帧，超时后发送 GOAWAY 关闭
+ *  - 帧开始到达后使用读超时读取剩余部分
+ *  - 请求体尚未收完的流超过读超时没有新数据时回复 408 并重置，半开的流不能无限期占住连接线程
+ *  - 与 HTTP/1.1 共用 {@link ClientLimits}：前言与第一个 SETTINGS、每个头部块（HEADERS + CONTINUATION）、
+ *    每个帧的剩余部分都必须在 header-timeout 内收完，超时发送 GOAWAY；宽限期后请求体速率低于
+ *    min-body-rate 的流回复 408（连接级窗口被暂缓期间客户端无法发送，不做速率检查）
+ *
+ * 请求体：
+ *  - 整体缓存在内存中，单个流超过 limits.max-body-size 时回复 413 并重置（声明的 content-length 超出时不等数据到达）
+ *  - 带请求体的流在头部块结束时先经 {@link RequestDispatcher#checkBeforeBody} 检查，一定会被拒绝的请求
+ *    （401 / 403 / 404 / 405 / 413 / 429）直接回复并重置，请求体不会被缓存
+ *  - 流级窗口随收随还；连接级窗口只在已缓存的请求体总量不超过上限时随收随还，超过时暂缓，
+ *    等处理器消费完某个流的请求体（响应写完或流被重置）后再归还，单个连接缓存的请求体因此有界
+ */
+final class Http2Connection {
+
+    private final Socket socket;
+    private final BufferedInputStream in;
+    private final Http2FrameWriter writer;
+    private final Http2Settings settings;
+    private final RequestDispatcher dispatcher;
+    private final Executor executor;
+    private final KeepAlivePolicy keepAlivePolicy;
+    private final ClientLimits limits;
+    private final DoubleSupplier utilisation;
+    private final HpackDecoder decoder;
+    private final InetAddress remote;
+    private final String remoteAddress;
+
+    private final Map<Integer, Http2Stream> streams = new ConcurrentHashMap<>();
+    /** 已见过的最大客户端流 ID（读线程） */
+    private int lastStreamId;
+    private final byte[] frameHeader = new byte[FRAME_HEADER_LENGTH];
+    private final byte[] payload;
+
+    /** 正在接收的头部块（HEADERS 未带 END_HEADERS 时由 CONTINUATION 续接） */
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+    private int continuationStreamId;
+    private int continuationFlags;
+    /** 头部阶段（前言与第一个 SETTINGS、跨 CONTINUATION 的头部块）的截止时刻，0 表示不在头部阶段（读线程） */
+    private long headerDeadline;
+
+    /** 接收方向的连接级流控：读线程扣减，处理线程消费完请求体后归还（recvLock 保护） */
+    private final Object recvLock = new Object();
+    /** 连接级接收窗口与尚未归还的字节数 */
+    private int connectionRecvWindow;
+    private int connectionRecvUnacked;
+    /** 缓存在各流中、尚未被处理器消费完的请求体字节数 */
+    private long bufferedBytes;
+    /** 因 bufferedBytes 超过上限而暂缓归还的连接级窗口 */
+    private int withheldCredit;
+
+    /** 流控锁：保护发送窗口，同时用于等待活动流结束 */
+    private final Object flowLock = new Object();
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private volatile boolean closed;
+
+    Http2Connection(Socket socket, BufferedInputStream in, Http2FrameWriter writer, Http2Settings settings,
+                    RequestDispatcher dispatcher, Executor executor,
+                    KeepAlivePolicy keepAlivePolicy, ClientLimits limits, DoubleSupplier utilisation) {
+        this.socket = socket;
+        this.in = in;
+        this.writer = writer;
+        this.settings = settings;
+        this.dispatcher = dispatcher;
+        this.executor = executor;
+        this.keepAlivePolicy = keepAlivePolicy;
+        this.limits = limits;
+        this.utilisation = utilisation;
+        this.decoder = new HpackDecoder(Http2Settings.HEADER_TABLE_SIZE, settings.getMaxHeaderListSize());
+        this.remote = socket.getInetAddress();
+        this.remoteAddress = remote.getHostAddress();
+        this.payload = new byte[settings.getMaxFrameSize()];
+        this.connectionRecvWindow = settings.getInitialWindowSize();
+    }
+
+    /**
+     * 处理连接直到关闭。
+     *
+     * @param upgradeRequest  通过 Upgrade: h2c 升级时的原始请求（作为流 1 处理），直接使用前言时为 null
+     * @param upgradeSettings 升级请求中 HTTP2-Settings 头部解码后的 SETTINGS 负载
+     */
+    void serve(HttpRequest upgradeRequest, byte[] upgradeSettings) throws IOException {
+        boolean graceful = true;
+        try {
+            // 1. 服务端前言：SETTINGS，并把连接级接收窗口扩大到与流级一致
+            writer.settings(
+                    SETTINGS_ENABLE_PUSH, 0,
+                    SETTINGS_MAX_CONCURRENT_STREAMS, settings.getMaxConcurrentStreams(),
+                    SETTINGS_INITIAL_WINDOW_SIZE, settings.getInitialWindowSize(),
+                    SETTINGS_MAX_FRAME_SIZE, settings.getMaxFrameSize(),
+                    SETTINGS_MAX_HEADER_LIST_SIZE, settings.getMaxHeaderListSize());
+            if (settings.getInitialWindowSize() > DEFAULT_WINDOW_SIZE) {
+                writer.windowUpdate(0, settings.getInitialWindowSize() - DEFAULT_WINDOW_SIZE);
+            }
+
+            // 2. 升级连接：HTTP2-Settings 即客户端的初始设置，原请求成为已半关闭的流 1
+            if (upgradeRequest != null) {
+                if (upgradeSettings != null) applySettings(upgradeSettings, 0, upgradeSettings.length);
+                Http2Stream stream = new Http2Stream(1, settings.getInitialWindowSize(), peerInitialWindowSize);
+                stream.remoteClosed = true;
+                lastStreamId = 1;
+                streams.put(1, stream);
+                submit(stream, upgradeRequest);
+            }
+
+            // 3. 客户端前言，之后的第一帧必须是 SETTINGS；两者都要在头部截止时间内收完
+            socket.setSoTimeout(keepAlivePolicy.getReadTimeoutMillis());
+            headerDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limits.getHeaderTimeoutMillis());
+            byte[] preface = new byte[PREFACE.length];
+            readFully(preface, PREFACE.length, headerDeadline);
+            for (int i = 0; i < PREFACE.length; i++) {
+                if (preface[i] != PREFACE[i]) {
+                    throw Http2Exception.connection(PROTOCOL_ERROR, "Invalid connection preface");
+                }
+            }
+            boolean first = true;
+
+            // 4. 帧循环
+            while (awaitFrame()) {
+                // 帧的剩余部分必须在头部截止时间内收完（逐字节慢发的帧不能占住连接线程）
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limits.getHeaderTimeoutMillis());
+                if (headerDeadline != 0) deadline = Math.min(deadline, headerDeadline);
+                readFully(frameHeader, FRAME_HEADER_LENGTH, deadline);
+                int length = ((frameHeader[0] & 0xff) << 16) | ((frameHeader[1] & 0xff) << 8) | (frameHeader[2] & 0xff);
+                int type = frameHeader[3] & 0xff;
+                int flags = frameHeader[4] & 0xff;
+                int streamId = readInt(frameHeader, 5) & 0x7fffffff;
+                if (length > settings.getMaxFrameSize()) {
+                    throw Http2Exception.connection(FRAME_SIZE_ERROR, "Frame too large: " + length);
+                }
+                readFully(payload, length, deadline);
+                if (first) {
+                    if (type != SETTINGS) throw Http2Exception.connection(PROTOCOL_ERROR, "First frame must be SETTINGS");
+                    headerDeadline = 0;
+                }
+                first = false;
+                try {
+                    onFrame(type, flags, streamId, length);
+                } catch (Http2Exception e) {
+                    if (e.isConnectionError()) throw e;
+                    resetStream(e.getStreamId(), e.getErrorCode());
+                }
+            }
+        } catch (Http2Exception e) {
+            graceful = false;
+            System.out.println("HTTP/2 connection error: " + e.getMessage());
+            try {
+                writer.goAway(lastStreamId, e.getErrorCode());
+            } catch (IOException ignored) {
+            }
+        } catch (EOFException e) {
+            // 客户端关闭连接
+            graceful = false;
+        } catch (IOException e) {
+            // 处理线程写失败时已主动关闭连接，读线程随之退出，不再作为错误上报
+            graceful = false;
+            if (!closed) throw e;
+        } finally {
+            if (graceful) awaitStreams();
+            close();
+        }
+    }
+
+    /**
+     * 等待下一帧的首字节。
+     *
+     * @return false 表示连接已结束（客户端关闭，或空闲超时后已发送 GOAWAY）
+     */
+    private boolean awaitFrame() throws IOException, Http2Exception {
+        while (true) {
+            long stallMillis = expireStalledStreams();
+            boolean idle = streams.isEmpty();
+            long timeout = idle
+                    ? keepAlivePolicy.idleTimeoutMillis(utilisation.getAsDouble())
+                    : Math.min(keepAlivePolicy.getReadTimeoutMillis(), stallMillis);
+            if (headerDeadline != 0) timeout = Math.min(timeout, remainingMillis(headerDeadline));
+            socket.setSoTimeout((int) timeout);
+            try {
+                in.mark(1);
+                if (in.read() == -1) return false;
+                in.reset();
+                socket.setSoTimeout(keepAlivePolicy.getReadTimeoutMillis());
+                return true;
+            } catch (SocketTimeoutException e) {
+                if (headerDeadline != 0 && System.nanoTime() - headerDeadline >= 0) {
+                    throw Http2Exception.connection(ENHANCE_YOUR_CALM, "Header deadline exceeded");
+                }
+                if (streams.isEmpty()) {
+                    writer.goAway(lastStreamId, NO_ERROR);
+                    return false;
+                }
+                // 仍有流在处理中（客户端在等响应），继续等待；请求体停滞的流在下一轮被超时
+            }
+        }
+    }
+
+    /**
+     * 请求体停滞（超过读超时没有收到该流的数据）或宽限期后速率低于 min-body-rate 的流回复 408 并重置。
+     *
+     * @return 距离下一次需要检查的毫秒数（没有尚在接收请求体的流时为读超时）
+     */
+    private long expireStalledStreams() throws IOException {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(keepAlivePolicy.getReadTimeoutMillis());
+        long grace = TimeUnit.MILLISECONDS.toNanos(limits.getBodyRateGraceMillis());
+        int minRate = limits.getMinBodyRate();
+        boolean throttled;
+        synchronized (recvLock) {
+            throttled = withheldCredit > 0;
+        }
+        long now = System.nanoTime();
+        long next = timeout;
+        for (Http2Stream stream : streams.values()) {
+            if (stream.remoteClosed || stream.responded) continue;
+            long left = stream.lastActivity + timeout - now;
+            long elapsed = now - stream.startedAt;
+            boolean slow = minRate > 0 && !throttled && elapsed > grace
+                    && stream.receivedLength * 1e9 / elapsed < minRate;
+            if (left <= 0 || slow) {
+                System.out.println("HTTP/2 stream " + stream.id + (slow ? " below minimum body rate" : " stalled")
+                        + ", responding 408");
+                respondDirectly(stream, 408, false);
+            } else {
+                next = Math.min(next, left);
+                if (minRate > 0) next = Math.min(next, Math.max(grace - elapsed, TimeUnit.SECONDS.toNanos(1)));
+            }
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next));
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    private void onFrame(int type, int flags, int streamId, int length) throws Http2Exception, IOException {
+        if (continuationStreamId != 0 && type != CONTINUATION) {
+            throw Http2Exception.connection(PROTOCOL_ERROR, "Expected CONTINUATION");
+        }
+        switch (type) {
+            case DATA: onData(flags, streamId, length); break;
+            case HEADERS: onHeaders(flags, streamId, length); break;
+            case PRIORITY:
+                if (streamId == 0) throw Http2Exception.connection(PROTOCOL_ERROR, "PRIORITY on stream 0");
+                if (length != 5) throw Http2Exception.stream(streamId, FRAME_SIZE_ERROR, "Bad PRIORITY length");
+                break; // 不做优先级调度
+            case RST_STREAM: onRstStream(streamId, length); break;
+            case SETTINGS: onSettings(flags, streamId, length); break;
+            case PUSH_PROMISE: throw Http2Exception.connection(PROTOCOL_ERROR, "Client sent PUSH_PROMISE");
+            case PING:
+                if (streamId != 0) throw Http2Exception.connection(PROTOCOL_ERROR, "PING on stream " + streamId);
+                if (length != 8) throw Http2Exception.connection(FRAME_SIZE_ERROR, "Bad PING length");
+                if ((flags & FLAG_ACK) == 0) writer.pingAck(payload, 0);
+                break;
+            case GOAWAY:
+                if (streamId != 0) throw Http2Exception.connection(PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+                // 客户端不会再发起新流，处理完已有的流后由客户端关闭连接
+                break;
+            case WINDOW_UPDATE: onWindowUpdate(streamId, length); break;
+            case CONTINUATION: onContinuation(flags, streamId, length); break;
+            default:
+                break; // 未知帧类型必须忽略
+        }
+    }
+
+    // ===================== 请求头 =====================
+
+    private void onHeaders(int flags, int streamId, int length) throws Http2Exception, IOException {
+        if (streamId == 0 || (streamId & 1) == 0) {
+            throw Http2Exception.connection(PROTOCOL_ERROR, "Invalid stream id for HEADERS: " + streamId);
+        }
+        int offset = 0;
+        int padLength = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (length < 1) throw Http2Exception.connection(FRAME_SIZE_ERROR, "Bad HEADERS length");
+            padLength = payload[0] & 0xff;
+            offset = 1;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) offset += 5;
+        if (offset + padLength > length) {
+            throw Http2Exception.connection(PROTOCOL_ERROR, "Padding exceeds HEADERS payload");
+        }
+        int fragmentLength = length - offset - padLength;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            onHeaderBlock(flags, streamId, payload, offset, fragmentLength);
+        } else {
+            headerBlock.reset();
+            headerBlock.write(payload, offset, fragmentLength);
+            continuationStreamId = streamId;
+            continuationFlags = flags;
+            headerDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limits.getHeaderTimeoutMillis());
+        }
+    }
+
+    private void onContinuation(int flags, int streamId, int length) throws Http2Exception, IOException {
+        if (continuationStreamId == 0 || streamId != continuationStreamId) {
+            throw Http2Exception.connection(PROTOCOL_ERROR, "Unexpected CONTINUATION");
+        }
+        headerBlock.write(payload, 0, length);
+        // 压缩后的头部块远超解压上限只可能是恶意的 CONTINUATION 洪泛
+        if (headerBlock.size() > 2L * settings.getMaxHeaderListSize()) {
+            throw Http2Exception.connection(ENHANCE_YOUR_CALM, "Header block too large");
+        }
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            continuationStreamId = 0;
+            headerDeadline = 0;
+            byte[] block = headerBlock.toByteArray();
+            headerBlock.reset();
+            onHeaderBlock(continuationFlags, streamId, block, 0, block.length);
+        }
+    }
+
+    /**
+     * 处理完整的头部块：新流的请求头，或已有流的 trailer。
+     * 无论流最终是否被接受，头部块都必须解码，否则 HPACK 动态表与客户端失去同步。
+     */
+    private void onHeaderBlock(int flags, int streamId, byte[] block, int offset, int length)
+            throws Http2Exception, IOException {
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        Http2Stream existing = streams.get(streamId);
+        if (existing != null || streamId <= lastStreamId) {
+            // trailer：解码后丢弃（处理器按 HTTP/1.1 语义不使用 trailer）
+            decode(block, offset, length, (n, v) -> { });
+            if (existing == null || existing.remoteClosed) {
+                throw Http2Exception.connection(STREAM_CLOSED, "HEADERS on closed stream " + streamId);
+            }
+            if (!endStream) {
+                throw Http2Exception.stream(streamId, PROTOCOL_ERROR, "Trailers without END_STREAM");
+            }
+            if (existing.responded) return; // 已直接回复，不再分发
+            onRemoteClosed(existing);
+            return;
+        }
+
+        lastStreamId = streamId;
+        Http2Stream stream;
+        synchronized (flowLock) {
+            stream = new Http2Stream(streamId, settings.getInitialWindowSize(), peerInitialWindowSize);
+        }
+        boolean withinLimit = decode(block, offset, length, stream::onHeader);
+        if (streams.size() >= settings.getMaxConcurrentStreams()) {
+            throw Http2Exception.stream(streamId, REFUSED_STREAM, "Too many concurrent streams");
+        }
+        stream.validateRequest();
+        if (stream.malformed != null) {
+            throw Http2Exception.stream(streamId, PROTOCOL_ERROR, "Malformed request: " + stream.malformed);
+        }
+        streams.put(streamId, stream);
+        if (!withinLimit) {
+            respondDirectly(stream, 431, endStream);
+            return;
+        }
+        if (stream.declaredLength > limits.getMaxBodySize()) {
+            respondDirectly(stream, 413, endStream);
+            return;
+        }
+        if (!endStream) {
+            // 读取请求体之前的检查（与 HTTP/1.1 的 Expect: 100-continue 相同）：一定会被拒绝的请求不缓存请求体
+            HttpResponse rejected = dispatcher.checkBeforeBody(stream.toHeadRequest(remoteAddress));
+            if (rejected != null) {
+                respondDirectly(stream, rejected, false);
+                return;
+            }
+        }
+        if (endStream) onRemoteClosed(stream);
+    }
+
+    private boolean decode(byte[] block, int offset, int length, BiConsumer<String, String> sink)
+            throws Http2Exception {
+        try {
+            return decoder.decode(block, offset, length, sink);
+        } catch (HpackException e) {
+            throw Http2Exception.connection(COMPRESSION_ERROR, e.getMessage());
+        }
+    }
+
+    // ===================== 请求体与流量控制 =====================
+
+    private void onData(int flags, int streamId, int length) throws Http2Exception, IOException {
+        if (streamId == 0) throw Http2Exception.connection(PROTOCOL_ERROR, "DATA on stream 0");
+        int offset = 0;
+        int padLength = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            if (length < 1) throw Http2Exception.connection(FRAME_SIZE_ERROR, "Bad DATA length");
+            padLength = payload[0] & 0xff;
+            offset = 1;
+            if (padLength >= length) throw Http2Exception.connection(PROTOCOL_ERROR, "Padding exceeds DATA payload");
+        }
+        int dataLength = length - offset - padLength;
+        // 整个帧（含填充）都计入连接级窗口
+        synchronized (recvLock) {
+            connectionRecvWindow -= length;
+            if (connectionRecvWindow < 0) {
+                throw Http2Exception.connection(FLOW_CONTROL_ERROR, "Connection receive window exceeded");
+            }
+        }
+
+        Http2Stream stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) {
+                throw Http2Exception.connection(PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            }
+            creditConnection(length, null, 0); // 已关闭或已重置的流：丢弃在途数据
+            return;
+        }
+        if (stream.responded) {
+            creditConnection(length, null, 0); // 响应已决定，请求体不再需要
+            return;
+        }
+        if (stream.remoteClosed) {
+            creditConnection(length, null, 0);
+            throw Http2Exception.stream(streamId, STREAM_CLOSED, "DATA after END_STREAM");
+        }
+        stream.recvWindow -= length;
+        if (stream.recvWindow < 0) {
+            creditConnection(length, null, 0);
+            throw Http2Exception.stream(streamId, FLOW_CONTROL_ERROR, "Stream receive window exceeded");
+        }
+        stream.lastActivity = System.nanoTime();
+        if (stream.receivedLength + dataLength > limits.getMaxBodySize()) {
+            creditConnection(length, null, 0);
+            respondDirectly(stream, 413, false);
+            return;
+        }
+        stream.appendBody(payload, offset, dataLength);
+        creditConnection(length - dataLength, stream, dataLength);
+        if (stream.declaredLength >= 0 && stream.receivedLength > stream.declaredLength) {
+            throw Http2Exception.stream(streamId, PROTOCOL_ERROR, "Body exceeds content-length");
+        }
+
+        if ((flags & FLAG_END_STREAM) != 0) {
+            onRemoteClosed(stream);
+        } else {
+            // 流级窗口收到即归还（超过一半再发，减少 WINDOW_UPDATE 数量）；单个流的缓存由 max-body-size 限制
+            stream.recvUnacked += length;
+            if (stream.recvUnacked >= settings.getInitialWindowSize() / 2) {
+                writer.windowUpdate(streamId, stream.recvUnacked);
+                stream.recvWindow += stream.recvUnacked;
+                stream.recvUnacked = 0;
+            }
+        }
+    }
+
+    /**
+     * 归还连接级接收窗口：丢弃的字节（填充、已关闭流的数据）立即归还；
+     * 缓存进流的请求体在缓存总量不超过上限时立即归还，否则暂缓到某个流的请求体被消费。
+     *
+     * @param discarded 丢弃的字节数
+     * @param stream    缓存请求体的流，buffered 为 0 时可为 null
+     * @param buffered  缓存进流的字节数
+     */
+    private void creditConnection(int discarded, Http2Stream stream, int buffered) throws IOException {
+        int increment;
+        synchronized (recvLock) {
+            int credit = discarded;
+            if (buffered > 0) {
+                stream.buffered += buffered;
+                bufferedBytes += buffered;
+                if (bufferedBytes <= bufferLimit()) {
+                    credit += buffered;
+                } else {
+                    withheldCredit += buffered;
+                }
+            }
+            increment = ackConnection(credit);
+        }
+        if (increment > 0) writer.windowUpdate(0, increment);
+    }
+
+    /**
+     * 流的请求体已被消费（响应写完或流被重置）：释放缓存计数，缓存总量回到上限以内时归还暂缓的连接级窗口。
+     * 可能在处理线程上调用。
+     */
+    private void releaseBody(Http2Stream stream) {
+        int increment;
+        synchronized (recvLock) {
+            if (stream.buffered == 0) return;
+            bufferedBytes -= stream.buffered;
+            stream.buffered = 0;
+            if (withheldCredit == 0 || bufferedBytes > bufferLimit()) return;
+            increment = ackConnection(withheldCredit);
+            withheldCredit = 0;
+        }
+        if (increment > 0) {
+            try {
+                writer.windowUpdate(0, increment);
+            } catch (IOException ignored) {
+                // 连接已关闭
+            }
+        }
+    }
+
+    /** recvLock 内调用：累计待归还的字节，超过窗口一半时返回要发送的 WINDOW_UPDATE 增量 */
+    private int ackConnection(int credit) {
+        connectionRecvUnacked += credit;
+        if (connectionRecvUnacked < settings.getInitialWindowSize() / 2) return 0;
+        int increment = connectionRecvUnacked;
+        connectionRecvWindow += increment;
+        connectionRecvUnacked = 0;
+        return increment;
+    }
+
+    /** 单个连接可缓存的请求体总量：至少能容纳一个最大的请求体 */
+    private long bufferLimit() {
+        return Math.max(limits.getMaxBodySize(), settings.getInitialWindowSize());
+    }
+
+    private void onWindowUpdate(int streamId, int length) throws Http2Exception {
+        if (length != 4) throw Http2Exception.connection(FRAME_SIZE_ERROR, "Bad WINDOW_UPDATE length");
+        int increment = readInt(payload, 0) & 0x7fffffff;
+        if (increment == 0) {
+            if (streamId == 0) throw Http2Exception.connection(PROTOCOL_ERROR, "Zero window increment");
+            throw Http2Exception.stream(streamId, PROTOCOL_ERROR, "Zero window increment");
+        }
+        synchronized (flowLock) {
+            if (streamId == 0) {
+                connectionSendWindow += increment;
+                if (connectionSendWindow > MAX_WINDOW_SIZE) {
+                    throw Http2Exception.connection(FLOW_CONTROL_ERROR, "Connection send window overflow");
+                }
+            } else {
+                Http2Stream stream = streams.get(streamId);
+                if (stream == null) {
+                    if (streamId > lastStreamId) {
+                        throw Http2Exception.connection(PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream");
+                    }
+                    return;
+                }
+                stream.sendWindow += increment;
+                if (stream.sendWindow > MAX_WINDOW_SIZE) {
+                    throw Http2Exception.stream(streamId, FLOW_CONTROL_ERROR, "Stream send window overflow");
+                }
+            }
+            flowLock.notifyAll();
+        }
+    }
+
+    /**
+     * 从连接级与流级发送窗口中申请最多 wanted 字节，窗口不足时等待 WINDOW_UPDATE。
+     *
+     * @return 实际可发送的字节数；-1 表示流已被重置
+     */
+    private int acquireSendWindow(Http2Stream stream, int wanted) throws IOException {
+        long deadline = System.currentTimeMillis() + keepAlivePolicy.getReadTimeoutMillis();
+        boolean flushed = false;
+        while (true) {
+            synchronized (flowLock) {
+                if (closed) throw new IOException("HTTP/2 connection closed");
+                if (stream.reset) return -1;
+                long available = Math.min(connectionSendWindow, stream.sendWindow);
+                if (available > 0) {
+                    int n = (int) Math.min(available, wanted);
+                    connectionSendWindow -= n;
+                    stream.sendWindow -= n;
+                    return n;
+                }
+                if (flushed) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) throw new IOException("Timed out waiting for WINDOW_UPDATE");
+                    try {
+                        flowLock.wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for WINDOW_UPDATE");
+                    }
+                    continue;
+                }
+            }
+            // 窗口耗尽：先把已编码的 HEADERS 发出去（在流控锁外写 socket，不阻塞读线程处理 WINDOW_UPDATE）
+            writer.flush();
+            flushed = true;
+        }
+    }
+
+    /**
+     * 不等待地申请 wanted 字节（读线程直接回复时使用）：窗口足够且不超过对端最大帧大小时扣减并返回 true。
+     */
+    private boolean tryAcquireSendWindow(Http2Stream stream, int wanted) {
+        if (wanted > writer.getPeerMaxFrameSize()) return false;
+        synchronized (flowLock) {
+            if (Math.min(connectionSendWindow, stream.sendWindow) < wanted) return false;
+            connectionSendWindow -= wanted;
+            stream.sendWindow -= wanted;
+            return true;
+        }
+    }
+
+    // ===================== 控制帧 =====================
+
+    private void onRstStream(int streamId, int length) throws Http2Exception {
+        if (length != 4) throw Http2Exception.connection(FRAME_SIZE_ERROR, "Bad RST_STREAM length");
+        if (streamId == 0 || streamId > lastStreamId) {
+            throw Http2Exception.connection(PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        }
+        Http2Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.reset = true;
+            releaseBody(stream);
+            synchronized (flowLock) {
+                flowLock.notifyAll();
+            }
+        }
+    }
+
+    private void onSettings(int flags, int streamId, int length) throws Http2Exception, IOException {
+        if (streamId != 0) throw Http2Exception.connection(PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+        if ((flags & FLAG_ACK) != 0) {
+            if (length != 0) throw Http2Exception.connection(FRAME_SIZE_ERROR, "SETTINGS ACK with payload");
+            return;
+        }
+        if (length % 6 != 0) throw Http2Exception.connection(FRAME_SIZE_ERROR, "Bad SETTINGS length");
+        applySettings(payload, 0, length);
+        writer.settingsAck();
+    }
+
+    private void applySettings(byte[] data, int offset, int length) throws Http2Exception {
+        for (int i = offset; i + 6 <= offset + length; i += 6) {
+            int id = ((data[i] & 0xff) << 8) | (data[i + 1] & 0xff);
+            int value = readInt(data, i + 2);
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    writer.setPeerHeaderTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value != 0 && value != 1) {
+                        throw Http2Exception.connection(PROTOCOL_ERROR, "Invalid ENABLE_PUSH");
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) throw Http2Exception.connection(FLOW_CONTROL_ERROR, "Invalid INITIAL_WINDOW_SIZE");
+                    synchronized (flowLock) {
+                        // 新的初始窗口按差值作用于所有已有流（RFC 9113 6.9.2）
+                        int delta = value - peerInitialWindowSize;
+                        peerInitialWindowSize = value;
+                        for (Http2Stream s : streams.values()) {
+                            s.sendWindow += delta;
+                            if (s.sendWindow > MAX_WINDOW_SIZE) {
+                                throw Http2Exception.connection(FLOW_CONTROL_ERROR, "Stream send window overflow");
+                            }
+                        }
+                        flowLock.notifyAll();
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > 16_777_215) {
+                        throw Http2Exception.connection(PROTOCOL_ERROR, "Invalid MAX_FRAME_SIZE");
+                    }
+                    writer.setPeerMaxFrameSize(value);
+                    break;
+                default:
+                    break; // MAX_CONCURRENT_STREAMS 只约束服务端推送；其余参数忽略
+            }
+        }
+    }
+
+    // ===================== 分发与响应 =====================
+
+    private void onRemoteClosed(Http2Stream stream) throws Http2Exception {
+        stream.remoteClosed = true;
+        if (stream.declaredLength >= 0 && stream.receivedLength != stream.declaredLength) {
+            throw Http2Exception.stream(stream.id, PROTOCOL_ERROR, "Body length does not match content-length");
+        }
+        submit(stream, stream.toRequest(remoteAddress));
+    }
+
+    private void submit(Http2Stream stream, HttpRequest request) {
+        System.out.println("Received request: " + request.getUri() + " (h2 stream " + stream.id + ")");
+        try {
+            long submittedAt = System.nanoTime();
+            executor.execute(() -> respond(stream, request, System.nanoTime() - submittedAt));
+        } catch (RejectedExecutionException e) {
+            // 流处理线程池已满：拒绝该流，客户端可以安全重试
+            resetStream(stream.id, REFUSED_STREAM);
+        }
+    }
+
+    /**
+     * @param queueNanos 流在处理线程池中的等待时间（请求头已在读线程解码，解析阶段记为 0）
+     */
+    private void respond(Http2Stream stream, HttpRequest request, long queueNanos) {
+        RequestTiming timing = new RequestTiming("h2");
+        timing.start(queueNanos);
+        timing.parsed();
+        try {
+            HttpResponse response = dispatcher.isAddressBlocked(remote)
+                    ? RequestDispatcher.forbidden()
+                    : dispatcher.dispatch(request);
+            timing.handled(response);
+            writeResponse(stream, response, request.getMethod().equals("HEAD"));
+            timing.written(request, response);
+        } catch (IOException e) {
+            // 连接已断开或写超时：终止整个连接，读线程随之退出
+            close();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            resetStream(stream.id, INTERNAL_ERROR);
+        } finally {
+            streamClosed(stream);
+        }
+    }
+
+    private void writeResponse(Http2Stream stream, HttpResponse response, boolean head) throws IOException {
+        if (response.isStreaming()) {
+            writeStreamingResponse(stream, response, head);
+            return;
+        }
+        if (stream.reset) return;
+        byte[] body = response.getBody();
+        boolean hasBody = body.length > 0 && !head;
+        writer.headers(stream.id, response.getStatusCode(), response.getHttpHeaders(), body.length, !hasBody);
+        if (!hasBody) return;
+        int offset = 0;
+        while (offset < body.length) {
+            int wanted = Math.min(body.length - offset, writer.getPeerMaxFrameSize());
+            int n = acquireSendWindow(stream, wanted);
+            if (n < 0) return; // 客户端已取消该流
+            writer.data(stream.id, body, offset, n, offset + n == body.length);
+            offset += n;
+        }
+    }
+
+    /**
+     * 流式响应体（如反向代理的上游响应）：按对端最大帧大小边读边发，长度未知时以空 DATA 帧结束流。
+     * 读取响应体失败只重置该流，不影响同连接的其他流。
+     */
+    private void writeStreamingResponse(Http2Stream stream, HttpResponse response, boolean head)
+            throws IOException {
+        try (InputStream in = response.getBodyStream()) {
+            if (stream.reset) return;
+            writer.headers(stream.id, response.getStatusCode(), response.getHttpHeaders(),
+                    response.getBodyStreamLength(), head);
+            if (head) return;
+            byte[] chunk = new byte[writer.getPeerMaxFrameSize()];
+            while (true) {
+                int read;
+                try {
+                    read = in.read(chunk);
+                } catch (IOException e) {
+                    resetStream(stream.id, INTERNAL_ERROR);
+                    return;
+                }
+                if (read < 0) break;
+                int offset = 0;
+                while (offset < read) {
+                    int n = acquireSendWindow(stream, read - offset);
+                    if (n < 0) return; // 客户端已取消该流
+                    writer.data(stream.id, chunk, offset, n, false);
+                    offset += n;
+                }
+            }
+            writer.data(stream.id, chunk, 0, 0, true);
+        }
+    }
+
+    /**
+     * 请求在读线程内就能确定结果时（如头部过大）直接回复，不占用流处理线程。
+     */
+    private void respondDirectly(Http2Stream stream, int status, boolean endStream) throws IOException {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(status);
+        respondDirectly(stream, response, endStream);
+    }
+
+    private void respondDirectly(Http2Stream stream, HttpResponse response, boolean endStream) throws IOException {
+        byte[] body = response.getBody();
+        if (body.length > 0 && !tryAcquireSendWindow(stream, body.length)) {
+            // 发送窗口不够一次发完：读线程不能等待 WINDOW_UPDATE，交给处理线程按常规的流控路径发送
+            stream.responded = true;
+            try {
+                executor.execute(() -> finishDirectly(stream, response, endStream));
+            } catch (RejectedExecutionException e) {
+                resetStream(stream.id, REFUSED_STREAM);
+            }
+            return;
+        }
+        writer.headers(stream.id, response.getStatusCode(), response.getHttpHeaders(), body.length, body.length == 0);
+        if (body.length > 0) writer.data(stream.id, body, 0, body.length, true);
+        if (!endStream) {
+            // 响应已完整发出，请求体不再需要（RFC 9113 8.1）
+            writer.rstStream(stream.id, NO_ERROR);
+        }
+        streamClosed(stream);
+    }
+
+    private void finishDirectly(Http2Stream stream, HttpResponse response, boolean endStream) {
+        try {
+            writeResponse(stream, response, false);
+            if (!endStream && !stream.reset) writer.rstStream(stream.id, NO_ERROR);
+        } catch (IOException e) {
+            close();
+        } finally {
+            streamClosed(stream);
+        }
+    }
+
+    private void resetStream(int streamId, int errorCode) {
+        Http2Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.reset = true;
+            releaseBody(stream);
+        }
+        try {
+            writer.rstStream(streamId, errorCode);
+        } catch (IOException ignored) {
+            // 连接已关闭
+        }
+        synchronized (flowLock) {
+            flowLock.notifyAll();
+        }
+    }
+
+    private void streamClosed(Http2Stream stream) {
+        streams.remove(stream.id, stream);
+        releaseBody(stream);
+        synchronized (flowLock) {
+            flowLock.notifyAll();
+        }
+    }
+
+    // ===================== 关闭 =====================
+
+    /**
+     * 优雅关闭：等待处理中的流写完响应（最多一个读超时）。
+     */
+    private void awaitStreams() {
+        long deadline = System.currentTimeMillis() + keepAlivePolicy.getReadTimeoutMillis();
+        synchronized (flowLock) {
+            while (!streams.isEmpty() && !closed) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) return;
+                try {
+                    flowLock.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void close() {
+        closed = true;
+        writer.close();
+        synchronized (flowLock) {
+            flowLock.notifyAll();
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 读满 length 个字节，必须在 deadline（System.nanoTime）之前完成，否则作为连接错误发送 GOAWAY。
+     */
+    private void readFully(byte[] buf, int length, long deadline) throws IOException, Http2Exception {
+        int off = 0;
+        while (off < length) {
+            long left = remainingMillis(deadline);
+            if (System.nanoTime() - deadline >= 0) {
+                throw Http2Exception.connection(ENHANCE_YOUR_CALM, "Frame not received within header timeout");
+            }
+            boolean limited = left < keepAlivePolicy.getReadTimeoutMillis();
+            socket.setSoTimeout(limited ? (int) left : keepAlivePolicy.getReadTimeoutMillis());
+            int n;
+            try {
+                n = in.read(buf, off, length - off);
+            } catch (SocketTimeoutException e) {
+                if (limited) throw Http2Exception.connection(ENHANCE_YOUR_CALM, "Frame not received within header timeout");
+                throw e;
+            }
+            if (n < 0) throw new EOFException("Connection closed mid-frame");
+            off += n;
+        }
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return ((b[i] & 0xff) << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+    }
+}
@@ -0,0 +1,48 @@
+package Server.http2;
+
+/**
+ * HTTP/2 协议错误。
+ *
+ * 说明：
+ *  - streamId 为 0 表示连接级错误：发送 GOAWAY 后关闭连接
+ *  - 否则为流级错误：只向该流发送 RST_STREAM，连接继续使用
+ */
+public class Http2Exception extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int errorCode;
+    private final int streamId;
+
+    private Http2Exception(int streamId, int errorCode, String message) {
+        super(message);
+        this.streamId = streamId;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * 连接级错误。
+     */
+    public static Http2Exception connection(int errorCode, String message) {
+        return new Http2Exception(0, errorCode, message);
+    }
+
+    /**
+     * 流级错误。
+     */
+    public static Http2Exception stream(int streamId, int errorCode, String message) {
+        return new Http2Exception(streamId, errorCode, message);
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public boolean isConnectionError() {
+        return streamId == 0;
+    }
+}
@@ -0,0 +1,174 @@
+package Server.http2;
+
+import common.HeaderName;
+import common.HttpHeaders;
+import common.buffer.ChannelWriter;
+import common.hpack.HpackEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static Server.http2.Http2Frames.*;
+
+/**
+ * HTTP/2 帧写出器。
+ *
+ * 说明：
+ *  - 连接上的所有流共用一个写出器，每个方法在写出器的锁内写完整的帧，帧之间不会交错
+ *  - HPACK 编码也在锁内进行：对端按收到的顺序解码头部块，编码顺序必须与写出顺序一致
+ *  - 帧编码进连接持有的直接内存缓冲；控制帧立即刷出，HEADERS 后紧跟 DATA 时与 DATA 一起刷出
+ *  - 关闭后所有写操作抛出 IOException
+ */
+final class Http2FrameWriter {
+
+    private final ChannelWriter out;
+    private final HpackEncoder encoder = new HpackEncoder(Http2Settings.HEADER_TABLE_SIZE);
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream(512);
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private boolean closed;
+
+    Http2FrameWriter(ChannelWriter out) {
+        this.out = out;
+    }
+
+    synchronized int getPeerMaxFrameSize() {
+        return peerMaxFrameSize;
+    }
+
+    synchronized void setPeerMaxFrameSize(int size) {
+        this.peerMaxFrameSize = size;
+    }
+
+    synchronized void setPeerHeaderTableSize(int size) {
+        encoder.setPeerMaxTableSize(size);
+    }
+
+    /**
+     * 写出 SETTINGS 帧。
+     *
+     * @param params 依次为 (参数 ID, 值) 对
+     */
+    synchronized void settings(int... params) throws IOException {
+        ensureOpen();
+        frameHeader(params.length / 2 * 6, SETTINGS, 0, 0);
+        for (int i = 0; i < params.length; i += 2) {
+            out.put(params[i] >>> 8).put(params[i]);
+            int32(params[i + 1]);
+        }
+        out.flush();
+    }
+
+    synchronized void settingsAck() throws IOException {
+        ensureOpen();
+        frameHeader(0, SETTINGS, FLAG_ACK, 0);
+        out.flush();
+    }
+
+    synchronized void pingAck(byte[] payload, int offset) throws IOException {
+        ensureOpen();
+        frameHeader(8, PING, FLAG_ACK, 0);
+        out.bytes(payload, offset, 8);
+        out.flush();
+    }
+
+    synchronized void goAway(int lastStreamId, int errorCode) throws IOException {
+        ensureOpen();
+        frameHeader(8, GOAWAY, 0, 0);
+        int32(lastStreamId);
+        int32(errorCode);
+        out.flush();
+    }
+
+    synchronized void rstStream(int streamId, int errorCode) throws IOException {
+        ensureOpen();
+        frameHeader(4, RST_STREAM, 0, streamId);
+        int32(errorCode);
+        out.flush();
+    }
+
+    synchronized void windowUpdate(int streamId, int increment) throws IOException {
+        ensureOpen();
+        frameHeader(4, WINDOW_UPDATE, 0, streamId);
+        int32(increment);
+        out.flush();
+    }
+
+    /**
+     * 写出响应头（HEADERS，超出帧大小时拆分出 CONTINUATION）。
+     * 连接专用头部（Connection、Keep-Alive 等）在 HTTP/2 中无意义，不写出。
+     *
+     * @param contentLength 响应未设置 Content-Length 时补充的值；小于 0 表示不补充
+     * @param endStream     没有 body 时为 true（同时立即刷出）
+     */
+    synchronized void headers(int streamId, int status, HttpHeaders headers, long contentLength,
+                              boolean endStream) throws IOException {
+        ensureOpen();
+        headerBlock.reset();
+        encoder.beginHeaderBlock(headerBlock);
+        encoder.encode(":status", Integer.toString(status), headerBlock);
+        for (int i = 0; i < headers.size(); i++) {
+            HeaderName name = headers.nameAt(i);
+            if (isConnectionSpecific(name)) continue;
+            encoder.encode(name.lowerCaseName(), headers.valueAt(i), headerBlock);
+        }
+        if (contentLength >= 0 && !headers.contains(HeaderName.CONTENT_LENGTH)) {
+            encoder.encode("content-length", Long.toString(contentLength), headerBlock);
+        }
+
+        byte[] block = headerBlock.toByteArray();
+        int offset = 0;
+        int type = HEADERS;
+        do {
+            int n = Math.min(block.length - offset, peerMaxFrameSize);
+            int flags = (offset + n == block.length ? FLAG_END_HEADERS : 0)
+                    | (type == HEADERS && endStream ? FLAG_END_STREAM : 0);
+            frameHeader(n, type, flags, streamId);
+            out.bytes(block, offset, n);
+            offset += n;
+            type = CONTINUATION;
+        } while (offset < block.length);
+        if (endStream) out.flush();
+    }
+
+    /**
+     * 写出一个 DATA 帧并刷出。调用方负责流量控制，length 不得超过对端的最大帧大小。
+     */
+    synchronized void data(int streamId, byte[] data, int offset, int length, boolean endStream)
+            throws IOException {
+        ensureOpen();
+        frameHeader(length, DATA, endStream ? FLAG_END_STREAM : 0, streamId);
+        out.bytes(data, offset, length);
+        out.flush();
+    }
+
+    synchronized void flush() throws IOException {
+        if (!closed) out.flush();
+    }
+
+    /**
+     * 关闭写出器。之后不再访问底层缓冲，调用方可以归还缓冲。
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    static boolean isConnectionSpecific(HeaderName name) {
+        return name == HeaderName.CONNECTION || name == HeaderName.KEEP_ALIVE
+                || name == HeaderName.TRANSFER_ENCODING || name == HeaderName.UPGRADE
+                || name.name().equalsIgnoreCase("proxy-connection");
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("HTTP/2 connection closed");
+    }
+
+    private void frameHeader(int length, int type, int flags, int streamId) throws IOException {
+        out.put(length >>> 16).put(length >>> 8).put(length);
+        out.put(type).put(flags);
+        int32(streamId & 0x7fffffff);
+    }
+
+    private void int32(int v) throws IOException {
+        out.put(v >>> 24).put(v >>> 16).put(v >>> 8).put(v);
+    }
+}
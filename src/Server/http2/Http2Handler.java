@@ -0,0 +1,179 @@
+package Server.http2;
+
+import Server.ClientLimits;
+import Server.KeepAlivePolicy;
+import Server.dispatcher.RequestDispatcher;
+import common.HeaderName;
+import common.HttpHeaders;
+import common.HttpRequest;
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+import common.buffer.PooledByteBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 明文 HTTP/2 (h2c) 入口 (Role B)
+ * 职责：识别 HTTP/2 连接（直接发送前言或 Upgrade: h2c），并在当前连接线程上运行 {@link Http2Connection}。
+ *
+ * 说明：
+ *  - 所有 HTTP/2 连接的请求流共用一个有界线程池；连接线程只负责读帧，不会因某个慢请求阻塞同连接的其他流
+ *  - 流线程池队列满时新流以 REFUSED_STREAM 拒绝，客户端可安全重试
+ *  - 每个连接从直接内存池借一块缓冲用于编码帧，连接结束时归还
+ */
+public class Http2Handler {
+
+    private static final byte[] UPGRADE_RESPONSE = ("HTTP/1.1 101 Switching Protocols\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Upgrade: h2c\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    private final Http2Settings settings;
+    private final RequestDispatcher dispatcher;
+    private final DirectBufferPool directBufferPool;
+    private final ThreadPoolExecutor streamPool;
+
+    public Http2Handler(Http2Settings settings, RequestDispatcher dispatcher, DirectBufferPool directBufferPool) {
+        this.settings = settings;
+        this.dispatcher = dispatcher;
+        this.directBufferPool = directBufferPool;
+        AtomicInteger seq = new AtomicInteger();
+        this.streamPool = new ThreadPoolExecutor(settings.getStreamThreads(), settings.getStreamThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(settings.getStreamQueue()),
+                r -> {
+                    Thread t = new Thread(r, "h2-stream-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public Http2Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * 判断连接是否以 HTTP/2 前言开头（只窥视前 4 个字节 "PRI "，不消费数据）。
+     * 任何 HTTP/1.x 方法都不是 "PRI"，且合法的 HTTP/1.x 请求至少有 4 个字节，因此不会误判或额外阻塞。
+     */
+    public static boolean isPreface(BufferedInputStream in) throws IOException {
+        in.mark(Http2Frames.PREFACE.length);
+        try {
+            for (int i = 0; i < 4; i++) {
+                if (in.read() != Http2Frames.PREFACE[i]) return false;
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * 判断 HTTP/1.1 请求是否请求升级到 h2c（RFC 7540 3.2）。
+     * 带请求体的升级请求不予升级（按 HTTP/1.1 正常处理），避免在切换协议前还要缓存请求体。
+     */
+    public static boolean isUpgradeRequest(HttpRequest request) {
+        String upgrade = request.getHeader(HeaderName.UPGRADE);
+        String connection = request.getHeader(HeaderName.CONNECTION);
+        if (upgrade == null || connection == null || request.getHeader("HTTP2-Settings") == null) return false;
+        if (request.getContentLength() > 0) return false;
+        return containsToken(upgrade, "h2c")
+                && containsToken(connection, "upgrade")
+                && containsToken(connection, "http2-settings");
+    }
+
+    private static boolean containsToken(String header, String token) {
+        for (String part : header.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 处理以连接前言开头的连接，直到连接关闭。
+     *
+     * @param channel 连接的写出通道（由调用方套上写出截止时间）
+     */
+    public void serve(Socket socket, BufferedInputStream in, WritableByteChannel channel,
+                      KeepAlivePolicy keepAlivePolicy, ClientLimits limits, DoubleSupplier utilisation)
+            throws IOException {
+        run(socket, in, channel, keepAlivePolicy, limits, utilisation, null, null);
+    }
+
+    /**
+     * 回复 101 并把连接切换为 HTTP/2，原请求作为流 1 处理。
+     *
+     * @param channel 连接的写出通道（由调用方套上写出截止时间），101 之后的帧都经它写出
+     * @param request 已读完的升级请求（之后不再被 HTTP/1.1 路径复用）
+     */
+    public void upgrade(Socket socket, BufferedInputStream in, OutputStream out, WritableByteChannel channel,
+                        HttpRequest request, KeepAlivePolicy keepAlivePolicy, ClientLimits limits,
+                        DoubleSupplier utilisation) throws IOException {
+        byte[] peerSettings;
+        try {
+            peerSettings = Base64.getUrlDecoder().decode(request.getHeader("HTTP2-Settings").trim());
+        } catch (IllegalArgumentException e) {
+            peerSettings = null;
+        }
+        if (peerSettings == null || peerSettings.length % 6 != 0) {
+            throw new IOException("Invalid HTTP2-Settings header");
+        }
+        out.write(UPGRADE_RESPONSE);
+        out.flush();
+        run(socket, in, channel, keepAlivePolicy, limits, utilisation, toStreamRequest(request), peerSettings);
+    }
+
+    /**
+     * 复制升级请求：去掉只对 HTTP/1.1 有意义的头部，请求对象与 HTTP/1.1 路径解耦。
+     */
+    private static HttpRequest toStreamRequest(HttpRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        HttpHeaders original = request.getHttpHeaders();
+        for (int i = 0; i < original.size(); i++) {
+            HeaderName name = original.nameAt(i);
+            if (Http2FrameWriter.isConnectionSpecific(name)
+                    || name.lowerCaseName().equals("http2-settings")) {
+                continue;
+            }
+            headers.add(name, original.valueAt(i));
+        }
+        HttpRequest copy = new HttpRequest(request.getMethod(), request.getUri(), "HTTP/2.0", headers,
+                request.getBody());
+        copy.setRemoteAddress(request.getRemoteAddress());
+        return copy;
+    }
+
+    private void run(Socket socket, BufferedInputStream in, WritableByteChannel channel,
+                     KeepAlivePolicy keepAlivePolicy, ClientLimits limits, DoubleSupplier utilisation,
+                     HttpRequest upgradeRequest, byte[] upgradeSettings) throws IOException {
+        PooledByteBuffer buffer = directBufferPool.allocate(WRITE_BUFFER_SIZE);
+        Http2FrameWriter writer = new Http2FrameWriter(new ChannelWriter(channel, buffer.buffer()));
+        try {
+            new Http2Connection(socket, in, writer, settings, dispatcher, streamPool, keepAlivePolicy, limits,
+                    utilisation)
+                    .serve(upgradeRequest, upgradeSettings);
+        } finally {
+            // 写出器关闭后不会再有线程访问缓冲
+            writer.close();
+            buffer.release();
+        }
+    }
+
+    /**
+     * 停止流处理线程池。
+     */
+    public void shutdown() {
+        streamPool.shutdown();
+    }
+}
@@ -0,0 +1,105 @@
+package Server.http2;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+/**
+ * HTTP/2 配置 (Role B)
+ * 职责：本端通告给客户端的 SETTINGS 参数，以及流处理线程池的规模。
+ *
+ * 说明：
+ *  - initialWindowSize 同时用作流级与连接级接收窗口；请求体整体读入内存后才分发，
+ *    窗口越大，上传时等待 WINDOW_UPDATE 的往返越少
+ *  - maxConcurrentStreams 限制单连接的并发流，超出的流以 REFUSED_STREAM 拒绝
+ *  - HPACK 动态表固定使用协议默认的 4096 字节
+ */
+public class Http2Settings {
+
+    public static final int HEADER_TABLE_SIZE = 4096;
+
+    private final boolean enabled;
+    private final int maxConcurrentStreams;
+    private final int initialWindowSize;
+    private final int maxFrameSize;
+    private final int maxHeaderListSize;
+    private final int streamThreads;
+    private final int streamQueue;
+
+    /**
+     * 构造函数
+     *
+     * @param enabled              是否启用 h2c
+     * @param maxConcurrentStreams 单连接最大并发流数
+     * @param initialWindowSize    接收窗口（字节）
+     * @param maxFrameSize         允许接收的最大帧负载（字节）
+     * @param maxHeaderListSize    单个请求的头部列表上限（字节）
+     * @param streamThreads        流处理线程数
+     * @param streamQueue          流处理排队上限
+     */
+    public Http2Settings(boolean enabled,
+                         int maxConcurrentStreams,
+                         int initialWindowSize,
+                         int maxFrameSize,
+                         int maxHeaderListSize,
+                         int streamThreads,
+                         int streamQueue) {
+        if (maxConcurrentStreams <= 0) throw new IllegalArgumentException("maxConcurrentStreams must be positive");
+        if (initialWindowSize < 65535) throw new IllegalArgumentException("initialWindowSize must be at least 65535");
+        if (maxFrameSize < 16384 || maxFrameSize > 16_777_215) {
+            throw new IllegalArgumentException("maxFrameSize must be in [16384, 16777215]");
+        }
+        if (maxHeaderListSize <= 0) throw new IllegalArgumentException("maxHeaderListSize must be positive");
+        if (streamThreads <= 0 || streamQueue <= 0) {
+            throw new IllegalArgumentException("stream pool sizes must be positive");
+        }
+        this.enabled = enabled;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.initialWindowSize = initialWindowSize;
+        this.maxFrameSize = maxFrameSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+        this.streamThreads = streamThreads;
+        this.streamQueue = streamQueue;
+    }
+
+    /**
+     * 默认配置：启用，100 个并发流，1 MiB 接收窗口，16 KiB 帧，64 KiB 头部，32 个流处理线程。
+     */
+    public static Http2Settings defaults() {
+        return new Http2Settings(true, 100, 1024 * 1024, 16384, 65536, 32, 1024);
+    }
+
+    /**
+     * 从服务器配置构建。
+     */
+    public static Http2Settings from(ServerConfig config) {
+        return new Http2Settings(
+                config.get(ConfigKeys.HTTP2_ENABLED),
+                config.get(ConfigKeys.HTTP2_MAX_CONCURRENT_STREAMS),
+                config.get(ConfigKeys.HTTP2_INITIAL_WINDOW_SIZE),
+                config.get(ConfigKeys.HTTP2_MAX_FRAME_SIZE),
+                config.get(ConfigKeys.HTTP2_MAX_HEADER_LIST_SIZE),
+                config.get(ConfigKeys.HTTP2_STREAM_THREADS),
+                config.get(ConfigKeys.HTTP2_STREAM_QUEUE));
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public int getMaxConcurrentStreams() { return maxConcurrentStreams; }
+    public int getInitialWindowSize() { return initialWindowSize; }
+    public int getMaxFrameSize() { return maxFrameSize; }
+    public int getMaxHeaderListSize() { return maxHeaderListSize; }
+    public int getStreamThreads() { return streamThreads; }
+    public int getStreamQueue() { return streamQueue; }
+
+    @Override
+    public String toString() {
+        return "Http2Settings{" +
+                "enabled=" + enabled +
+                ", maxConcurrentStreams=" + maxConcurrentStreams +
+                ", initialWindowSize=" + initialWindowSize +
+                ", maxFrameSize=" + maxFrameSize +
+                ", maxHeaderListSize=" + maxHeaderListSize +
+                ", streamThreads=" + streamThreads +
+                ", streamQueue=" + streamQueue +
+                '}';
+    }
+}
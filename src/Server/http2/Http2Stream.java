@@ -0,0 +1,160 @@
+package Server.http2;
+
+import common.HeaderName;
+import common.HttpHeaders;
+import common.HttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+
+/**
+ * 单个 HTTP/2 流（服务端视角）。
+ *
+ * 说明：
+ *  - 请求头与请求体由连接的读线程写入；END_STREAM 到达后转成 HttpRequest 交给处理线程
+ *  - recvWindow、lastActivity 只由读线程访问；sendWindow 由连接的流控锁保护；
+ *    buffered 由连接的接收锁保护；reset 可能被任意线程读取
+ */
+final class Http2Stream {
+
+    final int id;
+    final HttpHeaders headers = new HttpHeaders();
+    String method;
+    String path;
+    String scheme;
+    String authority;
+    /** 头部块不合法时的原因（null 表示合法） */
+    String malformed;
+    private StringBuilder cookies;
+    private boolean regularSeen;
+
+    private ByteArrayOutputStream body;
+    /** Content-Length 声明的长度，-1 表示未声明 */
+    long declaredLength = -1;
+    long receivedLength;
+
+    /** 对端是否已结束发送（END_STREAM） */
+    boolean remoteClosed;
+    /** 本端接收窗口剩余与尚未通过 WINDOW_UPDATE 归还的字节数（读线程） */
+    int recvWindow;
+    int recvUnacked;
+    /** 本端发送窗口（流控锁保护） */
+    long sendWindow;
+    /** 已决定直接回复、响应体交给处理线程发送：之后到达的请求体直接丢弃（读线程） */
+    boolean responded;
+    /** 流已被任一方重置，处理线程应放弃写出 */
+    volatile boolean reset;
+    /** 计入连接缓存总量、尚未释放的请求体字节数（接收锁保护） */
+    int buffered;
+    /** 流创建与最近一次收到该流数据的时刻（System.nanoTime），用于请求体最低速率与停滞判断 */
+    final long startedAt = System.nanoTime();
+    long lastActivity = startedAt;
+
+    Http2Stream(int id, int recvWindow, long sendWindow) {
+        this.id = id;
+        this.recvWindow = recvWindow;
+        this.sendWindow = sendWindow;
+    }
+
+    /**
+     * 接收一个解码后的请求头部，同时按 RFC 9113 8.2/8.3 校验。
+     */
+    void onHeader(String name, String value) {
+        if (malformed != null) return;
+        if (!name.isEmpty() && name.charAt(0) == ':') {
+            if (regularSeen) {
+                malformed = "pseudo-header after regular header";
+                return;
+            }
+            switch (name) {
+                case ":method": method = setOnce(method, value, name); break;
+                case ":path": path = setOnce(path, value, name); break;
+                case ":scheme": scheme = setOnce(scheme, value, name); break;
+                case ":authority": authority = setOnce(authority, value, name); break;
+                default: malformed = "unknown pseudo-header " + name;
+            }
+            return;
+        }
+        regularSeen = true;
+        if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+            malformed = "uppercase header name " + name;
+            return;
+        }
+        HeaderName headerName = HeaderName.of(name);
+        if (Http2FrameWriter.isConnectionSpecific(headerName)) {
+            malformed = "connection-specific header " + name;
+            return;
+        }
+        if (name.equals("te") && !value.equals("trailers")) {
+            malformed = "te header other than trailers";
+            return;
+        }
+        if (headerName == HeaderName.COOKIE) {
+            // 拆分的 cookie 头部在交给 HTTP/1.1 语义的处理器前用 "; " 合并（RFC 9113 8.2.3）
+            if (cookies == null) cookies = new StringBuilder(value);
+            else cookies.append("; ").append(value);
+            return;
+        }
+        if (headerName == HeaderName.CONTENT_LENGTH) {
+            try {
+                declaredLength = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                malformed = "invalid content-length";
+                return;
+            }
+        }
+        headers.add(headerName, value);
+    }
+
+    private String setOnce(String current, String value, String name) {
+        if (current != null) malformed = "duplicate " + name;
+        return value;
+    }
+
+    /**
+     * 头部块结束后的整体校验；合法时合并 cookie 并由 :authority 补出 Host，之后头部不再修改。
+     */
+    void validateRequest() {
+        if (malformed != null) return;
+        if (method == null || scheme == null || path == null || path.isEmpty()) {
+            malformed = "missing required pseudo-header";
+            return;
+        } else if (method.equals("CONNECT")) {
+            malformed = "CONNECT is not supported";
+            return;
+        }
+        if (cookies != null) headers.add(HeaderName.COOKIE, cookies.toString());
+        if (authority != null && !headers.contains(HeaderName.HOST)) {
+            headers.add(HeaderName.HOST, authority);
+        }
+    }
+
+    /**
+     * 请求体到达之前的请求（只有请求行与头部），交给 RequestDispatcher 做读取请求体之前的检查。
+     */
+    HttpRequest toHeadRequest(String remoteAddress) {
+        HttpRequest request = HttpRequest.headOnly(method, path, "HTTP/2.0", headers, Math.max(declaredLength, 0));
+        request.setRemoteAddress(remoteAddress);
+        return request;
+    }
+
+    void appendBody(byte[] data, int offset, int length) {
+        if (length == 0) return;
+        if (body == null) {
+            int initial = declaredLength > 0 && declaredLength <= (1 << 20) ? (int) declaredLength : 1024;
+            body = new ByteArrayOutputStream(initial);
+        }
+        body.write(data, offset, length);
+        receivedLength += length;
+    }
+
+    /**
+     * 转换为 HttpRequest，交给现有的 RequestDispatcher 处理。
+     */
+    HttpRequest toRequest(String remoteAddress) {
+        byte[] bytes = body == null ? null : body.toByteArray();
+        HttpRequest request = new HttpRequest(method, path, "HTTP/2.0", headers, bytes);
+        request.setRemoteAddress(remoteAddress);
+        return request;
+    }
+}
@@ -0,0 +1,101 @@
+package Server.proxy;
+
+import common.HttpRequest;
+import utils.Hashing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 一致性哈希均衡 (Role C)
+ * 职责：按请求键（客户端 IP、路径、某个头部或 Cookie）把同一键的请求固定到同一个上游，
+ * 便于上游利用本地缓存或会话；增减上游时只有约 1/N 的键改变归属。
+ *
+ * 设计说明：
+ *  - 每个上游在环上放置 VIRTUAL_NODES 个虚拟节点，环用排好序的 long 数组表示，查找为一次二分
+ *  - 选中的上游不可用（被摘除或本次已失败）时沿环顺时针找下一个可用上游，键只会漂移到相邻节点
+ *  - 请求没有该键（如缺少指定的头部）时退化为按客户端 IP 哈希
+ */
+public class ConsistentHashBalancer implements LoadBalancer {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private final long[] ring;
+    private final Upstream[] owners;
+    private final Function<HttpRequest, String> keyExtractor;
+
+    /**
+     * @param hashKey client-ip、path、header:名称 或 cookie:名称
+     */
+    public ConsistentHashBalancer(List<Upstream> upstreams, String hashKey) {
+        this.keyExtractor = keyExtractor(hashKey);
+        int n = upstreams.size() * VIRTUAL_NODES;
+        long[][] nodes = new long[n][2];
+        int k = 0;
+        for (int u = 0; u < upstreams.size(); u++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                nodes[k][0] = hash(upstreams.get(u).getName() + "#" + v);
+                nodes[k][1] = u;
+                k++;
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+        this.ring = new long[n];
+        this.owners = new Upstream[n];
+        for (int i = 0; i < n; i++) {
+            ring[i] = nodes[i][0];
+            owners[i] = upstreams.get((int) nodes[i][1]);
+        }
+    }
+
+    @Override
+    public Upstream choose(HttpRequest request, Predicate<Upstream> usable) {
+        String key = keyExtractor.apply(request);
+        if (key == null) key = request.getRemoteAddress() == null ? "" : request.getRemoteAddress();
+        int i = Arrays.binarySearch(ring, hash(key));
+        if (i < 0) i = -i - 1;
+        for (int step = 0; step < ring.length; step++) {
+            Upstream candidate = owners[(i + step) % ring.length];
+            if (usable.test(candidate)) return candidate;
+        }
+        return null;
+    }
+
+    private static Function<HttpRequest, String> keyExtractor(String hashKey) {
+        if (hashKey.equals("path")) return HttpRequest::getPath;
+        if (hashKey.startsWith("header:")) {
+            String header = hashKey.substring("header:".length()).trim();
+            return request -> request.getHeader(header);
+        }
+        if (hashKey.startsWith("cookie:")) {
+            String cookie = hashKey.substring("cookie:".length()).trim();
+            return request -> cookieValue(request.getHeader("Cookie"), cookie);
+        }
+        return HttpRequest::getRemoteAddress;
+    }
+
+    private static String cookieValue(String cookie, String name) {
+        if (cookie == null) return null;
+        // 多个 Cookie 头会被合并为逗号分隔，这里同时按 ';' 与 ',' 切分
+        int i = 0, n = cookie.length();
+        while (i < n) {
+            int end = i;
+            while (end < n && cookie.charAt(end) != ';' && cookie.charAt(end) != ',') end++;
+            int eq = cookie.indexOf('=', i);
+            if (eq > 0 && eq < end && cookie.substring(i, eq).trim().equals(name)) {
+                return cookie.substring(eq + 1, end).trim();
+            }
+            i = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * 虚拟节点名只差末尾数字，需要充分扩散：FNV-1a 之后再经 fmix64 打散。
+     */
+    static long hash(String key) {
+        return Hashing.fnv1a64(key);
+    }
+}
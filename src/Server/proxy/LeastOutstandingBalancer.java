@@ -0,0 +1,41 @@
+package Server.proxy;
+
+import common.HttpRequest;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 最少未完成请求均衡 (Role C)
+ * 职责：选择当前未完成请求最少的上游；响应慢的后端积压请求后自然分到更少的新请求。
+ *
+ * 说明：每次从轮转的起点开始扫描，未完成数相同时依次轮流，避免空闲时所有请求都落在第一个后端。
+ */
+public class LeastOutstandingBalancer implements LoadBalancer {
+
+    private final Upstream[] upstreams;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public LeastOutstandingBalancer(List<Upstream> upstreams) {
+        this.upstreams = upstreams.toArray(new Upstream[0]);
+    }
+
+    @Override
+    public Upstream choose(HttpRequest request, Predicate<Upstream> usable) {
+        int n = upstreams.length;
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        Upstream best = null;
+        int bestOutstanding = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Upstream candidate = upstreams[(start + i) % n];
+            if (!usable.test(candidate)) continue;
+            int outstanding = candidate.outstanding();
+            if (outstanding < bestOutstanding) {
+                best = candidate;
+                bestOutstanding = outstanding;
+            }
+        }
+        return best;
+    }
+}
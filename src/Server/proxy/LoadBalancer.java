@@ -0,0 +1,19 @@
+package Server.proxy;
+
+import common.HttpRequest;
+
+import java.util.function.Predicate;
+
+/**
+ * 负载均衡策略 (Role C)
+ * 职责：为一个请求从路由的上游列表中选出一个后端。
+ */
+public interface LoadBalancer {
+
+    /**
+     * @param request 当前请求
+     * @param usable  候选条件（未被摘除且本次请求尚未尝试过）
+     * @return 选中的上游；没有满足条件的上游时返回 null
+     */
+    Upstream choose(HttpRequest request, Predicate<Upstream> usable);
+}
@@ -0,0 +1,416 @@
+package Server.proxy;
+
+import common.ChunkedInputStream;
+import common.FixedLengthInputStream;
+import common.HeaderName;
+import common.HttpHeaders;
+import common.HttpParseException;
+import common.HttpRequest;
+import common.HttpResponse;
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 反向代理处理器 (Role C)
+ * 职责：把某个路径前缀下的请求转发给一组上游后端，并把上游响应流式返回给客户端。
+ *
+ * 设计说明：
+ *  - 上游连接为池化的 HTTP/1.1 长连接，响应读完整后放回池中复用（见 {@link Upstream}）
+ *  - 负载均衡：最少未完成请求或一致性哈希（见 {@link LoadBalancer}）；被摘除的上游不参与选择，
+ *    全部被摘除时忽略摘除状态（宁可尝试也不直接拒绝）
+ *  - 请求体与响应体都是流式的：请求体从客户端连接直接拷贝到上游，上游响应体作为
+ *    {@link HttpResponse#setBodyStream 流式响应体}边读边写给客户端，内存占用与报文大小无关
+ *  - 重试：连接上游失败时换下一个上游；复用的空闲连接在收到任何响应前就断开（上游已关闭空闲连接）时，
+ *    对没有请求体的幂等请求换新连接重试。请求体已开始发送的请求不重试
+ *  - 逐跳头部（Connection、Keep-Alive、Transfer-Encoding 等）不转发；追加 X-Forwarded-For / -Proto / -Host。
+ *    Expect 同样不转发：100-continue 已由本服务器与客户端完成协商，上游直接收到请求体
+ */
+public class ProxyHandler {
+
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final String prefix;
+    private final List<Upstream> upstreams;
+    private final LoadBalancer balancer;
+
+    /**
+     * @param prefix    路径前缀
+     * @param addresses 上游地址（host:port）
+     */
+    public ProxyHandler(String prefix, List<String> addresses, ProxySettings settings, DirectBufferPool bufferPool) {
+        if (addresses.isEmpty()) throw new IllegalArgumentException("No upstreams for " + prefix);
+        this.prefix = prefix;
+        List<Upstream> list = new ArrayList<>();
+        for (String address : addresses) list.add(new Upstream(address, settings, bufferPool));
+        this.upstreams = Collections.unmodifiableList(list);
+        this.balancer = ProxySettings.CONSISTENT_HASH.equals(settings.getBalancer())
+                ? new ConsistentHashBalancer(list, settings.getHashKey())
+                : new LeastOutstandingBalancer(list);
+    }
+
+    /**
+     * 按配置创建全部代理路由（按配置顺序匹配）。
+     */
+    public static List<ProxyHandler> fromSettings(ProxySettings settings, DirectBufferPool bufferPool) {
+        List<ProxyHandler> handlers = new ArrayList<>();
+        for (Map.Entry<String, List<String>> route : settings.getRoutes().entrySet()) {
+            handlers.add(new ProxyHandler(route.getKey(), route.getValue(), settings, bufferPool));
+            System.out.println("Proxy route " + route.getKey() + " -> " + route.getValue()
+                    + " (" + settings.getBalancer() + ")");
+        }
+        return handlers;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public List<Upstream> getUpstreams() {
+        return upstreams;
+    }
+
+    public boolean matches(String path) {
+        return path.startsWith(prefix);
+    }
+
+    /**
+     * 转发请求。上游全部失败时返回 502（读取超时为 504）。
+     */
+    public HttpResponse handle(HttpRequest request) {
+        List<Upstream> tried = new ArrayList<>(2);
+        int status = 502;
+        while (true) {
+            long now = System.currentTimeMillis();
+            Upstream upstream = balancer.choose(request, u -> !tried.contains(u) && u.isAvailable(now));
+            if (upstream == null) {
+                // 没有可用上游：忽略摘除状态再选一次
+                upstream = balancer.choose(request, u -> !tried.contains(u));
+            }
+            if (upstream == null) break;
+            tried.add(upstream);
+            try {
+                return forward(upstream, request);
+            } catch (ClientBodyException e) {
+                // 客户端的请求体不完整，与上游无关
+                System.out.println("Proxy request body from client failed: " + e.getMessage());
+                status = 400;
+                break;
+            } catch (ConnectException e) {
+                // 请求尚未发出，换下一个上游
+                upstream.onFailure();
+                System.out.println("Proxy connect to " + upstream + " failed: " + e.getMessage());
+            } catch (SocketTimeoutException e) {
+                upstream.onFailure();
+                System.out.println("Proxy to " + upstream + " timed out");
+                status = 504;
+                break;
+            } catch (IOException | HttpParseException e) {
+                upstream.onFailure();
+                System.out.println("Proxy to " + upstream + " failed: " + e.getMessage());
+                break;
+            }
+        }
+        return error(status);
+    }
+
+    private HttpResponse forward(Upstream upstream, HttpRequest request)
+            throws IOException, HttpParseException {
+        upstream.begin();
+        UpstreamConnection conn = null;
+        boolean handedOff = false;
+        try {
+            HttpResponse head;
+            while (true) {
+                conn = upstream.acquire();
+                try {
+                    writeRequest(conn, request);
+                    head = readResponseHead(conn);
+                    break;
+                } catch (ClientBodyException e) {
+                    conn.close();
+                    conn = null;
+                    throw e;
+                } catch (IOException | HttpParseException e) {
+                    // 复用的空闲连接在收到任何响应前断开：上游已关闭该空闲连接，换一条连接重试；
+                    // 新建的连接不会再进入这里，重试次数以空闲池大小为界
+                    boolean stale = conn.reused && !(e instanceof SocketTimeoutException) && isReplayable(request);
+                    conn.close();
+                    conn = null;
+                    if (!stale) throw e;
+                }
+            }
+            HttpResponse response = toClientResponse(head);
+            int status = head.getStatusCode();
+            if (status == 502 || status == 503 || status == 504) {
+                upstream.onFailure();
+            } else {
+                upstream.onSuccess();
+            }
+            boolean keepAlive = isKeepAlive(head);
+            if (!hasBody(request, status)) {
+                upstream.release(conn, keepAlive);
+                conn = null;
+                return response;
+            }
+            InputStream body;
+            long length = -1;
+            String transferEncoding = head.getHeader("Transfer-Encoding");
+            String contentLength = head.getHeader("Content-Length");
+            if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+                body = new ChunkedInputStream(conn.in());
+            } else if (contentLength != null) {
+                try {
+                    length = Long.parseLong(contentLength.trim());
+                } catch (NumberFormatException e) {
+                    throw new HttpParseException("Invalid upstream Content-Length: " + contentLength);
+                }
+                body = new FixedLengthInputStream(conn.in(), length);
+            } else {
+                // 以关闭连接表示结束的响应体，连接不能复用
+                body = conn.in();
+                keepAlive = false;
+            }
+            response.setBodyStream(new UpstreamBody(upstream, conn, body, keepAlive), length);
+            handedOff = true; // 连接交给响应体，写完后归还
+            return response;
+        } finally {
+            if (!handedOff) {
+                if (conn != null) conn.close();
+                upstream.end();
+            }
+        }
+    }
+
+    /**
+     * 没有请求体的幂等请求可以安全地在另一条连接上重发。
+     */
+    private static boolean isReplayable(HttpRequest request) {
+        if (request.getContentLength() > 0) return false;
+        switch (request.getMethod()) {
+            case "GET": case "HEAD": case "OPTIONS": case "PUT": case "DELETE": case "TRACE": return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * 写出请求行、过滤后的头部与请求体（请求体从客户端连接流式拷贝）。
+     */
+    private void writeRequest(UpstreamConnection conn, HttpRequest request) throws IOException {
+        ChannelWriter out = conn.writer();
+        out.ascii(request.getMethod()).put(' ').ascii(request.getUri()).ascii(" HTTP/1.1").crlf();
+        HttpHeaders headers = request.getHttpHeaders();
+        String connection = headers.getCombined(HeaderName.CONNECTION);
+        String forwardedFor = null;
+        boolean hasHost = false;
+        for (int i = 0; i < headers.size(); i++) {
+            HeaderName name = headers.nameAt(i);
+            if (isHopByHop(name, connection) || name == HeaderName.CONTENT_LENGTH) continue;
+            if (name == HeaderName.X_FORWARDED_FOR) {
+                forwardedFor = forwardedFor == null ? headers.valueAt(i) : forwardedFor + ", " + headers.valueAt(i);
+                continue;
+            }
+            if (name == HeaderName.HOST) hasHost = true;
+            out.ascii(name.name()).put(':').put(' ').ascii(headers.valueAt(i)).crlf();
+        }
+        if (!hasHost) {
+            out.ascii("Host: ").ascii(upstreamHost(conn)).crlf();
+        }
+        String client = request.getRemoteAddress();
+        if (client != null) {
+            forwardedFor = forwardedFor == null ? client : forwardedFor + ", " + client;
+        }
+        if (forwardedFor != null) out.ascii("X-Forwarded-For: ").ascii(forwardedFor).crlf();
+        out.ascii("X-Forwarded-Proto: http").crlf();
+        String host = request.getHeader(HeaderName.HOST);
+        if (host != null) out.ascii("X-Forwarded-Host: ").ascii(host).crlf();
+        long length = request.getContentLength();
+        if (length > 0 || headers.contains(HeaderName.CONTENT_LENGTH)) {
+            out.ascii("Content-Length: ").decimal(length).crlf();
+        }
+        out.crlf();
+        if (length > 0) {
+            InputStream body = request.getBodyStream();
+            byte[] chunk = new byte[(int) Math.min(COPY_BUFFER_SIZE, length)];
+            long remaining = length;
+            while (remaining > 0) {
+                int n;
+                try {
+                    n = body.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                } catch (IOException e) {
+                    throw new ClientBodyException(e.getMessage());
+                }
+                if (n < 0) throw new ClientBodyException("Client request body ended early");
+                out.bytes(chunk, 0, n);
+                remaining -= n;
+            }
+        }
+        out.flush();
+    }
+
+    private static String upstreamHost(UpstreamConnection conn) {
+        return conn.address().getHostString() + ":" + conn.address().getPort();
+    }
+
+    /**
+     * 读取上游响应头，跳过 1xx 中间响应（如 100 Continue）。
+     */
+    private static HttpResponse readResponseHead(UpstreamConnection conn) throws IOException, HttpParseException {
+        while (true) {
+            HttpResponse head = HttpResponse.readHead(conn.in());
+            int status = head.getStatusCode();
+            if (status == 101) throw new HttpParseException("Upstream switched protocols");
+            if (status >= 200) return head;
+        }
+    }
+
+    private static boolean isKeepAlive(HttpResponse head) {
+        String connection = head.getHeader("Connection");
+        if ("HTTP/1.1".equals(head.getHttpVersion())) {
+            return connection == null || !containsToken(connection, "close");
+        }
+        return connection != null && containsToken(connection, "keep-alive");
+    }
+
+    /**
+     * HEAD 请求以及 204、304 响应没有响应体（RFC 9112 6.3）。
+     */
+    private static boolean hasBody(HttpRequest request, int status) {
+        return !"HEAD".equals(request.getMethod()) && status != 204 && status != 304;
+    }
+
+    /**
+     * 上游响应头转换为返回给客户端的响应：状态行原样保留，逐跳头部去掉。
+     */
+    private static HttpResponse toClientResponse(HttpResponse head) {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(head.getStatusCode());
+        response.setStatusMessage(head.getStatusMessage());
+        HttpHeaders headers = head.getHttpHeaders();
+        String connection = headers.getCombined(HeaderName.CONNECTION);
+        for (int i = 0; i < headers.size(); i++) {
+            HeaderName name = headers.nameAt(i);
+            if (isHopByHop(name, connection)) continue;
+            response.appendHeader(name, headers.valueAt(i));
+        }
+        return response;
+    }
+
+    /**
+     * 逐跳头部（RFC 9110 7.6.1）：固定的几个以及 Connection 头中列出的头部。
+     */
+    private static boolean isHopByHop(HeaderName name, String connection) {
+        if (name == HeaderName.CONNECTION || name == HeaderName.KEEP_ALIVE
+                || name == HeaderName.TRANSFER_ENCODING || name == HeaderName.UPGRADE
+                || name == HeaderName.EXPECT) {
+            return true;
+        }
+        String lower = name.lowerCaseName();
+        if (lower.equals("proxy-connection") || lower.equals("te") || lower.equals("trailer")
+                || lower.equals("proxy-authorization") || lower.equals("proxy-authenticate")) {
+            return true;
+        }
+        return connection != null && containsToken(connection, lower);
+    }
+
+    private static boolean containsToken(String header, String token) {
+        for (String part : header.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    private static HttpResponse error(int status) {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(status);
+        response.addHeader("Content-Type", "text/html; charset=UTF-8");
+        if (status == 400) {
+            response.setStringBody("400 Bad Request<br>Incomplete request body");
+        } else if (status == 504) {
+            response.setStringBody("504 Gateway Timeout<br>Upstream did not respond in time");
+        } else {
+            response.setStringBody("502 Bad Gateway<br>No upstream could handle the request");
+        }
+        return response;
+    }
+
+    /**
+     * 关闭所有上游的空闲连接。
+     */
+    public void close() {
+        for (Upstream upstream : upstreams) upstream.close();
+    }
+
+    /**
+     * 读取客户端请求体失败（客户端断开或超时），不计入上游的失败次数。
+     */
+    private static final class ClientBodyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ClientBodyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 流式转发给客户端的上游响应体：读到结尾后关闭时把连接放回空闲池，
+     * 中途关闭（客户端断开等）或读取出错时关闭连接。
+     */
+    private static final class UpstreamBody extends InputStream {
+        private final Upstream upstream;
+        private final UpstreamConnection conn;
+        private final InputStream body;
+        private final boolean keepAlive;
+        private boolean eof;
+        private boolean failed;
+        private boolean closed;
+
+        UpstreamBody(Upstream upstream, UpstreamConnection conn, InputStream body, boolean keepAlive) {
+            this.upstream = upstream;
+            this.conn = conn;
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (eof) return -1;
+            int n;
+            try {
+                n = body.read(b, off, len);
+            } catch (IOException e) {
+                if (!failed) {
+                    failed = true;
+                    upstream.onFailure();
+                }
+                throw e;
+            }
+            if (n < 0) eof = true;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            upstream.release(conn, keepAlive && eof && !failed);
+            upstream.end();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package Server.proxy;
+
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 反向代理配置 (Role C)
+ * 职责：代理路由（路径前缀 -> 上游地址列表）、负载均衡策略、上游连接池与被动健康检查参数。
+ *
+ * 路由格式（proxy.routes，多个路由以逗号分隔，同一路由的多个上游以 | 分隔）：
+ * <pre>
+ *   /api/=127.0.0.1:9001|127.0.0.1:9002, /img/=127.0.0.1:9003
+ * </pre>
+ */
+public class ProxySettings {
+
+    public static final String LEAST_OUTSTANDING = "least-outstanding";
+    public static final String CONSISTENT_HASH = "consistent-hash";
+
+    private final Map<String, List<String>> routes;
+    private final String balancer;
+    private final String hashKey;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int maxIdlePerUpstream;
+    private final int idleTimeoutMillis;
+    private final int maxFails;
+    private final int ejectMillis;
+
+    /**
+     * 构造函数
+     *
+     * @param routes               路径前缀 -> 上游 host:port 列表
+     * @param balancer             {@link #LEAST_OUTSTANDING} 或 {@link #CONSISTENT_HASH}
+     * @param hashKey              一致性哈希的键：client-ip、path、header:名称 或 cookie:名称
+     * @param connectTimeoutMillis 连接上游超时
+     * @param readTimeoutMillis    等待上游数据的超时
+     * @param maxIdlePerUpstream   每个上游最多保留的空闲长连接数
+     * @param idleTimeoutMillis    空闲连接超过该时间不再复用（应小于上游的空闲超时）
+     * @param maxFails             连续失败多少次后摘除上游
+     * @param ejectMillis          摘除时长
+     */
+    public ProxySettings(Map<String, List<String>> routes,
+                         String balancer,
+                         String hashKey,
+                         int connectTimeoutMillis,
+                         int readTimeoutMillis,
+                         int maxIdlePerUpstream,
+                         int idleTimeoutMillis,
+                         int maxFails,
+                         int ejectMillis) {
+        if (!LEAST_OUTSTANDING.equals(balancer) && !CONSISTENT_HASH.equals(balancer)) {
+            throw new IllegalArgumentException("Unknown balancer: " + balancer);
+        }
+        if (connectTimeoutMillis <= 0 || readTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeouts must be positive");
+        }
+        if (maxIdlePerUpstream < 0 || idleTimeoutMillis <= 0 || maxFails <= 0 || ejectMillis < 0) {
+            throw new IllegalArgumentException("invalid pool or health check settings");
+        }
+        this.routes = Collections.unmodifiableMap(new LinkedHashMap<>(routes));
+        this.balancer = balancer;
+        this.hashKey = hashKey;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxIdlePerUpstream = maxIdlePerUpstream;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxFails = maxFails;
+        this.ejectMillis = ejectMillis;
+    }
+
+    /**
+     * 默认配置：没有路由，最少未完成请求均衡，连接 2 秒、读取 30 秒超时，每个上游最多 32 个空闲连接，
+     * 连续失败 3 次摘除 10 秒。
+     */
+    public static ProxySettings defaults() {
+        return new ProxySettings(Collections.emptyMap(), LEAST_OUTSTANDING, "client-ip",
+                2000, 30_000, 32, 30_000, 3, 10_000);
+    }
+
+    /**
+     * 从服务器配置构建。
+     */
+    public static ProxySettings from(ServerConfig config) {
+        return new ProxySettings(
+                parseRoutes(config.get(ConfigKeys.PROXY_ROUTES)),
+                config.get(ConfigKeys.PROXY_BALANCER),
+                config.get(ConfigKeys.PROXY_HASH_KEY),
+                config.get(ConfigKeys.PROXY_CONNECT_TIMEOUT_MS),
+                config.get(ConfigKeys.PROXY_READ_TIMEOUT_MS),
+                config.get(ConfigKeys.PROXY_MAX_IDLE),
+                config.get(ConfigKeys.PROXY_IDLE_TIMEOUT_MS),
+                config.get(ConfigKeys.PROXY_MAX_FAILS),
+                config.get(ConfigKeys.PROXY_EJECT_MS));
+    }
+
+    /**
+     * 解析路由配置。
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static Map<String, List<String>> parseRoutes(String value) {
+        Map<String, List<String>> routes = new LinkedHashMap<>();
+        if (value == null || value.trim().isEmpty()) return routes;
+        for (String route : value.split(",")) {
+            route = route.trim();
+            if (route.isEmpty()) continue;
+            int eq = route.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("expected <prefix>=<host:port>[|<host:port>...]: " + route);
+            String prefix = route.substring(0, eq).trim();
+            if (!prefix.startsWith("/")) throw new IllegalArgumentException("prefix must start with '/': " + prefix);
+            List<String> upstreams = new ArrayList<>();
+            for (String upstream : route.substring(eq + 1).split("\\|")) {
+                upstream = upstream.trim();
+                int colon = upstream.lastIndexOf(':');
+                if (colon <= 0) throw new IllegalArgumentException("expected host:port: " + upstream);
+                try {
+                    int port = Integer.parseInt(upstream.substring(colon + 1));
+                    if (port <= 0 || port > 65535) throw new NumberFormatException();
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("invalid port: " + upstream);
+                }
+                upstreams.add(upstream);
+            }
+            routes.put(prefix, upstreams);
+        }
+        return routes;
+    }
+
+    /**
+     * 配置校验用：返回错误信息，合法时返回 null。
+     */
+    public static String validateRoutes(String value) {
+        try {
+            parseRoutes(value);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    public Map<String, List<String>> getRoutes() {
+        return routes;
+    }
+
+    public String getBalancer() {
+        return balancer;
+    }
+
+    public String getHashKey() {
+        return hashKey;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public int getMaxIdlePerUpstream() {
+        return maxIdlePerUpstream;
+    }
+
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public int getMaxFails() {
+        return maxFails;
+    }
+
+    public int getEjectMillis() {
+        return ejectMillis;
+    }
+}
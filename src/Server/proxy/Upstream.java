@@ -0,0 +1,154 @@
+package Server.proxy;
+
+import common.buffer.DirectBufferPool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个上游后端 (Role C)
+ * 职责：维护到该后端的空闲长连接池、未完成请求数与被动健康状态。
+ *
+ * 设计说明：
+ *  - 空闲连接按后进先出复用：最近用过的连接最不可能已被上游因空闲而关闭，多余的连接自然老化
+ *  - 空闲超过 idleTimeout 的连接取出时直接丢弃，不再复用
+ *  - 被动健康检查：连接失败、读取超时、响应不完整或 502/503/504 都计为一次失败，成功响应清零；
+ *    连续失败达到 maxFails 次时摘除 ejectMillis。摘除期满后只给一次机会，再失败立即重新摘除
+ */
+public final class Upstream {
+
+    private final String name;
+    private final InetSocketAddress address;
+    private final ProxySettings settings;
+    private final DirectBufferPool bufferPool;
+
+    private final ConcurrentLinkedDeque<UpstreamConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong ejections = new AtomicLong();
+    private final AtomicLong connectsOpened = new AtomicLong();
+    private volatile long ejectedUntil;
+
+    /**
+     * @param hostPort 上游地址 host:port
+     */
+    public Upstream(String hostPort, ProxySettings settings, DirectBufferPool bufferPool) {
+        int colon = hostPort.lastIndexOf(':');
+        this.name = hostPort;
+        this.address = new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+        this.settings = settings;
+        this.bufferPool = bufferPool;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 当前未完成的请求数（最少未完成请求均衡使用）
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return 当前是否可用（未被摘除）
+     */
+    public boolean isAvailable(long nowMillis) {
+        return ejectedUntil <= nowMillis;
+    }
+
+    public long ejections() {
+        return ejections.get();
+    }
+
+    /**
+     * @return 累计新建的连接数（观察连接复用情况）
+     */
+    public long connectsOpened() {
+        return connectsOpened.get();
+    }
+
+    public int idleConnections() {
+        return idleCount.get();
+    }
+
+    void begin() {
+        outstanding.incrementAndGet();
+    }
+
+    void end() {
+        outstanding.decrementAndGet();
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    void onFailure() {
+        int fails = consecutiveFailures.incrementAndGet();
+        if (fails >= settings.getMaxFails() && settings.getEjectMillis() > 0) {
+            // 摘除期满后只剩一次机会
+            consecutiveFailures.set(settings.getMaxFails() - 1);
+            ejectedUntil = System.currentTimeMillis() + settings.getEjectMillis();
+            ejections.incrementAndGet();
+            System.out.println("Upstream " + name + " ejected for " + settings.getEjectMillis() + " ms after "
+                    + fails + " consecutive failures");
+        }
+    }
+
+    /**
+     * 取一条连接：优先复用空闲连接，没有时新建。
+     */
+    UpstreamConnection acquire() throws IOException {
+        long expiredBefore = System.currentTimeMillis() - settings.getIdleTimeoutMillis();
+        UpstreamConnection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            if (conn.idleSince >= expiredBefore && conn.isOpen()) {
+                return conn;
+            }
+            conn.close();
+        }
+        conn = UpstreamConnection.open(address, settings.getConnectTimeoutMillis(), settings.getReadTimeoutMillis(),
+                bufferPool);
+        connectsOpened.incrementAndGet();
+        return conn;
+    }
+
+    /**
+     * 归还连接：可复用且空闲池未满时放回池中，否则关闭。
+     */
+    void release(UpstreamConnection conn, boolean reusable) {
+        if (reusable && conn.isOpen()) {
+            if (idleCount.incrementAndGet() <= settings.getMaxIdlePerUpstream()) {
+                conn.reused = true;
+                conn.idleSince = System.currentTimeMillis();
+                idle.offerFirst(conn);
+                return;
+            }
+            idleCount.decrementAndGet();
+        }
+        conn.close();
+    }
+
+    /**
+     * 关闭所有空闲连接。
+     */
+    void close() {
+        UpstreamConnection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            conn.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
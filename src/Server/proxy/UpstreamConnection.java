@@ -0,0 +1,95 @@
+package Server.proxy;
+
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+import common.buffer.PooledByteBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 到某个上游的一条长连接（包内使用）。
+ *
+ * 说明：
+ *  - 请求报文经池化的直接缓冲从通道写出；响应从 socket 输入流读取，以便 SO_TIMEOUT 生效
+ *  - 同一时刻只被一个请求使用；请求完成且响应读完整时放回所属上游的空闲池
+ */
+final class UpstreamConnection implements Closeable {
+
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    private final InetSocketAddress address;
+    private final SocketChannel channel;
+    private final Socket socket;
+    private final BufferedInputStream in;
+    private final PooledByteBuffer buffer;
+    private final ChannelWriter writer;
+    /** 最近一次放回空闲池的时间 */
+    long idleSince;
+    /** 是否已经承载过请求（复用的连接可能已被上游关闭，失败时可以换新连接重试） */
+    boolean reused;
+    private boolean closed;
+
+    private UpstreamConnection(InetSocketAddress address, SocketChannel channel, DirectBufferPool bufferPool)
+            throws IOException {
+        this.address = address;
+        this.channel = channel;
+        this.socket = channel.socket();
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.buffer = bufferPool.allocate(WRITE_BUFFER_SIZE);
+        this.writer = new ChannelWriter(channel, buffer.buffer());
+    }
+
+    /**
+     * 建立连接。
+     *
+     * @throws ConnectException 连接失败或超时（请求尚未发出，调用方可以换其他上游）
+     */
+    static UpstreamConnection open(InetSocketAddress address, int connectTimeoutMillis, int readTimeoutMillis,
+                                   DirectBufferPool bufferPool) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().connect(address, connectTimeoutMillis);
+            channel.socket().setSoTimeout(readTimeoutMillis);
+        } catch (IOException e) {
+            channel.close();
+            ConnectException ce = new ConnectException(address + ": " + e.getMessage());
+            ce.initCause(e);
+            throw ce;
+        }
+        return new UpstreamConnection(address, channel, bufferPool);
+    }
+
+    InetSocketAddress address() {
+        return address;
+    }
+
+    ChannelWriter writer() {
+        return writer;
+    }
+
+    BufferedInputStream in() {
+        return in;
+    }
+
+    synchronized boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        buffer.release();
+    }
+}
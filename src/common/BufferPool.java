@@ -0,0 +1,77 @@
+package common;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的 byte[] 缓冲池（固定大小）。
+ *
+ * 说明：
+ *  - acquire 优先取池中的缓冲，池空时新建；release 时池未满才放回，多余的交给 GC
+ *  - 池中最多保留 maxPooled 个缓冲，内存占用有上限；突发时不会阻塞也不会失败
+ *  - 放回的缓冲不清零，调用方只应读取自己写入的部分
+ */
+public final class BufferPool {
+
+    private static final BufferPool SHARED = new BufferPool(8192, 256);
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> pool;
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * @param bufferSize 每个缓冲的字节数
+     * @param maxPooled  池中最多保留的缓冲个数
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) throw new IllegalArgumentException("invalid pool size");
+        this.bufferSize = bufferSize;
+        this.pool = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * 默认共享池（8 KiB × 256），供未显式配置的调用方使用。
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    public byte[] acquire() {
+        byte[] buf = pool.poll();
+        if (buf != null) {
+            reused.incrementAndGet();
+            return buf;
+        }
+        allocated.incrementAndGet();
+        return new byte[bufferSize];
+    }
+
+    /**
+     * 归还缓冲；大小不符（如调用方自行扩容过）的缓冲直接丢弃。
+     */
+    public void release(byte[] buf) {
+        if (buf != null && buf.length == bufferSize) {
+            pool.offer(buf);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /** @return 池中当前空闲的缓冲数 */
+    public int idleCount() {
+        return pool.size();
+    }
+
+    /** @return 因池空而新建的缓冲总数 */
+    public long allocatedCount() {
+        return allocated.get();
+    }
+
+    /** @return 从池中复用的次数 */
+    public long reusedCount() {
+        return reused.get();
+    }
+}
@@ -0,0 +1,115 @@
+package common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * chunked 传输编码（RFC 9112 7.1）的解码输入流。
+ *
+ * 说明：
+ *  - 读出的是解码后的报文体；块扩展被忽略，结尾的 trailer 字段被读取并丢弃
+ *  - 读到结束块与 trailer 后返回 -1，底层流恰好停在下一个报文的开头，连接可以继续复用
+ *  - close() 不关闭底层连接流
+ */
+public final class ChunkedInputStream extends InputStream {
+
+    /** 块大小行的最大长度（含扩展） */
+    private static final int MAX_CHUNK_LINE = 4096;
+
+    private final InputStream in;
+    /** 当前块还未读取的字节数；-1 表示需要读取下一个块大小行 */
+    private long chunkRemaining = -1;
+    private boolean finished;
+    private boolean closed;
+
+    public ChunkedInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return 是否已读到结束块（整个报文体已读完）
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!prepare()) return -1;
+        int b = in.read();
+        if (b < 0) throw new EOFException("Unexpected end of chunked body");
+        chunkRemaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!prepare()) return -1;
+        int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (n < 0) throw new EOFException("Unexpected end of chunked body");
+        chunkRemaining -= n;
+        return n;
+    }
+
+    /**
+     * 保证当前块还有数据可读。
+     *
+     * @return false 表示报文体已结束
+     */
+    private boolean prepare() throws IOException {
+        if (closed || finished) return false;
+        if (chunkRemaining == 0) {
+            // 块数据之后的 CRLF
+            if (readLine().length() != 0) throw new IOException("Missing CRLF after chunk data");
+            chunkRemaining = -1;
+        }
+        if (chunkRemaining < 0) {
+            String line = readLine();
+            int ext = line.indexOf(';');
+            String size = (ext < 0 ? line : line.substring(0, ext)).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+            if (chunkRemaining < 0) throw new IOException("Invalid chunk size: " + line);
+            if (chunkRemaining == 0) {
+                // trailer 字段直到空行
+                while (readLine().length() != 0) {
+                    // 丢弃
+                }
+                finished = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c < 0) throw new EOFException("Unexpected end of chunked body");
+            if (c == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') sb.setLength(len - 1);
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_CHUNK_LINE) throw new IOException("Chunk size line too long");
+            sb.append((char) c);
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed || finished || chunkRemaining <= 0) return 0;
+        return (int) Math.min(in.available(), chunkRemaining);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -1,8 +1,55 @@
 package common;
 
+import Server.ClientLimits;
+import Server.ConnectionHandler;
+import Server.KeepAlivePolicy;
+import Server.ListenerSettings;
+import Server.OverloadGuard;
+import Server.RequestTiming;
+import Server.Warmup;
+import Server.auth.AccessControlList;
+import Server.auth.LogUserStore;
+import Server.auth.PasswordHasher;
+import Server.auth.SessionStore;
+import Server.config.ConfigKeys;
+import Server.config.ServerConfig;
+import Client.DownloadResult;
+import Client.SimpleHttpClient;
+import Client.StreamingResponse;
+import Server.dispatcher.RequestDispatcher;
+import Server.dispatcher.Bulkhead;
+import Server.dispatcher.BulkheadFullException;
+import Server.dispatcher.MicroCache;
+import Server.dispatcher.StaticFileIndex;
+import Server.http2.Http2Handler;
+import Server.http2.Http2Settings;
+import Server.proxy.ProxyHandler;
+import Server.proxy.ProxySettings;
+import Server.proxy.Upstream;
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+import common.buffer.PooledByteBuffer;
+import common.hpack.HpackDecoder;
+import common.hpack.HpackEncoder;
+import utils.BloomFilter;
+import utils.IpPrefixTrie;
+import utils.RateLimiter;
+import utils.TimerWheel;
+
 import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 简单的验证/演示程序（非单元测试框架，便于快速手工验证）。
@@ -11,7 +58,35 @@ public class CommonProtocolTest {
 
     public static void main(String[] args) throws Exception {
         testParsePost();
+        testRequestContextReuse();
         testResponseWrite();
+        testHeaderEncoding();
+        testUrlEncoded();
+        testHeaders();
+        testServerConfig();
+        testKeepAlivePolicy();
+        testListenerSettings();
+        testDirectBufferPool();
+        testHpack();
+        testHttp2Frames();
+        testHttp2WriteDeadline();
+        testPasswordHasher();
+        testSessionExpiry();
+        testAccessControl();
+        testUserStore();
+        testStaticFileIndex();
+        testProxy();
+        testMicroCache();
+        testRequestTiming();
+        testBulkhead();
+        testOverloadGuard();
+        testRateLimiter();
+        testClientLimits();
+        testWarmup();
+        testRangeDownload();
+        testStreamingResponse();
+        testExpectContinue();
+        testUpload();
     }
 
     private static void testParsePost() throws Exception {
@@ -33,6 +108,44 @@ public class CommonProtocolTest {
         System.out.println("Body text: " + new String(req.getBody(), StandardCharsets.ISO_8859_1));
     }
 
+    private static void testRequestContextReuse() throws Exception {
+        // 行读取器：超长的行临时扩容，下一行恢复为初始缓冲；CR 单独出现时属于行内容
+        byte[] initial = new byte[16];
+        LineReader reader = new LineReader(initial);
+        String longValue = "x".repeat(100);
+        BufferedInputStream lines = new BufferedInputStream(new ByteArrayInputStream(
+                ("short\r\n" + longValue + "\r\na\rb\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+        List<String> read = new ArrayList<>();
+        List<Boolean> initialBuffer = new ArrayList<>();
+        while (reader.read(lines)) {
+            read.add(reader.string(0, reader.length).replace("\r", "<CR>"));
+            initialBuffer.add(reader.buf == initial);
+        }
+        System.out.println("line reader: " + read.get(0) + ", " + read.get(1).length() + ", " + read.get(2)
+                + ", initial buffer " + initialBuffer);                                 // short, 100, a<CR>b, [true, false, true]
+
+        // 同一连接上的三个请求：请求对象被复用，上一个请求的头部、请求体与长度不会残留
+        BufferPool pool = new BufferPool(32, 4);
+        String raw = "POST /first?x=1 HTTP/1.1\r\nHost: localhost\r\nX-One: 1\r\nContent-Length: 5\r\n\r\nhello"
+                + "GET /second HTTP/1.1\r\nHost: localhost\r\nX-Long: " + longValue + "\r\n\r\n"
+                + "GET /third HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(raw.getBytes(StandardCharsets.ISO_8859_1)));
+        try (RequestContext context = new RequestContext(pool)) {
+            HttpRequest first = context.readRequest(in);
+            String firstSummary = first.getMethod() + " " + first.getPath() + " " + first.getHeader("X-One") + " "
+                    + new String(first.getBody(), StandardCharsets.ISO_8859_1);
+            HttpRequest second = context.readRequest(in);
+            String secondSummary = second.getPath() + " " + second.getHeader("X-Long").length() + " "
+                    + second.getHeader("X-One") + " " + second.getContentLength();
+            HttpRequest third = context.readRequest(in);
+            System.out.println("reuse: [" + firstSummary + "] [" + secondSummary + "] [" + third.getPath() + " "
+                    + third.getHeader("X-Long") + " " + third.getBody().length + "]");  // [POST /first 1 hello] [/second 100 null 0] [/third null 0]
+            System.out.println("same object: " + (first == second && second == third)
+                    + ", end of stream: " + context.readRequest(in));                     // true, null
+        }
+        System.out.println("buffers returned to pool: " + pool.idleCount());                     // 2
+    }
+
         private static void testResponseWrite() throws Exception {
         HttpResponse resp = new HttpResponse();
         resp.setStatusCode(200);
@@ -48,4 +161,1398 @@ public class CommonProtocolTest {
         System.out.println(outText.replace("\r\n", "\\r\\n\n")); // 可视化 CRLF
         System.out.println("----- END -----");
     }
+
+    private static void testHeaderEncoding() throws Exception {
+        // 头部按 ISO-8859-1 写出：Latin-1 字符原样保留，其余字符写作 '?'
+        HttpResponse resp = new HttpResponse();
+        resp.setStatusCode(200);
+        resp.addHeader("X-Name", "na\u00efve \u4f60\u597d");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.write(out, new byte[64]);
+        String text = out.toString(StandardCharsets.ISO_8859_1.name());
+        System.out.println("stream header: " + text.substring(text.indexOf("X-Name"), text.indexOf("\r\n", text.indexOf("X-Name")))
+                .equals("X-Name: na\u00efve ??"));                                                  // true
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        ChannelWriter writer = new ChannelWriter(Channels.newChannel(channelOut), java.nio.ByteBuffer.allocate(16));
+        writer.ascii("na\u00efve \u4f60\u597d").flush();
+        System.out.println("channel header: " + channelOut.toString(StandardCharsets.ISO_8859_1.name())
+                .equals("na\u00efve ??"));                                                           // true
+    }
+
+    private static void testUrlEncoded() throws Exception {
+        String body = "username=a%40b.com&password=p+w%26d&tag=1&tag=2&flag";
+        String raw =
+                "POST /login?next=%2Fhome&lang=zh HTTP/1.1\r\n" +
+                        "Content-Type: application/x-www-form-urlencoded\r\n" +
+                        "Content-Length: " + body.length() + "\r\n" +
+                        "\r\n" + body;
+
+        HttpRequest req = new HttpRequest(new ByteArrayInputStream(raw.getBytes(StandardCharsets.ISO_8859_1)));
+        System.out.println("Path: " + req.getPath());                         // /login
+        System.out.println("Query next: " + req.getQueryParam("next"));       // /home
+        System.out.println("Form username: " + req.getFormParam("username")); // a@b.com
+        System.out.println("Form password: " + req.getFormParam("password")); // p w&d
+        System.out.println("Form tag: " + req.getFormParams().get("tag"));    // [1, 2]
+        System.out.println("Form flag: '" + req.getFormParam("flag") + "'");  // ''
+        System.out.println("UTF-8 decode: " + UrlEncoded.parseQuery("q=%E4%BD%A0%E5%A5%BD").get("q")); // [你好]
+    }
+
+    private static void testHeaders() throws Exception {
+        String raw =
+                "GET / HTTP/1.1\r\n" +
+                        "host: localhost\r\n" +
+                        "Accept: text/html\r\n" +
+                        "X-Custom : a\r\n" +
+                        "x-custom: b\r\n" +
+                        "\r\n";
+        HttpRequest req = new HttpRequest(new ByteArrayInputStream(raw.getBytes(StandardCharsets.ISO_8859_1)));
+        System.out.println("Host: " + req.getHeader(HeaderName.HOST));            // localhost
+        System.out.println("X-Custom: " + req.getHeader("X-CUSTOM"));             // a, b
+        System.out.println("X-Custom values: " + req.getHeaderValues("x-custom")); // [a, b]
+
+        HttpResponse resp = new HttpResponse();
+        resp.addHeader("Connection", "keep-alive");
+        resp.addHeader("connection", "close");       // 覆盖
+        resp.appendHeader("Set-Cookie", "a=1");
+        resp.appendHeader("Set-Cookie", "b=2");      // 追加
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.write(out);
+        System.out.println(out.toString(StandardCharsets.ISO_8859_1.name()).replace("\r\n", "\\r\\n\n"));
+    }
+
+    private static void testServerConfig() throws Exception {
+        // 优先级：默认值 < 配置文件 < 环境变量 < 命令行
+        Path file = Files.createTempFile("server-config-test", ".properties");
+        Files.write(file, List.of("server.port=9000", "keepalive.idle-timeout-ms=20000",
+                "keepalive.max-requests=50", "keepalive.read-timeout-ms=30000"));
+        Map<String, String> env = Map.of("HTTP_KEEPALIVE_MAX_REQUESTS", "60", "HTTP_KEEPALIVE_READ_TIMEOUT_MS", "40000");
+        ServerConfig config = ServerConfig.of(file, env, Map.of("keepalive.read-timeout-ms", "45000"));
+        System.out.println("config precedence: default " + config.get(ConfigKeys.WORKER_THREADS)
+                + ", file " + config.get(ConfigKeys.PORT) + "/" + config.get(ConfigKeys.IDLE_TIMEOUT_MS)
+                + ", env " + config.get(ConfigKeys.MAX_REQUESTS)
+                + ", cli " + config.get(ConfigKeys.READ_TIMEOUT_MS));                   // 50, 9000/20000, 60, 45000
+
+        // 校验：所有错误（未知键、无法解析、越界、跨项约束）收集到同一个异常中
+        Map<String, String> bad = new java.util.HashMap<>();
+        bad.put("server.port", "0");
+        bad.put("keepalive.max-requests", "many");
+        bad.put("no.such-key", "1");
+        bad.put("keepalive.min-idle-timeout-ms", "20000");
+        try {
+            ServerConfig.of(bad);
+            System.out.println("invalid config accepted");
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage();
+            System.out.println("config errors: " + (message.split("\n - ").length - 1)
+                    + ", " + message.contains("server.port") + " " + message.contains("keepalive.max-requests")
+                    + " " + message.contains("no.such-key")
+                    + " " + message.contains("keepalive.min-idle-timeout-ms"));             // 4, true true true true
+        }
+
+        // 热更新：只应用可热更新的键；重启才生效的键保持原值；新配置不合法时整体保留旧配置
+        ServerConfig reloading = ServerConfig.of(file, Map.of(), Map.of());
+        int[] notified = new int[1];
+        reloading.addListener(c -> notified[0]++);
+        Files.write(file, List.of("server.port=9001", "keepalive.idle-timeout-ms=25000"));
+        boolean applied = reloading.reload();
+        System.out.println("config reload: " + applied + ", idle " + reloading.get(ConfigKeys.IDLE_TIMEOUT_MS)
+                + ", port " + reloading.get(ConfigKeys.PORT)
+                + ", notified " + notified[0]);                                                  // true, 25000, 9000, 1
+        Files.write(file, List.of("keepalive.idle-timeout-ms=-5"));
+        boolean invalid = reloading.reload();
+        Files.write(file, List.of("keepalive.idle-timeout-ms=25000", "keepalive.min-idle-timeout-ms=30000"));
+        boolean conflicting = reloading.reload();
+        System.out.println("config reload rejected: " + invalid + " " + conflicting
+                + ", idle " + reloading.get(ConfigKeys.IDLE_TIMEOUT_MS)
+                + ", min idle " + reloading.get(ConfigKeys.MIN_IDLE_TIMEOUT_MS)
+                + ", notified " + notified[0]);                                                  // false false, 25000, 1000, 1
+        Files.delete(file);
+    }
+
+    private static void testKeepAlivePolicy() throws Exception {
+        // 空闲超时随占用率缩短：低水位 0.5 以下为 15s，0.5 ~ 0.9 线性缩短，0.9 以上为最小值 1s
+        KeepAlivePolicy policy = new KeepAlivePolicy(15000, 1000, 5000, 3, true, 0.5, 0.9);
+        List<Integer> idle = new ArrayList<>();
+        for (double load : new double[]{0.2, 0.5, 0.7, 0.9, 1.5}) idle.add(policy.idleTimeoutMillis(load));
+        System.out.println("keepalive idle by load: " + idle);                         // [15000, 15000, 8000, 1000, 1000]
+        KeepAlivePolicy fixed = new KeepAlivePolicy(15000, 1000, 5000, 3, false, 0.5, 0.9);
+        System.out.println("keepalive non-adaptive: " + fixed.idleTimeoutMillis(1.5));                 // 15000
+        System.out.println("keepalive header: " + KeepAlivePolicy.headerValue(8000, 2) + " | "
+                + KeepAlivePolicy.headerValue(1500, 1) + " | " + KeepAlivePolicy.headerValue(200, 5)); // timeout=8, max=2 | timeout=2, max=1 | timeout=1, max=5
+
+        // 连接上：占用率固定 0.7，max 逐个递减，最后一个请求回复 Connection: close
+        RequestDispatcher dispatcher = new RequestDispatcher(testConfig());
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                try (Socket accepted = server.accept()) {
+                    new ConnectionHandler(accepted, dispatcher, policy, () -> 0.7, BufferPool.shared(),
+                            DirectBufferPool.shared(), null, ClientLimits.defaults()).run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                OutputStream out = client.getOutputStream();
+                BufferedInputStream in = new BufferedInputStream(client.getInputStream());
+                List<String> headers = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    out.write("GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    HttpResponse response = HttpResponse.readHead(in);
+                    in.readNBytes(Integer.parseInt(response.getHeader("Content-Length")));
+                    headers.add(response.getHeader("Connection") + "/" + response.getHeader("Keep-Alive"));
+                }
+                System.out.println("keepalive on connection: " + headers + ", closed " + (in.read() == -1));
+                // [keep-alive/timeout=8, max=2, keep-alive/timeout=8, max=1, close/null], closed true
+            }
+            serverThread.join();
+        }
+    }
+
+    private static void testListenerSettings() {
+        // 构造时校验：接收线程数、backlog 必须为正，缓冲区大小不能为负
+        List<String> rejected = new ArrayList<>();
+        int[][] invalid = {{1024, 0, 0}, {1024, -2, 0}, {0, 1, 0}, {-1, 1, 0}, {1024, 1, -1}};
+        for (int[] v : invalid) {
+            try {
+                new ListenerSettings(v[0], true, v[2], 0, true, v[1], true);
+                rejected.add("accepted");
+            } catch (IllegalArgumentException e) {
+                rejected.add(e.getMessage());
+            }
+        }
+        System.out.println("listener invalid: " + rejected);
+        // [acceptorThreads must be positive, acceptorThreads must be positive, backlog must be positive, backlog must be positive, buffer sizes cannot be negative]
+
+        // 配置层：超出范围的接收线程数与 backlog 在启动时被拒绝
+        for (String[] entry : new String[][]{{"listener.acceptors", "0"}, {"listener.acceptors", "65"},
+                {"listener.backlog", "0"}, {"listener.backlog", "70000"}}) {
+            try {
+                ServerConfig.of(Map.of(entry[0], entry[1]));
+                System.out.println("config accepted " + entry[0] + "=" + entry[1]);
+            } catch (IllegalArgumentException e) {
+                System.out.println("config rejected " + entry[0] + "=" + entry[1]);    // rejected (x4)
+            }
+        }
+
+        // SO_REUSEPORT：支持时每个接收线程一个监听 Socket，不支持或未启用时退回共享一个
+        ListenerSettings four = new ListenerSettings(1024, true, 0, 0, true, 4, true);
+        ListenerSettings noReusePort = new ListenerSettings(1024, true, 0, 0, true, 4, false);
+        System.out.println("listeners: supported " + four.listenerCount(true)
+                + ", unsupported " + four.listenerCount(false)
+                + ", disabled " + noReusePort.listenerCount(true)
+                + ", single acceptor " + ListenerSettings.defaults().listenerCount(true));   // 4, 1, 1, 1
+    }
+
+    private static void testDirectBufferPool() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(1, false);
+        PooledByteBuffer a = pool.allocate(100);
+        System.out.println("capacity: " + a.capacity() + ", direct: " + a.buffer().isDirect()); // 4096, true
+        a.retain();
+        System.out.println("first release recycled: " + a.release());  // false
+        System.out.println("second release recycled: " + a.release()); // true
+        PooledByteBuffer b = pool.allocate(4096);
+        System.out.println("pooled bytes: " + pool.pooledBytes() + ", unpooled: " + pool.unpooledCount()); // 1048576, 0
+        b.release();
+        PooledByteBuffer big = pool.allocate(128 * 1024);
+        System.out.println("unpooled after 128K: " + pool.unpooledCount()); // 1
+        big.release();
+
+        // 响应经直接缓冲编码：body 大于缓冲时分块写出，内容应与堆缓冲写出完全一致
+        HttpResponse resp = new HttpResponse();
+        resp.addHeader("Content-Type", "text/plain");
+        resp.setBody(new byte[10000]);
+        ByteArrayOutputStream viaHeap = new ByteArrayOutputStream();
+        resp.write(viaHeap, new byte[1024]);
+        ByteArrayOutputStream viaChannel = new ByteArrayOutputStream();
+        PooledByteBuffer buf = pool.allocate(4096);
+        try {
+            resp.write(new ChannelWriter(Channels.newChannel(viaChannel), buf.buffer()));
+        } finally {
+            buf.release();
+        }
+        System.out.println("channel write identical: "
+                + Arrays.equals(viaHeap.toByteArray(), viaChannel.toByteArray())); // true
+    }
+
+    private static void testHpack() throws Exception {
+        // RFC 7541 C.4：三个使用 Huffman 编码、共享动态表的请求头部块
+        String[][][] requests = {
+                {{":method", "GET"}, {":scheme", "http"}, {":path", "/"}, {":authority", "www.example.com"}},
+                {{":method", "GET"}, {":scheme", "http"}, {":path", "/"}, {":authority", "www.example.com"},
+                        {"cache-control", "no-cache"}},
+                {{":method", "GET"}, {":scheme", "https"}, {":path", "/index.html"}, {":authority", "www.example.com"},
+                        {"custom-key", "custom-value"}},
+        };
+        String[] expected = {
+                "828684418cf1e3c2e5f23a6ba0ab90f4ff",
+                "828684be5886a8eb10649cbf",
+                "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf",
+        };
+        HpackEncoder encoder = new HpackEncoder(4096);
+        HpackDecoder decoder = new HpackDecoder(4096, 65536);
+        for (int i = 0; i < requests.length; i++) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            encoder.beginHeaderBlock(block);
+            for (String[] field : requests[i]) encoder.encode(field[0], field[1], block);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : block.toByteArray()) hex.append(String.format("%02x", b));
+            List<String> decoded = new ArrayList<>();
+            byte[] bytes = block.toByteArray();
+            decoder.decode(bytes, 0, bytes.length, (n, v) -> decoded.add(n + ": " + v));
+            System.out.println("C.4." + (i + 1) + " matches RFC: " + hex.toString().equals(expected[i])); // true
+            System.out.println("  decoded " + decoded + ", table size " + decoder.tableSize());         // 57, 110, 164
+        }
+    }
+
+    private static void testStaticFileIndex() throws Exception {
+        Path root = Files.createTempDirectory("static-index");
+        Files.writeString(root.resolve("a.html"), "<h1>hello</h1>");
+        Files.createDirectory(root.resolve("css"));
+        Files.writeString(root.resolve("css").resolve("b.css"), "<h1>hello</h1>");
+        try (StaticFileIndex index = new StaticFileIndex(root.toString(), true)) {
+            StaticFileIndex.Entry a = index.lookup("/a.html");
+            StaticFileIndex.Entry b = index.lookup("/css/b.css");
+            System.out.println("indexed: " + index.size() + ", " + a.getContentType() + ", " + b.getContentType());
+            System.out.println("same content, same etag: " + a.getEtag().equals(b.getEtag()));       // true
+            System.out.println("unknown path: " + index.lookup("/missing.html"));                    // null
+            System.out.println("traversal: " + index.lookup("/../etc/passwd"));                     // null
+
+            // 修改、新建与删除经 WatchService 反映到索引（各平台事件延迟不同，最多等 10 秒）
+            Files.writeString(root.resolve("a.html"), "<h1>changed</h1>");
+            Files.writeString(root.resolve("c.txt"), "new");
+            Files.delete(root.resolve("css").resolve("b.css"));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (System.currentTimeMillis() < deadline
+                    && (index.lookup("/a.html").getEtag().equals(a.getEtag())
+                    || index.lookup("/c.txt") == null || index.lookup("/css/b.css") != null)) {
+                Thread.sleep(50);
+            }
+            System.out.println("etag changed: " + !index.lookup("/a.html").getEtag().equals(a.getEtag())
+                    + ", created: " + (index.lookup("/c.txt") != null)
+                    + ", deleted: " + (index.lookup("/css/b.css") == null));                        // true x3
+        }
+    }
+
+    private static void testProxy() throws Exception {
+        // 两个回环地址上的替身后端：响应体为 "<名称> <请求体长度>"，/chunked 以 chunked 编码返回
+        ServerSocket a = startBackend("A");
+        ServerSocket b = startBackend("B");
+        String addrA = "127.0.0.1:" + a.getLocalPort();
+        String addrB = "127.0.0.1:" + b.getLocalPort();
+
+        ProxySettings settings = new ProxySettings(Map.of("/api/", List.of(addrA, addrB)),
+                ProxySettings.LEAST_OUTSTANDING, "client-ip", 1000, 5000, 8, 30_000, 2, 60_000);
+        ProxyHandler proxy = new ProxyHandler("/api/", List.of(addrA, addrB), settings, DirectBufferPool.shared());
+        StringBuilder served = new StringBuilder();
+        for (int i = 0; i < 6; i++) served.append(proxyBody(proxy, "/api/x", null).charAt(0));
+        long connects = 0;
+        for (Upstream u : proxy.getUpstreams()) connects += u.connectsOpened();
+        System.out.println("least-outstanding: " + served + ", connections opened: " + connects); // ABABAB, 2
+        System.out.println("chunked: " + proxyBody(proxy, "/api/chunked", null));                  // "hello world"
+        System.out.println("post: " + proxyBody(proxy, "/api/x", new byte[100_000]).substring(2)); // 100000
+
+        // 一致性哈希：同一个键总是落在同一个后端
+        ProxySettings hashSettings = new ProxySettings(Map.of("/api/", List.of(addrA, addrB)),
+                ProxySettings.CONSISTENT_HASH, "header:X-User", 1000, 5000, 8, 30_000, 2, 60_000);
+        ProxyHandler hashed = new ProxyHandler("/api/", List.of(addrA, addrB), hashSettings, DirectBufferPool.shared());
+        StringBuilder alice = new StringBuilder();
+        for (int i = 0; i < 4; i++) alice.append(proxyBody(hashed, "/api/x?u=alice", null).charAt(0));
+        System.out.println("consistent-hash for one key: " + alice);                               // 同一字母重复 4 次
+
+        // 后端 B 下线：请求全部转到 A，连续失败后 B 被摘除
+        b.close();
+        proxy.close();
+        StringBuilder failover = new StringBuilder();
+        for (int i = 0; i < 4; i++) failover.append(proxyBody(proxy, "/api/x", null).charAt(0));
+        System.out.println("after B down: " + failover + ", B ejections: "
+                + proxy.getUpstreams().get(1).ejections());                                        // AAAA, 1
+        proxy.close();
+        hashed.close();
+        a.close();
+    }
+
+    private static String proxyBody(ProxyHandler proxy, String uri, byte[] body) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Host", "test");
+        headers.add("X-User", "alice");
+        HttpRequest request = new HttpRequest(body == null ? "GET" : "POST", uri, "HTTP/1.1", headers, body);
+        request.setRemoteAddress("127.0.0.1");
+        HttpResponse response = proxy.handle(request);
+        if (!response.isStreaming()) return response.getStatusCode() + "";
+        try (java.io.InputStream in = response.getBodyStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static ServerSocket startBackend(String name) throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread worker = new Thread(() -> serveBackend(socket, name));
+                    worker.setDaemon(true);
+                    worker.start();
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    private static void serveBackend(Socket socket, String name) {
+        try (socket) {
+            BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (true) {
+                HttpRequest request = new HttpRequest(in);
+                String head;
+                byte[] body;
+                if (request.getPath().endsWith("/chunked")) {
+                    head = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n";
+                    body = "5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+                } else {
+                    body = (name + " " + request.getContentLength()).getBytes(StandardCharsets.ISO_8859_1);
+                    head = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n";
+                }
+                out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+                out.flush();
+            }
+        } catch (Exception ignored) {
+            // 连接关闭
+        }
+    }
+
+    private static void testMicroCache() throws Exception {
+        MicroCache cache = new MicroCache(new String[]{"/api/"}, new String[]{"Accept"}, 1000, 5000, 2000, 100, 1024);
+        java.util.concurrent.atomic.AtomicInteger loads = new java.util.concurrent.atomic.AtomicInteger();
+        MicroCache.Loader slow = request -> {
+            Thread.sleep(100);
+            HttpResponse response = new HttpResponse();
+            response.setStringBody("v" + loads.incrementAndGet());
+            return response;
+        };
+
+        // 冷启动时 16 个并发请求只触发一次计算
+        List<Thread> threads = new ArrayList<>();
+        StringBuilder statuses = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    HttpResponse r = cache.get(cacheRequest("/api/list"), slow);
+                    synchronized (statuses) { statuses.append(r.getHeader("X-Cache").charAt(0)); }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        System.out.println("coalesced loads: " + loads.get() + ", misses: "
+                + statuses.chars().filter(c -> c == 'M').count());                                 // 1, 1
+
+        // 新鲜期内命中；过期后先返回旧值，后台刷新后返回新值
+        System.out.println("hit: " + cacheBody(cache, slow));                                        // HIT v1
+        Thread.sleep(1100);
+        System.out.println("stale: " + cacheBody(cache, slow));                                      // STALE v1
+        Thread.sleep(300);
+        System.out.println("refreshed: " + cacheBody(cache, slow));                                  // HIT v2
+
+        // 带 Set-Cookie 的响应不缓存
+        MicroCache.Loader withCookie = request -> {
+            HttpResponse response = new HttpResponse();
+            response.addHeader("Set-Cookie", "SID=1");
+            response.setStringBody("private");
+            return response;
+        };
+        cache.get(cacheRequest("/api/me"), withCookie);
+        System.out.println("set-cookie cached: " + (cache.get(cacheRequest("/api/me"), withCookie)
+                .getHeader("X-Cache") != null) + ", " + cache);                                      // false
+        cache.shutdown();
+    }
+
+    private static HttpRequest cacheRequest(String uri) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Accept", "application/json");
+        return new HttpRequest("GET", uri, "HTTP/1.1", headers, null);
+    }
+
+    private static String cacheBody(MicroCache cache, MicroCache.Loader loader) throws Exception {
+        HttpResponse response = cache.get(cacheRequest("/api/list"), loader);
+        return response.getHeader("X-Cache") + " " + new String(response.getBody(), StandardCharsets.UTF_8);
+    }
+
+    private static void testRequestTiming() throws Exception {
+        HttpRequest request = new HttpRequest("GET", "/timed", "HTTP/1.1", new HttpHeaders(), null);
+
+        // 未录制 JFR 且未开启 Server-Timing：不加头部
+        HttpResponse plain = timedResponse(request);
+        System.out.println("disabled: " + plain.getHeader("Server-Timing"));                          // null
+
+        RequestTiming.setServerTimingHeader(true);
+        System.out.println("server-timing: " + timedResponse(request).getHeader("Server-Timing"));  // queue;dur=...
+        RequestTiming.setServerTimingHeader(false);
+
+        // 开启录制后每个请求提交一个事件
+        Path file = Files.createTempFile("timing", ".jfr");
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable("socketproject.HttpRequest");
+            recording.start();
+            timedResponse(request);
+            recording.stop();
+            recording.dump(file);
+        }
+        for (jdk.jfr.consumer.RecordedEvent e : jdk.jfr.consumer.RecordingFile.readAllEvents(file)) {
+            System.out.println("jfr: " + e.getString("method") + " " + e.getString("path") + " " + e.getInt("status")
+                    + ", handle >= 5ms: " + (e.getDuration("handle").toMillis() >= 5));            // GET /timed 200, true
+        }
+        Files.delete(file);
+    }
+
+    private static HttpResponse timedResponse(HttpRequest request) throws Exception {
+        RequestTiming timing = new RequestTiming("HTTP/1.1");
+        timing.start(0);
+        timing.parsed();
+        Thread.sleep(5);
+        HttpResponse response = new HttpResponse();
+        response.setStringBody("ok");
+        timing.handled(response);
+        timing.written(request, response);
+        return response;
+    }
+
+    private static void testOverloadGuard() throws Exception {
+        // CoDel：target 50ms、窗口 500ms、最长排队 1s；时间由调用方给出，结果确定
+        OverloadGuard guard = new OverloadGuard(10, 1000, 50, 500, 1);
+        long ms = 1_000_000L;
+        long t0 = 1_000_000 * ms;
+        boolean first = guard.onDequeue(t0 - 100 * ms, t0);
+        boolean slow = guard.onDequeue(t0 + 200 * ms - 300 * ms, t0 + 200 * ms);
+        System.out.println("codel first window: " + first + " " + slow
+                + ", overloaded " + guard.isOverloaded());                                     // true true, overloaded false
+
+        // 整个窗口的最小排队时间（100ms）都高于 target：进入过载，排队截止时间收紧为 2 * target
+        boolean tightened = guard.onDequeue(t0 + 500 * ms - 120 * ms, t0 + 500 * ms);
+        boolean within = guard.onDequeue(t0 + 550 * ms - 80 * ms, t0 + 550 * ms);
+        System.out.println("codel overloaded " + guard.isOverloaded() + ": 120ms " + tightened
+                + ", 80ms " + within);                                                          // true: 120ms false, 80ms true
+        System.out.println("codel admit while overloaded: backlog " + guard.admit(3)
+                + ", empty queue " + guard.admit(0));                                          // false, true
+
+        // 某次排队时间回落到 target 以下：立即退出过载
+        boolean drained = guard.onDequeue(t0 + 600 * ms - 10 * ms, t0 + 600 * ms);
+        System.out.println("codel below target: " + drained + ", overloaded " + guard.isOverloaded()
+                + ", admit backlog " + guard.admit(3));                                        // true, false, true
+
+        // 拒绝：写出 503 后丢弃客户端已发来的数据再关闭，客户端读到完整响应与 EOF 而不是连接重置
+        try (ServerSocket server = new ServerSocket(0);
+             Socket client = new Socket("127.0.0.1", server.getLocalPort());
+             Socket accepted = server.accept()) {
+            client.getOutputStream().write(("POST /upload/big.bin HTTP/1.1\r\nContent-Length: 100000\r\n\r\n"
+                    + "x".repeat(3000)).getBytes(StandardCharsets.ISO_8859_1));
+            Thread.sleep(50);
+            guard.reject(accepted, true);
+            BufferedInputStream in = new BufferedInputStream(client.getInputStream());
+            String result;
+            try {
+                HttpResponse response = HttpResponse.readHead(in);
+                in.readNBytes(Integer.parseInt(response.getHeader("Content-Length")));
+                result = response.getStatusCode() + " " + response.getHeader("Retry-After")
+                        + ", eof " + (in.read() == -1);
+                // 服务端关闭时接收缓冲已空：只发 FIN 不发 RST，客户端的下一次写出不会立即失败
+                client.getOutputStream().write('x');
+                result += ", no reset";
+            } catch (java.io.IOException e) {
+                result = "reset: " + e.getMessage();
+            }
+            System.out.println("reject: " + result + ", shed at accept " + guard.getShedAtAccept()); // 503 1, eof true, no reset, 1
+        }
+    }
+
+    private static void testBulkhead() throws Exception {
+        Bulkhead auth = new Bulkhead("auth", 1, 1, 200);
+        Bulkhead statics = new Bulkhead("static", 2, 8, 200);
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+
+        // 慢任务占满 auth 的唯一线程，第二个任务排队，第三个因队列已满立即失败
+        Thread slow = new Thread(() -> {
+            try {
+                auth.call(() -> release.await(5, java.util.concurrent.TimeUnit.SECONDS));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        slow.start();
+        Thread.sleep(50);
+        Thread queued = new Thread(() -> {
+            try {
+                auth.call(() -> "late");
+            } catch (BulkheadFullException e) {
+                System.out.println("queued: " + e.getMessage());                                     // queue wait exceeded
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        queued.start();
+        Thread.sleep(50);
+        try {
+            auth.call(() -> "never");
+        } catch (BulkheadFullException e) {
+            System.out.println("rejected: " + e.getMessage());                                      // queue is full
+        }
+
+        // 另一个类别不受影响
+        long start = System.nanoTime();
+        String fast = statics.call(() -> "fast");
+        System.out.println("static while auth saturated: " + fast + ", < 50ms: "
+                + ((System.nanoTime() - start) < 50_000_000L));                                       // fast, true
+        queued.join();
+        release.countDown();
+        slow.join();
+        System.out.println(auth);
+        auth.shutdown();
+        statics.shutdown();
+
+        // 配置校验：一个类别的 threads + queue 不能占满全部连接线程
+        Map<String, String> overrides = new java.util.HashMap<>();
+        overrides.put("server.worker-threads", "50");
+        overrides.put("bulkhead.static.queue", "34");
+        try {
+            ServerConfig.of(overrides);
+            System.out.println("bulkhead config accepted");
+        } catch (IllegalArgumentException e) {
+            System.out.println("bulkhead config rejected: " + e.getMessage().contains("bulkhead.static.threads")); // true
+        }
+        overrides.put("bulkhead.static.queue", "33");
+        System.out.println("bulkhead 16 + 33 < 50 accepted: " + (ServerConfig.of(overrides) != null));      // true
+    }
+
+    private static void testRateLimiter() throws Exception {
+        // 每 100ms 一个令牌，突发 3；后台清理周期很长，只观察就地清理
+        RateLimiter limiter = new RateLimiter(600, 3, 2, 3_600_000, "test-limiter");
+        StringBuilder results = new StringBuilder();
+        for (int i = 0; i < 4; i++) results.append(limiter.tryAcquire("alice") == 0 ? 'y' : 'n');
+        long first = limiter.check("alice");
+        long second = limiter.check("alice");
+        System.out.println("burst: " + results + ", check does not consume: "
+                + (first > 0 && Math.abs(first - second) <= 1));                                        // yyyn, true
+
+        // 键表已满且都未回满：新键共用溢出桶
+        limiter.tryAcquire("bob");
+        limiter.tryAcquire("mallory-1");
+        System.out.println("overflow while full: size " + limiter.size());                                // 2
+
+        // 补充间隔之后再来的新键：先清理已回满的桶，拿到自己的桶
+        Thread.sleep(400);
+        System.out.println("new key after idle: " + limiter.tryAcquire("carol") + ", size " + limiter.size()); // 0, 1
+        limiter.shutdown();
+    }
+
+    private static void testClientLimits() throws Exception {
+        // 解析层：请求行超长 414，头部过多 431
+        RequestContext context = new RequestContext(BufferPool.shared());
+        context.setHeaderLimits(new HeaderLimits(64, 1024, 4));
+        byte[] longLine = ("GET /" + "a".repeat(100) + " HTTP/1.1\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] manyHeaders = "GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\nD: 4\r\nE: 5\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        for (byte[] raw : List.of(longLine, manyHeaders)) {
+            try {
+                context.readRequestHead(new BufferedInputStream(new ByteArrayInputStream(raw)));
+                System.out.println("limit not enforced");
+            } catch (RequestTooLargeException e) {
+                System.out.println("rejected: " + e.getStatusCode() + " " + e.getMessage());         // 414, 431
+            }
+        }
+        context.close();
+
+        // 连接层：每 100ms 发一个字节的客户端在头部截止时间（300ms）后收到 408
+        RequestDispatcher dispatcher = new RequestDispatcher(testConfig());
+        ClientLimits limits = new ClientLimits(HeaderLimits.defaults(), 300, 1024, 1000, 1000, 1 << 20);
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                try {
+                    Socket accepted = server.accept();
+                    new ConnectionHandler(accepted, dispatcher, KeepAlivePolicy.defaults(), () -> 0.0,
+                            BufferPool.shared(), DirectBufferPool.shared(), null, limits).run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+            long start = System.currentTimeMillis();
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                OutputStream out = client.getOutputStream();
+                out.write("GET /index.html HTTP/1.1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                try {
+                    for (int i = 0; i < 20 && client.getInputStream().available() == 0; i++) {
+                        out.write('X');
+                        Thread.sleep(100);
+                    }
+                } catch (java.io.IOException ignored) {
+                    // 服务端已关闭连接
+                }
+                HttpResponse response = HttpResponse.readHead(new BufferedInputStream(client.getInputStream()));
+                System.out.println("slowloris: " + response.getStatusCode()
+                        + ", within 1s: " + (System.currentTimeMillis() - start < 1000));             // 408, true
+            }
+            serverThread.join();
+        }
+    }
+
+    private static void testWarmup() throws Exception {
+        RequestDispatcher dispatcher = new RequestDispatcher(testConfig());
+        byte[] ready = "GET /ready HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        System.out.println("ready before start: "
+                + dispatcher.dispatch(new HttpRequest(new ByteArrayInputStream(ready))).getStatusCode());   // 503
+        System.out.println("warm-up: " + new Warmup(dispatcher, 2000, 200).run());
+        dispatcher.setReady(true);
+        System.out.println("ready after start: "
+                + dispatcher.dispatch(new HttpRequest(new ByteArrayInputStream(ready))).getStatusCode());   // 200
+    }
+
+    private static void testRangeDownload() throws Exception {
+        byte[] content = new byte[2 * 1024 * 1024];
+        new java.util.Random(42).nextBytes(content);
+        java.util.concurrent.atomic.AtomicBoolean dropped = new java.util.concurrent.atomic.AtomicBoolean();
+        java.util.concurrent.atomic.AtomicInteger rangeRequests = new java.util.concurrent.atomic.AtomicInteger();
+        List<Socket> accepted = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+        // 支持 HEAD 与单区间 Range 的最小服务器；第一个从 0 开始的区间只发一半就断开连接
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        accepted.add(socket);
+                        new Thread(() -> serveRanges(socket, content, dropped, rangeRequests)).start();
+                    } catch (Exception e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            SimpleHttpClient client = new SimpleHttpClient();
+            Path target = Files.createTempFile("range-download", ".bin");
+            DownloadResult result = client.download("http://127.0.0.1:" + server.getLocalPort() + "/file.bin",
+                    target, 4);
+            System.out.println("download: " + result);                                             // segments=4, retries=1
+            System.out.println("content matches: " + Arrays.equals(content, Files.readAllBytes(target)));  // true
+            System.out.println("range requests: " + rangeRequests.get());                          // 5
+
+            // 服务器关闭了池中的所有空闲连接：探测换新连接重试，各区间照常重试
+            for (Socket socket : accepted) socket.close();
+            Thread.sleep(100);
+            Files.delete(target);
+            client.download("http://127.0.0.1:" + server.getLocalPort() + "/file.bin", target, 4);
+            System.out.println("download over stale connections matches: "
+                    + Arrays.equals(content, Files.readAllBytes(target)));                             // true
+            client.close();
+            Files.delete(target);
+        }
+    }
+
+    private static void serveRanges(Socket socket, byte[] content,
+                                    java.util.concurrent.atomic.AtomicBoolean dropped,
+                                    java.util.concurrent.atomic.AtomicInteger rangeRequests) {
+        try (socket) {
+            BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (true) {
+                HttpRequest request = new HttpRequest(in);
+                String range = request.getHeader("Range");
+                if (range == null) {
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + content.length
+                            + "\r\nAccept-Ranges: bytes\r\nETag: \"v1\"\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    if (!"HEAD".equals(request.getMethod())) out.write(content);
+                    out.flush();
+                    continue;
+                }
+                rangeRequests.incrementAndGet();
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                int from = Integer.parseInt(bounds[0]);
+                int to = Integer.parseInt(bounds[1]);
+                out.write(("HTTP/1.1 206 Partial Content\r\nContent-Length: " + (to - from + 1)
+                        + "\r\nContent-Range: bytes " + from + "-" + to + "/" + content.length
+                        + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                if (from == 0 && dropped.compareAndSet(false, true)) {
+                    out.write(content, 0, (to + 1) / 2);
+                    out.flush();
+                    return;
+                }
+                out.write(content, from, to - from + 1);
+                out.flush();
+            }
+        } catch (Exception ignored) {
+            // 客户端关闭连接
+        }
+    }
+
+    private static void testStreamingResponse() throws Exception {
+        byte[] content = new byte[1024 * 1024 + 7];
+        new java.util.Random(7).nextBytes(content);
+        try (ServerSocket server = new ServerSocket(0)) {
+            // 第一个连接按 Content-Length 返回，第二个连接按 chunked 返回
+            Thread serverThread = new Thread(() -> {
+                for (int i = 0; i < 2; i++) {
+                    try (Socket socket = server.accept()) {
+                        new HttpRequest(new BufferedInputStream(socket.getInputStream()));
+                        OutputStream out = socket.getOutputStream();
+                        if (i == 0) {
+                            out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + content.length + "\r\n\r\n")
+                                    .getBytes(StandardCharsets.ISO_8859_1));
+                            out.write(content);
+                        } else {
+                            out.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n"
+                                    .getBytes(StandardCharsets.ISO_8859_1));
+                        }
+                        out.flush();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            SimpleHttpClient client = new SimpleHttpClient();
+            String url = "http://127.0.0.1:" + server.getLocalPort() + "/asset.bin";
+            Path target = Files.createTempFile("streaming", ".bin");
+            long written = client.downloadTo(url, target);
+            System.out.println("downloadTo: " + written + " bytes, matches: "
+                    + Arrays.equals(content, Files.readAllBytes(target)));                       // 1048583, true
+            try (StreamingResponse response = client.sendStreaming(new HttpRequest("GET", "/chunked", "HTTP/1.1",
+                    Map.of("Host", "127.0.0.1:" + server.getLocalPort()), null))) {
+                System.out.println("chunked: length=" + response.getContentLength() + ", body="
+                        + new String(response.body().readAllBytes(), StandardCharsets.ISO_8859_1)); // -1, hello world
+            }
+            serverThread.join();
+            Files.delete(target);
+        }
+    }
+
+    private static void testExpectContinue() throws Exception {
+        RequestDispatcher dispatcher = new RequestDispatcher(testConfig());
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                for (int i = 0; i < 4; i++) {
+                    try {
+                        Socket accepted = server.accept();
+                        new ConnectionHandler(accepted, dispatcher, KeepAlivePolicy.defaults(), () -> 0.0,
+                                BufferPool.shared(), DirectBufferPool.shared(), null, ClientLimits.defaults()).run();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            // 不存在的 POST 路由：不等请求体，直接回复 405
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                client.getOutputStream().write(("POST /upload-nowhere HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Content-Length: 5000000\r\nExpect: 100-continue\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                HttpResponse response = HttpResponse.readHead(new BufferedInputStream(client.getInputStream()));
+                System.out.println("expect to unknown route: " + response.getStatusCode());               // 405
+            }
+
+            // 没有 Expect 也先检查：一定被拒绝的请求不等请求体，回复 405 后关闭连接
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                long start = System.currentTimeMillis();
+                client.getOutputStream().write(("POST /upload-nowhere HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Content-Length: 1000\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                HttpResponse response = HttpResponse.readHead(new BufferedInputStream(client.getInputStream()));
+                System.out.println("body to unknown route: " + response.getStatusCode() + " "
+                        + response.getHeader("Connection") + ", without body: "
+                        + (System.currentTimeMillis() - start < 1000));                                // 405 close, true
+            }
+
+            // 登录：先收到 100 Continue，再发送请求体
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                String form = "username=nobody&password=secret";
+                OutputStream out = client.getOutputStream();
+                out.write(("POST /login HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-www-form-urlencoded\r\n"
+                        + "Content-Length: " + form.length() + "\r\nExpect: 100-continue\r\nConnection: close\r\n\r\n")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                BufferedInputStream in = new BufferedInputStream(client.getInputStream());
+                HttpResponse interim = HttpResponse.readHead(in);
+                out.write(form.getBytes(StandardCharsets.ISO_8859_1));
+                HttpResponse response = HttpResponse.readHead(in);
+                System.out.println("expect to login: " + interim.getStatusCode() + " then "
+                        + response.getStatusCode());                                                   // 100 then 401
+            }
+
+            // 客户端：请求体超过 1 MiB 时自动带上 Expect，被拒绝的请求体不会上传
+            SimpleHttpClient client = new SimpleHttpClient();
+            Map<String, String> headers = new java.util.HashMap<>();
+            headers.put("Host", "127.0.0.1:" + server.getLocalPort());
+            long start = System.currentTimeMillis();
+            HttpResponse response = client.send(new HttpRequest("POST", "/upload-nowhere", "HTTP/1.1", headers,
+                    new byte[2 * 1024 * 1024]));
+            System.out.println("client expect: " + response.getStatusCode()
+                    + ", without waiting: " + (System.currentTimeMillis() - start < 1000));            // 405, true
+            serverThread.join();
+        }
+
+        // 100 Continue 在客户端等待超时、已发送请求体之后才到达：跳过它，返回最终响应
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                try (Socket socket = server.accept()) {
+                    BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+                    HttpRequest request = new HttpRequest(in);
+                    OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Length: 7\r\n\r\nstored" + request.getBody().length % 10)
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+            Map<String, String> headers = new java.util.HashMap<>();
+            headers.put("Host", "127.0.0.1:" + server.getLocalPort());
+            HttpResponse response = new SimpleHttpClient().send(new HttpRequest("POST", "/late", "HTTP/1.1", headers,
+                    new byte[2 * 1024 * 1024]));
+            System.out.println("late 100 continue skipped: " + response.getStatusCode() + " "
+                    + new String(response.getBody(), StandardCharsets.ISO_8859_1));                    // 200 stored2
+            serverThread.join();
+        }
+    }
+
+    private static void testUpload() throws Exception {
+        Path root = Files.createTempDirectory("upload-test");
+        Map<String, String> overrides = new java.util.HashMap<>();
+        overrides.put("store.type", "memory");
+        overrides.put("static.web-root", root.toString());
+        overrides.put("static.watch", "false");
+        overrides.put("upload.prefixes", "/files/");
+        overrides.put("upload.max-bytes", "8388608");
+        // 默认需要登录会话：匿名上传 401，不写入任何文件
+        HttpRequest anonymous = new HttpRequest("PUT", "/files/anon.bin", "HTTP/1.1", new HttpHeaders(), new byte[1]);
+        System.out.println("anonymous upload: "
+                + new RequestDispatcher(ServerConfig.of(overrides)).dispatch(anonymous).getStatusCode()
+                + ", written " + Files.exists(root.resolve("files/anon.bin")));                        // 401, false
+        overrides.put("upload.require-auth", "false");
+        RequestDispatcher dispatcher = new RequestDispatcher(ServerConfig.of(overrides));
+        byte[] content = new byte[3 * 1024 * 1024];
+        new java.util.Random(7).nextBytes(content);
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                for (int i = 0; i < 2; i++) {
+                    try {
+                        Socket accepted = server.accept();
+                        new ConnectionHandler(accepted, dispatcher, KeepAlivePolicy.defaults(), () -> 0.0,
+                                BufferPool.shared(), DirectBufferPool.shared(), null, ClientLimits.defaults()).run();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            serverThread.start();
+
+            // 同一条连接：上传后立即 GET 读回，ETag 与内容一致
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                OutputStream out = client.getOutputStream();
+                BufferedInputStream in = new BufferedInputStream(client.getInputStream());
+                out.write(("PUT /files/a/data.bin HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + content.length
+                        + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(content);
+                HttpResponse created = HttpResponse.readHead(in);
+                in.skipNBytes(Long.parseLong(created.getHeader("Content-Length")));
+                out.write("GET /files/a/data.bin HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                HttpResponse fetched = HttpResponse.readHead(in);
+                byte[] body = in.readNBytes(Integer.parseInt(fetched.getHeader("Content-Length")));
+                System.out.println("upload: " + created.getStatusCode() + " " + created.getHeader("Location")
+                        + ", get: " + fetched.getStatusCode() + ", same etag: "
+                        + created.getHeader("ETag").equals(fetched.getHeader("ETag"))
+                        + ", same content: " + Arrays.equals(content, body));          // 201 /files/a/data.bin, 200, true, true
+
+                // 覆盖：204，新的 ETag 立即生效
+                out.write(("PUT /files/a/data.bin HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                HttpResponse replaced = HttpResponse.readHead(in);
+                System.out.println("replace: " + replaced.getStatusCode() + ", etag changed: "
+                        + !created.getHeader("ETag").equals(replaced.getHeader("ETag")));     // 204, true
+            }
+
+            // 超出 upload.max-bytes：读取请求体之前拒绝
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                client.getOutputStream().write(("PUT /files/big.bin HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Content-Length: 100000000\r\nExpect: 100-continue\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                HttpResponse response = HttpResponse.readHead(new BufferedInputStream(client.getInputStream()));
+                System.out.println("upload too large: " + response.getStatusCode());                 // 413
+            }
+            // 上级目录是指向根目录之外的符号链接：403，链接目标下不创建任何目录
+            Path outside = Files.createTempDirectory("upload-outside");
+            Files.createSymbolicLink(root.resolve("files/escape"), outside);
+            HttpRequest escape = new HttpRequest("PUT", "/files/escape/x/y.bin", "HTTP/1.1", new HttpHeaders(), new byte[1]);
+            int escaped = dispatcher.dispatch(escape).getStatusCode();
+            try (java.util.stream.Stream<Path> created = Files.list(outside)) {
+                System.out.println("upload through symlink: " + escaped + ", created outside: " + created.count()); // 403, 0
+            }
+            serverThread.join();
+        }
+        try (java.util.stream.Stream<Path> left = Files.list(root.resolve("files/a"))) {
+            System.out.println("files left: " + left.map(p -> p.getFileName().toString())
+                    .collect(java.util.stream.Collectors.toList()));                                   // [data.bin]
+        }
+    }
+
+    /**
+     * 测试使用的配置：用户存储放在内存中（日志存储对目录加锁，同一目录只能打开一次）。
+     */
+    private static ServerConfig testConfig() {
+        Map<String, String> overrides = new java.util.HashMap<>();
+        overrides.put("store.type", "memory");
+        return ServerConfig.of(overrides);
+    }
+
+    private static void testPasswordHasher() {
+        PasswordHasher hasher = new PasswordHasher(1000);
+        String hash = hasher.hash("secret");
+        System.out.println("pbkdf2 format: " + hash.startsWith("pbkdf2-sha256$1000$")
+                + ", verify: " + hasher.verify("secret", hash)
+                + ", wrong password: " + hasher.verify("Secret", hash)
+                + ", salted: " + !hash.equals(hasher.hash("secret")));                              // true, true, false, true
+
+        // 迭代次数随哈希保存：调高配置后旧哈希仍可校验，新哈希使用新的迭代次数
+        hasher.setIterations(2000);
+        System.out.println("old hash after raising iterations: " + hasher.verify("secret", hash)
+                + ", new: " + hasher.hash("secret").startsWith("pbkdf2-sha256$2000$"));               // true, true
+
+        // RFC 7914 11 节的 PBKDF2-HMAC-SHA256 向量（P="passwd", S="salt", c=1）的前 32 字节
+        java.util.Base64.Encoder b64 = java.util.Base64.getEncoder().withoutPadding();
+        String hex = "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc";
+        byte[] expected = new byte[hex.length() / 2];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        String vector = "pbkdf2-sha256$1$" + b64.encodeToString("salt".getBytes(StandardCharsets.US_ASCII))
+                + "$" + b64.encodeToString(expected);
+        System.out.println("rfc 7914 vector: " + hasher.verify("passwd", vector));                   // true
+
+        System.out.println("malformed: " + hasher.verify("secret", "pbkdf2-sha256$x$y")
+                + ", " + hasher.verify("secret", "md5$1$c2FsdA$AAAA")
+                + ", " + hasher.verify(null, hash));                                                 // false, false, false
+    }
+
+    private static void testSessionExpiry() throws Exception {
+        // 时间轮：10ms 一个槽，8 个槽（一圈 80ms）；时间由调用方给出，结果确定
+        TimerWheel<String> wheel = new TimerWheel<>(10, 8, 0);
+        wheel.schedule("c", 5);
+        wheel.schedule("a", 25);
+        wheel.schedule("b", 200); // 超出一圈：与 tick 4、12 同槽，到 tick 20 才真正到期
+        List<String> fired = new ArrayList<>();
+        for (long now : new long[]{20, 30, 100, 210}) {
+            List<String> batch = new ArrayList<>();
+            wheel.advance(now, batch::add);
+            fired.add(now + "=" + batch);
+        }
+        System.out.println("timer wheel: " + fired);                                    // [20=[c], 30=[a], 100=[], 210=[b]]
+
+        // 回调中重新登记（滑动过期被续期）
+        List<String> later = new ArrayList<>();
+        wheel.advance(300, item -> { });
+        wheel.schedule("renewed", 305);
+        wheel.advance(320, item -> wheel.schedule(item + "-again", 335));
+        wheel.advance(350, later::add);
+        System.out.println("rescheduled from callback: " + later);                          // [renewed-again]
+
+        // 会话：TTL 200ms，时间轮每 20ms 推进；持续访问的会话被续期，不再访问的会话无需 validate 也会被移除
+        SessionStore sessions = new SessionStore(200, 4, 20);
+        SessionStore.Session idle = sessions.create("alice");
+        SessionStore.Session active = sessions.create("bob");
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(60);
+            sessions.validate(active.getToken());
+        }
+        System.out.println("after 360ms: size " + sessions.size()
+                + ", active " + (sessions.validate(active.getToken()) != null)
+                + ", idle " + (sessions.validate(idle.getToken()) != null));                     // 1, true, false
+        Thread.sleep(400);
+        System.out.println("after ttl without access: size " + sessions.size());                 // 0
+        sessions.shutdown();
+    }
+
+    private static void testAccessControl() throws Exception {
+        // 前缀树：IPv4 与 IPv6 网段、单个地址；IPv4 映射地址按 IPv4 匹配
+        IpPrefixTrie trie = new IpPrefixTrie();
+        trie.add("10.0.0.0/8");
+        trie.add("192.168.1.0/24");
+        trie.add("203.0.113.7");
+        trie.add("2001:db8::/32");
+        StringBuilder matches = new StringBuilder();
+        for (String address : new String[]{"10.1.2.3", "11.0.0.1", "192.168.1.200", "192.168.2.1",
+                "203.0.113.7", "203.0.113.8", "2001:db8::1", "2001:db9::1", "::ffff:10.9.9.9"}) {
+            matches.append(trie.contains(java.net.InetAddress.getByName(address)) ? 'y' : 'n');
+        }
+        System.out.println("ip trie: " + matches + ", size " + trie.size());                       // ynynynyny, 4
+        try {
+            trie.add("10.0.0.0/33");
+            System.out.println("invalid prefix accepted");
+        } catch (IllegalArgumentException e) {
+            System.out.println("invalid prefix: " + e.getMessage());                                  // Invalid prefix length: 10.0.0.0/33
+        }
+
+        // 布隆过滤器：没有漏判，误判率接近配置值
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) filter.add("member-" + i);
+        boolean allFound = true;
+        for (int i = 0; i < 1000; i++) allFound &= filter.mightContain("member-" + i);
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other-" + i)) falsePositives++;
+        }
+        System.out.println("bloom: no false negatives " + allFound
+                + ", false positive rate < 2%: " + (falsePositives < 2000));                         // true, true
+
+        // ACL：布隆过滤器误判的用户名由哈希集合确认后放行；运行时增删立即生效
+        Path aclFile = Files.createTempFile("acl-test", ".txt");
+        Files.write(aclFile, Arrays.asList("# test", "user:eve", "user:mallory", "ip:10.0.0.0/8"),
+                StandardCharsets.UTF_8);
+        AccessControlList acl = new AccessControlList(aclFile, 0.3);
+        BloomFilter replica = new BloomFilter(2, 0.3); // 与 ACL 快照相同的参数与内容，哈希是确定的
+        replica.add("eve");
+        replica.add("mallory");
+        String falsePositive = null;
+        for (int i = 0; falsePositive == null; i++) {
+            if (replica.mightContain("user" + i)) falsePositive = "user" + i;
+        }
+        System.out.println("acl: eve " + acl.isUserBlocked("eve")
+                + ", bloom false positive " + acl.isUserBlocked(falsePositive)
+                + ", 10.2.3.4 " + acl.isAddressBlocked(java.net.InetAddress.getByName("10.2.3.4"))); // true, false, true
+        acl.addUser(falsePositive);
+        acl.removeUser("eve");
+        System.out.println("acl after runtime edits: eve " + acl.isUserBlocked("eve")
+                + ", added " + acl.isUserBlocked(falsePositive) + ", users " + acl.blockedUserCount()); // false, true, 2
+        Files.delete(aclFile);
+    }
+
+    private static void testUserStore() throws Exception {
+        Path dir = Files.createTempDirectory("user-store-test");
+
+        // 1. 日志尾部半条记录：重启时截断，之后追加的记录可以正常重放
+        LogUserStore store = new LogUserStore(dir, 16, 0, 0, 1 << 20);
+        store.putIfAbsent("alice", "hash-a");
+        store.putIfAbsent("bob", "hash-b");
+        System.out.println("duplicate put: " + store.putIfAbsent("alice", "other"));                     // false
+        try {
+            new LogUserStore(dir, 16, 0, 0, 1 << 20);
+            System.out.println("second instance opened");
+        } catch (java.io.IOException e) {
+            System.out.println("second instance rejected: " + e.getMessage().contains("already open")); // true
+        }
+        store.close();
+        Path log = dir.resolve("users-0.log");
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2, 3}, java.nio.file.StandardOpenOption.APPEND);
+        store = new LogUserStore(dir, 16, 0, 0, 1 << 20);
+        store.putIfAbsent("carol", "hash-c");
+        store.close();
+        store = new LogUserStore(dir, 16, 0, 0, 1 << 20);
+        System.out.println("after torn tail: " + store.size() + " " + store.get("alice") + " "
+                + store.get("carol"));                                                                  // 3 hash-a hash-c
+
+        // 2. 快照 + 新一代日志
+        store.snapshot();
+        store.putIfAbsent("dave", "hash-d");
+        store.close();
+        store = new LogUserStore(dir, 16, 0, 0, 1 << 20);
+        System.out.println("snapshot + log: " + store.size() + " " + store.get("dave") + ", generation "
+                + store.getLogGeneration() + ", old log removed " + !Files.exists(log));               // 4 hash-d, generation 1, true
+        store.close();
+
+        // 3. 批次写入失败：写了一半的记录被截断，用户不可见，之后的注册不受影响
+        java.util.concurrent.atomic.AtomicBoolean failNext = new java.util.concurrent.atomic.AtomicBoolean(true);
+        store = new LogUserStore(dir, 16, 0, 0, 1 << 20) {
+            @Override
+            protected void writeBatch(java.nio.channels.FileChannel log, java.nio.ByteBuffer batch)
+                    throws java.io.IOException {
+                if (failNext.getAndSet(false)) {
+                    batch.limit(batch.position() + batch.remaining() / 2);
+                    log.write(batch);
+                    throw new java.io.IOException("simulated disk error");
+                }
+                super.writeBatch(log, batch);
+            }
+        };
+        try {
+            store.putIfAbsent("eve", "hash-e");
+            System.out.println("failed commit succeeded");
+        } catch (java.io.IOException e) {
+            System.out.println("failed commit: " + e.getCause().getMessage() + ", visible " + store.contains("eve")); // simulated disk error, visible false
+        }
+        System.out.println("retry after failure: " + store.putIfAbsent("eve", "hash-e2"));              // true
+        store.putIfAbsent("frank", "hash-f");
+        store.close();
+        try {
+            store.putIfAbsent("grace", "hash-g");
+        } catch (java.io.IOException e) {
+            System.out.println("put after close: " + e.getMessage());                                  // User store is closed
+        }
+        store = new LogUserStore(dir, 16, 0, 0, 1 << 20);
+        System.out.println("after failed commit: " + store.size() + " " + store.get("eve") + " "
+                + store.get("frank"));                                                                  // 6 hash-e2 hash-f
+        store.close();
+    }
+
+    private static void testHttp2Frames() throws Exception {
+        // 小窗口与小请求体上限，便于观察流控与 413；读超时 1s 用于停滞流，头部超时 1.5s 用于不完整的头部块
+        RequestDispatcher dispatcher = new RequestDispatcher(testConfig());
+        Http2Handler http2 = new Http2Handler(new Http2Settings(true, 100, 65535, 16384, 65536, 4, 16),
+                dispatcher, DirectBufferPool.shared());
+        KeepAlivePolicy policy = new KeepAlivePolicy(15000, 1000, 1000, 100, false, 0.5, 0.9);
+        ClientLimits limits = new ClientLimits(common.HeaderLimits.defaults(), 1500, 0, 5000, 20_000, 60_000);
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 3; i++) {
+                        Socket accepted = server.accept();
+                        new ConnectionHandler(accepted, dispatcher, policy, () -> 0.0, BufferPool.shared(),
+                                DirectBufferPool.shared(), http2, limits).run();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                OutputStream out = client.getOutputStream();
+                java.io.DataInputStream in = new java.io.DataInputStream(new BufferedInputStream(client.getInputStream()));
+                HpackEncoder encoder = new HpackEncoder(4096);
+                HpackDecoder decoder = new HpackDecoder(4096, 65536);
+                Map<Integer, String> statuses = new java.util.TreeMap<>();
+
+                // 1. 前言与 SETTINGS：服务端先发自己的 SETTINGS，再确认客户端的 SETTINGS
+                out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                writeFrame(out, 0x4, 0, 0, new byte[0]);
+                boolean serverSettings = false;
+                H2Frame frame;
+                while (!((frame = H2Frame.read(in)).type == 0x4 && frame.flags == 0x1)) {
+                    if (frame.type == 0x4) serverSettings = true;
+                }
+                System.out.println("h2 settings: server sent " + serverSettings + ", ack received true");        // true, true
+
+                // 2. 多路复用：流 1 一个 HEADERS，流 3 的头部块拆成 HEADERS + CONTINUATION
+                writeFrame(out, 0x1, 0x1 | 0x4, 1, h2Headers(encoder, "GET", "/index.html"));
+                byte[] block = h2Headers(encoder, "GET", "/test.json");
+                writeFrame(out, 0x1, 0x1, 3, Arrays.copyOfRange(block, 0, block.length / 2));
+                writeFrame(out, 0x9, 0x4, 3, Arrays.copyOfRange(block, block.length / 2, block.length));
+                int ended = 0;
+                while (ended < 2) {
+                    frame = H2Frame.read(in);
+                    if (frame.type == 0x1) statuses.put(frame.stream, status(decoder, frame.payload));
+                    if ((frame.type == 0x0 || frame.type == 0x1) && (frame.flags & 0x1) != 0) ended++;
+                }
+                System.out.println("h2 multiplexed: " + statuses);                                                // {1=200, 3=200}
+
+                // 3. 声明的请求体超过 max-body-size：不等请求体，直接 413 并重置流
+                writeFrame(out, 0x1, 0x4, 5, h2Headers(encoder, "POST", "/login", "content-length", "200000"));
+                frame = H2Frame.read(in);
+                String tooLarge = status(decoder, frame.payload);
+                frame = H2Frame.read(in);
+                System.out.println("h2 body limit: " + tooLarge + ", then RST_STREAM " + (frame.type == 0x3)); // 413, true
+
+                // 4. 连接级窗口：缓存的请求体超过上限时暂缓归还，流被重置后才归还
+                //    （累计超过窗口一半才发 WINDOW_UPDATE：40000 字节先归还 32768，余下 7232 与暂缓的 40000 一起归还）
+                writeFrame(out, 0x1, 0x4, 7, h2Headers(encoder, "POST", "/login"));
+                sendData(out, 7, 40_000);
+                System.out.println("h2 window returned while under limit: " + connectionCredit(out, in));        // 32768
+                writeFrame(out, 0x1, 0x4, 9, h2Headers(encoder, "POST", "/login"));
+                sendData(out, 9, 40_000);
+                System.out.println("h2 window returned over limit: " + connectionCredit(out, in));               // 0
+                writeFrame(out, 0x3, 0, 7, new byte[]{0, 0, 0, 0x8});
+                System.out.println("h2 window returned after RST_STREAM: " + connectionCredit(out, in));         // 47232
+
+                // 5. 请求体停滞的流：读超时后 408 并重置
+                long start = System.currentTimeMillis();
+                while ((frame = H2Frame.read(in)).type != 0x1) { }
+                String stalled = frame.stream + "=" + status(decoder, frame.payload);
+                while ((frame = H2Frame.read(in)).type != 0x3) { }
+                System.out.println("h2 stalled stream: " + stalled + ", reset " + (frame.stream == 9)
+                        + ", within 3s " + (System.currentTimeMillis() - start < 3000));                        // 9=408, true, true
+
+                // 6. 读取请求体之前的检查：一定被拒绝的请求（POST 到静态路径）不等请求体，直接 405 并重置
+                writeFrame(out, 0x1, 0x4, 11, h2Headers(encoder, "POST", "/index.html", "content-length", "10"));
+                while ((frame = H2Frame.read(in)).type != 0x1) { }
+                String early = frame.stream + "=" + status(decoder, frame.payload);
+                while ((frame = H2Frame.read(in)).type != 0x3) { }
+                System.out.println("h2 checked before body: " + early + ", reset " + (frame.stream == 11));     // 11=405, true
+
+                // 7. 连接错误：DATA 在流 0 上，GOAWAY(PROTOCOL_ERROR) 后关闭连接
+                writeFrame(out, 0x0, 0, 0, new byte[1]);
+                while ((frame = H2Frame.read(in)).type != 0x7) { }
+                int error = java.nio.ByteBuffer.wrap(frame.payload).getInt(4);
+                System.out.println("h2 goaway: error " + error + ", closed " + (in.read() == -1));              // 1, true
+            }
+
+            // 8. 头部块没有在头部超时内结束（缺少 CONTINUATION）：GOAWAY(ENHANCE_YOUR_CALM)
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                OutputStream out = client.getOutputStream();
+                java.io.DataInputStream in = new java.io.DataInputStream(new BufferedInputStream(client.getInputStream()));
+                out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                writeFrame(out, 0x4, 0, 0, new byte[0]);
+                byte[] block = h2Headers(new HpackEncoder(4096), "GET", "/index.html");
+                writeFrame(out, 0x1, 0x1, 1, Arrays.copyOfRange(block, 0, block.length / 2));
+                long start = System.currentTimeMillis();
+                H2Frame frame;
+                while ((frame = H2Frame.read(in)).type != 0x7) { }
+                int error = java.nio.ByteBuffer.wrap(frame.payload).getInt(4);
+                System.out.println("h2 header deadline: error " + error + ", within 3s "
+                        + (System.currentTimeMillis() - start < 3000));                                       // 11, true
+            }
+
+            // 9. 直接回复也受发送窗口约束：流级初始窗口为 0 时，405 的响应体等到 WINDOW_UPDATE 才发出
+            try (Socket client = new Socket("127.0.0.1", server.getLocalPort())) {
+                OutputStream out = client.getOutputStream();
+                java.io.DataInputStream in = new java.io.DataInputStream(new BufferedInputStream(client.getInputStream()));
+                HpackDecoder decoder = new HpackDecoder(4096, 65536);
+                out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                writeFrame(out, 0x4, 0, 0, new byte[]{0, 0x4, 0, 0, 0, 0}); // SETTINGS_INITIAL_WINDOW_SIZE = 0
+                H2Frame frame;
+                while (!((frame = H2Frame.read(in)).type == 0x4 && frame.flags == 0x1)) { }
+                writeFrame(out, 0x1, 0x4, 1, h2Headers(new HpackEncoder(4096), "POST", "/index.html",
+                        "content-length", "10"));
+                writeFrame(out, 0x0, 0x1, 1, new byte[10]); // 已决定回复后到达的请求体被丢弃
+                writeFrame(out, 0x6, 0, 0, new byte[8]);
+                int early = 0;
+                while (!((frame = H2Frame.read(in)).type == 0x6 && (frame.flags & 0x1) != 0)) {
+                    if (frame.type == 0x0) early++;
+                }
+                writeFrame(out, 0x8, 0, 1, new byte[]{0, 0, (byte) 0xff, (byte) 0xff});
+                String direct = null;
+                int bodyBytes = 0;
+                boolean bodyEnded = false;
+                while ((frame = H2Frame.read(in)).type != 0x3) {
+                    if (frame.type == 0x1) direct = status(decoder, frame.payload);
+                    if (frame.type == 0x0) {
+                        bodyBytes += frame.payload.length;
+                        bodyEnded |= (frame.flags & 0x1) != 0;
+                    }
+                }
+                int code = java.nio.ByteBuffer.wrap(frame.payload).getInt();
+                System.out.println("h2 direct response flow control: DATA before WINDOW_UPDATE " + early
+                        + ", then " + direct + " with body " + (bodyBytes > 0 && bodyEnded)
+                        + ", RST_STREAM " + code);                                                            // 0, 405, true, 0
+            }
+            serverThread.join();
+        }
+    }
+
+    private static void testHttp2WriteDeadline() throws Exception {
+        // 只发不读的 h2 客户端：PING ACK 填满双方缓冲后服务端写出阻塞，写出超时（500ms）后连接被关闭
+        RequestDispatcher dispatcher = new RequestDispatcher(testConfig());
+        Http2Handler http2 = new Http2Handler(new Http2Settings(true, 100, 65535, 16384, 65536, 4, 16),
+                dispatcher, DirectBufferPool.shared());
+        ClientLimits limits = new ClientLimits(common.HeaderLimits.defaults(), 1500, 0, 5000, 500, 60_000);
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread serverThread = new Thread(() -> {
+                try (Socket accepted = server.accept()) {
+                    new ConnectionHandler(accepted, dispatcher, KeepAlivePolicy.defaults(), () -> 0.0,
+                            BufferPool.shared(), DirectBufferPool.shared(), http2, limits).run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            serverThread.start();
+
+            try (Socket client = new Socket()) {
+                client.setReceiveBufferSize(4096);
+                client.connect(new java.net.InetSocketAddress("127.0.0.1", server.getLocalPort()));
+                OutputStream out = client.getOutputStream();
+                out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                writeFrame(out, 0x4, 0, 0, new byte[0]);
+                ByteArrayOutputStream pings = new ByteArrayOutputStream();
+                for (int i = 0; i < 1000; i++) writeFrame(pings, 0x6, 0, 0, new byte[8]);
+                long start = System.currentTimeMillis();
+                boolean closed = false;
+                try {
+                    while (System.currentTimeMillis() - start < 10_000) {
+                        out.write(pings.toByteArray());
+                    }
+                } catch (java.io.IOException e) {
+                    closed = true; // 服务端已关闭连接
+                }
+                serverThread.join(10_000);
+                System.out.println("h2 write deadline: closed " + closed + ", handler finished "
+                        + !serverThread.isAlive() + ", within 5s "
+                        + (System.currentTimeMillis() - start < 5000));                                      // true, true, true
+            }
+        }
+    }
+
+    /** 测试用的 HTTP/2 帧 */
+    private static final class H2Frame {
+        int type;
+        int flags;
+        int stream;
+        byte[] payload;
+
+        static H2Frame read(java.io.DataInputStream in) throws java.io.IOException {
+            H2Frame frame = new H2Frame();
+            int length = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+            frame.type = in.readUnsignedByte();
+            frame.flags = in.readUnsignedByte();
+            frame.stream = in.readInt() & 0x7fffffff;
+            frame.payload = new byte[length];
+            in.readFully(frame.payload);
+            return frame;
+        }
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload)
+            throws java.io.IOException {
+        java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(9);
+        header.put((byte) (payload.length >>> 16)).putShort((short) payload.length);
+        header.put((byte) type).put((byte) flags).putInt(stream);
+        out.write(header.array());
+        out.write(payload);
+        out.flush();
+    }
+
+    private static byte[] h2Headers(HpackEncoder encoder, String method, String path, String... extra) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        encoder.beginHeaderBlock(block);
+        encoder.encode(":method", method, block);
+        encoder.encode(":scheme", "http", block);
+        encoder.encode(":path", path, block);
+        encoder.encode(":authority", "localhost", block);
+        for (int i = 0; i + 1 < extra.length; i += 2) encoder.encode(extra[i], extra[i + 1], block);
+        return block.toByteArray();
+    }
+
+    private static String status(HpackDecoder decoder, byte[] block) throws Exception {
+        String[] status = new String[1];
+        decoder.decode(block, 0, block.length, (n, v) -> {
+            if (n.equals(":status")) status[0] = v;
+        });
+        return status[0];
+    }
+
+    private static void sendData(OutputStream out, int stream, int length) throws java.io.IOException {
+        for (int sent = 0; sent < length; sent += 16384) {
+            writeFrame(out, 0x0, 0, stream, new byte[Math.min(16384, length - sent)]);
+        }
+    }
+
+    /**
+     * 发送 PING 并读到 PING ACK 为止：返回其间收到的连接级 WINDOW_UPDATE 增量之和（服务端按顺序处理帧）。
+     */
+    private static int connectionCredit(OutputStream out, java.io.DataInputStream in) throws java.io.IOException {
+        writeFrame(out, 0x6, 0, 0, new byte[8]);
+        int credit = 0;
+        H2Frame frame;
+        while (!((frame = H2Frame.read(in)).type == 0x6 && (frame.flags & 0x1) != 0)) {
+            if (frame.type == 0x8 && frame.stream == 0) credit += java.nio.ByteBuffer.wrap(frame.payload).getInt();
+        }
+        return credit;
+    }
 }
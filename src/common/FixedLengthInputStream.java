@@ -0,0 +1,62 @@
+package common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 按 Content-Length 截取的报文体输入流。
+ *
+ * 说明：
+ *  - 只允许从底层连接流读取 length 个字节，之后返回 -1，不会读到下一个报文
+ *  - 底层流提前结束视为报文不完整，抛出 EOFException
+ *  - close() 不关闭底层连接流（连接可能还要继续复用），只标记本流结束
+ */
+public final class FixedLengthInputStream extends InputStream {
+
+    private final InputStream in;
+    private long remaining;
+    private boolean closed;
+
+    public FixedLengthInputStream(InputStream in, long length) {
+        if (length < 0) throw new IllegalArgumentException("length must not be negative");
+        this.in = in;
+        this.remaining = length;
+    }
+
+    /**
+     * @return 尚未读取的字节数
+     */
+    public long remaining() {
+        return remaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (closed || remaining == 0) return -1;
+        int b = in.read();
+        if (b < 0) throw new EOFException("Unexpected end of stream, " + remaining + " bytes missing");
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed || remaining == 0) return -1;
+        if (len == 0) return 0;
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0) throw new EOFException("Unexpected end of stream, " + remaining + " bytes missing");
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed ? 0 : (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
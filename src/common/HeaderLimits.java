@@ -0,0 +1,48 @@
+package common;
+
+/**
+ * 请求头部的大小上限（服务端解析使用）。
+ *
+ * 说明：
+ *  - 请求行超过 maxRequestLine 时返回 414，单个头部行超长、头部总字节数或头部个数超限时返回 431
+ *  - 上限在读取过程中逐字节检查，超长的行不会被完整读入内存
+ */
+public final class HeaderLimits {
+
+    private static final HeaderLimits DEFAULTS = new HeaderLimits(8 * 1024, 32 * 1024, 100);
+
+    private final int maxRequestLine;
+    private final int maxHeaderSize;
+    private final int maxHeaderCount;
+
+    /**
+     * @param maxRequestLine 请求行最大字节数（不含 CRLF）
+     * @param maxHeaderSize  所有头部行合计的最大字节数（含 CRLF），同时也是单行上限
+     * @param maxHeaderCount 头部最大个数
+     */
+    public HeaderLimits(int maxRequestLine, int maxHeaderSize, int maxHeaderCount) {
+        if (maxRequestLine <= 0 || maxHeaderSize <= 0 || maxHeaderCount <= 0) {
+            throw new IllegalArgumentException("header limits must be positive");
+        }
+        this.maxRequestLine = maxRequestLine;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * 默认上限：请求行 8 KiB、头部合计 32 KiB、100 个头部。
+     */
+    public static HeaderLimits defaults() {
+        return DEFAULTS;
+    }
+
+    public int getMaxRequestLine() { return maxRequestLine; }
+    public int getMaxHeaderSize() { return maxHeaderSize; }
+    public int getMaxHeaderCount() { return maxHeaderCount; }
+
+    @Override
+    public String toString() {
+        return "HeaderLimits{requestLine=" + maxRequestLine + ", headerSize=" + maxHeaderSize
+                + ", headerCount=" + maxHeaderCount + "}";
+    }
+}
@@ -0,0 +1,199 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * HTTP 头部名称（大小写不敏感）。
+ *
+ * 说明：
+ *  - 常用头部预先定义为常量，构造时即算好大小写不敏感的哈希值；
+ *    解析报文时通过 {@link #of(String, int, int)} 命中常量表，不再为每个请求创建名称字符串
+ *  - 非常用头部按需创建新实例，不放入全局表，避免客户端随意构造的头部名撑大内存
+ *  - 比较时先比哈希，常量之间直接比较引用
+ */
+public final class HeaderName {
+
+    private static final HeaderName[] TABLE = new HeaderName[128];
+    private static final int TABLE_MASK = TABLE.length - 1;
+
+    public static final HeaderName ACCEPT = intern("Accept");
+    public static final HeaderName ACCEPT_ENCODING = intern("Accept-Encoding");
+    public static final HeaderName ACCEPT_LANGUAGE = intern("Accept-Language");
+    public static final HeaderName ACCEPT_RANGES = intern("Accept-Ranges");
+    public static final HeaderName ALLOW = intern("Allow");
+    public static final HeaderName AUTHORIZATION = intern("Authorization");
+    public static final HeaderName CACHE_CONTROL = intern("Cache-Control");
+    public static final HeaderName CONNECTION = intern("Connection");
+    public static final HeaderName CONTENT_ENCODING = intern("Content-Encoding");
+    public static final HeaderName CONTENT_LENGTH = intern("Content-Length");
+    public static final HeaderName CONTENT_RANGE = intern("Content-Range");
+    public static final HeaderName CONTENT_TYPE = intern("Content-Type");
+    public static final HeaderName COOKIE = intern("Cookie");
+    public static final HeaderName DATE = intern("Date");
+    public static final HeaderName ETAG = intern("ETag");
+    public static final HeaderName EXPECT = intern("Expect");
+    public static final HeaderName HOST = intern("Host");
+    public static final HeaderName IF_MATCH = intern("If-Match");
+    public static final HeaderName IF_MODIFIED_SINCE = intern("If-Modified-Since");
+    public static final HeaderName IF_NONE_MATCH = intern("If-None-Match");
+    public static final HeaderName IF_RANGE = intern("If-Range");
+    public static final HeaderName KEEP_ALIVE = intern("Keep-Alive");
+    public static final HeaderName LAST_MODIFIED = intern("Last-Modified");
+    public static final HeaderName LOCATION = intern("Location");
+    public static final HeaderName ORIGIN = intern("Origin");
+    public static final HeaderName RANGE = intern("Range");
+    public static final HeaderName REFERER = intern("Referer");
+    public static final HeaderName RETRY_AFTER = intern("Retry-After");
+    public static final HeaderName SERVER = intern("Server");
+    public static final HeaderName SET_COOKIE = intern("Set-Cookie");
+    public static final HeaderName TRANSFER_ENCODING = intern("Transfer-Encoding");
+    public static final HeaderName UPGRADE = intern("Upgrade");
+    public static final HeaderName USER_AGENT = intern("User-Agent");
+    public static final HeaderName VARY = intern("Vary");
+    public static final HeaderName X_FORWARDED_FOR = intern("X-Forwarded-For");
+
+    private final String name;
+    private final int hash;
+    /** 名称的 ISO-8859-1 编码，写出响应时直接复制（首次使用时计算） */
+    private byte[] bytes;
+    /** 小写形式，HTTP/2 头部块使用（首次使用时计算） */
+    private String lowerCase;
+
+    private HeaderName(String name, int hash) {
+        this.name = name;
+        this.hash = hash;
+    }
+
+    /**
+     * 取得名称对象：常用头部返回常量，其余创建新实例。
+     */
+    public static HeaderName of(String name) {
+        return of(name, 0, name.length());
+    }
+
+    /**
+     * 取得 text[start, end) 对应的名称对象，命中常量表时不创建任何对象。
+     */
+    public static HeaderName of(String text, int start, int end) {
+        int h = hash(text, start, end);
+        int len = end - start;
+        for (int i = h & TABLE_MASK; TABLE[i] != null; i = (i + 1) & TABLE_MASK) {
+            HeaderName known = TABLE[i];
+            if (known.hash == h && known.name.length() == len
+                    && known.name.regionMatches(true, 0, text, start, len)) {
+                return known;
+            }
+        }
+        return new HeaderName(text.substring(start, end), h);
+    }
+
+    /**
+     * 取得 data[start, end) 对应的名称对象（报文解析用），命中常量表时不创建任何对象。
+     */
+    public static HeaderName of(byte[] data, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lower(data[i] & 0xff);
+        }
+        h ^= (h >>> 16);
+        int len = end - start;
+        for (int i = h & TABLE_MASK; TABLE[i] != null; i = (i + 1) & TABLE_MASK) {
+            HeaderName known = TABLE[i];
+            if (known.hash == h && known.name.length() == len && known.matchesBytes(data, start)) {
+                return known;
+            }
+        }
+        return new HeaderName(new String(data, start, len, StandardCharsets.ISO_8859_1), h);
+    }
+
+    private boolean matchesBytes(byte[] data, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (lower(name.charAt(i)) != lower(data[start + i] & 0xff)) return false;
+        }
+        return true;
+    }
+
+    private static int lower(int c) {
+        return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+    }
+
+    /**
+     * 大小写不敏感的哈希（ASCII 字母统一按小写计算）。
+     */
+    static int hash(String text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lower(text.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static HeaderName intern(String name) {
+        HeaderName n = new HeaderName(name, hash(name, 0, name.length()));
+        int i = n.hash & TABLE_MASK;
+        while (TABLE[i] != null) i = (i + 1) & TABLE_MASK;
+        TABLE[i] = n;
+        return n;
+    }
+
+    /**
+     * 判断是否与 text 表示同一个头部名称（大小写不敏感）。
+     */
+    boolean matches(String text, int h) {
+        return hash == h && name.equalsIgnoreCase(text);
+    }
+
+    int hash() {
+        return hash;
+    }
+
+    /**
+     * @return 名称的 ISO-8859-1 编码（不可修改）
+     */
+    byte[] bytes() {
+        byte[] b = bytes;
+        if (b == null) {
+            b = name.getBytes(StandardCharsets.ISO_8859_1);
+            bytes = b;
+        }
+        return b;
+    }
+
+    /**
+     * @return 名称的小写形式（HTTP/2 要求头部名称小写）
+     */
+    public String lowerCaseName() {
+        String l = lowerCase;
+        if (l == null) {
+            l = name.toLowerCase(Locale.ROOT);
+            lowerCase = l;
+        }
+        return l;
+    }
+
+    /**
+     * @return 名称的书写形式（常量为规范大小写，其余保持报文原样）
+     */
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HeaderName)) return false;
+        HeaderName other = (HeaderName) o;
+        return hash == other.hash && name.equalsIgnoreCase(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,239 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HTTP 头部容器（可变，非线程安全）。
+ *
+ * 特性：
+ *  - 名称与值分别保存在两个平铺数组中，按插入顺序排列；同名头部可以出现多次（如 Set-Cookie）
+ *  - 查找时先比较预先算好的哈希，常用头部是常量，命中时直接比较引用
+ *  - 头部数量通常只有十几个，顺序扫描比树或哈希表更快，也不产生额外节点对象
+ *  - clear() 只重置计数并释放引用，数组保留，可在同一连接的多个请求之间复用
+ */
+public final class HttpHeaders {
+
+    private HeaderName[] names;
+    private String[] values;
+    private int size;
+
+    public HttpHeaders() {
+        this(16);
+    }
+
+    public HttpHeaders(int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        this.names = new HeaderName[capacity];
+        this.values = new String[capacity];
+    }
+
+    public HttpHeaders(HttpHeaders other) {
+        this(other.size);
+        addAll(other);
+    }
+
+    /**
+     * 追加一个头部（不影响已有的同名头部）。
+     */
+    public void add(HeaderName name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    public void add(String name, String value) {
+        add(HeaderName.of(name), value);
+    }
+
+    public void addAll(HttpHeaders other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.names[i], other.values[i]);
+        }
+    }
+
+    /**
+     * 设置头部：替换第一个同名头部并删除其余同名头部；不存在时追加。
+     */
+    public void set(HeaderName name, String value) {
+        int i = indexOf(name, 0);
+        if (i < 0) {
+            add(name, value);
+            return;
+        }
+        values[i] = value;
+        removeFrom(name, i + 1);
+    }
+
+    public void set(String name, String value) {
+        set(HeaderName.of(name), value);
+    }
+
+    /**
+     * @return 第一个同名头部的值，不存在时返回 null
+     */
+    public String get(HeaderName name) {
+        int i = indexOf(name, 0);
+        return i < 0 ? null : values[i];
+    }
+
+    public String get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+
+    /**
+     * @return 所有同名头部的值按逗号合并（RFC 9110 §5.3），只有一个时直接返回该值
+     */
+    public String getCombined(String name) {
+        int first = indexOf(name);
+        return first < 0 ? null : combine(names[first], first);
+    }
+
+    public String getCombined(HeaderName name) {
+        int first = indexOf(name, 0);
+        return first < 0 ? null : combine(name, first);
+    }
+
+    private String combine(HeaderName n, int first) {
+        int next = indexOf(n, first + 1);
+        if (next < 0) return values[first];
+        StringBuilder sb = new StringBuilder(values[first]);
+        for (int i = next; i >= 0; i = indexOf(n, i + 1)) {
+            sb.append(", ").append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 所有同名头部的值（按出现顺序）
+     */
+    public List<String> getAll(HeaderName name) {
+        List<String> result = null;
+        for (int i = indexOf(name, 0); i >= 0; i = indexOf(name, i + 1)) {
+            if (result == null) result = new ArrayList<>(2);
+            result.add(values[i]);
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    public List<String> getAll(String name) {
+        int first = indexOf(name);
+        return first < 0 ? Collections.emptyList() : getAll(names[first]);
+    }
+
+    public boolean contains(HeaderName name) {
+        return indexOf(name, 0) >= 0;
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * 删除所有同名头部。
+     *
+     * @return 删除的个数
+     */
+    public int remove(HeaderName name) {
+        return removeFrom(name, 0);
+    }
+
+    public int remove(String name) {
+        return remove(HeaderName.of(name));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public HeaderName nameAt(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return names[index];
+    }
+
+    public String valueAt(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return values[index];
+    }
+
+    /**
+     * 清空全部头部，保留已分配的数组以便复用。
+     */
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return 大小写不敏感的只读 Map 视图快照（同名头部按逗号合并），供旧接口使用
+     */
+    public Map<String, String> toMap() {
+        TreeMap<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < size; i++) {
+            map.merge(names[i].name(), values[i], (a, b) -> a + ", " + b);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private int indexOf(HeaderName name, int from) {
+        for (int i = from; i < size; i++) {
+            if (sameName(names[i], name)) return i;
+        }
+        return -1;
+    }
+
+    private int indexOf(String name) {
+        if (name == null) return -1;
+        int h = HeaderName.hash(name, 0, name.length());
+        for (int i = 0; i < size; i++) {
+            if (names[i].matches(name, h)) return i;
+        }
+        return -1;
+    }
+
+    private int removeFrom(HeaderName name, int from) {
+        int removed = 0;
+        int w = from;
+        for (int r = from; r < size; r++) {
+            if (sameName(names[r], name)) {
+                removed++;
+            } else {
+                names[w] = names[r];
+                values[w] = values[r];
+                w++;
+            }
+        }
+        Arrays.fill(names, w, size, null);
+        Arrays.fill(values, w, size, null);
+        size = w;
+        return removed;
+    }
+
+    private static boolean sameName(HeaderName a, HeaderName b) {
+        return a == b || (a.hash() == b.hash() && a.name().equalsIgnoreCase(b.name()));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(names[i].name()).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
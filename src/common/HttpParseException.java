@@ -24,6 +24,8 @@ package common;
  */
 public class HttpParseException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
     /**
      * 创建一个无具体信息的 HttpParseException。
      * 通常仅在未知错误情况下使用。
@@ -1,26 +1,48 @@
 package common;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * 稳健的 HttpRequest，实现：
  *  - 使用单一 BufferedInputStream 读取头部与 body（避免 BufferedReader 的预读问题）
  *  - 支持 Content-Length 的 body 读取
- *  - Headers 使用大小写不敏感的 Map
+ *  - Headers 使用 HttpHeaders（常用头部名为预先算好哈希的常量，同名头部保留全部值）
+ *  - 路径、查询参数与表单参数在首次访问时才解析，结果缓存在请求对象上
+ *  - 服务端可通过 {@link RequestContext} 在同一连接的多个请求之间复用请求对象与缓冲
+ *  - 服务端分两步解析：先读请求行与头部，再按路由决定一次性读入请求体，或以
+ *    {@link #getBodyStream()} 流式交给处理器（如反向代理），请求体不在内存中聚合
  */
 public class HttpRequest {
 
-    private final String method;
-    private final String uri;
-    private final String httpVersion;
-    private final Map<String, String> headers;
-    private final byte[] body;
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private String method;
+    private String uri;
+    private String httpVersion;
+    private final HttpHeaders headers;
+    /** getHeaders() 的 Map 视图，首次调用时构建 */
+    private Map<String, String> headerMap;
+    private byte[] body;
+    /** 头部声明的请求体长度 */
+    private long contentLength;
+    /** 流式请求体（仅服务端按流式读取时非 null），读完前连接上的下一个请求不能开始解析 */
+    private FixedLengthInputStream bodyStream;
+    /** 客户端地址（仅服务端解析的请求有值） */
+    private String remoteAddress;
+
+    // 懒解析结果（请求对象只在单个线程内使用，无需同步）
+    private String path;
+    private Map<String, List<String>> queryParams;
+    private Map<String, List<String>> formParams;
 
     /**
      * 从输入流解析 HTTP 请求报文（主要用于服务端）。
@@ -29,54 +51,180 @@ public class HttpRequest {
         if (in == null) throw new IllegalArgumentException("InputStream cannot be null");
 
         // 使用单一的 BufferedInputStream 做所有读取（避免预读冲突）
-        BufferedInputStream bin = new BufferedInputStream(in);
-
-        // 1) 读取请求行（按字节查找 CRLF）
-        String requestLine = readLine(bin);
-        if (requestLine == null || requestLine.trim().isEmpty()) {
+        // 调用方已传入缓冲流（如长连接复用的连接流）时直接使用，避免二次缓冲吞掉下一个请求的数据
+        BufferedInputStream bin = (in instanceof BufferedInputStream)
+                ? (BufferedInputStream) in
+                : new BufferedInputStream(in);
+        this.headers = new HttpHeaders();
+        if (!readFrom(bin, new LineReader(new byte[256]))) {
             throw new Exception("Empty request line (client closed or invalid request)");
         }
-        String[] parts = requestLine.split("\\s+");
-        if (parts.length < 3) throw new Exception("Invalid request line: " + requestLine);
-        this.method = parts[0].toUpperCase();
-        this.uri = parts[1];
-        this.httpVersion = parts[2];
-
-        // 2) 读取 headers，直到空行
-        TreeMap<String, String> hdrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        String line;
-        while ((line = readLine(bin)) != null) {
-            if (line.isEmpty()) break; // headers done
-            int idx = line.indexOf(':');
-            if (idx <= 0) continue;
-            String name = line.substring(0, idx).trim();
-            String value = line.substring(idx + 1).trim();
-            if (hdrs.containsKey(name)) {
-                hdrs.put(name, hdrs.get(name) + "," + value);
-            } else {
-                hdrs.put(name, value);
+    }
+
+    /**
+     * 空请求对象，供 {@link RequestContext} 复用。
+     */
+    HttpRequest() {
+        this.headers = new HttpHeaders();
+    }
+
+    /**
+     * 清空上一个请求的状态，再从流中解析下一个请求（复用头部容器与行缓冲）。
+     *
+     * @return false 表示流已结束（没有读到任何请求数据）
+     */
+    boolean readFrom(BufferedInputStream bin, LineReader reader) throws Exception {
+        if (!readHead(bin, reader)) return false;
+        readBody(bin);
+        return true;
+    }
+
+    /**
+     * 第一步：清空上一个请求的状态，只解析请求行与头部，请求体留在流中。
+     *
+     * @return false 表示流已结束（没有读到任何请求数据）
+     */
+    boolean readHead(BufferedInputStream bin, LineReader reader) throws Exception {
+        return readHead(bin, reader, HeaderLimits.defaults());
+    }
+
+    /**
+     * 第一步（带大小上限）：请求行超长抛出 414，头部超长或过多抛出 431（{@link RequestTooLargeException}）。
+     *
+     * @return false 表示流已结束（没有读到任何请求数据）
+     */
+    boolean readHead(BufferedInputStream bin, LineReader reader, HeaderLimits limits) throws Exception {
+        headers.clear();
+        headerMap = null;
+        remoteAddress = null;
+        path = null;
+        queryParams = null;
+        formParams = null;
+        body = EMPTY_BODY;
+        contentLength = 0;
+        bodyStream = null;
+
+        // 1) 读取请求行（按字节查找 CRLF），直接在字节上切分，不使用正则
+        if (!reader.read(bin, limits.getMaxRequestLine(), 414)) return false;
+        byte[] line = reader.buf;
+        int len = reader.length;
+        int p = skipSpaces(line, 0, len);
+        if (p == len) throw new Exception("Empty request line (client closed or invalid request)");
+        int methodEnd = nextSpace(line, p, len);
+        int uriStart = skipSpaces(line, methodEnd, len);
+        int uriEnd = nextSpace(line, uriStart, len);
+        int versionStart = skipSpaces(line, uriEnd, len);
+        int versionEnd = nextSpace(line, versionStart, len);
+        if (uriStart == uriEnd || versionStart == versionEnd) {
+            throw new Exception("Invalid request line: " + reader.string(0, len));
+        }
+        this.method = knownMethod(line, p, methodEnd);
+        if (this.method == null) this.method = reader.string(p, methodEnd).toUpperCase();
+        this.uri = reader.string(uriStart, uriEnd);
+        this.httpVersion = knownVersion(line, versionStart, versionEnd);
+        if (this.httpVersion == null) this.httpVersion = reader.string(versionStart, versionEnd);
+
+        // 2) 读取 headers，直到空行；常用头部名直接命中常量，不为名称分配字符串
+        // 每行的上限为剩余的头部预算，总字节数与个数超限时不再继续读取
+        int headerBudget = limits.getMaxHeaderSize();
+        int headerCount = 0;
+        while (reader.read(bin, Math.max(headerBudget - 2, 0), 431)) {
+            line = reader.buf;
+            len = reader.length;
+            if (len == 0) break; // headers done
+            headerBudget -= len + 2;
+            if (++headerCount > limits.getMaxHeaderCount()) {
+                throw new RequestTooLargeException(431, "Too many header fields");
             }
+            int idx = indexOf(line, (byte) ':', len);
+            if (idx <= 0) continue;
+            int nameEnd = idx;
+            while (nameEnd > 0 && (line[nameEnd - 1] & 0xff) <= ' ') nameEnd--;
+            int valueStart = idx + 1;
+            int valueEnd = len;
+            while (valueStart < valueEnd && (line[valueStart] & 0xff) <= ' ') valueStart++;
+            while (valueEnd > valueStart && (line[valueEnd - 1] & 0xff) <= ' ') valueEnd--;
+            headers.add(HeaderName.of(line, 0, nameEnd), reader.string(valueStart, valueEnd));
         }
-        this.headers = Collections.unmodifiableMap(hdrs);
+        reader.reset();
 
-        // 3) 读取 body（固定长度）
-        byte[] bodyBytes = new byte[0];
-        String contentLengthValue = getHeader("Content-Length");
-        String transferEnc = getHeader("Transfer-Encoding");
+        // 3) 确定 body 长度（固定长度）
+        String contentLengthValue = headers.get(HeaderName.CONTENT_LENGTH);
+        String transferEnc = headers.get(HeaderName.TRANSFER_ENCODING);
         if (transferEnc != null && transferEnc.toLowerCase().contains("chunked")) {
             throw new UnsupportedOperationException("chunked Transfer-Encoding not supported by HttpRequest");
         } else if (contentLengthValue != null) {
-            int contentLength;
             try {
-                contentLength = Integer.parseInt(contentLengthValue.trim());
+                contentLength = Long.parseLong(contentLengthValue.trim());
             } catch (NumberFormatException nfe) {
                 throw new Exception("Invalid Content-Length: " + contentLengthValue);
             }
-            if (contentLength > 0) {
-                bodyBytes = readFixedBytes(bin, contentLength);
-            }
+            if (contentLength < 0) throw new Exception("Invalid Content-Length: " + contentLengthValue);
+        }
+        return true;
+    }
+
+    /**
+     * 第二步（一次性）：把请求体完整读入内存。
+     */
+    void readBody(BufferedInputStream bin) throws Exception {
+        if (contentLength > Integer.MAX_VALUE - 8) {
+            throw new HttpParseException("Request body too large to buffer: " + contentLength);
+        }
+        if (contentLength > 0) {
+            this.body = readFixedBytes(bin, (int) contentLength);
         }
-        this.body = bodyBytes;
+    }
+
+    /**
+     * 第二步（流式）：请求体留在连接流中，由处理器通过 {@link #getBodyStream()} 按需读取。
+     */
+    void streamBody(BufferedInputStream bin) {
+        this.bodyStream = new FixedLengthInputStream(bin, contentLength);
+    }
+
+    private static final String[] METHODS = {"GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS", "PATCH"};
+
+    /** 常见方法直接返回常量，避免每个请求创建方法名字符串 */
+    private static String knownMethod(byte[] b, int start, int end) {
+        for (String m : METHODS) {
+            if (m.length() == end - start && regionEqualsIgnoreCase(b, start, m)) return m;
+        }
+        return null;
+    }
+
+    private static String knownVersion(byte[] b, int start, int end) {
+        if (end - start == 8) {
+            if (regionEqualsIgnoreCase(b, start, "HTTP/1.1")) return "HTTP/1.1";
+            if (regionEqualsIgnoreCase(b, start, "HTTP/1.0")) return "HTTP/1.0";
+        }
+        return null;
+    }
+
+    private static boolean regionEqualsIgnoreCase(byte[] b, int start, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            int c = b[start + i] & 0xff;
+            if (c >= 'a' && c <= 'z') c -= 'a' - 'A';
+            if (c != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int skipSpaces(byte[] b, int from, int end) {
+        while (from < end && (b[from] == ' ' || b[from] == '\t')) from++;
+        return from;
+    }
+
+    private static int nextSpace(byte[] b, int from, int end) {
+        while (from < end && b[from] != ' ' && b[from] != '\t') from++;
+        return from;
+    }
+
+    private static int indexOf(byte[] b, byte target, int end) {
+        for (int i = 0; i < end; i++) {
+            if (b[i] == target) return i;
+        }
+        return -1;
     }
 
     /**
@@ -100,12 +248,43 @@ public class HttpRequest {
         this.uri = uri;
         this.httpVersion = (httpVersion == null || httpVersion.isEmpty()) ? "HTTP/1.1" : httpVersion;
 
-        TreeMap<String, String> hdrs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        HttpHeaders hdrs = new HttpHeaders();
         if (headers != null) {
-            hdrs.putAll(headers);
+            headers.forEach(hdrs::add);
         }
-        this.headers = Collections.unmodifiableMap(hdrs);
+        this.headers = hdrs;
         this.body = (body == null) ? new byte[0] : body.clone();
+        this.contentLength = this.body.length;
+    }
+
+    /**
+     * 由已解析好的头部容器构建请求（如 HTTP/2 流转换为请求），头部容器与 body 直接由请求持有，不再复制。
+     *
+     * @param headers 请求头，调用方之后不得再修改
+     * @param body    请求体，允许为 null
+     */
+    public HttpRequest(String method, String uri, String httpVersion, HttpHeaders headers, byte[] body) {
+        if (method == null || uri == null || headers == null) {
+            throw new IllegalArgumentException("method, uri and headers cannot be null");
+        }
+        this.method = method;
+        this.uri = uri;
+        this.httpVersion = httpVersion;
+        this.headers = headers;
+        this.body = body == null ? EMPTY_BODY : body;
+        this.contentLength = this.body.length;
+    }
+
+    /**
+     * 只有请求行与头部、请求体尚未到达的请求（如 HTTP/2 流在收到 DATA 之前），用于读取请求体之前的检查。
+     *
+     * @param contentLength 声明的请求体长度，未声明时为 0
+     */
+    public static HttpRequest headOnly(String method, String uri, String httpVersion, HttpHeaders headers,
+                                       long contentLength) {
+        HttpRequest request = new HttpRequest(method, uri, httpVersion, headers, null);
+        request.contentLength = contentLength;
+        return request;
     }
 
     // 从 BufferedInputStream 按字节读取到 CRLF（不包含 CRLF），返回用 ISO_8859_1 解码的行字符串
@@ -135,33 +314,147 @@ public class HttpRequest {
         return new String(baos.toByteArray(), StandardCharsets.ISO_8859_1);
     }
 
-    // 从同一个 BufferedInputStream 读取固定字节数（阻塞直到读到足够或 EOF）
+    // 从同一个 BufferedInputStream 读取固定字节数（阻塞直到读到足够或 EOF），直接读入结果数组
     public static byte[] readFixedBytes(BufferedInputStream in, int len) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        int remaining = len;
-        byte[] buffer = new byte[4096];
-        while (remaining > 0) {
-            int toRead = Math.min(buffer.length, remaining);
-            int r = in.read(buffer, 0, toRead);
+        byte[] result = new byte[len];
+        int n = 0;
+        while (n < len) {
+            int r = in.read(result, n, len - n);
             if (r == -1) {
                 throw new Exception("Unexpected end of stream while reading body");
             }
-            baos.write(buffer, 0, r);
-            remaining -= r;
+            n += r;
         }
-        return baos.toByteArray();
+        return result;
     }
 
     // getters
     public String getMethod() { return method; }
     public String getUri() { return uri; }
     public String getHttpVersion() { return httpVersion; }
-    public Map<String, String> getHeaders() { return headers; }
-    public byte[] getBody() { return body == null ? new byte[0] : body.clone(); }
-    public String getHeader(String name) { if (name == null) return null; return headers.get(name); }
+    /** 大小写不敏感的只读 Map 视图（同名头部按逗号合并） */
+    public Map<String, String> getHeaders() {
+        if (headerMap == null) headerMap = headers.toMap();
+        return headerMap;
+    }
+    /** 头部容器本身（只读使用），同名头部可通过 getAll 逐个取得 */
+    public HttpHeaders getHttpHeaders() { return headers; }
+    public byte[] getBody() { return bufferedBody().clone(); }
+    public String getRemoteAddress() { return remoteAddress; }
+    public void setRemoteAddress(String remoteAddress) { this.remoteAddress = remoteAddress; }
+    /** 同名头部出现多次时按逗号合并返回 */
+    public String getHeader(String name) { if (name == null) return null; return headers.getCombined(name); }
+    public String getHeader(HeaderName name) { return headers.getCombined(name); }
+    public List<String> getHeaderValues(String name) { return headers.getAll(name); }
+
+    /**
+     * @return 百分号解码后的路径（不含查询串），例如 "/login?x=1" 返回 "/login"
+     */
+    public String getPath() {
+        if (path == null) {
+            int q = uri.indexOf('?');
+            path = UrlEncoded.decodePath(q < 0 ? uri : uri.substring(0, q));
+        }
+        return path;
+    }
+
+    /**
+     * @return 原始查询串（不含 '?'），没有时返回 null
+     */
+    public String getRawQuery() {
+        int q = uri.indexOf('?');
+        return q < 0 ? null : uri.substring(q + 1);
+    }
+
+    /**
+     * @return 查询参数：参数名 -> 全部值（已解码，不可修改）
+     */
+    public Map<String, List<String>> getQueryParams() {
+        if (queryParams == null) {
+            queryParams = UrlEncoded.parseQuery(getRawQuery());
+        }
+        return queryParams;
+    }
+
+    /**
+     * @return 查询参数的第一个值，不存在时返回 null
+     */
+    public String getQueryParam(String name) {
+        List<String> values = getQueryParams().get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     * 表单参数：Content-Type 为 application/x-www-form-urlencoded（或未声明）时按 UTF-8 解析请求体，
+     * 其余类型返回空表。
+     *
+     * @return 参数名 -> 全部值（已解码，不可修改）
+     */
+    public Map<String, List<String>> getFormParams() {
+        if (formParams == null) {
+            String contentType = headers.get(HeaderName.CONTENT_TYPE);
+            boolean form = contentType == null
+                    || contentType.toLowerCase().startsWith("application/x-www-form-urlencoded");
+            byte[] data = form ? bufferedBody() : EMPTY_BODY;
+            formParams = form
+                    ? UrlEncoded.parse(data, 0, data.length, StandardCharsets.UTF_8)
+                    : Collections.emptyMap();
+        }
+        return formParams;
+    }
+
+    /**
+     * @return 表单参数的第一个值，不存在时返回 null
+     */
+    public String getFormParam(String name) {
+        List<String> values = getFormParams().get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     * @return 头部声明的请求体长度（没有请求体时为 0）
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * 以流的方式读取请求体：流式解析的请求直接读取连接（最多 Content-Length 个字节），
+     * 其余请求返回内存中请求体的视图。
+     */
+    public InputStream getBodyStream() {
+        return bodyStream != null ? bodyStream : new ByteArrayInputStream(body);
+    }
+
+    /**
+     * @return 流式请求体是否还有未读取的字节（有则连接不能继续解析下一个请求）
+     */
+    public boolean hasUnreadBody() {
+        return bodyStream != null && bodyStream.remaining() > 0;
+    }
+
+    /**
+     * 流式请求体尚未被读取时，按需一次性读入内存（处理器调用了 getBody 等方法）。
+     */
+    private byte[] bufferedBody() {
+        if (bodyStream == null) return body == null ? EMPTY_BODY : body;
+        if (bodyStream.remaining() != contentLength) {
+            throw new IllegalStateException("Request body is already being streamed");
+        }
+        if (contentLength > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Request body too large to buffer: " + contentLength);
+        }
+        try {
+            body = bodyStream.readNBytes((int) contentLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bodyStream = null;
+        return body;
+    }
 
     public boolean isConnectionCloseRequested() {
-        String conn = getHeader("Connection");
+        String conn = headers.get(HeaderName.CONNECTION);
         return conn != null && "close".equalsIgnoreCase(conn.trim());
     }
 
@@ -172,7 +465,7 @@ public class HttpRequest {
                 ", uri='" + uri + '\'' +
                 ", httpVersion='" + httpVersion + '\'' +
                 ", headers=" + headers +
-                ", bodyLength=" + (body == null ? 0 : body.length) +
+                ", bodyLength=" + contentLength +
                 '}';
     }
 }
@@ -1,10 +1,13 @@
 package common;
 
+import common.buffer.ChannelWriter;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,28 +17,47 @@ import java.util.Map;
  *  - 提供 setStatusCode/setStatusMessage/addHeader/setBody 等方法。
  *  - write(OutputStream) 会写出完整的 HTTP 响应报文（状态行 + 头 + 空行 + body）。
  *  - 当调用 setBody(byte[]) 时，会自动设置 Content-Length 头（覆盖现有的 Content-Length）。
+ *  - addHeader 覆盖同名头部；appendHeader 追加，用于 Set-Cookie 等允许出现多次的头部。
+ *  - setBodyStream 设置流式响应体（如反向代理转发的上游响应），写出时边读边发，不在内存中聚合；
+ *    长度未知时以 chunked 编码写出。流式响应体只能写出一次，getBody() 对其返回空数组。
  */
 public class HttpResponse {
 
     private String httpVersion = "HTTP/1.1";
     private int statusCode = 200;
     private String statusMessage = "OK";
-    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final HttpHeaders headers;
     private byte[] body = new byte[0];
+    /** 流式响应体，写出后关闭；为 null 表示使用 body */
+    private InputStream bodyStream;
+    /** 流式响应体的长度，小于 0 表示未知 */
+    private long bodyStreamLength = -1;
 public HttpResponse() {
+    this.headers = new HttpHeaders();
 }
 public HttpResponse(HttpResponse httpResponse) {
     this.httpVersion = httpResponse.httpVersion;
     this.statusCode = httpResponse.statusCode;
     this.statusMessage = httpResponse.statusMessage;
-    this.headers.putAll(httpResponse.headers);
+    this.headers = new HttpHeaders(httpResponse.headers);
     this.body = httpResponse.body;
+    this.bodyStream = httpResponse.bodyStream;
+    this.bodyStreamLength = httpResponse.bodyStreamLength;
 }
     public HttpResponse(String httpVersion, int statusCode, String statusMessage, Map<String, String> headers, byte[] body) {
         this.httpVersion = httpVersion;
         this.statusCode = statusCode;
         this.statusMessage = statusMessage;
-        this.headers.putAll(headers);
+        this.headers = new HttpHeaders();
+        headers.forEach(this.headers::add);
+        this.body = body;
+    }
+
+    public HttpResponse(String httpVersion, int statusCode, String statusMessage, HttpHeaders headers, byte[] body) {
+        this.httpVersion = httpVersion;
+        this.statusCode = statusCode;
+        this.statusMessage = statusMessage;
+        this.headers = new HttpHeaders(headers);
         this.body = body;
     }
 
@@ -62,9 +84,34 @@ public HttpResponse(HttpResponse httpResponse) {
         if (version != null) this.httpVersion = version;
     }
 
+    /**
+     * 设置头部（覆盖同名头部）。
+     */
     public void addHeader(String key, String value) {
         if (key == null || value == null) return;
-        headers.put(key, value);
+        headers.set(key, value);
+    }
+
+    public void addHeader(HeaderName name, String value) {
+        if (name == null || value == null) return;
+        headers.set(name, value);
+    }
+
+    /**
+     * 追加头部，保留已有的同名头部（如多个 Set-Cookie）。
+     */
+    public void appendHeader(String key, String value) {
+        if (key == null || value == null) return;
+        headers.add(key, value);
+    }
+
+    public void appendHeader(HeaderName name, String value) {
+        if (name == null || value == null) return;
+        headers.add(name, value);
+    }
+
+    public void removeHeader(String key) {
+        if (key != null) headers.remove(key);
     }
 
     /**
@@ -73,9 +120,70 @@ public HttpResponse(HttpResponse httpResponse) {
      * @param body body 字节（如果传 null，将设置为空 body）
      */
     public void setBody(byte[] body) {
+        this.bodyStream = null;
+        headers.remove(HeaderName.TRANSFER_ENCODING);
         this.body = body == null ? new byte[0] : body.clone();
-        addHeader("Content-Length", String.valueOf(this.body.length));
+        addHeader(HeaderName.CONTENT_LENGTH, String.valueOf(this.body.length));
+    }
+    /**
+     * 设置流式响应体：写出时从流中按块读取并发送，写完或失败后关闭该流。
+     *
+     * @param in     响应体数据
+     * @param length 长度已知时写出 Content-Length；小于 0 表示未知，HTTP/1.1 以 chunked 编码写出
+     */
+    public void setBodyStream(InputStream in, long length) {
+        if (in == null) throw new IllegalArgumentException("InputStream cannot be null");
+        this.body = new byte[0];
+        this.bodyStream = in;
+        this.bodyStreamLength = length;
+        if (length >= 0) {
+            headers.remove(HeaderName.TRANSFER_ENCODING);
+            addHeader(HeaderName.CONTENT_LENGTH, String.valueOf(length));
+        } else {
+            headers.remove(HeaderName.CONTENT_LENGTH);
+            addHeader(HeaderName.TRANSFER_ENCODING, "chunked");
+        }
     }
+
+    public boolean isStreaming() {
+        return bodyStream != null;
+    }
+
+    public InputStream getBodyStream() {
+        return bodyStream;
+    }
+
+    /**
+     * @return 流式响应体的长度，小于 0 表示未知
+     */
+    public long getBodyStreamLength() {
+        return bodyStreamLength;
+    }
+
+    /**
+     * 不写出流式响应体（如 HEAD 请求），直接关闭该流。
+     */
+    public void discardBodyStream() {
+        if (bodyStream == null) return;
+        try {
+            bodyStream.close();
+        } catch (IOException ignored) {
+        }
+        bodyStream = null;
+    }
+
+    /**
+     * HEAD 响应：保留与 GET 相同的头部（包括 Content-Length），但不写出响应体。
+     */
+    public void omitBody() {
+        if (bodyStream != null) {
+            discardBodyStream();
+        } else if (!headers.contains(HeaderName.CONTENT_LENGTH)) {
+            addHeader(HeaderName.CONTENT_LENGTH, String.valueOf(body == null ? 0 : body.length));
+        }
+        body = new byte[0];
+    }
+
 public void setStringBody(String stringBody) {
         this.body=stringBody.getBytes(StandardCharsets.UTF_8);
 }
@@ -83,8 +191,31 @@ public void setStringBody(String stringBody) {
         return body == null ? new byte[0] : body.clone();
     }
 
+    /**
+     * @return 内存中响应体的长度（不复制响应体）
+     */
+    public int getBodyLength() {
+        return body == null ? 0 : body.length;
+    }
+
+    /**
+     * @return 大小写不敏感的只读 Map 视图（同名头部按逗号合并）
+     */
     public Map<String, String> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+        return headers.toMap();
+    }
+
+    /** 头部容器本身（只读使用） */
+    public HttpHeaders getHttpHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        return headers.getCombined(name);
+    }
+
+    public List<String> getHeaderValues(String name) {
+        return headers.getAll(name);
     }
 
     public String getHttpVersion() {
@@ -106,38 +237,204 @@ public void setStringBody(String stringBody) {
      * @throws Exception 写入异常
      */
     public void write(OutputStream out) throws Exception {
-        if (out == null) throw new IllegalArgumentException("OutputStream cannot be null");
-
-        PrintWriter writer = new PrintWriter(out, false, StandardCharsets.ISO_8859_1);
+        write(out, new byte[1024]);
+    }
 
-        // 1) 状态行
-        writer.print(httpVersion + " " + statusCode + " " + statusMessage + "\r\n");
+    /**
+     * 使用调用方提供的缓冲把响应写入输出流（服务端传入连接复用的缓冲，写出过程不再分配对象）。
+     * 状态行与头部直接按 ISO-8859-1 编码进缓冲；body 放得下时与头部合并为一次写出。
+     *
+     * @param out    输出流
+     * @param buffer 编码缓冲，写满时先刷出
+     */
+    public void write(OutputStream out, byte[] buffer) throws IOException {
+        if (out == null) throw new IllegalArgumentException("OutputStream cannot be null");
 
-        // 2) 确保 Content-Length 存在（如果未设置 body 且 header 也未设置，默认 0）
-        if (!headers.containsKey("Content-Length")) {
-            addHeader("Content-Length", String.valueOf(body == null ? 0 : body.length));
+        // 1) 确保 Content-Length 存在（如果未设置 body 且 header 也未设置，默认 0；流式响应体已在设置时处理）
+        if (bodyStream == null && !headers.contains(HeaderName.CONTENT_LENGTH)
+                && !headers.contains(HeaderName.TRANSFER_ENCODING)) {
+            addHeader(HeaderName.CONTENT_LENGTH, String.valueOf(body == null ? 0 : body.length));
         }
 
-        // 3) 写入所有 header
-        for (Map.Entry<String, String> e : headers.entrySet()) {
-            writer.print(e.getKey() + ": " + e.getValue() + "\r\n");
+        // 2) 状态行
+        int pos = putAscii(out, buffer, 0, httpVersion);
+        pos = putByte(out, buffer, pos, ' ');
+        pos = putInt(out, buffer, pos, statusCode);
+        pos = putByte(out, buffer, pos, ' ');
+        pos = putAscii(out, buffer, pos, statusMessage);
+        pos = putCrlf(out, buffer, pos);
+
+        // 3) 写入所有 header（同名头部逐行写出）
+        for (int i = 0; i < headers.size(); i++) {
+            pos = putBytes(out, buffer, pos, headers.nameAt(i).bytes());
+            pos = putByte(out, buffer, pos, ':');
+            pos = putByte(out, buffer, pos, ' ');
+            pos = putAscii(out, buffer, pos, headers.valueAt(i));
+            pos = putCrlf(out, buffer, pos);
         }
 
         // 4) 空行
-        writer.print("\r\n");
-        writer.flush(); // 确保头部已经发送到流中
+        pos = putCrlf(out, buffer, pos);
 
-        // 5) 写入 body（如果有）
-        if (body != null && body.length > 0) {
-            out.write(body);
+        // 5) 流式 body：头部先写出，缓冲随后用作读取块
+        if (bodyStream != null) {
+            out.write(buffer, 0, pos);
+            InputStream in = bodyStream;
+            bodyStream = null;
+            try (in) {
+                boolean chunked = bodyStreamLength < 0;
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    if (chunked) out.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(buffer, 0, n);
+                    if (chunked) out.write(CRLF);
+                }
+                if (chunked) out.write(LAST_CHUNK);
+            }
             out.flush();
+            return;
+        }
+
+        // 6) 写入 body（如果有）：小 body 复制到缓冲尾部，与头部一起写出
+        int bodyLength = body == null ? 0 : body.length;
+        if (bodyLength > 0 && bodyLength <= buffer.length - pos) {
+            System.arraycopy(body, 0, buffer, pos, bodyLength);
+            out.write(buffer, 0, pos + bodyLength);
+        } else {
+            out.write(buffer, 0, pos);
+            if (bodyLength > 0) out.write(body);
+        }
+        out.flush();
+    }
+
+    /**
+     * 通过直接内存写出器把响应写到通道（服务端连接持有池化的直接缓冲时使用）。
+     * 编码方式与 {@link #write(OutputStream, byte[])} 相同；大 body 分块经直接缓冲写出，
+     * 不经过 JDK 为堆缓冲准备的临时直接缓冲。
+     */
+    public void write(ChannelWriter out) throws IOException {
+        if (out == null) throw new IllegalArgumentException("ChannelWriter cannot be null");
+        if (bodyStream == null && !headers.contains(HeaderName.CONTENT_LENGTH)
+                && !headers.contains(HeaderName.TRANSFER_ENCODING)) {
+            addHeader(HeaderName.CONTENT_LENGTH, String.valueOf(body == null ? 0 : body.length));
+        }
+        out.ascii(httpVersion).put(' ').decimal(statusCode).put(' ').ascii(statusMessage).crlf();
+        for (int i = 0; i < headers.size(); i++) {
+            out.bytes(headers.nameAt(i).bytes()).put(':').put(' ').ascii(headers.valueAt(i)).crlf();
+        }
+        out.crlf();
+        if (bodyStream != null) {
+            InputStream in = bodyStream;
+            bodyStream = null;
+            try (in) {
+                boolean chunked = bodyStreamLength < 0;
+                byte[] chunk = new byte[STREAM_CHUNK_SIZE];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    if (chunked) out.ascii(Integer.toHexString(n)).crlf();
+                    out.bytes(chunk, 0, n);
+                    if (chunked) out.crlf();
+                }
+                if (chunked) out.bytes(LAST_CHUNK);
+            }
+        } else if (body != null && body.length > 0) {
+            out.bytes(body);
+        }
+        out.flush();
+    }
+
+    /**
+     * 从输入流解析响应的状态行与头部（反向代理读取上游响应时使用），body 留在流中由调用方按帧读取。
+     * 返回的响应不带 body。
+     */
+    public static HttpResponse readHead(BufferedInputStream in) throws IOException, HttpParseException {
+        LineReader reader = new LineReader(new byte[256]);
+        if (!reader.read(in)) throw new HttpParseException("Empty status line");
+        String statusLine = reader.string(0, reader.length);
+        int sp1 = statusLine.indexOf(' ');
+        if (sp1 <= 0) throw new HttpParseException("Invalid status line: " + statusLine);
+        int sp2 = statusLine.indexOf(' ', sp1 + 1);
+        int code;
+        try {
+            code = Integer.parseInt(sp2 < 0 ? statusLine.substring(sp1 + 1) : statusLine.substring(sp1 + 1, sp2));
+        } catch (NumberFormatException e) {
+            throw new HttpParseException("Invalid status line: " + statusLine);
+        }
+        HttpResponse response = new HttpResponse();
+        response.httpVersion = statusLine.substring(0, sp1);
+        response.statusCode = code;
+        response.statusMessage = sp2 < 0 ? "" : statusLine.substring(sp2 + 1);
+        while (true) {
+            if (!reader.read(in)) throw new HttpParseException("Unexpected end of response headers");
+            byte[] line = reader.buf;
+            int len = reader.length;
+            if (len == 0) break;
+            int idx = 0;
+            while (idx < len && line[idx] != ':') idx++;
+            if (idx == 0 || idx == len) continue;
+            int valueStart = idx + 1;
+            int valueEnd = len;
+            while (valueStart < valueEnd && (line[valueStart] & 0xff) <= ' ') valueStart++;
+            while (valueEnd > valueStart && (line[valueEnd - 1] & 0xff) <= ' ') valueEnd--;
+            response.headers.add(HeaderName.of(line, 0, idx), reader.string(valueStart, valueEnd));
+        }
+        return response;
+    }
+
+    private static final int STREAM_CHUNK_SIZE = 16 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private static int putByte(OutputStream out, byte[] buf, int pos, int b) throws IOException {
+        if (pos == buf.length) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+        buf[pos] = (byte) b;
+        return pos + 1;
+    }
+
+    private static int putCrlf(OutputStream out, byte[] buf, int pos) throws IOException {
+        return putByte(out, buf, putByte(out, buf, pos, '\r'), '\n');
+    }
+
+    /**
+     * 按 ISO-8859-1 写出字符串；无法表示的字符（大于 0xFF）写作 '?'，与 PrintWriter 的编码行为一致。
+     */
+    private static int putAscii(OutputStream out, byte[] buf, int pos, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            pos = putByte(out, buf, pos, c > 0xFF ? '?' : c);
+        }
+        return pos;
+    }
+
+    private static int putBytes(OutputStream out, byte[] buf, int pos, byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            pos = putByte(out, buf, pos, b);
+        }
+        return pos;
+    }
+
+    private static int putInt(OutputStream out, byte[] buf, int pos, int value) throws IOException {
+        if (value < 0) {
+            pos = putByte(out, buf, pos, '-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            pos = putByte(out, buf, pos, '0' + (value / divisor) % 10);
         }
+        return pos;
     }
 
     private static String defaultReasonPhrase(int code) {
         switch (code) {
             case 200: return "OK";
             case 201: return "Created";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
             case 301: return "Moved Permanently";
             case 302: return "Found";
             case 304: return "Not Modified";
@@ -146,8 +443,18 @@ public void setStringBody(String stringBody) {
             case 403: return "Forbidden";
             case 404: return "Not Found";
             case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
             case 409: return "Conflict";
+            case 413: return "Content Too Large";
+            case 414: return "URI Too Long";
+            case 416: return "Range Not Satisfiable";
+            case 417: return "Expectation Failed";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
             case 500: return "Internal Server Error";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
             default: return "Status";
         }
     }
@@ -159,7 +466,7 @@ public void setStringBody(String stringBody) {
                 ", statusCode=" + statusCode +
                 ", statusMessage='" + statusMessage + '\'' +
                 ", headers=" + headers +
-                ", bodyLength=" + (body == null ? 0 : body.length) +
+                ", bodyLength=" + (bodyStream != null ? bodyStreamLength : body == null ? 0 : body.length) +
                 '}';
     }
 }
@@ -0,0 +1,87 @@
+package common;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按行读取报文头部的可复用读取器（包内使用）。
+ *
+ * 说明：
+ *  - 行内容读入复用的字节数组，调用方直接在字节上解析，不为每一行创建 String
+ *  - 超长的行临时扩容，下一行开始时恢复为初始缓冲，避免个别大请求长期占用内存
+ *  - 以 CRLF 作为行结束（与 {@link HttpRequest#readLine} 一致），返回的内容不含 CRLF
+ */
+final class LineReader {
+
+    /** 单行最大字节数 */
+    static final int MAX_LINE = 64 * 1024;
+
+    private final byte[] initial;
+    byte[] buf;
+    int length;
+
+    LineReader(byte[] initial) {
+        this.initial = initial;
+        this.buf = initial;
+    }
+
+    /**
+     * 读取一行到 buf[0, length)。
+     *
+     * @return false 表示流已结束且没有读到任何字节
+     */
+    boolean read(BufferedInputStream in) throws IOException, HttpParseException {
+        return read(in, MAX_LINE, 0);
+    }
+
+    /**
+     * 读取一行到 buf[0, length)，行内容超过 maxLength 字节时立即停止读取。
+     *
+     * @param overflowStatus 超长时 {@link RequestTooLargeException} 携带的状态码；为 0 时抛出普通的解析异常
+     * @return false 表示流已结束且没有读到任何字节
+     */
+    boolean read(BufferedInputStream in, int maxLength, int overflowStatus) throws IOException, HttpParseException {
+        buf = initial;
+        length = 0;
+        boolean any = false;
+        while (true) {
+            int cur = in.read();
+            if (cur == -1) {
+                return any;
+            }
+            any = true;
+            if (cur == '\n' && length > 0 && buf[length - 1] == '\r') {
+                length--;
+                return true;
+            }
+            // CR 可能属于行尾，允许多读一个字节
+            if (length >= maxLength && !(length == maxLength && cur == '\r')) {
+                if (overflowStatus == 414) throw new RequestTooLargeException(414, "Request line too long");
+                if (overflowStatus != 0) throw new RequestTooLargeException(overflowStatus, "Header line too long");
+                throw new HttpParseException("Header line too long");
+            }
+            if (length == buf.length) {
+                byte[] bigger = new byte[Math.min(maxLength + 1, buf.length * 2)];
+                System.arraycopy(buf, 0, bigger, 0, length);
+                buf = bigger;
+            }
+            buf[length++] = (byte) cur;
+        }
+    }
+
+    /**
+     * @return buf[start, end) 按 ISO-8859-1 解码的字符串
+     */
+    String string(int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 释放临时扩容的缓冲。
+     */
+    void reset() {
+        buf = initial;
+        length = 0;
+    }
+}
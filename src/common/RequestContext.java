@@ -0,0 +1,128 @@
+package common;
+
+import common.buffer.ChannelWriter;
+import common.buffer.DirectBufferPool;
+import common.buffer.PooledByteBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 单个连接的可复用请求上下文（服务端使用）。
+ *
+ * 说明：
+ *  - 每个连接持有一个上下文：一个被反复重置的 HttpRequest、一块行缓冲与一块响应编码缓冲，
+ *    两块缓冲都从有界的 {@link BufferPool} 借出，连接关闭时归还
+ *  - 长连接上的稳态流量每个请求只需分配 URI、头部值与请求体，不再创建请求对象、头部表、
+ *    行缓冲与 PrintWriter
+ *  - readRequest 返回的请求对象在下一次 readRequest 时被覆盖，处理器不得在响应写出后继续持有
+ *  - 连接带有通道时，响应编码缓冲改为从 {@link DirectBufferPool} 借出的直接内存，
+ *    经通道写出时不再由 JDK 复制到临时直接缓冲
+ *  - 非线程安全，只能由处理该连接的线程使用
+ */
+public final class RequestContext implements Closeable {
+
+    private final BufferPool pool;
+    private final byte[] lineBuffer;
+    private final byte[] writeBuffer;
+    private final PooledByteBuffer directBuffer;
+    private final ChannelWriter channelWriter;
+    private final LineReader reader;
+    private final HttpRequest request = new HttpRequest();
+    private HeaderLimits headerLimits = HeaderLimits.defaults();
+    private boolean closed;
+
+    public RequestContext(BufferPool pool) {
+        this(pool, null, null);
+    }
+
+    /**
+     * @param pool       行缓冲来源
+     * @param directPool 直接内存缓冲池；为 null 或 channel 为 null 时使用堆缓冲写出
+     * @param channel    连接的通道（阻塞模式）
+     */
+    public RequestContext(BufferPool pool, DirectBufferPool directPool, WritableByteChannel channel) {
+        this.pool = pool;
+        this.lineBuffer = pool.acquire();
+        this.reader = new LineReader(lineBuffer);
+        if (directPool != null && channel != null) {
+            this.directBuffer = directPool.allocate(lineBuffer.length);
+            this.channelWriter = new ChannelWriter(channel, directBuffer.buffer());
+            this.writeBuffer = null;
+        } else {
+            this.directBuffer = null;
+            this.channelWriter = null;
+            this.writeBuffer = pool.acquire();
+        }
+    }
+
+    /**
+     * 设置解析请求行与头部时的大小上限（默认 {@link HeaderLimits#defaults()}）。
+     */
+    public void setHeaderLimits(HeaderLimits headerLimits) {
+        this.headerLimits = headerLimits;
+    }
+
+    /**
+     * 从连接流解析下一个请求（复用同一个请求对象）。
+     *
+     * @return 解析好的请求；流已结束时返回 null
+     */
+    public HttpRequest readRequest(BufferedInputStream in) throws Exception {
+        return request.readFrom(in, reader) ? request : null;
+    }
+
+    /**
+     * 两步解析的第一步：只解析请求行与头部（复用同一个请求对象）。
+     * 之后必须调用 {@link #readRequestBody} 或 {@link #streamRequestBody} 之一。
+     *
+     * @return 解析好头部的请求；流已结束时返回 null
+     * @throws RequestTooLargeException 请求行或头部超出上限
+     */
+    public HttpRequest readRequestHead(BufferedInputStream in) throws Exception {
+        return request.readHead(in, reader, headerLimits) ? request : null;
+    }
+
+    /**
+     * 把当前请求的请求体完整读入内存。
+     */
+    public void readRequestBody(BufferedInputStream in) throws Exception {
+        request.readBody(in);
+    }
+
+    /**
+     * 当前请求的请求体留在连接流中，由处理器通过 {@link HttpRequest#getBodyStream()} 读取。
+     */
+    public void streamRequestBody(BufferedInputStream in) {
+        request.streamBody(in);
+    }
+
+    /**
+     * 使用上下文的编码缓冲写出响应。
+     */
+    public void writeResponse(HttpResponse response, OutputStream out) throws IOException {
+        if (channelWriter != null) {
+            response.write(channelWriter);
+        } else {
+            response.write(out, writeBuffer);
+        }
+    }
+
+    /**
+     * 归还缓冲。关闭后不得再使用本上下文。
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        pool.release(lineBuffer);
+        if (directBuffer != null) {
+            directBuffer.release();
+        } else {
+            pool.release(writeBuffer);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package common;
+
+/**
+ * 请求行或头部超出 {@link HeaderLimits} 的解析异常。
+ *
+ * 建议上层处理：按 {@link #getStatusCode()} 返回 414 URI Too Long 或
+ * 431 Request Header Fields Too Large，然后关闭连接（剩余的头部没有读取，连接无法继续使用）。
+ */
+public class RequestTooLargeException extends HttpParseException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public RequestTooLargeException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
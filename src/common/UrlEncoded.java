@@ -0,0 +1,118 @@
+package common;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * application/x-www-form-urlencoded 与 URI 查询串的解析工具。
+ *
+ * 说明：
+ *  - 直接在字节数组上单趟扫描，不先把整个请求体转成 String 再 split
+ *  - 正确处理百分号编码（按 UTF-8 还原多字节字符）与 '+' 表示空格
+ *  - 只有含 '%' 或 '+' 的片段才需要解码缓冲，其余片段直接由原数组构造 String
+ *  - 宽松解析：非法的百分号转义按原样保留，没有 '=' 的键对应空字符串
+ */
+public final class UrlEncoded {
+
+    private UrlEncoded() {
+    }
+
+    /**
+     * 解析 URL 编码的字节（表单请求体）。
+     *
+     * @return 参数名 -> 参数值列表（保持出现顺序，同名参数保留全部值），不可修改
+     */
+    public static Map<String, List<String>> parse(byte[] data, int offset, int length, Charset charset) {
+        if (data == null || length <= 0) return Collections.emptyMap();
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        byte[] scratch = null;
+        int end = offset + length;
+        int start = offset;
+        int eq = -1;
+        boolean keyNeedsDecode = false;
+        boolean valueNeedsDecode = false;
+        for (int i = offset; i <= end; i++) {
+            byte b = i < end ? data[i] : (byte) '&';
+            if (b == '&') {
+                if (i > start) {
+                    int keyEnd = eq < 0 ? i : eq;
+                    if ((keyNeedsDecode || valueNeedsDecode) && scratch == null) {
+                        scratch = new byte[length];
+                    }
+                    String key = keyNeedsDecode
+                            ? decode(data, start, keyEnd, true, charset, scratch)
+                            : new String(data, start, keyEnd - start, charset);
+                    String value;
+                    if (eq < 0) {
+                        value = "";
+                    } else if (valueNeedsDecode) {
+                        value = decode(data, eq + 1, i, true, charset, scratch);
+                    } else {
+                        value = new String(data, eq + 1, i - eq - 1, charset);
+                    }
+                    params.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+                }
+                start = i + 1;
+                eq = -1;
+                keyNeedsDecode = false;
+                valueNeedsDecode = false;
+            } else if (b == '=' && eq < 0) {
+                eq = i;
+            } else if (b == '%' || b == '+') {
+                if (eq < 0) keyNeedsDecode = true;
+                else valueNeedsDecode = true;
+            }
+        }
+        return Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * 解析查询串（不含 '?'）。请求行按 ISO-8859-1 读入，字符与原始字节一一对应。
+     */
+    public static Map<String, List<String>> parseQuery(String query) {
+        if (query == null || query.isEmpty()) return Collections.emptyMap();
+        byte[] bytes = query.getBytes(StandardCharsets.ISO_8859_1);
+        return parse(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 百分号解码 URI 路径（'+' 在路径中不表示空格）。不含 '%' 时直接返回原串。
+     */
+    public static String decodePath(String rawPath) {
+        if (rawPath.indexOf('%') < 0) return rawPath;
+        byte[] bytes = rawPath.getBytes(StandardCharsets.ISO_8859_1);
+        return decode(bytes, 0, bytes.length, false, StandardCharsets.UTF_8, new byte[bytes.length]);
+    }
+
+    /**
+     * 解码 data[start, end) 到 scratch，再按字符集构造字符串。
+     */
+    private static String decode(byte[] data, int start, int end, boolean plusAsSpace, Charset charset,
+                                 byte[] scratch) {
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '+' && plusAsSpace) {
+                scratch[n++] = ' ';
+            } else if (b == '%' && i + 2 < end && hexValue(data[i + 1]) >= 0 && hexValue(data[i + 2]) >= 0) {
+                scratch[n++] = (byte) (hexValue(data[i + 1]) << 4 | hexValue(data[i + 2]));
+                i += 2;
+            } else {
+                scratch[n++] = b;
+            }
+        }
+        return new String(scratch, 0, n, charset);
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,105 @@
+package common.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 基于直接内存缓冲的报文写出器。
+ *
+ * 说明：
+ *  - 报文头部直接按 ISO-8859-1 编码进直接缓冲，写满或 flush 时整块交给通道；
+ *    通道收到的是直接缓冲，JDK 不再为每次写入复制到临时直接缓冲
+ *  - 小的 body 与头部拼在同一个缓冲里，一次系统调用写出
+ *  - 缓冲由调用方借出与归还，写出器本身不持有所有权；非线程安全
+ */
+public final class ChannelWriter {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buf;
+
+    /**
+     * @param channel 目标通道（阻塞模式）
+     * @param buf     编码缓冲，通常来自 {@link DirectBufferPool}
+     */
+    public ChannelWriter(WritableByteChannel channel, ByteBuffer buf) {
+        this.channel = channel;
+        this.buf = buf;
+        buf.clear();
+    }
+
+    public ChannelWriter put(int b) throws IOException {
+        if (!buf.hasRemaining()) drain();
+        buf.put((byte) b);
+        return this;
+    }
+
+    /**
+     * 按 ISO-8859-1 写入字符串；无法表示的字符（大于 0xFF）写作 '?'。
+     */
+    public ChannelWriter ascii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            if (!buf.hasRemaining()) drain();
+            char c = s.charAt(i);
+            buf.put((byte) (c > 0xFF ? '?' : c));
+        }
+        return this;
+    }
+
+    public ChannelWriter decimal(long value) throws IOException {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            put((int) ('0' + (value / divisor) % 10));
+        }
+        return this;
+    }
+
+    public ChannelWriter crlf() throws IOException {
+        return put('\r').put('\n');
+    }
+
+    /**
+     * 写入字节：放得下时复制进缓冲，否则分块经缓冲写出。
+     */
+    public ChannelWriter bytes(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buf.hasRemaining()) drain();
+            int n = Math.min(length, buf.remaining());
+            buf.put(data, offset, n);
+            offset += n;
+            length -= n;
+        }
+        return this;
+    }
+
+    public ChannelWriter bytes(byte[] data) throws IOException {
+        return bytes(data, 0, data.length);
+    }
+
+    /**
+     * @return 缓冲中还能放下的字节数
+     */
+    public int remaining() {
+        return buf.remaining();
+    }
+
+    /**
+     * 把缓冲中已编码的内容全部写到通道。
+     */
+    public void flush() throws IOException {
+        drain();
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+}
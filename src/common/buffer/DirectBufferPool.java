@@ -0,0 +1,157 @@
+package common.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直接内存缓冲池（按大小分级的 slab 分配）。
+ *
+ * 设计说明：
+ *  - 分级：4 KiB / 16 KiB / 64 KiB 三个级别，申请时取能容纳所需大小的最小级别
+ *  - slab：每个级别按需申请 1 MiB 的直接内存块，再切成等长的片段；直接内存只在创建 slab 时分配，
+ *    之后反复复用，不再经历 allocateDirect 与 Cleaner 回收的开销
+ *  - 线程本地缓存：释放的片段先放回当前线程的小缓存，同一线程再次申请时无需任何同步；
+ *    缓存满时才放回全局空闲队列
+ *  - 上限：每个级别最多 maxSlabsPerClass 个 slab；耗尽或申请超过最大级别时退化为普通的
+ *    allocateDirect（由 GC 回收），并计入 unpooled 统计
+ *  - 泄漏检测（调试用）：每次借出记录调用栈，缓冲未 release 即被回收时打印并归还内存
+ */
+public final class DirectBufferPool {
+
+    private static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024};
+    private static final int SLAB_SIZE = 1024 * 1024;
+    private static final int THREAD_CACHE_SIZE = 32;
+
+    private static final DirectBufferPool SHARED = new DirectBufferPool(16,
+            Boolean.getBoolean("http.buffer.leakDetection"));
+
+    private final SizeClass[] classes;
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+    private final boolean leakDetection;
+    private final Cleaner cleaner;
+    private final AtomicLong unpooled = new AtomicLong();
+
+    /** 每个线程每个级别一个小栈 */
+    private static final class ThreadCache {
+        final ByteBuffer[][] stacks = new ByteBuffer[SIZE_CLASSES.length][THREAD_CACHE_SIZE];
+        final int[] sizes = new int[SIZE_CLASSES.length];
+    }
+
+    private static final class SizeClass {
+        final int chunkSize;
+        final int maxSlabs;
+        final AtomicInteger slabs = new AtomicInteger();
+        final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+        SizeClass(int chunkSize, int maxSlabs) {
+            this.chunkSize = chunkSize;
+            this.maxSlabs = maxSlabs;
+        }
+    }
+
+    /**
+     * @param maxSlabsPerClass 每个级别最多创建的 slab 数（每个 1 MiB）
+     * @param leakDetection    是否开启泄漏检测（有额外开销，仅用于调试）
+     */
+    public DirectBufferPool(int maxSlabsPerClass, boolean leakDetection) {
+        if (maxSlabsPerClass <= 0) throw new IllegalArgumentException("maxSlabsPerClass must be positive");
+        this.classes = new SizeClass[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            classes[i] = new SizeClass(SIZE_CLASSES[i], maxSlabsPerClass);
+        }
+        this.leakDetection = leakDetection;
+        this.cleaner = leakDetection ? Cleaner.create() : null;
+    }
+
+    /**
+     * 默认共享池：每级最多 16 MiB；以 -Dhttp.buffer.leakDetection=true 开启泄漏检测。
+     */
+    public static DirectBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * 借出容量不小于 minCapacity 的缓冲（position = 0，limit = capacity）。
+     */
+    public PooledByteBuffer allocate(int minCapacity) {
+        int cls = classIndex(minCapacity);
+        if (cls < 0) {
+            unpooled.incrementAndGet();
+            return new PooledByteBuffer(ByteBuffer.allocateDirect(minCapacity), () -> { }, cleaner, leakDetection);
+        }
+        ByteBuffer chunk = take(cls);
+        if (chunk == null) {
+            unpooled.incrementAndGet();
+            return new PooledByteBuffer(ByteBuffer.allocateDirect(classes[cls].chunkSize), () -> { },
+                    cleaner, leakDetection);
+        }
+        chunk.clear();
+        return new PooledByteBuffer(chunk, () -> recycle(cls, chunk), cleaner, leakDetection);
+    }
+
+    /**
+     * @return 已创建的 slab 占用的直接内存总字节数
+     */
+    public long pooledBytes() {
+        long total = 0;
+        for (SizeClass c : classes) total += (long) c.slabs.get() * SLAB_SIZE;
+        return total;
+    }
+
+    /**
+     * @return 因池耗尽或超出最大级别而直接分配的次数
+     */
+    public long unpooledCount() {
+        return unpooled.get();
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    private static int classIndex(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) return i;
+        }
+        return -1;
+    }
+
+    private ByteBuffer take(int cls) {
+        // 1) 线程本地缓存
+        ThreadCache cache = threadCaches.get();
+        if (cache.sizes[cls] > 0) {
+            int top = --cache.sizes[cls];
+            ByteBuffer chunk = cache.stacks[cls][top];
+            cache.stacks[cls][top] = null;
+            return chunk;
+        }
+        // 2) 全局空闲队列
+        SizeClass c = classes[cls];
+        ByteBuffer chunk = c.free.poll();
+        if (chunk != null) return chunk;
+        // 3) 新建 slab：切好的片段除一个外全部放入全局队列
+        while (true) {
+            int n = c.slabs.get();
+            if (n >= c.maxSlabs) return c.free.poll();
+            if (c.slabs.compareAndSet(n, n + 1)) break;
+        }
+        ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+        int count = SLAB_SIZE / c.chunkSize;
+        for (int i = 1; i < count; i++) {
+            c.free.offer(slab.slice(i * c.chunkSize, c.chunkSize));
+        }
+        return slab.slice(0, c.chunkSize);
+    }
+
+    private void recycle(int cls, ByteBuffer chunk) {
+        ThreadCache cache = threadCaches.get();
+        if (cache.sizes[cls] < THREAD_CACHE_SIZE) {
+            cache.stacks[cls][cache.sizes[cls]++] = chunk;
+        } else {
+            classes[cls].free.offer(chunk);
+        }
+    }
+}
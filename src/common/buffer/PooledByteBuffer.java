@@ -0,0 +1,101 @@
+package common.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 从 {@link DirectBufferPool} 借出的直接内存缓冲（引用计数）。
+ *
+ * 说明：
+ *  - 借出时引用计数为 1；需要跨组件共享时调用 retain()，每个持有者用完后各调用一次 release()
+ *  - 计数归零时缓冲回到池中，此后不得再访问 {@link #buffer()}
+ *  - 池开启泄漏检测时，未 release 就被 GC 回收的缓冲会打印借出时的调用栈，并把内存归还给池
+ */
+public final class PooledByteBuffer {
+
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+    private final Runnable recycler;
+    private final Cleaner.Cleanable leakCheck;
+
+    PooledByteBuffer(ByteBuffer buffer, Runnable recycler, Cleaner cleaner, boolean trackLeaks) {
+        this.buffer = buffer;
+        this.recycler = recycler;
+        this.leakCheck = trackLeaks
+                ? cleaner.register(this, new LeakCheck(refCnt, recycler, new Throwable("Buffer allocated here")))
+                : null;
+    }
+
+    /**
+     * @return 底层缓冲（position = 0，limit = capacity）
+     */
+    public ByteBuffer buffer() {
+        if (refCnt.get() <= 0) throw new IllegalStateException("buffer already released");
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public int refCnt() {
+        return refCnt.get();
+    }
+
+    /**
+     * 增加一个持有者。
+     */
+    public PooledByteBuffer retain() {
+        while (true) {
+            int c = refCnt.get();
+            if (c <= 0) throw new IllegalStateException("buffer already released");
+            if (refCnt.compareAndSet(c, c + 1)) return this;
+        }
+    }
+
+    /**
+     * 释放一个持有者；最后一个持有者释放时缓冲回到池中。
+     *
+     * @return 本次调用是否使缓冲回到了池中
+     */
+    public boolean release() {
+        while (true) {
+            int c = refCnt.get();
+            if (c <= 0) throw new IllegalStateException("buffer already released");
+            if (refCnt.compareAndSet(c, c - 1)) {
+                if (c != 1) return false;
+                if (leakCheck != null) {
+                    leakCheck.clean(); // 取消泄漏检测（计数已为 0，不会报告）
+                }
+                recycler.run();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 泄漏检测：包装对象被 GC 回收时仍有未释放的引用即为泄漏。
+     * 只持有计数与回收动作，不持有包装对象本身，否则包装对象永远不会被回收。
+     */
+    private static final class LeakCheck implements Runnable {
+        private final AtomicInteger refCnt;
+        private final Runnable recycler;
+        private final Throwable allocationSite;
+
+        LeakCheck(AtomicInteger refCnt, Runnable recycler, Throwable allocationSite) {
+            this.refCnt = refCnt;
+            this.recycler = recycler;
+            this.allocationSite = allocationSite;
+        }
+
+        @Override
+        public void run() {
+            if (refCnt.getAndSet(0) > 0) {
+                System.err.println("LEAK: PooledByteBuffer was garbage-collected without release()");
+                allocationSite.printStackTrace();
+                recycler.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package common.hpack;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * HPACK 头部块解码器（RFC 7541）。
+ *
+ * 说明：
+ *  - 每个 HTTP/2 连接一个解码器，按收到的顺序解码所有头部块，动态表在块之间延续
+ *  - 动态表容量不超过本端通告的 SETTINGS_HEADER_TABLE_SIZE；对端的表大小更新超过该值视为错误
+ *  - 头部列表超过 maxHeaderListSize 时继续解码（保持动态表同步），但不再交付后续头部，
+ *    decode 返回 false，由调用方拒绝该请求
+ *  - 非线程安全
+ */
+public final class HpackDecoder {
+
+    private final HpackTable table;
+    private final int maxTableSize;
+    private final int maxHeaderListSize;
+
+    // 当前解码位置
+    private byte[] data;
+    private int pos;
+    private int end;
+
+    /**
+     * @param maxTableSize      本端允许的动态表最大字节数
+     * @param maxHeaderListSize 单个头部列表的最大字节数（名称 + 值 + 32 累加）
+     */
+    public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+        this.table = new HpackTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * 解码一个完整的头部块。
+     *
+     * @param sink 依次接收 (名称, 值)
+     * @return false 表示头部列表超过上限，超出部分未交付
+     * @throws HpackException 压缩数据不合法（连接级错误）
+     */
+    public boolean decode(byte[] block, int offset, int length, BiConsumer<String, String> sink)
+            throws HpackException {
+        this.data = block;
+        this.pos = offset;
+        this.end = offset + length;
+        long listSize = 0;
+        boolean fieldSeen = false;
+        try {
+            while (pos < end) {
+                int b = data[pos] & 0xff;
+                String name;
+                String value;
+                if ((b & 0x80) != 0) {
+                    // 索引表示
+                    int index = readInt(7);
+                    if (index == 0) throw new HpackException("Indexed header field with index 0");
+                    name = table.nameAt(index);
+                    value = table.valueAt(index);
+                } else if ((b & 0x40) != 0) {
+                    // 带增量索引的字面量
+                    name = readName(6);
+                    value = readString();
+                    table.add(name, value);
+                } else if ((b & 0x20) != 0) {
+                    // 动态表大小更新：只能出现在块开头
+                    if (fieldSeen) throw new HpackException("Dynamic table size update after header field");
+                    int newSize = readInt(5);
+                    if (newSize > maxTableSize) {
+                        throw new HpackException("Dynamic table size update exceeds limit: " + newSize);
+                    }
+                    table.setMaxSize(newSize);
+                    continue;
+                } else {
+                    // 不索引 / 永不索引的字面量（前缀 4 位）
+                    name = readName(4);
+                    value = readString();
+                }
+                fieldSeen = true;
+                listSize += name.length() + value.length() + HpackTable.ENTRY_OVERHEAD;
+                if (listSize <= maxHeaderListSize) {
+                    sink.accept(name, value);
+                }
+            }
+        } finally {
+            this.data = null;
+        }
+        return listSize <= maxHeaderListSize;
+    }
+
+    /**
+     * @return 动态表当前占用的字节数
+     */
+    public int tableSize() {
+        return table.size();
+    }
+
+    /**
+     * @return 动态表当前条目数
+     */
+    public int tableLength() {
+        return table.length();
+    }
+
+    private String readName(int prefixBits) throws HpackException {
+        int index = readInt(prefixBits);
+        return index == 0 ? readString() : table.nameAt(index);
+    }
+
+    private String readString() throws HpackException {
+        if (pos >= end) throw new HpackException("Truncated string literal");
+        boolean huffman = (data[pos] & 0x80) != 0;
+        int length = readInt(7);
+        if (length > end - pos) throw new HpackException("String literal exceeds header block");
+        int start = pos;
+        pos += length;
+        return huffman
+                ? Huffman.decode(data, start, length)
+                : new String(data, start, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 读取 N 位前缀整数（RFC 7541 5.1），当前字节的高位标志由调用方解释。
+     */
+    private int readInt(int prefixBits) throws HpackException {
+        int max = (1 << prefixBits) - 1;
+        int value = data[pos++] & max;
+        if (value < max) return value;
+        int shift = 0;
+        while (true) {
+            if (pos >= end) throw new HpackException("Truncated integer");
+            int b = data[pos++] & 0xff;
+            value += (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) break;
+            shift += 7;
+            if (shift > 21) throw new HpackException("Integer overflow");
+        }
+        if (value < 0) throw new HpackException("Integer overflow");
+        return value;
+    }
+}
@@ -0,0 +1,165 @@
+package common.hpack;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HPACK 头部块编码器（RFC 7541）。
+ *
+ * 编码策略：
+ *  - 名称与值完全命中静态表或动态表时只写一个索引
+ *  - 否则写字面量，名称尽量引用索引；值通常会重复出现的头部加入动态表（增量索引）
+ *  - content-length 等每次都变化的头部不加入动态表，避免挤掉有用的条目
+ *  - 敏感头部（authorization、cookie、set-cookie）使用“永不索引”表示，中间代理也不得压缩
+ *  - 字符串 Huffman 编码更短时使用 Huffman
+ *
+ * 说明：
+ *  - 名称必须是小写（HTTP/2 要求），由调用方保证
+ *  - 对端通过 SETTINGS_HEADER_TABLE_SIZE 调整动态表容量后，下一个头部块开头写出表大小更新
+ *  - 非线程安全：同一连接的头部块必须按写出顺序依次编码
+ */
+public final class HpackEncoder {
+
+    /** 静态表：名称 -> 首个索引（同名条目在静态表中是连续的） */
+    private static final Map<String, Integer> STATIC_INDEX = new HashMap<>();
+
+    static {
+        for (int i = HpackTable.STATIC_SIZE; i >= 1; i--) {
+            STATIC_INDEX.put(HpackTable.STATIC_TABLE[i - 1][0], i);
+        }
+    }
+
+    private final HpackTable table;
+    private final int maxTableSize;
+    /** 待写出的表大小更新：期间出现过的最小值与最终值（-1 表示无） */
+    private int pendingMinSize = -1;
+    private int pendingSize = -1;
+
+    /**
+     * @param maxTableSize 本端愿意使用的动态表最大字节数（实际容量还受对端设置限制）
+     */
+    public HpackEncoder(int maxTableSize) {
+        this.maxTableSize = maxTableSize;
+        // 双方初始都按协议默认的 4096 字节计算；本端上限更小时在第一个头部块开头缩小
+        this.table = new HpackTable(4096);
+        if (maxTableSize < 4096) {
+            pendingMinSize = maxTableSize;
+            pendingSize = maxTableSize;
+        }
+    }
+
+    /**
+     * 对端通告了新的 SETTINGS_HEADER_TABLE_SIZE。
+     */
+    public void setPeerMaxTableSize(int peerSize) {
+        int size = Math.min(peerSize, maxTableSize);
+        if (size == table.maxSize() && pendingSize < 0) return;
+        pendingMinSize = pendingMinSize < 0 ? size : Math.min(pendingMinSize, size);
+        pendingSize = size;
+    }
+
+    /**
+     * 开始一个新的头部块：写出待生效的表大小更新。
+     */
+    public void beginHeaderBlock(ByteArrayOutputStream out) {
+        if (pendingSize < 0) return;
+        if (pendingMinSize < pendingSize) {
+            writeInt(out, 0x20, 5, pendingMinSize);
+            table.setMaxSize(pendingMinSize);
+        }
+        writeInt(out, 0x20, 5, pendingSize);
+        table.setMaxSize(pendingSize);
+        pendingMinSize = -1;
+        pendingSize = -1;
+    }
+
+    /**
+     * 编码一个头部字段。
+     *
+     * @param name  小写名称
+     * @param value 值
+     */
+    public void encode(String name, String value, ByteArrayOutputStream out) {
+        boolean sensitive = isSensitive(name);
+        int nameIndex = 0;
+
+        // 1) 静态表
+        Integer first = STATIC_INDEX.get(name);
+        if (first != null) {
+            nameIndex = first;
+            if (!sensitive) {
+                for (int i = first; i <= HpackTable.STATIC_SIZE && HpackTable.STATIC_TABLE[i - 1][0].equals(name); i++) {
+                    if (HpackTable.STATIC_TABLE[i - 1][1].equals(value)) {
+                        writeInt(out, 0x80, 7, i);
+                        return;
+                    }
+                }
+            }
+        }
+
+        // 2) 动态表
+        if (!sensitive) {
+            for (int i = 0; i < table.length(); i++) {
+                if (table.name(i).equals(name)) {
+                    if (table.value(i).equals(value)) {
+                        writeInt(out, 0x80, 7, HpackTable.STATIC_SIZE + 1 + i);
+                        return;
+                    }
+                    if (nameIndex == 0) nameIndex = HpackTable.STATIC_SIZE + 1 + i;
+                }
+            }
+        }
+
+        // 3) 字面量
+        if (sensitive) {
+            writeInt(out, 0x10, 4, nameIndex);
+        } else if (isVolatile(name)) {
+            writeInt(out, 0x00, 4, nameIndex);
+        } else {
+            writeInt(out, 0x40, 6, nameIndex);
+            table.add(name, value);
+        }
+        if (nameIndex == 0) writeString(out, name);
+        writeString(out, value);
+    }
+
+    private static boolean isSensitive(String name) {
+        return name.equals("authorization") || name.equals("cookie") || name.equals("set-cookie");
+    }
+
+    private static boolean isVolatile(String name) {
+        return name.equals("content-length") || name.equals("content-range") || name.equals(":path");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        int huffmanLength = Huffman.encodedLength(s);
+        if (huffmanLength < s.length()) {
+            writeInt(out, 0x80, 7, huffmanLength);
+            Huffman.encode(s, out);
+        } else {
+            writeInt(out, 0x00, 7, s.length());
+            byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * 写出 N 位前缀整数（RFC 7541 5.1），flags 为首字节的高位标志。
+     */
+    static void writeInt(ByteArrayOutputStream out, int flags, int prefixBits, int value) {
+        int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
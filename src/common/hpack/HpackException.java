@@ -0,0 +1,16 @@
+package common.hpack;
+
+/**
+ * HPACK 解码错误（压缩数据不合法或超出协商的限制）。
+ *
+ * 说明：
+ *  - 头部块解码失败后动态表状态已不可信，HTTP/2 连接必须以 COMPRESSION_ERROR 关闭
+ */
+public class HpackException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public HpackException(String message) {
+        super(message);
+    }
+}
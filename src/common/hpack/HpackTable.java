@@ -0,0 +1,186 @@
+package common.hpack;
+
+/**
+ * HPACK 索引表：61 项静态表 + 动态表（RFC 7541 第 2.3 节）。
+ *
+ * 说明：
+ *  - 索引 1..61 为静态表，62 起为动态表，最新插入的条目索引最小
+ *  - 动态表用环形数组保存，插入在头部，淘汰从尾部进行
+ *  - 条目大小 = 名称字节数 + 值字节数 + 32；名称与值都是 ISO-8859-1 字符串，字符数即字节数
+ */
+final class HpackTable {
+
+    static final String[][] STATIC_TABLE = {
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""},
+    };
+
+    static final int STATIC_SIZE = STATIC_TABLE.length;
+    static final int ENTRY_OVERHEAD = 32;
+
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    /** 最新条目在环形数组中的位置 */
+    private int head;
+    private int count;
+    private int size;
+    private int maxSize;
+
+    HpackTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    int length() {
+        return count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 调整动态表容量，超出部分立即淘汰。
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(0);
+    }
+
+    /**
+     * @param index 动态表内的序号，0 为最新条目
+     */
+    String name(int index) {
+        return names[slot(index)];
+    }
+
+    String value(int index) {
+        return values[slot(index)];
+    }
+
+    /**
+     * 按 HPACK 全局索引（从 1 开始）取名称。
+     */
+    String nameAt(int index) throws HpackException {
+        if (index >= 1 && index <= STATIC_SIZE) return STATIC_TABLE[index - 1][0];
+        int d = index - STATIC_SIZE - 1;
+        if (index < 1 || d >= count) throw new HpackException("Invalid header index " + index);
+        return name(d);
+    }
+
+    String valueAt(int index) throws HpackException {
+        if (index >= 1 && index <= STATIC_SIZE) return STATIC_TABLE[index - 1][1];
+        int d = index - STATIC_SIZE - 1;
+        if (index < 1 || d >= count) throw new HpackException("Invalid header index " + index);
+        return value(d);
+    }
+
+    /**
+     * 插入新条目；条目本身超过容量时清空动态表且不插入（RFC 7541 4.4）。
+     */
+    void add(String name, String value) {
+        int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+        if (entrySize > maxSize) {
+            evict(maxSize);
+            return;
+        }
+        evict(entrySize);
+        if (count == names.length) grow();
+        head = (head - 1 + names.length) % names.length;
+        names[head] = name;
+        values[head] = value;
+        count++;
+        size += entrySize;
+    }
+
+    /**
+     * 淘汰最旧的条目，直到再插入 incoming 字节后不超过容量。
+     */
+    private void evict(int incoming) {
+        while (count > 0 && size + incoming > maxSize) {
+            int tail = slot(count - 1);
+            size -= names[tail].length() + values[tail].length() + ENTRY_OVERHEAD;
+            names[tail] = null;
+            values[tail] = null;
+            count--;
+        }
+    }
+
+    private void grow() {
+        String[] n = new String[names.length * 2];
+        String[] v = new String[names.length * 2];
+        for (int i = 0; i < count; i++) {
+            n[i] = name(i);
+            v[i] = value(i);
+        }
+        names = n;
+        values = v;
+        head = 0;
+    }
+
+    private int slot(int index) {
+        return (head + index) % names.length;
+    }
+}
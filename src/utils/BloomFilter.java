@@ -0,0 +1,57 @@
+package utils;
+
+/**
+ * 工具类：布隆过滤器（字符串）
+ * 职责：以很小的内存判断"一定不在集合中"，为精确查找做预筛选。
+ *
+ * 说明：
+ *  - mightContain 返回 false 时元素一定不在集合中；返回 true 时需再做精确确认
+ *  - 哈希：对 UTF-8 字节计算一次 64 位哈希（{@link Hashing#fnv1a64}），拆成两半做双重哈希 (h1 + i * h2) 得到 k 个位置
+ *  - 只支持添加，不支持删除；集合变化较大时应重新构建
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedItems     预计元素个数
+     * @param falsePositiveRate 期望误判率（0, 1）
+     */
+    public BloomFilter(int expectedItems, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1)");
+        }
+        int n = Math.max(1, expectedItems);
+        // m = -n ln p / (ln 2)^2，k = m / n * ln 2
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.bits = new long[(int) (m / 64)];
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void add(String item) {
+        long h = Hashing.fnv1a64(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    public boolean mightContain(String item) {
+        long h = Hashing.fnv1a64(item);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long index = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,37 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 工具类：字符串哈希
+ * 职责：为布隆过滤器、一致性哈希等需要 64 位均匀分布的场景计算字符串哈希。
+ *
+ * 说明：对 UTF-8 字节做 64 位 FNV-1a，再经 MurmurHash3 的 fmix64 打散高低位
+ * （FNV-1a 对只差末尾几个字符的键扩散不足，高 32 位尤其明显）。
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    public static long fnv1a64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return fmix64(h);
+    }
+
+    /**
+     * MurmurHash3 的 64 位终结混合。
+     */
+    public static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,186 @@
+package utils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 工具类：IP 前缀树（路径压缩的二叉 Patricia 树）
+ * 职责：保存一组 IPv4/IPv6 CIDR 网段，判断某个地址是否落在其中任一网段内。
+ *
+ * 说明：
+ *  - 所有地址统一为 128 位：IPv4 映射为 ::ffff:a.b.c.d，前缀长度加 96
+ *  - 路径压缩：节点直接保存到达该节点的完整前缀，没有分叉的单链被合并为一个节点，
+ *    查找时比较次数与网段数量的对数相当，而不是与地址位数相当
+ *  - 较短的网段覆盖较长的网段时只保留较短的那个（只关心"是否命中"）
+ *  - 构建完成后只读，可被多个线程并发查询
+ */
+public class IpPrefixTrie {
+
+    private static final class Node {
+        final long hi;
+        final long lo;
+        /** 前缀长度（位），也是下一次分叉的位序号 */
+        final int length;
+        boolean terminal;
+        Node zero;
+        Node one;
+
+        Node(long hi, long lo, int length, boolean terminal) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.terminal = terminal;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    /**
+     * 添加网段，例如 "10.0.0.0/8"、"2001:db8::/32"；不带前缀长度时表示单个地址。
+     *
+     * @throws IllegalArgumentException 格式不正确
+     */
+    public void add(String cidr) {
+        String text = cidr.trim();
+        int slash = text.indexOf('/');
+        String addressText = slash < 0 ? text : text.substring(0, slash);
+        byte[] address = parseLiteral(addressText);
+        int maxLength = address.length * 8;
+        int length = maxLength;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(text.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+            }
+        }
+        long[] bits = toBits(address);
+        int total = length + (address.length == 4 ? 96 : 0);
+        root = insert(root, bits[0] & mask(total, 0), bits[1] & mask(total, 1), total);
+        size++;
+    }
+
+    /**
+     * @return 地址是否落在任一网段内
+     */
+    public boolean contains(InetAddress address) {
+        long[] bits = toBits(address.getAddress());
+        long hi = bits[0];
+        long lo = bits[1];
+        Node n = root;
+        while (n != null) {
+            if (commonPrefix(hi, lo, n.hi, n.lo) < n.length) return false;
+            if (n.terminal) return true;
+            n = bitAt(hi, lo, n.length) == 0 ? n.zero : n.one;
+        }
+        return false;
+    }
+
+    /**
+     * @return 添加过的网段数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    private static Node insert(Node n, long hi, long lo, int length) {
+        if (n == null) return new Node(hi, lo, length, true);
+        int common = Math.min(Math.min(commonPrefix(hi, lo, n.hi, n.lo), n.length), length);
+        if (common == n.length) {
+            // n 的前缀是新网段的前缀
+            if (n.terminal) return n; // 已被更短的网段覆盖
+            if (length == n.length) {
+                n.terminal = true;
+                n.zero = null;
+                n.one = null;
+                return n;
+            }
+            if (bitAt(hi, lo, n.length) == 0) {
+                n.zero = insert(n.zero, hi, lo, length);
+            } else {
+                n.one = insert(n.one, hi, lo, length);
+            }
+            return n;
+        }
+        if (common == length) {
+            // 新网段更短且覆盖 n 整棵子树
+            return new Node(hi, lo, length, true);
+        }
+        // 在分歧位处拆分
+        Node split = new Node(hi & mask(common, 0), lo & mask(common, 1), common, false);
+        Node leaf = new Node(hi, lo, length, true);
+        if (bitAt(hi, lo, common) == 0) {
+            split.zero = leaf;
+            split.one = n;
+        } else {
+            split.zero = n;
+            split.one = leaf;
+        }
+        return split;
+    }
+
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo) {
+        long x = aHi ^ bHi;
+        if (x != 0) return Long.numberOfLeadingZeros(x);
+        return 64 + Long.numberOfLeadingZeros(aLo ^ bLo);
+    }
+
+    private static int bitAt(long hi, long lo, int index) {
+        return index < 64 ? (int) (hi >>> (63 - index)) & 1 : (int) (lo >>> (127 - index)) & 1;
+    }
+
+    /**
+     * 前缀长度为 length 时 128 位掩码的高（part = 0）或低（part = 1）64 位。
+     */
+    private static long mask(int length, int part) {
+        int bits = part == 0 ? Math.min(length, 64) : Math.max(length - 64, 0);
+        return bits == 0 ? 0L : -1L << (64 - bits);
+    }
+
+    private static long[] toBits(byte[] address) {
+        long hi;
+        long lo;
+        if (address.length == 4) {
+            hi = 0L;
+            lo = 0xffffL << 32
+                    | (address[0] & 0xffL) << 24 | (address[1] & 0xffL) << 16
+                    | (address[2] & 0xffL) << 8 | (address[3] & 0xffL);
+        } else {
+            hi = 0L;
+            lo = 0L;
+            for (int i = 0; i < 8; i++) hi = hi << 8 | (address[i] & 0xffL);
+            for (int i = 8; i < 16; i++) lo = lo << 8 | (address[i] & 0xffL);
+        }
+        return new long[]{hi, lo};
+    }
+
+    /**
+     * 只接受 IP 字面量，避免把主机名交给 InetAddress 触发 DNS 查询。
+     */
+    private static byte[] parseLiteral(String text) {
+        if (text.isEmpty()) throw new IllegalArgumentException("Empty address");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean ok = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')
+                    || c == '.' || c == ':';
+            if (!ok) throw new IllegalArgumentException("Not an IP literal: " + text);
+        }
+        // IPv4 只允许数字与点，且必须是完整的四段点分形式
+        if (text.indexOf(':') < 0 && (!text.matches("[0-9.]+") || text.chars().filter(c -> c == '.').count() != 3)) {
+            throw new IllegalArgumentException("Not an IP literal: " + text);
+        }
+        try {
+            return InetAddress.getByName(text).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid address: " + text);
+        }
+    }
+}
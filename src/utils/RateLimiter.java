@@ -0,0 +1,158 @@
+package utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 工具类：按键限流器（令牌桶）
+ * 职责：为每个键（如客户端 IP、用户名）维护一个令牌桶，超出速率的请求被拒绝并给出需等待的时长。
+ *
+ * 说明：
+ *  - 令牌桶以 GCRA（通用信元速率算法）实现：每个桶只保存一个"理论到达时间"(TAT)，
+ *    取令牌就是一次 CAS，无锁且每个键只占一个 AtomicLong
+ *  - 桶已完全回满（TAT 不晚于当前时间）即与新建的桶等价，后台清理线程会将其删除以控制内存；
+ *    键数达到上限时先就地清理已回满的桶（最多每 {@link #INLINE_SWEEP_SPACING_NANOS} 一次），
+ *    仍然没有空位时新键才共用一个溢出桶 —— 随机键只能占住一个补充间隔，内存占用始终有界
+ *  - 速率与突发量可在运行时修改，对已有的桶立即生效
+ */
+public class RateLimiter {
+
+    /** 键表已满时就地清理的最小间隔，避免每个新键都遍历整张表 */
+    private static final long INLINE_SWEEP_SPACING_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    /** 上一次就地清理的时刻（System.nanoTime） */
+    private final AtomicLong lastInlineSweep = new AtomicLong(System.nanoTime() - INLINE_SWEEP_SPACING_NANOS);
+    private final AtomicLong overflow = newBucket();
+    private final int maxKeys;
+    private final ScheduledExecutorService sweeper;
+    /** 每个令牌的补充间隔（纳秒） */
+    private volatile long intervalNanos;
+    /** 允许的突发容差：(突发量 - 1) * 补充间隔（纳秒） */
+    private volatile long toleranceNanos;
+
+    /**
+     * @param permitsPerMinute 每分钟补充的令牌数
+     * @param burst            桶容量（允许的突发请求数）
+     * @param maxKeys          同时跟踪的键数上限
+     * @param sweepMillis      清理空闲桶的周期（毫秒）
+     * @param name             清理线程名
+     */
+    public RateLimiter(int permitsPerMinute, int burst, int maxKeys, long sweepMillis, String name) {
+        if (maxKeys <= 0 || sweepMillis <= 0) throw new IllegalArgumentException("invalid limiter size");
+        setRate(permitsPerMinute, burst);
+        this.maxKeys = maxKeys;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                System.err.println("Rate limiter sweep failed: " + e);
+            }
+        }, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 修改速率与突发量。
+     */
+    public void setRate(int permitsPerMinute, int burst) {
+        if (permitsPerMinute <= 0 || burst <= 0) throw new IllegalArgumentException("rate and burst must be positive");
+        long interval = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        this.intervalNanos = interval;
+        this.toleranceNanos = interval * (burst - 1);
+    }
+
+    /**
+     * 尝试为键取一个令牌。
+     *
+     * @return 0 表示放行；否则为需要等待的毫秒数（至少 1）
+     */
+    public long tryAcquire(String key) {
+        return acquire(bucketFor(key), true);
+    }
+
+    /**
+     * 只检查键当前是否还有令牌，不消耗。
+     *
+     * @return 0 表示有令牌；否则为需要等待的毫秒数（至少 1）
+     */
+    public long check(String key) {
+        AtomicLong bucket = buckets.get(key);
+        return bucket == null ? 0 : acquire(bucket, false);
+    }
+
+    /**
+     * 当前跟踪的键数。
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private long acquire(AtomicLong bucket, boolean consume) {
+        long interval = intervalNanos;
+        long tolerance = toleranceNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long tat = bucket.get();
+            long start = tat - now > 0 ? tat : now;
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+            if (!consume || bucket.compareAndSet(tat, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    private AtomicLong bucketFor(String key) {
+        if (key == null || key.isEmpty()) return overflow;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) return bucket;
+        if (buckets.size() >= maxKeys && (!sweepInline() || buckets.size() >= maxKeys)) return overflow;
+        return buckets.computeIfAbsent(key, k -> newBucket());
+    }
+
+    /**
+     * 键表已满：距上次就地清理超过最小间隔时由当前线程清理一次。
+     *
+     * @return 是否执行了清理
+     */
+    private boolean sweepInline() {
+        long last = lastInlineSweep.get();
+        long now = System.nanoTime();
+        if (now - last < INLINE_SWEEP_SPACING_NANOS || !lastInlineSweep.compareAndSet(last, now)) return false;
+        sweep();
+        return true;
+    }
+
+    /** TAT 初始为很久以前，相当于一个满桶 */
+    private static AtomicLong newBucket() {
+        return new AtomicLong(System.nanoTime() - TimeUnit.DAYS.toNanos(1));
+    }
+
+    /**
+     * 删除已回满的桶：与新建桶等价，删除不会放宽限流。
+     * 与并发的取令牌竞争时最多漏记一次，可以接受。
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        buckets.forEach((key, bucket) -> {
+            if (bucket.get() - now <= 0) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 工具类：哈希时间轮
+ * 职责：以 O(1) 的代价登记与触发大量定时项（如会话过期），避免周期性全表扫描。
+ *
+ * 说明：
+ *  - 时间轮由 wheelSize 个槽组成，每个槽代表 tickMillis 毫秒；
+ *    到期时间超出一圈的定时项记录实际截止时间，每转一圈检查一次，未到期则留在槽中
+ *  - 触发是"可能到期"的通知：调用方在回调中自行确认是否真正到期（例如滑动过期已被续期），
+ *    未到期时重新 schedule 即可
+ *  - 所有方法线程安全（每个槽独立加锁）
+ *
+ * @param <T> 定时项类型
+ */
+public class TimerWheel<T> {
+
+    private static final class Entry<T> {
+        final T item;
+        final long deadline;
+
+        Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    /** 下一个待处理的 tick 序号（仅由 advance 线程推进） */
+    private volatile long nextTick;
+
+    /**
+     * @param tickMillis 每个槽代表的毫秒数
+     * @param wheelSize  槽数（向上取整为 2 的幂）
+     * @param nowMillis  当前时间
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int wheelSize, long nowMillis) {
+        if (tickMillis <= 0 || wheelSize <= 0) throw new IllegalArgumentException("invalid wheel size");
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.slots = (List<Entry<T>>[]) new List<?>[size];
+        for (int i = 0; i < size; i++) slots[i] = new ArrayList<>();
+        this.mask = size - 1;
+        this.nextTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 登记一个定时项。
+     *
+     * @param item           定时项
+     * @param deadlineMillis 截止时间（毫秒时间戳）
+     */
+    public void schedule(T item, long deadlineMillis) {
+        long tick = Math.max(deadlineMillis / tickMillis, nextTick);
+        List<Entry<T>> slot = slots[(int) (tick & mask)];
+        synchronized (slot) {
+            slot.add(new Entry<>(item, deadlineMillis));
+        }
+    }
+
+    /**
+     * 推进时间轮到 nowMillis，对每个到期的定时项调用 onExpire。
+     * 应由单个线程周期性调用。
+     */
+    public void advance(long nowMillis, Consumer<T> onExpire) {
+        // 只处理时间窗口已完全过去的 tick，保证槽中本圈的定时项都已到期
+        long lastCompleteTick = nowMillis / tickMillis - 1;
+        if (lastCompleteTick < nextTick) return;
+        // 落后超过一圈时，只需完整处理一圈
+        long from = Math.max(nextTick, lastCompleteTick - mask);
+        List<T> expired = new ArrayList<>();
+        for (long tick = from; tick <= lastCompleteTick; tick++) {
+            List<Entry<T>> slot = slots[(int) (tick & mask)];
+            synchronized (slot) {
+                int kept = 0;
+                for (int i = 0; i < slot.size(); i++) {
+                    Entry<T> e = slot.get(i);
+                    if (e.deadline <= nowMillis) {
+                        expired.add(e.item);
+                    } else {
+                        slot.set(kept++, e); // 还没到期（超过一圈），留待下一圈
+                    }
+                }
+                slot.subList(kept, slot.size()).clear();
+            }
+        }
+        nextTick = lastCompleteTick + 1;
+        // 回调在槽锁之外执行，允许回调中重新 schedule
+        for (T item : expired) {
+            onExpire.accept(item);
+        }
+    }
+}